@@ -2,6 +2,9 @@ package org.lilian.adios;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.lilian.*;
 import org.lilian.adios.MexGraph.Motif;
@@ -26,6 +29,12 @@ import org.lilian.util.*;
 
 public class Adios<T> extends MexGraph<T>
 {
+	/**
+	 * The number of paths searched concurrently by 
+	 * parallelPatternDistillation() before the motifs are added to the graph.
+	 */
+	public static int DISTILLATION_BATCH = 256;
+	
 	protected int minPathLength = 1;
 	
 	public Adios(SequenceCorpus<T> corpus)
@@ -34,9 +43,43 @@ public class Adios<T> extends MexGraph<T>
 		super(corpus);
 	}
 	
+	/**
+	 * Continues from the tokens and paths in the given store.
+	 */
+	public Adios(PathStore<T> store)
+	{
+		super(store);
+	}
+	
+	/**
+	 * Writes the current state of the graph to a file, so that the search 
+	 * can be continued later with resume().
+	 * 
+	 * The values of the atomic tokens should be Serializable.
+	 */
+	public void checkpoint(File file)
+		throws IOException
+	{
+		toPathStore().write(file);
+	}
+	
+	/**
+	 * Restores a graph written by checkpoint(). Calling patternDistillation() 
+	 * or parallelPatternDistillation() on the result continues the search.
+	 */
+	public static <T> Adios<T> resume(File file)
+		throws IOException
+	{
+		return new Adios<T>(PathStore.<T>read(file));
+	}
+	
 	/**
 	 * Iterates once over all paths in the graph
 	 * 
+	 * See parallelPatternDistillation() for a multithreaded version. Either 
+	 * is called repeatedly until it returns false (see 
+	 * MexFunctions.segmentation()).
+	 * 
 	 *  @return Whether any new motifs were found
 	 */
 	public boolean patternDistillation(
@@ -54,9 +97,9 @@ public class Adios<T> extends MexGraph<T>
 			if(motif != null)
 			{
 				motifFound = true;
-				super.addSerialToken(
+				addSerialToken(
 						motif, contextSensitive, 
-						significanceThreshold, dropThreshold);
+						dropThreshold, significanceThreshold);
 			}
 			System.out.print("_");
 		}
@@ -64,6 +107,141 @@ public class Adios<T> extends MexGraph<T>
 		return motifFound;
 	}
 	
+	/**
+	 * Iterates once over all paths in the graph, searching for motifs on 
+	 * multiple threads.
+	 * 
+	 * The paths are processed in batches of DISTILLATION_BATCH. The leading
+	 * motifs of all paths in a batch are searched for concurrently, against 
+	 * the graph as it is at the start of the batch (the search doesn't modify
+	 * the graph). The motifs are then added to the graph one by one, the most
+	 * significant first (and in the order of the paths for equal motifs).
+	 * 
+	 * If a path contains a token of a motif that was added before it in the 
+	 * same batch, its statistics may have changed, so the search is repeated 
+	 * for that path against the current graph. The motifs of the other paths
+	 * are added as they were found, without checking the drop and 
+	 * significance tests again. Their path counts are unaffected, but every
+	 * rewiring lowers the total number of nodes, which determines the 
+	 * probabilities of single tokens (the diagonal of m). A motif may 
+	 * therefore be added that would just fail the tests against the current 
+	 * graph, or vice versa.
+	 * 
+	 * The result is thus an approximation of that of patternDistillation().
+	 * It does not depend on the number of threads, but it may differ from 
+	 * the serial result, also because paths for which no motif was found are
+	 * not searched again in the same batch. With a DISTILLATION_BATCH of 1, 
+	 * the two are the same.
+	 * 
+	 *  @return Whether any new motifs were found
+	 */
+	public boolean parallelPatternDistillation(
+			final double dropThreshold, final double significanceThreshold, 
+			final boolean contextSensitive, int threads)
+	{
+		boolean motifFound = false;
+		
+		// * Every worker thread fills its own matrices
+		final ThreadLocal<MarkovMatrix> matrices = new ThreadLocal<MarkovMatrix>()
+		{
+			@Override
+			protected MarkovMatrix initialValue()
+			{
+				return new MarkovMatrix();
+			}
+		};
+		
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for(int from = 0; from < paths.size(); from += DISTILLATION_BATCH)
+			{
+				int to = Math.min(paths.size(), from + DISTILLATION_BATCH);
+				
+				// * Search all paths in the batch against the current graph
+				List<Callable<Candidate>> tasks = new ArrayList<Callable<Candidate>>(to - from);
+				for(int i = from; i < to; i++)
+				{
+					final Path path = paths.get(i);
+					final int index = i;
+					tasks.add(new Callable<Candidate>()
+					{
+						@Override
+						public Candidate call()
+						{
+							List<Token> tokens = new ArrayList<Token>(path);
+							Motif motif = pathRunDistillation(
+									tokens, dropThreshold, significanceThreshold, 
+									contextSensitive, matrices.get());
+							
+							return motif == null ? null : new Candidate(index, tokens, motif);
+						}
+					});
+				}
+				
+				List<Candidate> candidates = new ArrayList<Candidate>();
+				for(Candidate candidate : Parallel.run(tasks, executor))
+					if(candidate != null)
+						candidates.add(candidate);
+				
+				// * sort by significance (the sort is stable, so equal motifs 
+				//   stay in the order of the paths)
+				Collections.sort(candidates);
+				
+				// * Commit the rewirings
+				Set<Token> touched = new HashSet<Token>();
+				for(Candidate candidate : candidates)
+				{
+					Motif motif = candidate.motif;
+					
+					if(! Collections.disjoint(candidate.tokens, touched))
+						motif = pathRunDistillation(
+								paths.get(candidate.index), dropThreshold, 
+								significanceThreshold, contextSensitive);
+					
+					if(motif != null)
+					{
+						motifFound = true;
+						for(Position position : motif.getSequence())
+							touched.add(position.getToken());
+						
+						addSerialToken(
+								motif, contextSensitive, 
+								dropThreshold, significanceThreshold);
+					}
+				}
+			}
+		} finally
+		{
+			executor.shutdown();
+		}
+			
+		return motifFound;
+	}
+	
+	/**
+	 * A motif found on a path during a parallel sweep
+	 */
+	private class Candidate implements Comparable<Candidate>
+	{
+		int index;
+		// * The tokens of the path at the time of the search
+		List<Token> tokens;
+		Motif motif;
+		
+		public Candidate(int index, List<Token> tokens, Motif motif)
+		{
+			this.index = index;
+			this.tokens = tokens;
+			this.motif = motif;
+		}
+
+		@Override
+		public int compareTo(Candidate other)
+		{
+			return motif.compareTo(other.motif);
+		}
+	}
+	
 	/**
 	 * Slides a context window over all paths, determining equivalence classes 
 	 */
@@ -197,6 +375,22 @@ public class Adios<T> extends MexGraph<T>
 			double dropThreshold, 
 			double significanceThreshold, 
 			boolean contextSensitive)
+	{
+		return pathRunDistillation(
+				path, dropThreshold, significanceThreshold, 
+				contextSensitive, matrix);
+	}
+	
+	/**
+	 * Finds the leading motif along the path, using the given matrix object
+	 * to store the statistics. 
+	 */
+	protected Motif pathRunDistillation(
+			List<Token> path, 
+			double dropThreshold, 
+			double significanceThreshold, 
+			boolean contextSensitive,
+			MarkovMatrix matrix)
 	{
 		Motif motif = null;
 		
@@ -208,7 +402,7 @@ public class Adios<T> extends MexGraph<T>
 		if(path.size() > minPathLength)
 		{
 			System.out.print("(");
-			motif = getLeadingMotif(genPath, dropThreshold, significanceThreshold);
+			motif = getLeadingMotif(matrix, genPath, dropThreshold, significanceThreshold);
 			System.out.print(")");
 		}
 
@@ -345,9 +539,9 @@ public class Adios<T> extends MexGraph<T>
 
 				Log.logln(genPath);
 				Log.logln();
-				Log.logln(Functions.matrixToString(n));
+				Log.logln(Functions.matrixToString(matrix.n, matrix.size));
 				Log.logln();				
-				Log.logln(Functions.matrixToString(m));
+				Log.logln(Functions.matrixToString(matrix.m, matrix.size));
 				Log.logln();				
 
 				if(currentMotif != null)
@@ -414,6 +414,26 @@ public class MexFunctions
 			SequenceCorpus<String> gold,
 			boolean verbose)
 		throws IOException
+	{
+		return segmentation(graph, alphas, drop, context, dir, base, gold, verbose, 1);
+	}
+	
+	/**
+	 * As above, with the pattern distillation spread over the given number of
+	 * threads (see Adios.parallelPatternDistillation()). With a single 
+	 * thread, Adios.patternDistillation() is used.
+	 */
+	public static Vector<Double> segmentation(
+			Adios<String> graph, 
+			double[] alphas, 
+			double drop, 
+			boolean context,
+			File dir,
+			String base,
+			SequenceCorpus<String> gold,
+			boolean verbose,
+			int threads)
+		throws IOException
 	{
 		Vector<Double> result = new Vector<Double>(alphas.length + 1);
 		int n, denom = -1;
@@ -443,7 +463,9 @@ public class MexFunctions
 			if(verbose) System.out.println("Starting alpha = " + alphas[i]);
 
 			if(verbose) System.out.println("  Training Model");
-			while(graph.patternDistillation(drop, alphas[i], context))
+			while(threads > 1 ?
+					graph.parallelPatternDistillation(drop, alphas[i], context, threads) :
+					graph.patternDistillation(drop, alphas[i], context))
 				if(verbose) System.out.println(".");
 			if(verbose) System.out.println();			
 
@@ -17,10 +17,10 @@ import org.lilian.util.*;
  * the graph represents a distinct token in the corpus. The amount of paths along 
  * a sequence of tokens can then be used to calculate probabilities and extract motifs  
  *   
+ *  The tokens and paths can be stored compactly (and written to disk) as a 
+ *  PathStore, with toPathStore(), and restored with MexGraph(PathStore).
+ *  
  *  TODO:
- *  - move all the matrix classes to a separate object MarkovMatrix. Or maybe not.
- *  - write a nice serialization method that recursively stores all token
- *    objects in order of dependency.
  *  - cache productivity values. (But think it through first).
  *  - Consider removing markertokens. Check JAdios.
  */
@@ -42,7 +42,9 @@ public class MexGraph<T> implements Serializable
 	
 	protected Vector<Path> paths = new Vector<Path>();
 	
-	private BinomialCoefficient bc = new BinomialCoefficient();
+	// * The largest number of p-values remembered by significance()
+	public static int SIGNIFICANCE_CACHE = 100000;
+	private transient Map<SignificanceKey, Double> significanceCache;
 	protected boolean runComplete = false;
 	
 	protected int totalNodes = 0;
@@ -50,10 +52,7 @@ public class MexGraph<T> implements Serializable
 	protected int serialTokens = 0;
 	
 	// used in extracting motifs from sentences
-	protected int[][] n;
-	protected double[][] m;
-	protected Vector<Segment> df;
-	protected Vector<Segment> db;
+	protected MarkovMatrix matrix = new MarkovMatrix();
 	
 	protected int modCount = 0;
 	
@@ -61,8 +60,9 @@ public class MexGraph<T> implements Serializable
 	{
 		// * Create the paths
 	
-		Path path = new Path();
-		path.add(startToken);
+		// * A path is only started when its first token is read, so that
+		//   no path is added twice, or without tokens
+		Path path = null;
 		
 		SequenceIterator<T> si = corpus.iterator();
 		Token token;
@@ -71,6 +71,12 @@ public class MexGraph<T> implements Serializable
 		{
 			value = si.next();
 			
+			if(path == null)
+			{
+				path = new Path();
+				path.add(startToken);
+			}
+			
 			if(tokens.containsKey(value))
 				token = tokens.get(value);
 			else
@@ -86,21 +92,140 @@ public class MexGraph<T> implements Serializable
 				path.add(endToken);
 				paths.add(path);
 				
-				if(si.hasNext())
-				{
-					path = new Path();
-					path.add(startToken);
-				}
+				path = null;
 			}
 		}
 		
-		if(path.size() > 1)
+		if(path != null)
 		{
 			path.add(endToken);
 			paths.add(path);
 		}	
 	}
 	
+	/**
+	 * Creates a graph with the tokens and paths of the given store, for 
+	 * instance one restored from a snapshot with PathStore.read().
+	 */
+	public MexGraph(PathStore<T> store)
+	{
+		// * The children of a token always have a lower id
+		List<Token> byId = new ArrayList<Token>(store.numberOfTokens());
+		for(int id = 0; id < store.numberOfTokens(); id++)
+		{
+			Token token;
+			switch(store.kind(id))
+			{
+				case MARKER:
+					token = id == PathStore.START ? startToken : endToken;
+					break;
+				case ATOMIC:
+					token = new AtomicToken(store.value(id));
+					break;
+				case SERIAL:
+					List<Token> pattern = new ArrayList<Token>();
+					for(int child : store.children(id))
+						pattern.add(byId.get(child));
+					token = new SerialToken(pattern);
+					break;
+				default:
+					Set<Token> members = new LinkedHashSet<Token>();
+					for(int child : store.children(id))
+						members.add(byId.get(child));
+					token = new ParallelToken(members);
+			}
+			
+			if(store.kind(id) != PathStore.Kind.MARKER)
+				addToken(token);
+			byId.add(token);
+		}
+		
+		for(int p = 0; p < store.numberOfPaths(); p++)
+		{
+			Path path = new Path();
+			for(int id : store.path(p))
+				path.add(byId.get(id));
+			paths.add(path);
+		}
+	}
+	
+	/**
+	 * Copies the tokens and paths of this graph to a PathStore. 
+	 * 
+	 * The serial and the parallel tokens each keep the order in which they 
+	 * were created, so that a graph created from the store gives them the 
+	 * same labels.
+	 */
+	public PathStore<T> toPathStore()
+	{
+		PathStore<T> store = new PathStore<T>();
+		
+		Map<Token, Integer> ids = new HashMap<Token, Integer>();
+		ids.put(startToken, PathStore.START);
+		ids.put(endToken, PathStore.END);
+		
+		for(Token token : tokens.values())
+			id(token, ids, store);
+		
+		// * Merge the serial and parallel tokens, taking a parallel token 
+		//   whenever the next serial token depends on one that has no id yet
+		int s = 0, p = 0;
+		while(s < stokens.size() || p < ptokens.size())
+		{
+			if(s < stokens.size() && (p == ptokens.size() || 
+					ids.keySet().containsAll(stokens.get(s).getTokens())))
+				id(stokens.get(s++), ids, store);
+			else
+				id(ptokens.get(p++), ids, store);
+		}
+		
+		for(Path path : paths)
+		{
+			int[] ints = new int[path.size()];
+			int i = 0;
+			for(Token token : path)
+				ints[i++] = id(token, ids, store);
+			
+			store.addPath(ints);
+		}
+		
+		return store;
+	}
+	
+	/**
+	 * The id of the token in the store, adding it (and its children) if 
+	 * necessary.
+	 */
+	private int id(Token token, Map<Token, Integer> ids, PathStore<T> store)
+	{
+		Integer id = ids.get(token);
+		if(id != null)
+			return id;
+		
+		if(token instanceof MexGraph<?>.AtomicToken)
+			id = store.addToken(
+					PathStore.Kind.ATOMIC, ((AtomicToken) token).getValue(), null);
+		else
+		{
+			boolean serial = token instanceof MexGraph<?>.SerialToken;
+			Collection<Token> children = serial ? 
+					((SerialToken) token).getTokens() : 
+					((ParallelToken) token).getMembers();
+			
+			int[] childIds = new int[children.size()];
+			int i = 0;
+			for(Token child : children)
+				childIds[i++] = id(child, ids, store);
+			
+			id = store.addToken(
+					serial ? PathStore.Kind.SERIAL : PathStore.Kind.PARALLEL,
+					null, childIds);
+		}
+		
+		ids.put(token, id);
+		return id;
+	}
+	
 	/**
 	 * Returns the number of sentences in this MexGraph.
 	 * 
@@ -142,12 +267,27 @@ public class MexGraph<T> implements Serializable
 			List<Position> sequence, 
 			double dropThreshold, 
 			double significanceThreshold)
+	{
+		return getLeadingMotif(matrix, sequence, dropThreshold, significanceThreshold);
+	}
+	
+	/**
+	 * Finds the leading motif along the given sequence, using the given 
+	 * matrix object to store the statistics. This does not modify the graph.
+	 */
+	protected Motif getLeadingMotif(
+			MarkovMatrix matrix,
+			List<Position> sequence, 
+			double dropThreshold, 
+			double significanceThreshold)
 	{
 		// * Fill the matrices used to find the motifs
 		//   if something goes wrong (ie. no paths match the sequence)
 		//   we return null
-		if(! fillMatrices(sequence, dropThreshold, significanceThreshold))
+		if(! matrix.fill(sequence, dropThreshold, significanceThreshold))
 			return null;
+		
+		Vector<Segment> df = matrix.df, db = matrix.db;
 
 		Segment forward = new Segment(0, 0, false, 0.0, 0.0);
 		Segment backward = new Segment(0, 0, false, 0.0, 0.0);
@@ -604,8 +744,11 @@ public class MexGraph<T> implements Serializable
 		int last = sequence.size() - 2;
 			
 		//int last = length - 1;
-		fillN(new PositionList(sequence));
-		fillM();
+		matrix.fillN(new PositionList(sequence));
+		matrix.fillM();
+		
+		int[][] n = matrix.n;
+		double[][] m = matrix.m;
 		
 		double backSig, forSig;
 		boolean significant = false;		
@@ -631,278 +774,246 @@ public class MexGraph<T> implements Serializable
 	}
 
 	/**
-	 * Fill the matrices required to extract motifs for this sequence 
-	 */
-	protected boolean fillMatrices(	
-			List<Position> sequence,
-			double dropThreshold, 
-			double significanceThreshold)
-	{
-		boolean result;
-		result = fillN(sequence);
-		
-		fillM();
-		calculateDrops(dropThreshold, significanceThreshold);
-		return result;
-	}	
-	
-	/**
-	 * Fill the matrix of sentence frequencies. 
-	 * 
-	 * Note: if the slot is at index 0 or sequence.size()-1 (ie. the first
-	 * or the last index), the results are not reliable. 
-	 * 
-	 * the sequence from a to b (incl. a and b) has n[b][a] paths along it
+	 * The statistics of the paths along a single search path: the number of 
+	 * paths that follow each subsequence (n), the probabilities derived from
+	 * them (m) and the significant drops. 
 	 * 
-	 * @return true if at least one Token was found for each slot along the 
-	 *         sequence. 
+	 * The matrices are reused between calls, so only the first size rows and
+	 * columns are valid. Filling the matrices only reads the graph, so
+	 * different MarkovMatrix objects can be filled concurrently, as long as
+	 * the graph isn't modified.
 	 */
-	protected boolean fillN(List<Position> sequence)
+	protected class MarkovMatrix implements Serializable
 	{
-
-		int length = sequence.size();
-	
-		n = new int[length][];
-	
-		for(int row = 0; row < length; row++){
-			n[row] = new int[length];
-			for(int column = 0; column < length; column++){
-				n[row][column] = 0;
-			}
-		}
-	
-		// from all the nodes in sequence, move forward and tally the n matrix
-		// the path we're extracting motifs from (the argument to this method)
-		// is the control path
-		// The path we're checking against the control path is the current path
-	
-		int start = 0;
-		int end;
+		protected int[][] n;
+		protected double[][] m;
+		protected int size = 0;
+		protected Vector<Segment> df;
+		protected Vector<Segment> db;
 		
-		Position controlPosition, startPosition;
+		/**
+		 * Fill the matrices required to extract motifs for this sequence 
+		 */
+		public boolean fill(	
+				List<Position> sequence,
+				double dropThreshold, 
+				double significanceThreshold)
+		{
+			boolean result;
+			result = fillN(sequence);
 		
-		Node firstNode, currentNode, currentNode2;
+			fillM();
+			calculateDrops(dropThreshold, significanceThreshold);
+			return result;
+		}	
 	
-		Iterator<Node> itPaths;
-		Iterator<Position> itForward = sequence.iterator();
-		ListIterator<Position> itInner;
-		ListIterator<Position> itInner2;
+		/**
+		 * Fill the matrix of sentence frequencies. 
+		 * 
+		 * Note: if the slot is at index 0 or sequence.size()-1 (ie. the first
+		 * or the last index), the results are not reliable. 
+		 * 
+		 * the sequence from a to b (incl. a and b) has n[b][a] paths along it
+		 * 
+		 * The matrix is reused between calls, so only the first size entries of 
+		 * each dimension are valid.
+		 * 
+		 * @return true if at least one Token was found for each slot along the 
+		 *         sequence. 
+		 */
+		public boolean fillN(List<Position> sequence)
+		{
+			size = sequence.size();
 		
-		while(itForward.hasNext()){
-			
-			startPosition = itForward.next();
-	
-			//for all paths through startToken, follow and check
-			//for how long they follow the current path.
-			itPaths = startPosition.nodes(true).iterator();
-			
-			while(itPaths.hasNext()){
-				
-				end = start;
-				
-				// the first node of the subpath we're checking against the control path
-				firstNode = itPaths.next();
-				currentNode = firstNode;
-				
-				itInner = sequence.listIterator(start);
-				
-				if(itInner.hasNext()) itInner.next();
-	
-				// follow currentNode's path until it deviates from the control
-				while(true)
-				{
-					// * If itInner is done, the candidate path has followed the control 
-					//   all the way to the end.
-					if(!itInner.hasNext())
-						break;
-					
-					// if currentNode has no next node, this is where it ends.
-					if(!currentNode.hasNextNode()) 
-						break;
-	
-					// this is the number of the node in the current control path
-					end++;
-										
-					controlPosition = itInner.next();
-					currentNode = currentNode.getNextNode();
+			// * Grow the buffers if necessary, and clear the part we'll use
+			if(n == null || n.length < size)
+			{
+				int capacity = Math.max(size, n == null ? 16 : n.length * 2);
+				n = new int[capacity][capacity];
+				m = new double[capacity][capacity];
+			} else
+			{
+				for(int row = 0; row < size; row++)
+					Arrays.fill(n[row], 0, size, 0);
+			}
+		
+			List<Position> positions = new ArrayList<Position>(sequence);
 	
-					if(controlPosition.matches(currentNode.getToken()))
-					{
-						n[end][start]++;					
-					}else
-					{
-						break;
+			// from all the nodes in sequence, move forward and tally the n matrix
+			// the path we're extracting motifs from (the argument to this method)
+			// is the control path
+			// The path we're checking against the control path is the current path
+			for(int start = 0; start < size; start++)
+				tally(positions, start, true);
+		
+			// do the upper half of the matrix (following paths backwards
+		
+			// if the sequence consists only of regular positions, we can assume
+			// that the matrix is symmetric
+			boolean symmetric = true;
+			for(Position position : positions)
+				if(! (position instanceof MexGraph<?>.RegularPosition))
+					symmetric = false;
+		
+			if(symmetric)
+			{
+				for(int row = 0; row < size; row++){
+					for(int column = row; column < size; column++){
+						n[row][column] = n[column][row];
 					}
 				}
+			}else
+			{
+				// if not we have to follow all the paths again		
+				for(int start = size - 1; start >= 0; start--)
+					tally(positions, start, false);
 			}
 	
-			start++;
-		}
-		
-		// do the upper half of the matrix (following paths backwards
+			//move once more along the path to tally the diagonal of the matrix
+			for(int c = 0; c < size; c++)
+				n[c][c] = positions.get(c).numberOfNodes();			
 		
-		// if the sequence consists only of regular positions, we can assume
-		// that the matrix is symmetric
+			// check the sequence to see that all the slots found at least
+			// one Token
+			boolean slotsFilled = true;
+			for(Position position : positions)
+				if(position instanceof MexGraph<?>.SlotPosition)
+					if( ((SlotPosition)position).getTokens().size() < 1)
+						slotsFilled = false;
 		
-		// check if we can assume symmetry
-		itForward = sequence.iterator();
-		boolean symmetric = true;
-		while(itForward.hasNext())
-			if(! (itForward.next() instanceof MexGraph<?>.RegularPosition))
-				symmetric = false;
-		if(symmetric)
-		{
-			for(int row = 0; row < length; row++){
-				for(int column = row; column < length; column++){
-					n[row][column] = n[column][row];
-				}
-			}
-		}else
+			return slotsFilled;	
+		}
+	
+		/**
+		 * Follows all paths through the given start position along the control 
+		 * sequence (forward or backward), and tallies n[end][start] for every 
+		 * position end that they reach.
+		 * 
+		 * If the start position and the next one are both regular, we know from
+		 * the successor counts how many paths make the first step, so we can skip
+		 * the start position entirely if none do, and otherwise start from 
+		 * whichever of the two tokens is crossed by the fewest paths.  
+		 */
+		private void tally(List<Position> positions, int start, boolean forward)
 		{
-
-			// if not we have to follow all the paths again		
-			ListIterator<Position> itBackward = sequence.listIterator(sequence.size());
-
-			while(itBackward.hasPrevious())
+			int step = forward ? 1 : -1;
+			int next = start + step;
+			Position position = positions.get(start);
+		
+			if(next >= 0 && next < size 
+					&& position instanceof MexGraph<?>.RegularPosition
+					&& positions.get(next) instanceof MexGraph<?>.RegularPosition)
 			{
-				start = itBackward.previousIndex();
-				startPosition = itBackward.previous();
-
-				//for all paths through startPosition, follow and check
-				//for how long they follow the current path.
-				itPaths = startPosition.nodes(false).iterator();
-
-				while(itPaths.hasNext())
+				Token token = position.getToken(),
+				      nextToken = positions.get(next).getToken();
+			
+				int count = forward ? token.successors(nextToken) : nextToken.successors(token);
+				if(count == 0)
+					return;
+			
+				if(nextToken.numberOfPaths() < token.numberOfPaths())
 				{
-					end = start;
-
-					// the first node of the subpath we're checking against the control path
-					firstNode = itPaths.next();
-					currentNode = firstNode;
-
-					itInner = sequence.listIterator(start+1);
-
-					if(itInner.hasPrevious()) itInner.previous();
-
-					// follow currentNode's path until it deviates from the control
-					while(true)
+					Node other;
+					for(Node node : nextToken.nodeView())
 					{
-						// if itInner is done, the candidate path has followed the control 
-						// all the way to the end.
-						if(!itInner.hasPrevious())
-							break;
-
-						// if currentNode has no previous node, this is where its path ends.
-						if(!currentNode.hasPreviousNode()) 
-							break;
-
-						// this is the number of the node in the current control path
-						end = itInner.previousIndex();
-
-						controlPosition = itInner.previous();
-						currentNode = currentNode.getPreviousNode();
-
-						if(controlPosition.matches(currentNode.getToken()))
-						{
-							n[end][start]++;					
-						}else
+						other = forward ? node.getPreviousNode() : node.getNextNode();
+						if(other != null && token.equals(other.getToken()))
 						{
-							break;
+							n[next][start]++;
+							follow(positions, node, next, start, step);
 						}
 					}
+					return;
 				}
 			}
-		}
-	
-		//move once more along the path to tally the diagonal of the matrix
-		Iterator<Position> iterator = sequence.iterator();
-	
-		for(int c = 0; iterator.hasNext(); c++)
-		{
-			controlPosition = iterator.next();
-			n[c][c] = controlPosition.numberOfNodes();			
-		}
 		
-		// check the sequence to see that all the slots found at least
-		// one Token
-		iterator = sequence.iterator();
-		Position position;
-		boolean slotsFilled = true;
-		while(iterator.hasNext())
-		{
-			position = iterator.next();
-			if(position instanceof MexGraph<?>.SlotPosition)
-				if( ((SlotPosition)position).getTokens().size() < 1)
-					slotsFilled = false;
+			for(Node node : position.nodes(forward))
+				follow(positions, node, start, start, step);
 		}
-		
-		return slotsFilled;	
-	}
 	
-	/**
-	 * Fill the probability matrix 
-	 */
-	protected void fillM()
-	{
-		int length = n.length;
-		
-		// * Create the probability matrix m based on the matrix of path lengths n --
-		
-		m = new double[length][];
-
-		for(int row = 0; row < length; row++){
-			m[row] = new double[length];
-			for(int column = 0; column < length; column++)
+		/**
+		 * Follows the path of the given node, which matches the control sequence
+		 * at index at, for as long as it keeps matching. 
+		 */
+		private void follow(List<Position> positions, Node node, int at, int start, int step)
+		{
+			while(true)
 			{
-				if(row > column)
-					m[row][column] = n[row][column] / (double)n[row-1][column];
-				else if(row < column)
-					m[row][column] = n[row][column] / (double)n[row+1][column];
+				at += step;
+				if(at < 0 || at >= size)
+					break;
+			
+				node = step > 0 ? node.getNextNode() : node.getPreviousNode();
+				if(node == null)
+					break;
+			
+				if(positions.get(at).matches(node.getToken()))
+					n[at][start]++;
 				else
-					m[row][column] = n[row][column] / (double)totalNodes;
+					break;
 			}
 		}
-	}
 	
-	/**
-	 * Calculate all significant drops in the matrix m
-	 */
-	protected void calculateDrops(double dropThreshold, double significanceThreshold)
-	{
-		int length = m.length;
-		
-		df = new Vector<Segment>();
-		db = new Vector<Segment>();
-
-		double sig, strength;
-		// * Set the forward drops (only check the lower half of the
-		//   matrix (i >= j)).
-		for(int i = 0; i < length-1; i++){
-			for(int j = 0; j <= i; j++){
-				strength = m[i + 1][j] / m[i][j];
-				if(strength < dropThreshold)
+		/**
+		 * Fill the probability matrix 
+		 */
+		public void fillM()
+		{
+			// * Fill the probability matrix m based on the matrix of path lengths n --
+			for(int row = 0; row < size; row++){
+				for(int column = 0; column < size; column++)
 				{
-					sig = significance(n[i + 1][j], n[i][j], dropThreshold * m[i][j]);
-					if(sig < significanceThreshold)
-						df.add(new Segment(j, i + 1, true, sig, strength));
+					if(row > column)
+						m[row][column] = n[row][column] / (double)n[row-1][column];
+					else if(row < column)
+						m[row][column] = n[row][column] / (double)n[row+1][column];
+					else
+						m[row][column] = n[row][column] / (double)totalNodes;
 				}
 			}
 		}
+	
+		/**
+		 * Calculate all significant drops in the matrix m
+		 */
+		public void calculateDrops(double dropThreshold, double significanceThreshold)
+		{
+			int length = size;
+		
+			df = new Vector<Segment>();
+			db = new Vector<Segment>();
 
-		// * Set the backward drops (only check the upper half of the
-		//   matrix (i <= j))
-		for(int i = 1; i < length ; i++){
-			for(int j = i; j < length; j++){
-				strength = m[i-1][j] / m[i][j];
-				if(strength < dropThreshold){
-					sig = significance(n[i - 1][j], n[i][j], dropThreshold * m[i][j]);
-					if(sig < significanceThreshold)
-						db.add(new Segment(j, i - 1, false, sig, strength));
+			double sig, strength;
+			// * Set the forward drops (only check the lower half of the
+			//   matrix (i >= j)).
+			for(int i = 0; i < length-1; i++){
+				for(int j = 0; j <= i; j++){
+					strength = m[i + 1][j] / m[i][j];
+					if(strength < dropThreshold)
+					{
+						sig = significance(n[i + 1][j], n[i][j], dropThreshold * m[i][j]);
+						if(sig < significanceThreshold)
+							df.add(new Segment(j, i + 1, true, sig, strength));
+					}
+				}
+			}
+
+			// * Set the backward drops (only check the upper half of the
+			//   matrix (i <= j))
+			for(int i = 1; i < length ; i++){
+				for(int j = i; j < length; j++){
+					strength = m[i-1][j] / m[i][j];
+					if(strength < dropThreshold){
+						sig = significance(n[i - 1][j], n[i][j], dropThreshold * m[i][j]);
+						if(sig < significanceThreshold)
+							db.add(new Segment(j, i - 1, false, sig, strength));
+					}
 				}
 			}
 		}
 	}
 	
+
 	/**
 	 * Determines the significance of a certain drop (say Dr(ei ; ej))
 	 *
@@ -916,17 +1027,12 @@ public class MexGraph<T> implements Serializable
 	 * (ei;ej-1).
 	 *
 	 * prob is n * Pr(ei;ej-1)
+	 * 
+	 * The same drops are tested many times over, so the results are 
+	 * remembered (up to SIGNIFICANCE_CACHE of them).
 	 */
-
 	protected double significance(int totalPaths, int subPaths, double prob)
 	{
-		//the binomial coefficient algorithm can't handle
-		// top values over 1030, but at those rates, there's isn't any risk of
-		// small sample statistics anyway.
-		
-		// if(subPaths > 1)
-		// 	return 0.0;
-		
 		// we make this a binomial distribution (and translate variable names 
 		// for the sake of clarity)
 		int n = subPaths;
@@ -938,14 +1044,70 @@ public class MexGraph<T> implements Serializable
 		// if totalPaths == subPaths)
 		int x = totalPaths;
 		
-		double result = 0.0;
+		SignificanceKey key = new SignificanceKey(x, n, p);
 		
-		for(int i = 0; i <= x; i++)
-			result += bc.get(n, i) *  Math.pow(p, i) * Math.pow(1.0 - p, n-i);
+		synchronized(this)
+		{
+			if(significanceCache == null)
+				significanceCache = new LinkedHashMap<SignificanceKey, Double>(16, 0.75f, true)
+				{
+					private static final long serialVersionUID = 2203437618400410235L;
+
+					@Override
+					protected boolean removeEldestEntry(Map.Entry<SignificanceKey, Double> eldest)
+					{
+						return size() > SIGNIFICANCE_CACHE;
+					}
+				};
+			
+			Double result = significanceCache.get(key);
+			if(result != null)
+				return result;
+		}
+		
+		// * The binomial cdf by the incomplete beta function, instead of 
+		//   summing the terms (which takes O(n) time and overflows the 
+		//   binomial coefficients for large n).
+		double result = Functions.binomialCDF(x, n, p);
+		
+		synchronized(this)
+		{
+			significanceCache.put(key, result);
+		}
 				
 		return result;
 	}
 	
+	private static class SignificanceKey
+	{
+		private int x, n;
+		private long p;
+		
+		public SignificanceKey(int x, int n, double p)
+		{
+			this.x = x;
+			this.n = n;
+			this.p = Double.doubleToLongBits(p);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			int hash = 31 * x + n;
+			return 31 * hash + (int)(p ^ (p >>> 32));
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if(! (obj instanceof SignificanceKey))
+				return false;
+			SignificanceKey other = (SignificanceKey) obj;
+			
+			return x == other.x && n == other.n && p == other.p;
+		}
+	}
+	
 	/**
 	 * Converts a list of tokens to a list of values
 	 * - AtomicTokens are converted to their value
@@ -974,10 +1136,16 @@ public class MexGraph<T> implements Serializable
 	protected abstract class Token implements Serializable
 	{
 
-		private Vector<Node> nodes;
+		// * A linked set, so that nodes can be removed in constant time, while
+		//   keeping them in the order they were added
+		private Set<Node> nodes;
+		// * For each token, the number of nodes of this token that are
+		//   directly followed by it. This is kept up to date by the nodes.
+		private Map<Token, Integer> successors;
 
 		public Token(){
-			nodes = new Vector<Node>();
+			nodes = new LinkedHashSet<Node>();
+			successors = new HashMap<Token, Integer>();
 		}
 		
 		public void addNode(Node n){
@@ -995,6 +1163,38 @@ public class MexGraph<T> implements Serializable
 			return new Vector<Node>(nodes);
 		}
 
+		/**
+		 * The nodes of the paths that cross this token, as an unmodifiable
+		 * view. This should not be iterated over while the graph is rewired.
+		 */
+		public Collection<Node> nodeView(){
+			return Collections.unmodifiableCollection(nodes);
+		}
+
+		/**
+		 * The number of paths along which this token is directly followed by
+		 * the given token.
+		 */
+		public int successors(Token next)
+		{
+			Integer count = successors.get(next);
+			return count == null ? 0 : count;
+		}
+
+		private void addSuccessor(Token next)
+		{
+			successors.put(next, successors(next) + 1);
+		}
+
+		private void removeSuccessor(Token next)
+		{
+			int count = successors(next) - 1;
+			if(count > 0)
+				successors.put(next, count);
+			else
+				successors.remove(next);
+		}
+
 		/**
 		 * The number of paths that cross this token.
 		 */
@@ -1496,14 +1696,12 @@ public class MexGraph<T> implements Serializable
 				this.lastNode = newNode;
 			}
 			
-			// delete the intermediate nodes
+			// delete the intermediate nodes (in order, so that the successor
+			// counts of their tokens are updated before they are cleared)
 			Node current = firstNode,
-				 next = firstNode;
-			while(current.hasNextNode())
+				 next;
+			for(int i = 0; i < length; i++)
 			{
-				if(newNode.hasNextNode() && current.equals(newNode.getNextNode()))
-					break;					
-						
 				next = current.getNextNode();
 				current.clear();
 				current = next;
@@ -1764,7 +1962,11 @@ public class MexGraph<T> implements Serializable
 		}	
 	
 		public void setNextNode(Node n){
+			if(nextNode != null)
+				token.removeSuccessor(nextNode.getToken());
 			nextNode = n;
+			if(n != null)
+				token.addSuccessor(n.getToken());
 			path.incrementMod();
 		}
 	
@@ -1790,6 +1992,8 @@ public class MexGraph<T> implements Serializable
 		}
 	
 		public void clearNextNode(){
+			if(nextNode != null)
+				token.removeSuccessor(nextNode.getToken());
 			nextNode = null;
 			path.incrementMod();
 		}
@@ -1805,6 +2009,8 @@ public class MexGraph<T> implements Serializable
 		 */
 		public void clear()
 		{
+			if(nextNode != null)
+				token.removeSuccessor(nextNode.getToken());
 			token.removeNode(this);
 			path.incrementMod();
 			
@@ -1954,7 +2160,7 @@ public class MexGraph<T> implements Serializable
 		
 		public int numberOfNodes()
 		{
-			return t.getNodes().size();
+			return t.numberOfPaths();
 		}
 		
 		public Collection<Node> nodes(boolean forward)
@@ -0,0 +1,684 @@
+package org.lilian.adios;
+
+import java.io.*;
+import java.util.*;
+
+import org.lilian.corpora.*;
+
+/**
+ * A compact alternative to the paths and tokens of a {@link MexGraph}.
+ *
+ * Every token is interned to an int id, and every path is stored as an array
+ * of these ids (START and END included). An inverted index stores, for every
+ * token, the positions (path and index) at which it occurs. Each position in
+ * a path also stores where its entry in the index is, so that rewiring a path
+ * takes time proportional to the length of the path, and not to the frequency
+ * of its tokens.
+ *
+ * Serial tokens replace every occurrence of their pattern in the paths, as in
+ * MexGraph. Parallel tokens are equivalence classes, which match any of their
+ * members when they occur in a pattern.
+ *
+ * The store can be written to and restored from a binary snapshot. Only the
+ * token table and the paths are stored; the index is rebuilt when the
+ * snapshot is read. The values of the atomic tokens are written with
+ * standard serialization, so they should be Serializable.
+ *
+ * This class is not thread-safe, but the read methods can be called from
+ * multiple threads as long as the store isn't modified.
+ *
+ * @author Peter
+ */
+public class PathStore<T>
+{
+	public static enum Kind {MARKER, ATOMIC, SERIAL, PARALLEL}
+
+	public static final int START = 0;
+	public static final int END = 1;
+
+	private static final int MAGIC = 0x4c505331;
+
+	// * The token table. children holds the pattern of a serial token and the
+	//   members of a parallel token, in the order they were given. sorted 
+	//   holds a sorted copy of the members of a parallel token, for lookups.
+	private int numTokens = 0;
+	private Kind[] kinds = new Kind[16];
+	private List<T> values = new ArrayList<T>();
+	private int[][] children = new int[16][];
+	private int[][] sorted = new int[16][];
+	private Map<T, Integer> ids = new HashMap<T, Integer>();
+
+	// * The paths. slots[p][i] is the index of the posting of position i of
+	//   path p in the postings of its token.
+	private int numPaths = 0;
+	private int[][] paths = new int[16][];
+	private int[] lengths = new int[16];
+	private int[][] slots = new int[16][];
+
+	// * The inverted index: for each token, its positions as
+	//   (path << 32 | index), in no particular order
+	private long[][] postings = new long[16][];
+	private int[] frequencies = new int[16];
+
+	private long totalNodes = 0;
+
+	/**
+	 * An empty store, with only the START and END tokens.
+	 */
+	PathStore()
+	{
+		newToken(Kind.MARKER, null, null);
+		newToken(Kind.MARKER, null, null);
+	}
+
+	/**
+	 * Loads every sentence in the corpus as a path.
+	 */
+	public PathStore(SequenceCorpus<T> corpus)
+	{
+		this();
+
+		int[] path = new int[16];
+		int length = 0;
+		path[length++] = START;
+
+		SequenceIterator<T> si = corpus.iterator();
+		while(si.hasNext())
+		{
+			T value = si.next();
+
+			Integer id = ids.get(value);
+			if(id == null)
+				id = newToken(Kind.ATOMIC, value, null);
+
+			if(length + 1 >= path.length)
+				path = Arrays.copyOf(path, path.length * 2);
+			path[length++] = id;
+
+			if(si.atSequenceEnd())
+			{
+				path[length++] = END;
+				addPath(path, length);
+
+				length = 0;
+				path[length++] = START;
+			}
+		}
+
+		if(length > 1)
+		{
+			path[length++] = END;
+			addPath(path, length);
+		}
+	}
+
+	private int newToken(Kind kind, T value, int[] tokens)
+	{
+		int id = numTokens++;
+		if(id == kinds.length)
+		{
+			int capacity = kinds.length * 2;
+			kinds = Arrays.copyOf(kinds, capacity);
+			children = Arrays.copyOf(children, capacity);
+			sorted = Arrays.copyOf(sorted, capacity);
+			postings = Arrays.copyOf(postings, capacity);
+			frequencies = Arrays.copyOf(frequencies, capacity);
+		}
+
+		kinds[id] = kind;
+		values.add(value);
+		children[id] = tokens;
+		postings[id] = new long[4];
+
+		if(kind == Kind.PARALLEL)
+		{
+			sorted[id] = tokens.clone();
+			Arrays.sort(sorted[id]);
+		}
+
+		if(kind == Kind.ATOMIC)
+			ids.put(value, id);
+
+		return id;
+	}
+
+	/**
+	 * Adds a token without changing the paths (for instance for a serial
+	 * token whose pattern has already been replaced). The children should
+	 * already exist.
+	 *
+	 * @return The id of the new token.
+	 */
+	int addToken(Kind kind, T value, int[] tokens)
+	{
+		if(kind == Kind.MARKER)
+			throw new IllegalArgumentException("The store already has its markers.");
+		if(kind == Kind.ATOMIC && ids.containsKey(value))
+			throw new IllegalArgumentException("Value ("+value+") already has a token.");
+
+		if(tokens != null)
+		{
+			tokens = tokens.clone();
+			for(int token : tokens)
+				check(token);
+		}
+
+		return newToken(kind, value, tokens);
+	}
+
+	/**
+	 * Adds a path, which should start with START and end with END.
+	 */
+	void addPath(int[] path)
+	{
+		for(int token : path)
+			check(token);
+
+		addPath(path, path.length);
+	}
+
+	private void addPath(int[] path, int length)
+	{
+		int p = numPaths++;
+		if(p == paths.length)
+		{
+			int capacity = paths.length * 2;
+			paths = Arrays.copyOf(paths, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+			slots = Arrays.copyOf(slots, capacity);
+		}
+
+		paths[p] = Arrays.copyOf(path, length);
+		lengths[p] = length;
+		slots[p] = new int[length];
+
+		for(int i = 0; i < length; i++)
+			addPosting(paths[p][i], p, i);
+
+		totalNodes += length;
+	}
+
+	private void addPosting(int token, int path, int index)
+	{
+		int f = frequencies[token]++;
+		if(f == postings[token].length)
+			postings[token] = Arrays.copyOf(postings[token], f * 2);
+
+		postings[token][f] = pack(path, index);
+		slots[path][index] = f;
+	}
+
+	private void removePosting(int path, int index)
+	{
+		int token = paths[path][index];
+		int slot = slots[path][index];
+		int last = --frequencies[token];
+
+		// * move the last posting into the gap
+		if(slot != last)
+		{
+			long moved = postings[token][last];
+			postings[token][slot] = moved;
+			slots[pathOf(moved)][indexOf(moved)] = slot;
+		}
+	}
+
+	/**
+	 * Moves the token at index from in the given path to index to (which
+	 * should be no larger than from)
+	 */
+	private void movePosting(int path, int from, int to)
+	{
+		int token = paths[path][from];
+		int slot = slots[path][from];
+
+		postings[token][slot] = pack(path, to);
+		paths[path][to] = token;
+		slots[path][to] = slot;
+	}
+
+	private static long pack(int path, int index)
+	{
+		return ((long) path << 32) | (index & 0xffffffffL);
+	}
+
+	/**
+	 * The path of a posting.
+	 */
+	public static int pathOf(long posting)
+	{
+		return (int)(posting >>> 32);
+	}
+
+	/**
+	 * The index within its path of a posting.
+	 */
+	public static int indexOf(long posting)
+	{
+		return (int) posting;
+	}
+
+	public int numberOfTokens()
+	{
+		return numTokens;
+	}
+
+	public int numberOfPaths()
+	{
+		return numPaths;
+	}
+
+	/**
+	 * The total number of tokens in all paths.
+	 */
+	public long totalNodes()
+	{
+		return totalNodes;
+	}
+
+	/**
+	 * The id of the atomic token for the given value, or -1 if the value does
+	 * not occur.
+	 */
+	public int id(T value)
+	{
+		Integer id = ids.get(value);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * The value of an atomic token (null for other tokens).
+	 */
+	public T value(int token)
+	{
+		return values.get(token);
+	}
+
+	public Kind kind(int token)
+	{
+		return kinds[token];
+	}
+
+	/**
+	 * The pattern of a serial token, or the members of a parallel token.
+	 */
+	public int[] children(int token)
+	{
+		return children[token] == null ? new int[0] : children[token].clone();
+	}
+
+	public int length(int path)
+	{
+		return lengths[path];
+	}
+
+	public int token(int path, int index)
+	{
+		if(index < 0 || index >= lengths[path])
+			throw new IndexOutOfBoundsException("Index ("+index+") out of range [0, "+lengths[path]+").");
+		return paths[path][index];
+	}
+
+	/**
+	 * A copy of the given path.
+	 */
+	public int[] path(int path)
+	{
+		return Arrays.copyOf(paths[path], lengths[path]);
+	}
+
+	/**
+	 * The number of times the token occurs in the paths.
+	 */
+	public int frequency(int token)
+	{
+		return frequencies[token];
+	}
+
+	/**
+	 * The i-th posting of the given token. The order of the postings changes
+	 * when the paths are rewired.
+	 */
+	public long posting(int token, int i)
+	{
+		if(i < 0 || i >= frequencies[token])
+			throw new IndexOutOfBoundsException("Index ("+i+") out of range [0, "+frequencies[token]+").");
+		return postings[token][i];
+	}
+
+	/**
+	 * Whether a token in a path matches a token in a pattern: either they are
+	 * the same, or the pattern token is a parallel token with the path token
+	 * as a member.
+	 */
+	public boolean matches(int pattern, int token)
+	{
+		if(pattern == token)
+			return true;
+
+		return kinds[pattern] == Kind.PARALLEL
+				&& Arrays.binarySearch(sorted[pattern], token) >= 0;
+	}
+
+	/**
+	 * The number of positions in the paths that match the given token.
+	 */
+	public int count(int pattern)
+	{
+		int count = frequencies[pattern];
+		if(kinds[pattern] == Kind.PARALLEL)
+			for(int member : children[pattern])
+				if(member != pattern)
+					count += frequencies[member];
+
+		return count;
+	}
+
+	/**
+	 * The number of paths that follow each subsequence of the given sequence:
+	 * entries n[b][a] and n[a][b] (for a <= b) contain the number of positions
+	 * at which the sequence from a to b (inclusive) occurs. This is the matrix
+	 * n used by MEX.
+	 */
+	public int[][] counts(int[] sequence)
+	{
+		int size = sequence.length;
+		int[][] n = new int[size][size];
+
+		for(int start = 0; start < size; start++)
+		{
+			n[start][start] = count(sequence[start]);
+
+			for(int token : tokens(sequence[start]))
+				for(int i = 0; i < frequencies[token]; i++)
+				{
+					long posting = postings[token][i];
+					int[] path = paths[pathOf(posting)];
+					int length = lengths[pathOf(posting)];
+
+					for(int at = start + 1, index = indexOf(posting) + 1;
+							at < size && index < length; at++, index++)
+					{
+						if(! matches(sequence[at], path[index]))
+							break;
+						n[at][start]++;
+					}
+				}
+		}
+
+		for(int row = 0; row < size; row++)
+			for(int column = row + 1; column < size; column++)
+				n[row][column] = n[column][row];
+
+		return n;
+	}
+
+	/**
+	 * The tokens whose postings must be checked to find the positions
+	 * matching the given token.
+	 */
+	private int[] tokens(int pattern)
+	{
+		if(kinds[pattern] != Kind.PARALLEL)
+			return new int[]{pattern};
+
+		int[] tokens = Arrays.copyOf(children[pattern], children[pattern].length + 1);
+		tokens[tokens.length - 1] = pattern;
+		return tokens;
+	}
+
+	/**
+	 * Adds a parallel token with the given members. The paths are not
+	 * changed.
+	 *
+	 * @return The id of the new token.
+	 */
+	public int addParallelToken(int... members)
+	{
+		members = members.clone();
+		for(int member : members)
+			check(member);
+
+		return newToken(Kind.PARALLEL, null, members);
+	}
+
+	/**
+	 * Adds a serial token for the given pattern, and replaces every
+	 * occurrence of the pattern in the paths by it.
+	 *
+	 * @return The id of the new token.
+	 */
+	public int addSerialToken(int... pattern)
+	{
+		if(pattern.length < 1)
+			throw new IllegalArgumentException("Pattern cannot be empty.");
+		for(int token : pattern)
+			check(token);
+
+		int token = newToken(Kind.SERIAL, null, pattern.clone());
+		rewire(pattern, token);
+
+		return token;
+	}
+
+	/**
+	 * Replaces every occurrence of the pattern by the given token. Where
+	 * occurrences overlap, the leftmost is replaced.
+	 *
+	 * @return The number of occurrences replaced.
+	 */
+	public int rewire(int[] pattern, int token)
+	{
+		check(token);
+
+		// * Find the occurrences
+		long[] found = new long[16];
+		int numFound = 0;
+		for(int first : tokens(pattern[0]))
+			for(int i = 0; i < frequencies[first]; i++)
+			{
+				long posting = postings[first][i];
+				if(occurs(pattern, pathOf(posting), indexOf(posting)))
+				{
+					if(numFound == found.length)
+						found = Arrays.copyOf(found, numFound * 2);
+					found[numFound++] = posting;
+				}
+			}
+
+		Arrays.sort(found, 0, numFound);
+
+		// * Rewire each path, from right to left so that the indices of the
+		//   remaining occurrences don't change
+		int replaced = 0;
+		int from = 0;
+		while(from < numFound)
+		{
+			int path = pathOf(found[from]);
+			int to = from;
+			while(to < numFound && pathOf(found[to]) == path)
+				to++;
+
+			// * drop overlapping occurrences
+			int kept = from, end = -1;
+			for(int i = from; i < to; i++)
+				if(indexOf(found[i]) >= end)
+				{
+					found[kept++] = found[i];
+					end = indexOf(found[i]) + pattern.length;
+				}
+
+			for(int i = kept - 1; i >= from; i--)
+				replaceRange(path, indexOf(found[i]), pattern.length, token);
+
+			replaced += kept - from;
+			from = to;
+		}
+
+		return replaced;
+	}
+
+	private boolean occurs(int[] pattern, int path, int index)
+	{
+		if(index + pattern.length > lengths[path])
+			return false;
+
+		for(int i = 0; i < pattern.length; i++)
+			if(! matches(pattern[i], paths[path][index + i]))
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * Replaces the given number of tokens in a path, starting at index, by a
+	 * single token.
+	 */
+	public void replaceRange(int path, int index, int length, int token)
+	{
+		check(token);
+		if(path < 0 || path >= numPaths)
+			throw new IndexOutOfBoundsException("Path ("+path+") out of range [0, "+numPaths+").");
+		if(length < 1 || index < 0 || index + length > lengths[path])
+			throw new IndexOutOfBoundsException("Range ["+index+", "+(index+length)+") out of range [0, "+lengths[path]+").");
+
+		for(int i = index; i < index + length; i++)
+			removePosting(path, i);
+
+		paths[path][index] = token;
+		addPosting(token, path, index);
+
+		for(int i = index + length; i < lengths[path]; i++)
+			movePosting(path, i, i - length + 1);
+
+		lengths[path] -= length - 1;
+		totalNodes -= length - 1;
+	}
+
+	private void check(int token)
+	{
+		if(token < 0 || token >= numTokens)
+			throw new IllegalArgumentException("Token ("+token+") does not exist.");
+	}
+
+	public String toString(int token)
+	{
+		switch(kinds[token])
+		{
+			case MARKER:
+				return token == START ? "START" : "END";
+			case ATOMIC:
+				return String.valueOf(values.get(token));
+			default:
+				boolean serial = kinds[token] == Kind.SERIAL;
+				StringBuilder sb = new StringBuilder();
+				sb.append(serial ? "s" : "p").append(token).append(serial ? "[" : "{");
+				for(int i = 0; i < children[token].length; i++)
+				{
+					if(i > 0)
+						sb.append(", ");
+					sb.append(toString(children[token][i]));
+				}
+				return sb.append(serial ? "]" : "}").toString();
+		}
+	}
+
+	/**
+	 * Writes a snapshot of the tokens and paths to the given file.
+	 */
+	public void write(File file)
+		throws IOException
+	{
+		ObjectOutputStream out = new ObjectOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+
+			out.writeInt(numTokens);
+			for(int token = 0; token < numTokens; token++)
+			{
+				out.writeByte(kinds[token].ordinal());
+				if(kinds[token] == Kind.ATOMIC)
+					out.writeObject(values.get(token));
+				if(kinds[token] == Kind.SERIAL || kinds[token] == Kind.PARALLEL)
+					writeInts(out, children[token], children[token].length);
+			}
+
+			out.writeInt(numPaths);
+			for(int path = 0; path < numPaths; path++)
+				writeInts(out, paths[path], lengths[path]);
+		} finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Restores a snapshot written by {@link #write(File)}.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> PathStore<T> read(File file)
+		throws IOException
+	{
+		PathStore<T> store = new PathStore<T>();
+
+		ObjectInputStream in = new ObjectInputStream(
+				new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		try {
+			if(in.readInt() != MAGIC)
+				throw new IllegalArgumentException("File "+file+" is not a path store snapshot.");
+
+			int numTokens = in.readInt();
+			for(int token = 0; token < numTokens; token++)
+			{
+				Kind kind = Kind.values()[in.readByte()];
+				// * the markers are created by the constructor
+				if(token <= END)
+					continue;
+
+				T value = null;
+				int[] tokens = null;
+
+				if(kind == Kind.ATOMIC)
+					value = (T) in.readObject();
+				if(kind == Kind.SERIAL || kind == Kind.PARALLEL)
+					tokens = readInts(in);
+
+				store.newToken(kind, value, tokens);
+			}
+
+			int numPaths = in.readInt();
+			for(int path = 0; path < numPaths; path++)
+			{
+				int[] ids = readInts(in);
+				store.addPath(ids, ids.length);
+			}
+		} catch (ClassNotFoundException e)
+		{
+			throw new RuntimeException("Could not read the token values from "+file+".", e);
+		} finally
+		{
+			in.close();
+		}
+
+		return store;
+	}
+
+	private static void writeInts(DataOutput out, int[] values, int length)
+		throws IOException
+	{
+		out.writeInt(length);
+		for(int i = 0; i < length; i++)
+			out.writeInt(values[i]);
+	}
+
+	private static int[] readInts(DataInput in)
+		throws IOException
+	{
+		int[] values = new int[in.readInt()];
+		for(int i = 0; i < values.length; i++)
+			values[i] = in.readInt();
+
+		return values;
+	}
+}
@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -19,7 +20,7 @@ import java.util.Queue;
  * @param <T>
  */
 public abstract class AbstractFileSequenceCorpus<T> extends AbstractCorpus<T> 
-	implements SequenceCorpus<T> {
+	implements PartitionableCorpus<T> {
 	
 	protected List<File> files = new ArrayList<File>();
 	
@@ -52,14 +53,146 @@ public abstract class AbstractFileSequenceCorpus<T> extends AbstractCorpus<T>
 	
 	@Override
 	public SequenceIterator<T> iterator() {
-		return new CompositeIterator();
+		List<Segment> segments = new ArrayList<Segment>(files.size());
+		for(File file : files)
+			segments.add(new Segment(file));
+		
+		return new CompositeIterator(segments);
+	}
+	
+	/**
+	 * <p>
+	 * Divides the corpus into parts. If there are at least as many files as
+	 * parts, there are exactly max parts, each a run of consecutive files of 
+	 * roughly equal total size. Otherwise, files that can be split are divided into 
+	 * byte ranges (see {@link #splittable(File)}).
+	 * </p><p>
+	 * The parts are lightweight: no files are read until they are iterated 
+	 * over.
+	 * </p>
+	 */
+	@Override
+	public List<SequenceCorpus<T>> partitions(int max)
+	{
+		List<SequenceCorpus<T>> partitions = new ArrayList<SequenceCorpus<T>>(max);
+		
+		if(files.size() >= max)
+		{
+			long total = 0;
+			for(File file : files)
+				total += file.length();
+			
+			// * Consecutive runs of files
+			List<Segment> current = new ArrayList<Segment>();
+			long size = 0;
+			int remaining = max;
+			for(int i = 0; i < files.size(); i++)
+			{
+				File file = files.get(i);
+				long length = file.length();
+				
+				// * Close the part before this file if that leaves it closer 
+				//   to its share of the remaining bytes, or if each of the 
+				//   remaining parts needs one of the remaining files 
+				if(! current.isEmpty() && remaining > 1 && (
+						(2 * size + length) * remaining > 2 * total || 
+						files.size() - i < remaining))
+				{
+					partitions.add(new Partition(current));
+					current = new ArrayList<Segment>();
+					total -= size;
+					size = 0;
+					remaining--;
+				}
+				
+				current.add(new Segment(file));
+				size += length;
+			}
+			partitions.add(new Partition(current));
+			
+			return partitions;
+		}
+		
+		// * One part per file, and the remaining parts divided over the files 
+		//   that can be split, by size
+		long splittableTotal = 0;
+		for(File file : files)
+			if(splittable(file))
+				splittableTotal += file.length();
+		
+		int extra = max - files.size();
+		for(File file : files)
+		{
+			int parts = 1;
+			if(splittable(file) && splittableTotal > 0)
+				parts += (int)(extra * file.length() / splittableTotal);
+			
+			long length = file.length();
+			for(int p = 0; p < parts; p++)
+			{
+				Segment segment = parts == 1 ? 
+						new Segment(file) :
+						new Segment(file, length * p / parts, length * (p + 1) / parts);
+				partitions.add(new Partition(Collections.singletonList(segment)));
+			}
+		}
+		
+		return partitions;
+	}
+	
+	/**
+	 * A part of the corpus: a list of files or byte ranges in files. 
+	 */
+	private class Partition extends AbstractCorpus<T> implements SequenceCorpus<T>
+	{
+		private List<Segment> segments;
+
+		public Partition(List<Segment> segments)
+		{
+			this.segments = segments;
+		}
+
+		@Override
+		public SequenceIterator<T> iterator()
+		{
+			return new CompositeIterator(segments);
+		}
+	}
+	
+	/**
+	 * A whole file, or the sequences starting in a byte range of a file.
+	 */
+	private class Segment
+	{
+		File file;
+		long from, to;
+		boolean whole;
+		
+		public Segment(File file)
+		{
+			this.file = file;
+			this.whole = true;
+		}
+		
+		public Segment(File file, long from, long to)
+		{
+			this.file = file;
+			this.from = from;
+			this.to = to;
+			this.whole = false;
+		}
+		
+		public SequenceIterator<T> iterator()
+		{
+			return whole ? singleIterator(file) : singleIterator(file, from, to);
+		}
 	}
 	
 	private class CompositeIterator implements SequenceIterator<T>
 	{
 		private static final int BUFFER_SIZE = 5;
 		
-		Queue<File> fileQueue = new LinkedList<File>();
+		Queue<Segment> segmentQueue = new LinkedList<Segment>();
 		
 		File currentFile;
 		SequenceIterator<T> current;
@@ -68,16 +201,24 @@ public abstract class AbstractFileSequenceCorpus<T> extends AbstractCorpus<T>
 		
 		Queue<Token> buffer = new LinkedList<Token>();
 		
-		public CompositeIterator()
+		public CompositeIterator(List<Segment> segments)
 		{
-			fileQueue.addAll(files);
+			segmentQueue.addAll(segments);
 			pop();
 		}
 		
 		private void pop()
 		{
-			currentFile = fileQueue.poll(); 
-			current = singleIterator(currentFile);
+			Segment segment = segmentQueue.poll();
+			if(segment == null)
+			{
+				currentFile = null;
+				current = null;
+				return;
+			}
+			
+			currentFile = segment.file; 
+			current = segment.iterator();
 		}
 
 		@Override
@@ -98,7 +239,7 @@ public abstract class AbstractFileSequenceCorpus<T> extends AbstractCorpus<T>
 		}
 
 		private void fillBuffer() {
-			while(buffer.size() < BUFFER_SIZE)
+			while(buffer.size() < BUFFER_SIZE && current != null)
 				if(current.hasNext())
 				{
 					Token t = new Token(current.next());
@@ -107,7 +248,7 @@ public abstract class AbstractFileSequenceCorpus<T> extends AbstractCorpus<T>
 				}
 				else
 				{
-					if(fileQueue.isEmpty())
+					if(segmentQueue.isEmpty())
 						break;
 					else
 						pop();
@@ -148,6 +289,29 @@ public abstract class AbstractFileSequenceCorpus<T> extends AbstractCorpus<T>
 	 */
 	protected abstract SequenceIterator<T> singleIterator(File file);
 	
+	/**
+	 * Whether the given file can be read in byte ranges by 
+	 * {@link #singleIterator(File, long, long)}. This implementation always 
+	 * returns false. Subclasses that return true must also override 
+	 * {@link #singleIterator(File, long, long)}.
+	 */
+	protected boolean splittable(File file)
+	{
+		return false;
+	}
+	
+	/**
+	 * Returns an iterator over the sequences in the given file that start in
+	 * the byte range [from, to). Only called for files for which 
+	 * {@link #splittable(File)} returns true, so this implementation, which 
+	 * throws an UnsupportedOperationException, is never reached unless a
+	 * subclass overrides only splittable().
+	 */
+	protected SequenceIterator<T> singleIterator(File file, long from, long to)
+	{
+		throw new UnsupportedOperationException();
+	}
+	
 	/** 
 	 * <p>
 	 * Files to ignore
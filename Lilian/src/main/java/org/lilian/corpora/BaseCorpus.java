@@ -1,10 +1,15 @@
 package org.lilian.corpora;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -30,11 +35,34 @@ public class BaseCorpus extends AbstractFileSequenceCorpus<String>
 	{
 		return new BaseIterator(file);
 	}
+	
+	/**
+	 * Files are split at line breaks. Subclasses that parse files differently
+	 * should override this method and singleIterator(File, long, long) as 
+	 * well.
+	 */
+	@Override
+	protected boolean splittable(File file)
+	{
+		return true;
+	}
+	
+	@Override
+	protected SequenceIterator<String> singleIterator(File file, long from, long to)
+	{
+		return new BaseIterator(file, from, to);
+	}
 
 	public class BaseIterator implements SequenceIterator<String>
 	{
 		private File file;
 		private BufferedReader reader = null;
+		
+		// * For reading a byte range: the lines starting in [from, to)
+		private boolean ranged = false;
+		private long from = 0, to = Long.MAX_VALUE, position = 0;
+		private InputStream in = null;
+		private ByteArrayOutputStream line = new ByteArrayOutputStream();
 		private List<Token> buffer = new LinkedList<Token>();
 		
 		private boolean atLineEnd = false;
@@ -49,6 +77,17 @@ public class BaseCorpus extends AbstractFileSequenceCorpus<String>
 			//    and we can create as many corpus objects and iterators as 
 			//    we like, without getting a "too many open files" error 
 		}
+		
+		/**
+		 * Reads only the lines that start in the byte range [from, to).
+		 */
+		public BaseIterator(File file, long from, long to)
+		{
+			this(file);
+			this.ranged = true;
+			this.from = from;
+			this.to = to;
+		}
 
 		@Override
 		public void remove()
@@ -79,12 +118,15 @@ public class BaseCorpus extends AbstractFileSequenceCorpus<String>
 		
 		private void read()
 		{
-			if(reader == null)
+			if(reader == null && in == null)
 			{
 				try
 				{
-					reader = new BufferedReader(new FileReader(file));
-				} catch (FileNotFoundException e)
+					if(ranged)
+						open();
+					else
+						reader = new BufferedReader(new FileReader(file));
+				} catch (IOException e)
 				{
 					throw new RuntimeException(e);
 				}
@@ -97,10 +139,13 @@ public class BaseCorpus extends AbstractFileSequenceCorpus<String>
 				
 				try
 				{
-					line = reader.readLine();
+					line = ranged ? readRange() : reader.readLine();
 					if(line == null)
 					{
-						reader.close();
+						if(ranged)
+							in.close();
+						else
+							reader.close();
 						finished = true;
 						return;					
 					}					
@@ -117,6 +162,57 @@ public class BaseCorpus extends AbstractFileSequenceCorpus<String>
 				
 		}
 
+		private void open() throws IOException
+		{
+			FileInputStream stream = new FileInputStream(file);
+			
+			if(from > 0)
+			{
+				// * Start one byte early, and skip the remainder of the line
+				//   that starts before the range (which is just the line 
+				//   break if a line starts at from)
+				stream.getChannel().position(from - 1);
+				position = from - 1;
+				in = new BufferedInputStream(stream);
+				readLine();
+			} else
+				in = new BufferedInputStream(stream);
+		}
+		
+		/**
+		 * The next line starting in the range, or null.
+		 */
+		private String readRange() throws IOException
+		{
+			if(position >= to)
+				return null;
+			
+			return readLine();
+		}
+		
+		private String readLine() throws IOException
+		{
+			line.reset();
+			
+			int b;
+			while((b = in.read()) != -1)
+			{
+				position++;
+				if(b == '\n')
+					break;
+				line.write(b);
+			}
+			
+			if(b == -1 && line.size() == 0)
+				return null;
+			
+			String result = line.toString(Charset.defaultCharset().name());
+			if(result.endsWith("\r"))
+				result = result.substring(0, result.length() - 1);
+			
+			return result;
+		}
+		
 		@Override
 		public boolean atSequenceEnd()
 		{
@@ -0,0 +1,419 @@
+package org.lilian.corpora;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A corpus of strings stored in a compact binary file, which is memory mapped
+ * when read.
+ *
+ * The file contains every token as an int id, an index of the position at
+ * which every sentence starts and a vocabulary table which maps the ids back
+ * to strings. Any sequence corpus can be compiled to this format with
+ * {@link #write(SequenceCorpus, File)}, after which iterating over it requires
+ * no parsing. The tokens are not copied into memory, and every id is mapped to
+ * the same string object each time.
+ *
+ * Unlike most corpora, size() takes constant time, and sentences can be
+ * accessed by index. The corpus can be partitioned into runs of sentences
+ * with roughly equal numbers of tokens.
+ *
+ * Layout (big-endian): a magic number, the number of tokens (long), the
+ * number of sentences (int) and the size of the vocabulary (int), followed by
+ * the token ids (ints), the start positions of all sentences and the end of the
+ * corpus (longs) and the vocabulary (in modified UTF-8, as written by
+ * DataOutput.writeUTF).
+ *
+ * @author Peter
+ */
+public class BinaryCorpus
+	extends AbstractCorpus<String>
+	implements PartitionableCorpus<String>
+{
+	private static final int MAGIC = 0x4c424331;
+	private static final int HEADER_SIZE = 4 + 8 + 4 + 4;
+
+	// * The ids and offsets are mapped in chunks of 1 GiB, since a single
+	//   buffer cannot be larger than 2 GiB
+	private static final int INT_SHIFT = 28, LONG_SHIFT = 27;
+
+	private File file;
+
+	private long numTokens;
+	private int numSentences;
+
+	private IntBuffer[] ids;
+	private LongBuffer[] offsets;
+	private String[] vocabulary;
+
+	/**
+	 * Opens a corpus file created by {@link #write(SequenceCorpus, File)}.
+	 */
+	public BinaryCorpus(File file)
+	{
+		this.file = file;
+
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				if(raf.readInt() != MAGIC)
+					throw new IllegalArgumentException("File "+file+" is not a binary corpus.");
+
+				numTokens = raf.readLong();
+				numSentences = raf.readInt();
+				int vocabularySize = raf.readInt();
+
+				FileChannel channel = raf.getChannel();
+
+				long position = HEADER_SIZE;
+				ids = new IntBuffer[chunks(numTokens, INT_SHIFT)];
+				for(int c = 0; c < ids.length; c++)
+				{
+					long size = Math.min(1L << INT_SHIFT, numTokens - ((long) c << INT_SHIFT));
+					ids[c] = channel.map(FileChannel.MapMode.READ_ONLY, position, size * 4).asIntBuffer();
+					position += size * 4;
+				}
+
+				long numOffsets = numSentences + 1L;
+				offsets = new LongBuffer[chunks(numOffsets, LONG_SHIFT)];
+				for(int c = 0; c < offsets.length; c++)
+				{
+					long size = Math.min(1L << LONG_SHIFT, numOffsets - ((long) c << LONG_SHIFT));
+					offsets[c] = channel.map(FileChannel.MapMode.READ_ONLY, position, size * 8).asLongBuffer();
+					position += size * 8;
+				}
+
+				channel.position(position);
+				DataInputStream in = new DataInputStream(
+						new BufferedInputStream(Channels.newInputStream(channel)));
+
+				vocabulary = new String[vocabularySize];
+				for(int i = 0; i < vocabularySize; i++)
+					vocabulary[i] = in.readUTF();
+			} finally
+			{
+				// * The mapped buffers remain valid after the file is closed
+				raf.close();
+			}
+		} catch(IOException e)
+		{
+			throw new RuntimeException("Could not read binary corpus from "+file+".", e);
+		}
+	}
+
+	private static int chunks(long size, int shift)
+	{
+		return (int)((size + (1L << shift) - 1) >>> shift);
+	}
+
+	/**
+	 * Writes the given corpus to a file in this format. The corpus is read
+	 * once. Tokens after the last sequence end form a final sentence.
+	 *
+	 * @return The corpus as read from the new file.
+	 */
+	public static BinaryCorpus write(SequenceCorpus<String> in, File file)
+		throws IOException
+	{
+		Map<String, Integer> index = new HashMap<String, Integer>();
+		List<String> vocabulary = new ArrayList<String>();
+
+		long[] starts = new long[1024];
+		int numSentences = 0;
+		long numTokens = 0;
+		boolean atStart = true;
+
+		DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		try {
+			// * placeholder header
+			out.writeInt(MAGIC);
+			out.writeLong(0);
+			out.writeInt(0);
+			out.writeInt(0);
+
+			SequenceIterator<String> it = in.iterator();
+			while(it.hasNext())
+			{
+				String token = it.next();
+
+				Integer id = index.get(token);
+				if(id == null)
+				{
+					id = vocabulary.size();
+					index.put(token, id);
+					vocabulary.add(token);
+				}
+
+				if(atStart)
+				{
+					if(numSentences == starts.length)
+						starts = Arrays.copyOf(starts, starts.length * 2);
+					starts[numSentences++] = numTokens;
+				}
+
+				out.writeInt(id);
+				numTokens++;
+
+				atStart = it.atSequenceEnd();
+			}
+
+			for(int i = 0; i < numSentences; i++)
+				out.writeLong(starts[i]);
+			out.writeLong(numTokens);
+
+			for(String token : vocabulary)
+				out.writeUTF(token);
+		} finally
+		{
+			out.close();
+		}
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(4);
+			raf.writeLong(numTokens);
+			raf.writeInt(numSentences);
+			raf.writeInt(vocabulary.size());
+		} finally
+		{
+			raf.close();
+		}
+
+		return new BinaryCorpus(file);
+	}
+
+	/**
+	 * The number of tokens, in constant time.
+	 */
+	@Override
+	public int size()
+	{
+		return (int) Math.min(numTokens, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * The number of tokens, for corpora with more than Integer.MAX_VALUE
+	 * tokens.
+	 */
+	public long tokens()
+	{
+		return numTokens;
+	}
+
+	public int sentences()
+	{
+		return numSentences;
+	}
+
+	/**
+	 * The distinct tokens in the corpus, indexed by id.
+	 */
+	public List<String> vocabulary()
+	{
+		return Collections.unmodifiableList(Arrays.asList(vocabulary));
+	}
+
+	/**
+	 * The id of the token at the given position in the corpus.
+	 */
+	public int id(long position)
+	{
+		return ids[(int)(position >>> INT_SHIFT)].get((int)(position & ((1L << INT_SHIFT) - 1)));
+	}
+
+	/**
+	 * The position in the corpus at which the given sentence starts. For
+	 * i == sentences(), this returns the number of tokens.
+	 */
+	public long start(int sentence)
+	{
+		long i = sentence;
+		return offsets[(int)(i >>> LONG_SHIFT)].get((int)(i & ((1L << LONG_SHIFT) - 1)));
+	}
+
+	/**
+	 * The ids of the tokens in the given sentence.
+	 */
+	public int[] ids(int sentence)
+	{
+		long from = start(sentence), to = start(sentence + 1);
+
+		int[] result = new int[(int)(to - from)];
+		for(int i = 0; i < result.length; i++)
+			result[i] = id(from + i);
+
+		return result;
+	}
+
+	/**
+	 * The given sentence, as an unmodifiable list backed by the corpus.
+	 */
+	public List<String> sentence(int sentence)
+	{
+		if(sentence < 0 || sentence >= numSentences)
+			throw new IndexOutOfBoundsException("Sentence index ("+sentence+") out of range [0, "+numSentences+").");
+
+		final long from = start(sentence);
+		final int size = (int)(start(sentence + 1) - from);
+
+		return new AbstractList<String>()
+		{
+			@Override
+			public String get(int index)
+			{
+				if(index < 0 || index >= size)
+					throw new IndexOutOfBoundsException();
+				return vocabulary[id(from + index)];
+			}
+
+			@Override
+			public int size()
+			{
+				return size;
+			}
+		};
+	}
+
+	public File file()
+	{
+		return file;
+	}
+
+	@Override
+	public SequenceIterator<String> iterator()
+	{
+		return iterator(0, numSentences);
+	}
+
+	/**
+	 * Iterates over the sentences from index from (inclusive) to index to
+	 * (exclusive).
+	 */
+	public SequenceIterator<String> iterator(int from, int to)
+	{
+		if(from < 0 || to > numSentences || from > to)
+			throw new IndexOutOfBoundsException("Sentence range ["+from+", "+to+") out of range [0, "+numSentences+").");
+
+		return new BinaryIterator(from, to);
+	}
+
+	@Override
+	public List<SequenceCorpus<String>> partitions(int max)
+	{
+		List<SequenceCorpus<String>> partitions = new ArrayList<SequenceCorpus<String>>(max);
+
+		int from = 0;
+		for(int p = 1; p <= max && from < numSentences; p++)
+		{
+			// * The first sentence starting at or after the p-th boundary
+			long boundary = numTokens * p / max;
+			int lo = from + 1, hi = numSentences;
+			while(lo < hi)
+			{
+				int mid = (lo + hi) >>> 1;
+				if(start(mid) < boundary)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+
+			int to = p == max ? numSentences : lo;
+			partitions.add(new Range(from, to));
+			from = to;
+		}
+
+		return partitions;
+	}
+
+	/**
+	 * A run of consecutive sentences.
+	 */
+	private class Range
+		extends AbstractCorpus<String>
+		implements SequenceCorpus<String>
+	{
+		private int from, to;
+
+		public Range(int from, int to)
+		{
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public SequenceIterator<String> iterator()
+		{
+			return BinaryCorpus.this.iterator(from, to);
+		}
+
+		@Override
+		public int size()
+		{
+			return (int)(start(to) - start(from));
+		}
+	}
+
+	private class BinaryIterator
+		extends AbstractCorpusIterator<String>
+		implements SequenceIterator<String>
+	{
+		private long position, end;
+		private int sentence;
+		private long sentenceEnd;
+
+		public BinaryIterator(int from, int to)
+		{
+			position = start(from);
+			end = start(to);
+
+			sentence = from;
+			sentenceEnd = start(from + 1 <= numSentences ? from + 1 : from);
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return position < end;
+		}
+
+		@Override
+		public String next()
+		{
+			if(! hasNext())
+				throw new NoSuchElementException();
+
+			if(position == sentenceEnd)
+			{
+				sentence++;
+				sentenceEnd = start(sentence + 1);
+			}
+
+			return vocabulary[id(position++)];
+		}
+
+		@Override
+		public boolean atSequenceEnd()
+		{
+			return position == sentenceEnd;
+		}
+	}
+}
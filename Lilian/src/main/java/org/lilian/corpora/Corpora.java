@@ -163,4 +163,17 @@ public class Corpora
 		
 		return set;
 	}
+	
+	/**
+	 * Divides a corpus into at most the given number of sentence-aligned 
+	 * parts, if it supports this (see {@link PartitionableCorpus}). Otherwise,
+	 * the result contains only the corpus itself.
+	 */
+	public static <T> List<SequenceCorpus<T>> partitions(SequenceCorpus<T> corpus, int max)
+	{
+		if(corpus instanceof PartitionableCorpus<?>)
+			return ((PartitionableCorpus<T>) corpus).partitions(max);
+		
+		return Collections.singletonList(corpus);
+	}
 }
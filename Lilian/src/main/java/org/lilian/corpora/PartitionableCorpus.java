@@ -0,0 +1,24 @@
+package org.lilian.corpora;
+
+import java.util.List;
+
+/**
+ * A sequence corpus that can be divided into parts which can be read
+ * independently, for instance on different threads.
+ * 
+ * The parts are themselves sequence corpora, so they can be wrapped like any
+ * other corpus.
+ * 
+ * @author Peter
+ *
+ * @param <T>
+ */
+public interface PartitionableCorpus<T> extends SequenceCorpus<T>
+{
+	/**
+	 * Divides the corpus into at most the given number of parts. Every 
+	 * sequence is contained in exactly one part, and reading the parts in 
+	 * order gives the same tokens as reading the whole corpus.
+	 */
+	public List<SequenceCorpus<T>> partitions(int max);
+}
@@ -0,0 +1,148 @@
+package org.lilian.data.dimension;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.lilian.util.Parallel;
+
+/**
+ * Runs the replicates of a bootstrap significance test on multiple threads.
+ *
+ * Every replicate draws from its own Random, seeded from a sequence derived
+ * from a single seed, so the result depends only on that seed and not on the
+ * number of threads. Each worker thread reuses a single buffer for the
+ * generated data.
+ *
+ * The replicates are run in batches of a fixed size. Optionally, the test
+ * stops after the first batch for which the (99%) confidence interval of the
+ * p-value excludes a given threshold.
+ *
+ * @author Peter
+ */
+public class Bootstrap
+{
+	private static final int BATCH = 64;
+	// * The z value for a two-sided 99% confidence interval
+	private static final double Z = 2.576;
+
+	public static interface Replicate
+	{
+		/**
+		 * Generates a synthetic dataset into the buffer (which has the size
+		 * of the observed data), fits a model to it, and returns whether
+		 * the fit is at least as bad as that of the observed data.
+		 */
+		public boolean above(Random random, double[] buffer);
+	}
+
+	/**
+	 * @param replicate
+	 * @param size The size of the generated datasets.
+	 * @param n The maximum number of replicates. This should be positive.
+	 * @param stopAt If this is not negative, the test stops as soon as the
+	 * 	confidence interval of the p-value excludes this value.
+	 * @param seed
+	 * @param threads
+	 * @return The proportion of replicates for which the fit was at least as
+	 * 	bad as for the observed data.
+	 */
+	public static double significance(
+			final Replicate replicate, final int size, int n, double stopAt,
+			long seed, int threads)
+	{
+		if(n < 1)
+			throw new IllegalArgumentException("Number of replicates ("+n+") must be positive.");
+		
+		final long[] seeds = Parallel.seeds(seed, n);
+		final ThreadLocal<double[]> buffers = new ThreadLocal<double[]>()
+		{
+			@Override
+			protected double[] initialValue()
+			{
+				return new double[size];
+			}
+		};
+
+		int above = 0, done = 0;
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			while(done < n)
+			{
+				int to = Math.min(n, done + BATCH);
+
+				List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>(to - done);
+				for(int i = done; i < to; i++)
+				{
+					final long replicateSeed = seeds[i];
+					tasks.add(new Callable<Boolean>()
+					{
+						@Override
+						public Boolean call()
+						{
+							return replicate.above(new Random(replicateSeed), buffers.get());
+						}
+					});
+				}
+
+				for(boolean result : Parallel.run(tasks, executor))
+					if(result)
+						above++;
+
+				done = to;
+
+				if(stopAt >= 0.0 && done < n && excludes(above, done, stopAt))
+					break;
+			}
+		} finally
+		{
+			executor.shutdown();
+		}
+
+		return above / (double) done;
+	}
+
+	/**
+	 * Whether the Wilson score interval for the proportion above/total
+	 * excludes the given value.
+	 */
+	public static boolean excludes(int above, int total, double value)
+	{
+		double p = above / (double) total;
+		double z2 = Z * Z;
+
+		double denominator = 1.0 + z2 / total;
+		double center = (p + z2 / (2.0 * total)) / denominator;
+		double half = Z * Math.sqrt(p * (1.0 - p) / total + z2 / (4.0 * total * total)) / denominator;
+
+		return value < center - half || value > center + half;
+	}
+
+	/**
+	 * A read-only list view of (the first n elements of) an array.
+	 */
+	public static List<Double> view(final double[] values, final int n)
+	{
+		return new AbstractList<Double>()
+		{
+			@Override
+			public Double get(int index)
+			{
+				if(index >= n)
+					throw new IndexOutOfBoundsException("Index ("+index+") must be less than "+n+".");
+				return values[index];
+			}
+
+			@Override
+			public int size()
+			{
+				return n;
+			}
+		};
+	}
+}
@@ -11,6 +11,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import org.lilian.Global;
@@ -18,6 +19,7 @@ import org.lilian.data.real.AbstractGenerator;
 import org.lilian.data.real.Datasets;
 import org.lilian.models.BasicFrequencyModel;
 import org.lilian.util.Functions;
+import org.lilian.util.Parallel;
 import org.lilian.util.Series;
 import org.lilian.util.distance.Distance;
 
@@ -201,30 +203,57 @@ public class MultiTakens extends AbstractGenerator<Double>
 	
 	public double significance(List<Double> distances, int n, int samples)
 	{
-		double threshold = ksTest(distances, false);
+		return significance(distances, n, -1.0, Global.random.nextLong());
+	}
 	
-		int above = 0;
-		for(int i : Series.series(n))
-		{
-			if(i % 1 == 0)
-				Global.log().info("* Finished " + i + " trials of "+n+".");
-			
-			List<Double> generated = generate(distances, distances.size());
-			Collections.sort(generated);
+	/**
+	 * Runs the bootstrap replicates in parallel, each with its own random 
+	 * stream (see {@link Bootstrap}).
+	 * 
+	 * @param stopAt If this is not negative, the test stops early once the 
+	 * 	confidence interval of the p-value excludes this value.
+	 * @param seed The seed from which the random streams are derived. 
+	 */
+	public double significance(List<Double> distances, int n, double stopAt, long seed)
+	{
+		final double threshold = ksTest(distances, false);
+		final int size = distances.size();
 		
-//			MultiTakens generatedPL = 
-//					samples == -1 ?
-//					MultiTakens.fit(generated, true).fit() :
-//					MultiTakens.fit(generated, true).fitSampled(samples);
-			
-			MultiTakens generatedPL = 
-					MultiTakens.fit(generated, true).fitForwardBackward();
-			
-			if(generatedPL.ksTest(generated, false) >= threshold)
-				above ++;
-		}
+		// * The observed values outside the range of this distribution
+		final double[] outside = new double[size];
+		int numOutside = 0;
+		for(double distance : distances)
+			if(! contains(distance))
+				outside[numOutside++] = distance;
+		
+		final int outsideSize = numOutside;
+		
+		Bootstrap.Replicate replicate = new Bootstrap.Replicate()
+		{
+			@Override
+			public boolean above(Random random, double[] buffer)
+			{
+				for(int i : series(size))
+					if(random.nextDouble() < outsideSize / (double) size)
+						buffer[i] = outside[random.nextInt(outsideSize)];
+					else
+						buffer[i] = cdfInv(random.nextDouble());
+				
+				Arrays.sort(buffer);
+				List<Double> generated = Bootstrap.view(buffer, size);
+				
+				MultiTakens generatedPL = 
+						MultiTakens.fit(generated, true).fitForwardBackward();
+				
+				// * If no range can be fitted, the fit is as bad as it gets 
+				if(generatedPL == null)
+					return true;
+				
+				return generatedPL.ksTest(generated, true) >= threshold;
+			}
+		};
 		
-		return above / (double) n;
+		return Bootstrap.significance(replicate, size, n, stopAt, seed, Parallel.threads());
 	}
 
 	public double significance(List<Double> distances, double epsilon)
@@ -597,9 +626,11 @@ public class MultiTakens extends AbstractGenerator<Double>
 		
 		ArrayList<MultiTakens> multi = new ArrayList<MultiTakens>(m.size());
 		
-		// Retain only significant ranges
+		// Retain only significant ranges (the bootstrap can stop as soon as 
+		// that is clear)
+		int n = (int)(0.25 * Math.pow(epsilon, -2.0));
 		for(MultiTakens dist : m)
-			if(dist.significance(distances, epsilon) >= sigThreshold)
+			if(dist.significance(distances, n, sigThreshold, Global.random.nextLong()) >= sigThreshold)
 				multi.add(dist);
 		
 		return multi;
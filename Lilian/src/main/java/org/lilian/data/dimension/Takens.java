@@ -5,18 +5,21 @@ import static java.lang.Math.pow;
 import static org.lilian.util.Series.series;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import nl.peterbloem.powerlaws.Uncertainties;
 
 import org.lilian.Global;
 import org.lilian.data.real.AbstractGenerator;
-import org.lilian.data.real.Datasets;
 import org.lilian.util.Functions;
+import org.lilian.util.Parallel;
 import org.lilian.util.Series;
 import org.lilian.util.distance.Distance;
 import org.lilian.util.distance.EuclideanDistance;
@@ -190,32 +193,67 @@ public class Takens extends AbstractGenerator<Double>
 	
 	public double significance(List<Double> distances, int n, int numCandidates, int samplesPerCandidate)
 	{
-		double threshold = ksTest(distances, false);
+		return significance(distances, n, numCandidates, samplesPerCandidate, -1.0, Global.random.nextLong());
+	}
 	
-		int above = 0;
-		for(int i : Series.series(n))
-		{
-			if(i % 1 == 0)
-				Global.log().info("* Finished " + i + " trials of "+n+".");
-			
-			System.out.print(".");
-			List<Double> generated = generate(distances, distances.size());
-			Collections.sort(generated);
-			System.out.print(".");
-		
-			Takens generatedPL = 
-					numCandidates == -1 ?
-					Takens.fit(generated, true).fit() :
-					Takens.fit(generated, true).fit(numCandidates, samplesPerCandidate);
-			System.out.print(".");
-			
-			if(generatedPL.ksTest(generated, false) >= threshold)
-				above ++;
-			System.out.print(".");
-
-		}
+	/**
+	 * Runs the bootstrap replicates in parallel, each with its own random 
+	 * stream (see {@link Bootstrap}).
+	 * 
+	 * @param stopAt If this is not negative, the test stops early once the 
+	 * 	confidence interval of the p-value excludes this value.
+	 * @param seed The seed from which the random streams are derived. 
+	 */
+	public double significance(List<Double> distances, int n, int numCandidates, int samplesPerCandidate, double stopAt, long seed)
+	{
+		return Bootstrap.significance(
+				replicate(distances, numCandidates, samplesPerCandidate), 
+				distances.size(), n, stopAt, seed, Parallel.threads());
+	}
+	
+	/**
+	 * A bootstrap replicate for the given observed distances: generates a 
+	 * dataset from this distribution (with the observed values above 
+	 * maxDistance resampled), and checks whether its fit is at least as bad 
+	 * as that of the observed data.
+	 */
+	Bootstrap.Replicate replicate(List<Double> distances, final int numCandidates, final int samplesPerCandidate)
+	{
+		final double threshold = ksTest(distances, false);
+		final int size = distances.size();
+		
+		// * The observed values outside the range of this distribution
+		final double[] head = new double[size];
+		int numHead = 0;
+		for(double distance : distances)
+			if(distance > maxDistance)
+				head[numHead++] = distance;
 		
-		return above / (double) n;
+		final int headSize = numHead;
+		
+		return new Bootstrap.Replicate()
+		{
+			@Override
+			public boolean above(Random random, double[] buffer)
+			{
+				for(int i : series(size))
+					if(random.nextDouble() < headSize / (double) size)
+						buffer[i] = head[random.nextInt(headSize)];
+					else
+						buffer[i] = cdfInv(random.nextDouble());
+				
+				Arrays.sort(buffer);
+				List<Double> generated = Bootstrap.view(buffer, size);
+				
+				Fit fit = Takens.fit(generated, true);
+				Takens generatedPL = 
+						numCandidates == -1 ?
+						fit.fit() :
+						fit.fit(numCandidates, samplesPerCandidate, random);
+				
+				return generatedPL.ksTest(generated, true) >= threshold;
+			}
+		};
 	}
 
 	public double significance(List<Double> distances, double epsilon)
@@ -261,9 +299,19 @@ public class Takens extends AbstractGenerator<Double>
 	
 	public static class BigFit<P>
 	{
+		/**
+		 * The default number of histogram bins for {@link #fit(int)}.
+		 */
+		public static int BINS = 10000;
+		
+		private static final int TASKS = 256;
+		
 		List<P> data;
 		Distance<? super P> metric;
 		
+		private int threads = Parallel.threads();
+		private Histogram histogram = null;
+		
 		public BigFit(List<P> data, Distance<? super P> metric)
 		{
 			super();
@@ -338,52 +386,274 @@ public class Takens extends AbstractGenerator<Double>
 		}
 		
 		/**
-		 * Fir with all distances, but use a sample to estimate KS distance
-		 * @param ksSamples
+		 * Fits with all distances. The candidate values for maxDistance are the 
+		 * edges of a logarithmic histogram of all pairwise distances.
+		 * 
+		 * @param ksSamples The number of randomly sampled distances used to 
+		 * 	determine the range of the histogram.
 		 * @return
 		 */
 		public Takens fit(int ksSamples)
 		{
-			// * Find the distance that minimizes the KS value
-			Takens best = null;
-			double bestKS = Double.POSITIVE_INFINITY;		
+			return fit(ksSamples, BINS);
+		}
+		
+		/**
+		 * Fits with all distances, in O(n^2 + bins^2) time.
+		 * 
+		 * All pairwise distances are computed once (in parallel) and counted 
+		 * in a histogram with logarithmically spaced bins, which also stores 
+		 * the sum of the log distances per bin. The bin edges are the 
+		 * candidates for maxDistance: for each, the MLE dimension follows 
+		 * directly from the prefix sums, and the KS statistic is computed 
+		 * against the cumulative histogram (ie. it is evaluated at the bin
+		 * edges only). The candidates are evaluated in parallel.
+		 * 
+		 * Distances of zero are ignored. The histogram is kept, so 
+		 * subsequent calls with the same arguments do not revisit the data.
+		 * 
+		 * @param rangeSamples The number of randomly sampled distances used 
+		 * 	to determine the range of the histogram. The range is extended 
+		 * 	downward if smaller distances are found, distances above it are 
+		 * 	ignored.
+		 * @param bins The number of bins in the histogram.
+		 * @return
+		 */
+		public Takens fit(int rangeSamples, int bins)
+		{
+			if(histogram == null || histogram.bins != bins || histogram.rangeSamples != rangeSamples)
+				histogram = new Histogram(rangeSamples, bins);
 			
-			Functions.tic();
+			return histogram.fit();
+		}
+		
+		public void setThreads(int threads)
+		{
+			this.threads = threads;
+		}
+		
+		/**
+		 * A logarithmic histogram of all pairwise distances, with cumulative 
+		 * counts and sums of log distances.
+		 */
+		private class Histogram
+		{
+			int rangeSamples, bins, size;
+			double logLow, step;
+			
+			// * The number of (nonzero) distances below edge b, and the sum of 
+			//   their logs. Edge 0 is the bottom of the range.
+			long[] counts;
+			double[] logSums;
 			
-			List<Double> distanceSample = new ArrayList<Double>(ksSamples);
-			for(int i : series(ksSamples))
+			public Histogram(int rangeSamples, int bins)
 			{
-				int a = -1, b = -1; 
-				while(a == b)
+				this.rangeSamples = rangeSamples;
+				this.bins = bins;
+				
+				// * Determine the range from a sample
+				double low = Double.POSITIVE_INFINITY, high = 0.0;
+				for(double distance : sample(rangeSamples))
+					if(distance > 0.0)
+					{
+						low = Math.min(low, distance);
+						high = Math.max(high, distance);
+					}
+				
+				if(low == Double.POSITIVE_INFINITY)
+					throw new IllegalStateException("No nonzero distances in the sample.");
+				if(high <= low)
+					high = 2.0 * low;
+				
+				logLow = log(low);
+				step = (log(high) - logLow) / bins;
+				size = bins;
+				
+				count();
+			}
+			
+			private void count()
+			{
+				final int n = data.size();
+				
+				// * A fixed number of tasks, with interleaved rows, so that the 
+				//   order of the sums does not depend on the number of threads
+				int numTasks = Math.min(TASKS, Math.max(1, n));
+				List<Callable<Partial>> tasks = new ArrayList<Callable<Partial>>(numTasks);
+				for(int t : series(numTasks))
 				{
-					a = Global.random.nextInt(data.size());
-					b = Global.random.nextInt(data.size());
+					final int first = t, stride = numTasks;
+					tasks.add(new Callable<Partial>()
+					{
+						@Override
+						public Partial call()
+						{
+							Partial partial = new Partial(bins);
+							for(int i = first; i < n; i += stride)
+							{
+								P a = data.get(i);
+								for(int j = i + 1; j < n; j++)
+								{
+									double distance = metric.distance(a, data.get(j));
+									if(distance <= 0.0)
+										continue;
+									
+									// * Below the range, the bins continue
+									//   downward for another 'bins' bins, with 
+									//   everything below that in bin 0
+									double position = (log(distance) - logLow) / step;
+									if(position >= bins)
+										continue;
+									
+									int bin = position < - bins ? 0 : 
+										(int) Math.floor(position) + bins + 1;
+									
+									partial.counts[bin] ++;
+									partial.logSums[bin] += log(distance);
+									partial.min = Math.min(partial.min, distance);
+								}
+							}
+							return partial;
+						}
+					});
 				}
 				
-				distanceSample.add(metric.distance(data.get(a), data.get(b)));
+				List<Partial> partials = Parallel.run(tasks, threads);
+				
+				// * The sample rarely contains the smallest distances, so the 
+				//   range is extended downward (by at most the same number of 
+				//   bins) to cover the distances below it.
+				double min = Double.POSITIVE_INFINITY;
+				for(Partial partial : partials)
+					min = Math.min(min, partial.min);
+				
+				int extra = 0;
+				if(min < Double.POSITIVE_INFINITY)
+					extra = Math.max(0, 
+						Math.min(bins, (int) Math.ceil((logLow - log(min)) / step)));
+				
+				logLow -= extra * step;
+				size = bins + extra;
+				
+				// * Bins of the partials below the extended range go to bin 0
+				int shift = bins - extra;
+				double[] totalCounts = new double[size + 1], totalLogSums = new double[size + 1];
+				for(Partial partial : partials)
+					for(int b : series(2 * bins + 1))
+					{
+						int bin = Math.max(0, b - shift);
+						totalCounts[bin] += partial.counts[b];
+						totalLogSums[bin] += partial.logSums[b];
+					}
+				
+				counts = new long[size + 1];
+				logSums = new double[size + 1];
+				
+				for(int b : series(size + 1))
+				{
+					counts[b] = (b == 0 ? 0 : counts[b - 1]) + (long) totalCounts[b];
+					logSums[b] = (b == 0 ? 0.0 : logSums[b - 1]) + totalLogSums[b];
+				}
 			}
 			
-			Collections.sort(distanceSample);
+			private double edge(int b)
+			{
+				return Math.exp(logLow + b * step);
+			}
 			
-			for(int i : series(data.size()))
-				for(int j : series(i+1, data.size()))
+			public Takens fit()
+			{
+				int[] bounds = Parallel.split(size, Math.min(size, TASKS));
+				
+				List<Callable<double[]>> tasks = new ArrayList<Callable<double[]>>();
+				for(int t : series(bounds.length - 1))
 				{
-					double distance = metric.distance(data.get(i), data.get(j));
-					
-					Takens current = fit(distance);
-					double ksValue = current.ksTest(distanceSample, true);
-					
-					if(ksValue < bestKS)
+					final int from = bounds[t] + 1, to = bounds[t + 1] + 1;
+					tasks.add(new Callable<double[]>()
+					{
+						@Override
+						public double[] call()
+						{
+							double bestKS = Double.POSITIVE_INFINITY, best = -1;
+							for(int c = from; c < to; c++)
+							{
+								double ks = ks(c);
+								if(ks < bestKS)
+								{
+									bestKS = ks;
+									best = c;
+								}
+							}
+							return new double[]{bestKS, best};
+						}
+					});
+				}
+				
+				double bestKS = Double.POSITIVE_INFINITY;
+				int best = -1;
+				for(double[] result : Parallel.run(tasks, threads))
+					if(result[0] < bestKS)
 					{
-						bestKS = ksValue;
-						best = current;
+						bestKS = result[0];
+						best = (int) result[1];
 					}
+				
+				if(best < 0)
+					return null;
+				
+				return new Takens(dimension(best), edge(best));
+			}
+			
+			/**
+			 * The MLE dimension for the cut-off at edge c.
+			 */
+			private double dimension(int c)
+			{
+				double n = counts[c];
+				return n / (- logSums[c] + n * (logLow + c * step));
+			}
+			
+			/**
+			 * The KS statistic for the cut-off at edge c, evaluated at the 
+			 * edges below it.
+			 */
+			private double ks(int c)
+			{
+				double n = counts[c];
+				if(n == 0)
+					return Double.POSITIVE_INFINITY;
+				
+				// * The power law CDF at edge b is ratio^(c - b)
+				double ratio = Math.exp(- dimension(c) * step);
+				
+				double max = 0.0, plCDF = 1.0;
+				for(int b = c - 1; b >= 0; b--)
+				{
+					plCDF *= ratio;
+					double dataCDF = counts[b] / n;
 					
+					max = Math.max(max, Math.abs(dataCDF - plCDF));
 				}
+				
+				return max;
+			}
+		}
+		
+		/**
+		 * The histogram of the distances for one task, over the range extended
+		 * downward by the same number of bins, and the smallest distance.
+		 */
+		private static class Partial
+		{
+			double[] counts, logSums;
+			double min = Double.POSITIVE_INFINITY;
 			
-
-			return best;
-		}	
+			public Partial(int bins)
+			{
+				counts = new double[2 * bins + 1];
+				logSums = new double[2 * bins + 1];
+			}
+		}
 		
 		/**
 		 * This method uses all available data to calculate the MLE dimension, 
@@ -522,11 +792,18 @@ public class Takens extends AbstractGenerator<Double>
 		 * @return
 		 */
 		public Takens fit(int numCandidates, int samplesPerCandidate)
+		{
+			return fit(numCandidates, samplesPerCandidate, Global.random);
+		}
+		
+		public Takens fit(int numCandidates, int samplesPerCandidate, Random random)
 		{
 			List<Double> candidates = new ArrayList<Double>(numCandidates);
 			for(int i : Series.series(numCandidates))
 			{
-				List<Double> sample = Datasets.sample(distances, samplesPerCandidate);
+				List<Double> sample = new ArrayList<Double>(samplesPerCandidate);
+				for(int j : series(samplesPerCandidate))
+					sample.add(distances.get(random.nextInt(distances.size())));
 				
 				Takens dist = Takens.fit(sample, false).fit();
 				candidates.add(dist.maxDistance());
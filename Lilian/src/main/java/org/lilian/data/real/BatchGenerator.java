@@ -0,0 +1,26 @@
+package org.lilian.data.real;
+
+/**
+ * A generator of points which can also write its output directly into a 
+ * primitive array. This avoids creating a Point object for each sample, which
+ * matters when millions of points are required.
+ * 
+ * @author Peter
+ */
+public interface BatchGenerator extends Generator<Point>
+{
+	/**
+	 * The dimension of the points generated.
+	 */
+	public int dimension();
+	
+	/**
+	 * Generates n points and writes them into the given array in row-major 
+	 * order: the j-th coordinate of the i-th point is stored at 
+	 * out[i * dimension() + j].
+	 * 
+	 * @param out An array of at least n * dimension() elements.
+	 * @param n The number of points to generate.
+	 */
+	public void generate(double[] out, int n);
+}
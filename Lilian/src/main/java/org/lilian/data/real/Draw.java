@@ -427,6 +427,34 @@ public class Draw
 		}
 		
 		int xp, yp;
+		if(post == null && generator instanceof BatchGenerator)
+		{
+			// * Generate the points in blocks, without creating Point objects 
+			BatchGenerator batch = (BatchGenerator) generator;
+			int dim = batch.dimension();
+			int blockSize = Math.min(samples, BATCH_SIZE);
+			double[] block = new double[blockSize * dim];
+			
+			for(int done = 0; done < samples; done += blockSize)
+			{
+				int n = Math.min(blockSize, samples - done);
+				batch.generate(block, n);
+				
+				for(int i = 0; i < n; i++)
+				{
+					xp = toPixel(block[i * dim], xRes, xrange[0], xrange[1]); 
+					yp = toPixel(block[i * dim + 1], yRes, yrange[0], yrange[1]);
+					if(xp >= 0 && xp < xRes && yp >= 0 && yp < yRes)
+					{
+						matrix[xp][yp] ++;
+						max = Math.max(matrix[xp][yp], max);
+					}
+				}
+			}
+			
+			samples = 0;
+		}
+		
 		for(int i = 0; i < samples; i++)
 		{
 			Point point = generator.generate();
@@ -477,6 +505,12 @@ public class Draw
 		return image;
 	}
 	
+	/**
+	 * The number of points generated at a time when drawing from a 
+	 * {@link BatchGenerator}.
+	 */
+	public static int BATCH_SIZE = 10000;
+	
 	public static ArrayList<Color> colors = new ArrayList<Color>();
 	public static ArrayList<Color> componentColors = new ArrayList<Color>();	
 	public static Color errorColor = Color.RED;		
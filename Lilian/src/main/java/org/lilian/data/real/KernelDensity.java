@@ -1,37 +1,318 @@
 package org.lilian.data.real;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
 
+import org.lilian.util.Parallel;
+
+/**
+ * A kernel density estimate with spherical gaussian kernels.
+ *
+ * The sample is stored in a flat array, ordered by a k-d tree. Each node of
+ * the tree knows the bounding box of its points, which gives bounds on the
+ * kernel values of all of them for a given query point. If these bounds are
+ * close enough, the node's contribution is approximated by its number of
+ * points times the midpoint of the bounds, and its points are never visited.
+ * This skips both the far away parts of the sample and tight clusters.
+ *
+ * The approximation error is controlled by a tolerance: the absolute error of
+ * any density is at most the tolerance times the peak density of a single
+ * kernel. With a tolerance of 0 (the default), the result is exact, up to
+ * floating point error and the parts of the sample that are so far away that
+ * their kernel values underflow to 0.
+ *
+ * @author Peter
+ */
 public class KernelDensity extends AbstractDensity
 {
 	private static final long serialVersionUID = -1576741835502637155L;
-	private List<MVN> mvns;
 
+	// * The maximum number of points in a leaf of the tree
+	private static final int LEAF_SIZE = 16;
+
+	private int dimension, size;
+	private double scale, tolerance;
+
+	// * The normalizing factor of a single kernel
+	private double peak;
+
+	// * The sample, point i at i * dimension, in the order of the tree
+	private double[] points;
+
+	// * The tree, node 0 being the root. Each node covers the points from
+	//   (inclusive) to (exclusive), and its bounding box runs from
+	//   lower[node * dimension] to upper[node * dimension] (per dimension).
+	//   Leaves have left = right = -1.
+	private int[] from, to, left, right;
+	private double[] lower, upper;
+	private int numNodes = 0;
+
+	/**
+	 * @param data
+	 * @param variance The scale of the kernels. Note that, as in
+	 * 	{@link MVN#MVN(Point, double)}, this is used as the standard deviation
+	 * 	in every direction.
+	 */
 	public KernelDensity(List<Point> data, double variance)
 	{
-		mvns = new ArrayList<MVN>(data.size());
-		
-		for(Point point : data)
-			mvns.add(new MVN(point, variance));
+		this(data, variance, 0.0);
+	}
+
+	/**
+	 * @param data
+	 * @param variance The scale of the kernels (used as the standard deviation)
+	 * @param tolerance The maximal error, as a proportion of the peak density
+	 * 	of a single kernel.
+	 */
+	public KernelDensity(List<Point> data, double variance, double tolerance)
+	{
+		this.size = data.size();
+		this.dimension = data.get(0).dimensionality();
+		this.scale = variance;
+		this.tolerance = tolerance;
+
+		peak = 1.0 / (Math.pow(2.0 * Math.PI, dimension / 2.0) * Math.pow(scale, dimension));
+
+		points = new double[size * dimension];
+		for(int i = 0; i < size; i++)
+			System.arraycopy(data.get(i).getBackingData(), 0, points, i * dimension, dimension);
+
+		int maxNodes = 2 * (size / LEAF_SIZE + 1) * 2;
+		from = new int[maxNodes];
+		to = new int[maxNodes];
+		left = new int[maxNodes];
+		right = new int[maxNodes];
+		lower = new double[maxNodes * dimension];
+		upper = new double[maxNodes * dimension];
+
+		build(0, size);
+	}
+
+	/**
+	 * Builds the subtree for the given range of points, and returns the index
+	 * of its root.
+	 */
+	private int build(int start, int end)
+	{
+		int node = numNodes++;
+		if(node >= from.length)
+			grow();
+
+		from[node] = start;
+		to[node] = end;
+		left[node] = -1;
+		right[node] = -1;
+
+		// * bounding box
+		int widest = 0;
+		double widestExtent = -1.0;
+		for(int a = 0; a < dimension; a++)
+		{
+			double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+			for(int i = start; i < end; i++)
+			{
+				double x = points[i * dimension + a];
+				min = Math.min(min, x);
+				max = Math.max(max, x);
+			}
+
+			lower[node * dimension + a] = min;
+			upper[node * dimension + a] = max;
+
+			if(max - min > widestExtent)
+			{
+				widestExtent = max - min;
+				widest = a;
+			}
+		}
+
+		if(end - start <= LEAF_SIZE || widestExtent <= 0.0)
+			return node;
+
+		// * split at the median of the widest dimension
+		int mid = (start + end) / 2;
+		select(start, end, mid, widest);
+
+		int l = build(start, mid);
+		int r = build(mid, end);
+		left[node] = l;
+		right[node] = r;
+
+		return node;
+	}
+
+	private void grow()
+	{
+		int n = from.length * 2;
+		from = Arrays.copyOf(from, n);
+		to = Arrays.copyOf(to, n);
+		left = Arrays.copyOf(left, n);
+		right = Arrays.copyOf(right, n);
+		lower = Arrays.copyOf(lower, n * dimension);
+		upper = Arrays.copyOf(upper, n * dimension);
+	}
+
+	/**
+	 * Reorders the points in [start, end) so that the point at index k has the
+	 * k-th smallest value in the given dimension, with smaller values before
+	 * it and larger after (quickselect).
+	 */
+	private void select(int start, int end, int k, int a)
+	{
+		int lo = start, hi = end - 1;
+		while(lo < hi)
+		{
+			double pivot = points[((lo + hi) >>> 1) * dimension + a];
+			int i = lo, j = hi;
+			while(i <= j)
+			{
+				while(points[i * dimension + a] < pivot) i++;
+				while(points[j * dimension + a] > pivot) j--;
+				if(i <= j)
+					swap(i++, j--);
+			}
+
+			if(k <= j)
+				hi = j;
+			else if(k >= i)
+				lo = i;
+			else
+				return;
+		}
+	}
+
+	private void swap(int i, int j)
+	{
+		for(int a = 0; a < dimension; a++)
+		{
+			double t = points[i * dimension + a];
+			points[i * dimension + a] = points[j * dimension + a];
+			points[j * dimension + a] = t;
+		}
 	}
 
 	@Override
 	public double density(Point p)
 	{
-		double density = 0.0;
-		
-		for(MVN mvn : mvns)
-			density += mvn.density(p);
-		
+		return density(p.getBackingData(), new int[numNodes]);
+	}
+
+	/**
+	 * Computes the densities of a batch of points on multiple threads.
+	 */
+	public double[] density(final List<Point> queries, int threads)
+	{
+		final double[] densities = new double[queries.size()];
+
+		int chunks = Math.min(queries.size(), threads * 4);
+		final int[] bounds = Parallel.split(queries.size(), Math.max(1, chunks));
+
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for(int c = 0; c < bounds.length - 1; c++)
+		{
+			final int start = bounds[c], end = bounds[c + 1];
+			tasks.add(new Callable<Object>()
+			{
+				@Override
+				public Object call()
+				{
+					int[] stack = new int[numNodes];
+					for(int i = start; i < end; i++)
+						densities[i] = density(queries.get(i).getBackingData(), stack);
+					return null;
+				}
+			});
+		}
+
+		Parallel.run(tasks, threads);
+
+		return densities;
+	}
+
+	/**
+	 * @param query The query point.
+	 * @param stack A work array with room for all nodes.
+	 */
+	private double density(double[] query, int[] stack)
+	{
+		double inv = 1.0 / (2.0 * scale * scale);
+		double maxError = 2.0 * tolerance;
+
+		double sum = 0.0;
 
-		return (density/mvns.size());
+		int top = 0;
+		stack[top++] = 0;
+		while(top > 0)
+		{
+			int node = stack[--top];
+
+			// * The squared distances to the nearest and farthest points of
+			//   the bounding box
+			double min = 0.0, max = 0.0;
+			for(int a = 0; a < dimension; a++)
+			{
+				double x = query[a],
+				       lo = lower[node * dimension + a],
+				       hi = upper[node * dimension + a];
+
+				double near = x < lo ? lo - x : (x > hi ? x - hi : 0.0);
+				double far = Math.max(x - lo, hi - x);
+
+				min += near * near;
+				max += far * far;
+			}
+
+			double kMax = Math.exp(- min * inv), kMin = Math.exp(- max * inv);
+
+			if(kMax - kMin <= maxError)
+			{
+				// * Approximate the whole node. The error per point is at most
+				//   half the difference between the bounds.
+				sum += (to[node] - from[node]) * 0.5 * (kMax + kMin);
+				continue;
+			}
+
+			if(left[node] < 0)
+			{
+				for(int i = from[node]; i < to[node]; i++)
+				{
+					double sqDist = 0.0;
+					for(int a = 0; a < dimension; a++)
+					{
+						double diff = query[a] - points[i * dimension + a];
+						sqDist += diff * diff;
+					}
+
+					sum += Math.exp(- sqDist * inv);
+				}
+			} else
+			{
+				stack[top++] = right[node];
+				stack[top++] = left[node];
+			}
+		}
+
+		return peak * sum / size;
+	}
+
+	public double tolerance()
+	{
+		return tolerance;
+	}
+
+	/**
+	 * The number of points in the sample.
+	 */
+	public int size()
+	{
+		return size;
 	}
 
 	@Override
 	public int dimension()
 	{
-		return mvns.get(0).dimension();
+		return dimension;
 	}
 }
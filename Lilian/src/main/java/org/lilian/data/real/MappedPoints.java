@@ -0,0 +1,138 @@
+package org.lilian.data.real;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A dataset of points stored in a binary file, which is read through memory
+ * mapping. This allows iteration over datasets that do not fit in memory.
+ *
+ * The file contains only the coordinates of the points as big-endian doubles,
+ * one point after the other. Files larger than 2GB are mapped in segments.
+ *
+ * @author Peter
+ */
+public class MappedPoints implements Iterable<Point>
+{
+	// * The maximum size of a single mapped segment, in bytes
+	private static final long SEGMENT_BYTES = Integer.MAX_VALUE;
+
+	private File file;
+	private int dimension;
+	private long size;
+
+	public MappedPoints(File file, int dimension)
+	{
+		this.file = file;
+		this.dimension = dimension;
+
+		long bytes = file.length();
+		if(bytes % (8 * dimension) != 0)
+			throw new IllegalArgumentException("File size ("+bytes+") is not a multiple of the size of a point of dimension "+dimension+".");
+
+		this.size = bytes / (8 * dimension);
+	}
+
+	/**
+	 * The number of points in the file.
+	 */
+	public long size()
+	{
+		return size;
+	}
+
+	public int dimension()
+	{
+		return dimension;
+	}
+
+	@Override
+	public Iterator<Point> iterator()
+	{
+		return new MappedIterator();
+	}
+
+	private class MappedIterator implements Iterator<Point>
+	{
+		private long pointsPerSegment = SEGMENT_BYTES / (8 * dimension);
+		private long next = 0;
+		private DoubleBuffer buffer = null;
+
+		@Override
+		public boolean hasNext()
+		{
+			return next < size;
+		}
+
+		@Override
+		public Point next()
+		{
+			if(! hasNext())
+				throw new NoSuchElementException();
+
+			if(buffer == null || ! buffer.hasRemaining())
+				map(next);
+
+			double[] values = new double[dimension];
+			buffer.get(values);
+			next++;
+
+			return Point.fromRaw(values);
+		}
+
+		private void map(long from)
+		{
+			long points = Math.min(pointsPerSegment, size - from);
+
+			RandomAccessFile raf = null;
+			try {
+				raf = new RandomAccessFile(file, "r");
+				MappedByteBuffer bytes = raf.getChannel().map(
+						FileChannel.MapMode.READ_ONLY,
+						from * 8 * dimension, points * 8 * dimension);
+				buffer = bytes.asDoubleBuffer();
+			} catch(IOException e)
+			{
+				throw new RuntimeException(e);
+			} finally
+			{
+				// * the mapping remains valid after the file is closed
+				if(raf != null)
+					try { raf.close(); } catch(IOException e) {}
+			}
+		}
+
+		@Override
+		public void remove()
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * Writes the given points to a file in the format read by this class.
+	 */
+	public static void write(Iterable<Point> points, File file)
+		throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			for(Point point : points)
+				for(double value : point.getBackingData())
+					out.writeDouble(value);
+		} finally
+		{
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package org.lilian.data.real.clustering;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import org.lilian.Global;
+import org.lilian.data.real.classification.Classification;
+import org.lilian.data.real.classification.Classified;
+import org.lilian.util.Parallel;
+import org.lilian.util.distance.Distance;
+import org.lilian.util.distance.PackedDistanceTable;
+
+/**
+ * K-medioids clustering of large datasets by CLARA (Kaufman and Rousseeuw):
+ * the medioids are found by {@link FasterPAM} on a number of random samples
+ * of the data, and the medioids with the lowest total deviation over the whole
+ * dataset are kept.
+ *
+ * Only the distances within each sample and the distances from each point to
+ * the medioids are ever computed.
+ *
+ * @author Peter
+ */
+public class Clara<P>
+{
+	private List<P> data;
+	private Distance<P> distance;
+	private int k;
+
+	private int threads = Parallel.threads();
+
+	private List<Integer> medioids = null;
+	private int[] assignments = null;
+	private double cost = Double.POSITIVE_INFINITY;
+
+	public Clara(List<P> data, Distance<P> distance, int numClusters)
+	{
+		this.data = data;
+		this.distance = distance;
+		this.k = numClusters;
+
+		if(k > data.size())
+			throw new IllegalArgumentException("Number of clusters ("+k+") cannot be larger than the number of points ("+data.size()+").");
+	}
+
+	public void setThreads(int threads)
+	{
+		this.threads = threads;
+	}
+
+	/**
+	 * Runs FasterPAM on the given number of samples, and keeps the best
+	 * medioids found so far.
+	 *
+	 * @param samples The number of samples.
+	 * @param sampleSize The number of points per sample. The original CLARA
+	 * 	uses 40 + 2k.
+	 * @param maxPasses The maximum number of passes of FasterPAM per sample.
+	 */
+	public void run(int samples, int sampleSize, int maxPasses)
+	{
+		run(samples, sampleSize, maxPasses, Global.random);
+	}
+
+	public void run(int samples, int sampleSize, int maxPasses, Random random)
+	{
+		int n = data.size();
+		sampleSize = Math.max(k, Math.min(sampleSize, n));
+
+		for(int s = 0; s < samples; s++)
+		{
+			// * Draw a sample, always including the current best medioids
+			List<Integer> indices = sample(sampleSize, random);
+			List<P> sample = new ArrayList<P>(indices.size());
+			for(int index : indices)
+				sample.add(data.get(index));
+
+			FasterPAM<P> pam = new FasterPAM<P>(
+					sample,
+					new PackedDistanceTable<P>(sample, distance, threads),
+					k, random);
+			pam.setThreads(threads);
+			pam.iterate(maxPasses);
+
+			List<Integer> candidate = new ArrayList<Integer>(k);
+			for(int medioid : pam.medioids())
+				candidate.add(indices.get(medioid));
+
+			int[] candidateAssignments = new int[n];
+			double candidateCost = assign(candidate, candidateAssignments);
+
+			if(candidateCost < cost)
+			{
+				medioids = candidate;
+				assignments = candidateAssignments;
+				cost = candidateCost;
+			}
+		}
+	}
+
+	private List<Integer> sample(int size, Random random)
+	{
+		int n = data.size();
+
+		List<Integer> sample = new ArrayList<Integer>(size);
+		boolean[] chosen = new boolean[n];
+
+		if(medioids != null)
+			for(int medioid : medioids)
+			{
+				sample.add(medioid);
+				chosen[medioid] = true;
+			}
+
+		while(sample.size() < size)
+		{
+			int draw = random.nextInt(n);
+			if(! chosen[draw])
+			{
+				chosen[draw] = true;
+				sample.add(draw);
+			}
+		}
+
+		return sample;
+	}
+
+	/**
+	 * Assigns every point to its nearest medioid, and returns the total
+	 * deviation.
+	 */
+	private double assign(final List<Integer> medioids, final int[] assignments)
+	{
+		int n = data.size();
+		int[] bounds = Parallel.split(n, threads * 4);
+
+		List<Callable<Double>> tasks = new ArrayList<Callable<Double>>();
+		for(int t = 0; t < bounds.length - 1; t++)
+		{
+			final int from = bounds[t], to = bounds[t + 1];
+			tasks.add(new Callable<Double>()
+			{
+				@Override
+				public Double call()
+				{
+					double sum = 0.0;
+					for(int i = from; i < to; i++)
+					{
+						double min = Double.POSITIVE_INFINITY;
+						for(int m = 0; m < medioids.size(); m++)
+						{
+							int medioid = medioids.get(m);
+							double d = medioid == i ? 0.0 :
+								distance.distance(data.get(i), data.get(medioid));
+							if(d < min)
+							{
+								min = d;
+								assignments[i] = m;
+							}
+						}
+						sum += min;
+					}
+					return sum;
+				}
+			});
+		}
+
+		double sum = 0.0;
+		for(double partial : Parallel.run(tasks, threads))
+			sum += partial;
+
+		return sum;
+	}
+
+	/**
+	 * The total deviation of the best medioids over the whole dataset.
+	 */
+	public double cost()
+	{
+		return cost;
+	}
+
+	/**
+	 * The indices of the best medioids found so far.
+	 */
+	public List<Integer> medioids()
+	{
+		return medioids;
+	}
+
+	/**
+	 * The cluster of each point (the index of its medioid in medioids()).
+	 */
+	public int[] assignments()
+	{
+		return assignments;
+	}
+
+	public Classified<P> clustered()
+	{
+		if(assignments == null)
+			throw new IllegalStateException("Clara has not been run yet.");
+
+		List<Integer> classes = new ArrayList<Integer>(data.size());
+		for(int a : assignments)
+			classes.add(a);
+
+		return Classification.combine(data, classes);
+	}
+}
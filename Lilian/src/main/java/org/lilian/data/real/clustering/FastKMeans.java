@@ -0,0 +1,461 @@
+package org.lilian.data.real.clustering;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.lilian.Global;
+import org.lilian.data.real.Point;
+import org.lilian.data.real.classification.Classification;
+import org.lilian.data.real.classification.Classified;
+import org.lilian.util.Parallel;
+
+/**
+ * K-means clustering for large datasets.
+ *
+ * The data is stored in a single flat array. The initial means are chosen by
+ * k-means++ seeding. Each iteration uses Hamerly's bounds: every point keeps
+ * an upper bound on the distance to its own mean and a lower bound on the
+ * distance to any other mean. Based on the triangle inequality, most points
+ * can keep their assignment without computing any distances once the means
+ * start to settle. The assignment step and the computation of the new means
+ * are divided over a number of threads.
+ *
+ * Hamerly's variant (rather than Elkan's) is used, because it needs only two
+ * bounds per point instead of one per cluster, which matters for millions of
+ * points and hundreds of clusters.
+ *
+ * @author Peter
+ */
+public class FastKMeans
+{
+	// * The number of points per task. This is fixed so that the order of the
+	//   floating point sums does not depend on the number of threads.
+	private static final int CHUNK = 4096;
+
+	private double[] data;
+	private int n, dim, k;
+	private List<Point> points = null;
+
+	private int threads;
+	private double tolerance = 0.0;
+
+	private double[] means;
+	private int[] assignments;
+
+	// * Hamerly's bounds
+	private double[] upper, lower;
+	// * half the distance from each mean to the nearest other mean
+	private double[] separation;
+
+	private int iterations = 0, changed = -1;
+	private boolean converged = false;
+
+	/**
+	 * Clusters a list of points. The means are seeded with Global.random.
+	 */
+	public FastKMeans(List<Point> data, int numClusters)
+	{
+		this(data, numClusters, Parallel.threads());
+	}
+
+	/**
+	 * Clusters a list of points. The means are seeded with Global.random.
+	 *
+	 * @param threads The number of threads to use, for the seeding and for
+	 * 	each iteration.
+	 */
+	public FastKMeans(List<Point> data, int numClusters, int threads)
+	{
+		this(flatten(data), data.get(0).dimensionality(), numClusters, Global.random, threads);
+		this.points = data;
+	}
+
+	/**
+	 * @param data The data, point i at i * dimension. The array is used
+	 * 	directly, not copied.
+	 * @param dimension
+	 * @param numClusters
+	 * @param random The source of randomness for the seeding.
+	 */
+	public FastKMeans(double[] data, int dimension, int numClusters, Random random)
+	{
+		this(data, dimension, numClusters, random, Parallel.threads());
+	}
+
+	/**
+	 * @param data The data, point i at i * dimension. The array is used
+	 * 	directly, not copied.
+	 * @param dimension
+	 * @param numClusters
+	 * @param random The source of randomness for the seeding.
+	 * @param threads The number of threads to use, for the seeding and for
+	 * 	each iteration.
+	 */
+	public FastKMeans(double[] data, int dimension, int numClusters, Random random, int threads)
+	{
+		this.data = data;
+		this.dim = dimension;
+		this.n = data.length / dimension;
+		this.k = numClusters;
+		this.threads = threads;
+
+		if(k > n)
+			throw new IllegalArgumentException("Number of clusters ("+k+") cannot be larger than the number of points ("+n+").");
+
+		assignments = new int[n];
+		upper = new double[n];
+		lower = new double[n];
+		separation = new double[k];
+
+		seed(random);
+	}
+
+	/**
+	 * k-means++ seeding: each next mean is a data point chosen with probability
+	 * proportional to its squared distance to the nearest mean chosen so far.
+	 */
+	private void seed(Random random)
+	{
+		means = new double[k * dim];
+
+		final double[] sqDists = new double[n];
+		Arrays.fill(sqDists, Double.POSITIVE_INFINITY);
+
+		int first = random.nextInt(n);
+		System.arraycopy(data, first * dim, means, 0, dim);
+
+		int[] bounds = Parallel.split(n, (n + CHUNK - 1) / CHUNK);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		try {
+			for(int c = 1; c <= k; c++)
+			{
+				// * update the distances to the nearest chosen mean
+				final int last = c - 1;
+				List<Callable<Double>> tasks = new ArrayList<Callable<Double>>();
+				for(int b = 0; b < bounds.length - 1; b++)
+				{
+					final int from = bounds[b], to = bounds[b + 1];
+					tasks.add(new Callable<Double>()
+					{
+						@Override
+						public Double call()
+						{
+							double total = 0.0;
+							for(int i = from; i < to; i++)
+							{
+								double d = sqDistance(data, i, means, last);
+								if(d < sqDists[i])
+								{
+									sqDists[i] = d;
+									assignments[i] = last;
+								}
+								total += sqDists[i];
+							}
+							return total;
+						}
+					});
+				}
+
+				double total = 0.0;
+				for(double partial : Parallel.run(tasks, executor))
+					total += partial;
+
+				if(c == k)
+					break;
+
+				int chosen;
+				if(total <= 0.0)
+					// * all points coincide with a mean
+					chosen = random.nextInt(n);
+				else
+				{
+					double draw = random.nextDouble() * total, sum = 0.0;
+					chosen = n - 1;
+					for(int i = 0; i < n; i++)
+					{
+						sum += sqDists[i];
+						if(sum >= draw && sqDists[i] > 0.0)
+						{
+							chosen = i;
+							break;
+						}
+					}
+				}
+
+				System.arraycopy(data, chosen * dim, means, c * dim, dim);
+			}
+		} finally
+		{
+			executor.shutdown();
+		}
+
+		// * The seeding has assigned each point to its nearest mean, with the
+		//   exact distance as its upper bound. The lower bounds are unknown.
+		for(int i = 0; i < n; i++)
+		{
+			upper[i] = Math.sqrt(sqDists[i]);
+			lower[i] = 0.0;
+		}
+	}
+
+	/**
+	 * The algorithm is considered converged when no mean moves more than
+	 * this distance in an iteration. The default is 0, which means that the 
+	 * algorithm runs until the assignments no longer change.
+	 */
+	public void setTolerance(double tolerance)
+	{
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Runs the algorithm until it converges, or for the given maximum number of
+	 * iterations.
+	 *
+	 * @return The number of iterations performed.
+	 */
+	public int iterate(int maxIterations)
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			int i = 0;
+			while(i < maxIterations && ! converged)
+			{
+				step(executor);
+				i++;
+			}
+
+			return i;
+		} finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Performs one assignment step and one update step.
+	 */
+	private void step(ExecutorService executor)
+	{
+		// * The separation of the means
+		for(int c = 0; c < k; c++)
+		{
+			double min = Double.POSITIVE_INFINITY;
+			for(int o = 0; o < k; o++)
+				if(o != c)
+					min = Math.min(min, sqDistance(means, c, means, o));
+			separation[c] = 0.5 * Math.sqrt(min);
+		}
+
+		final int[] bounds = Parallel.split(n, (n + CHUNK - 1) / CHUNK);
+
+		// * Assignment, and the sums for the new means, per chunk
+		List<Callable<double[]>> tasks = new ArrayList<Callable<double[]>>();
+		for(int c = 0; c < bounds.length - 1; c++)
+		{
+			final int from = bounds[c], to = bounds[c + 1];
+			tasks.add(new Callable<double[]>()
+			{
+				@Override
+				public double[] call()
+				{
+					return assign(from, to);
+				}
+			});
+		}
+
+		List<double[]> partials = Parallel.run(tasks, executor);
+
+		// * Update the means. The partial sums are merged in order, so that the
+		//   result is deterministic.
+		double[] sums = new double[k * dim + k + 1];
+		for(double[] partial : partials)
+			for(int i = 0; i < sums.length; i++)
+				sums[i] += partial[i];
+
+		changed = (int) sums[k * dim + k];
+
+		double[] drift = new double[k];
+		double maxDrift = 0.0;
+		for(int c = 0; c < k; c++)
+		{
+			double count = sums[k * dim + c];
+			if(count == 0.0)
+				continue; // * an empty cluster keeps its mean
+
+			double sq = 0.0;
+			for(int a = 0; a < dim; a++)
+			{
+				double mean = sums[c * dim + a] / count;
+				double diff = mean - means[c * dim + a];
+				sq += diff * diff;
+				means[c * dim + a] = mean;
+			}
+
+			drift[c] = Math.sqrt(sq);
+			maxDrift = Math.max(maxDrift, drift[c]);
+		}
+
+		// * Update the bounds with the distances moved by the means
+		for(int i = 0; i < n; i++)
+		{
+			upper[i] += drift[assignments[i]];
+			lower[i] -= maxDrift;
+		}
+
+		iterations++;
+		converged = maxDrift <= tolerance;
+	}
+
+	/**
+	 * Assigns the points in the given range and returns the sums of the
+	 * points per cluster (k * dim values), the counts per cluster (k values)
+	 * and the number of points that changed cluster.
+	 */
+	private double[] assign(int from, int to)
+	{
+		double[] sums = new double[k * dim + k + 1];
+		int changed = 0;
+
+		for(int i = from; i < to; i++)
+		{
+			int current = assignments[i];
+			double bound = Math.max(separation[current], lower[i]);
+
+			if(upper[i] > bound)
+			{
+				// * tighten the upper bound, and test again
+				upper[i] = Math.sqrt(sqDistance(data, i, means, current));
+
+				if(upper[i] > bound)
+				{
+					// * compute all distances
+					double best = Double.POSITIVE_INFINITY, second = Double.POSITIVE_INFINITY;
+					int bestCluster = current;
+					for(int c = 0; c < k; c++)
+					{
+						double d = sqDistance(data, i, means, c);
+						if(d < best)
+						{
+							second = best;
+							best = d;
+							bestCluster = c;
+						} else if(d < second)
+							second = d;
+					}
+
+					if(bestCluster != current)
+					{
+						assignments[i] = bestCluster;
+						changed++;
+					}
+
+					upper[i] = Math.sqrt(best);
+					lower[i] = Math.sqrt(second);
+				}
+			}
+
+			int c = assignments[i];
+			for(int a = 0; a < dim; a++)
+				sums[c * dim + a] += data[i * dim + a];
+			sums[k * dim + c]++;
+		}
+
+		sums[k * dim + k] = changed;
+
+		return sums;
+	}
+
+	private double sqDistance(double[] x, int i, double[] y, int j)
+	{
+		double sum = 0.0;
+		for(int a = 0; a < dim; a++)
+		{
+			double diff = x[i * dim + a] - y[j * dim + a];
+			sum += diff * diff;
+		}
+
+		return sum;
+	}
+
+	/**
+	 * The number of iterations performed so far.
+	 */
+	public int iterations()
+	{
+		return iterations;
+	}
+
+	/**
+	 * The number of points that changed cluster in the last iteration.
+	 */
+	public int changed()
+	{
+		return changed;
+	}
+
+	/**
+	 * Whether the last iteration met the convergence criterion.
+	 */
+	public boolean converged()
+	{
+		return converged;
+	}
+
+	/**
+	 * The cluster of each point.
+	 */
+	public int[] assignments()
+	{
+		return assignments;
+	}
+
+	/**
+	 * The means, mean c at c * dimension.
+	 */
+	public double[] centers()
+	{
+		return means;
+	}
+
+	public List<Point> means()
+	{
+		List<Point> result = new ArrayList<Point>(k);
+		for(int c = 0; c < k; c++)
+			result.add(Point.fromRaw(Arrays.copyOfRange(means, c * dim, (c + 1) * dim)));
+
+		return result;
+	}
+
+	/**
+	 * The data with the current assignments as classes. Only available if
+	 * this object was created from a list of points.
+	 */
+	public Classified<Point> clustered()
+	{
+		if(points == null)
+			throw new IllegalStateException("The data was not given as a list of points.");
+
+		List<Integer> classes = new ArrayList<Integer>(n);
+		for(int i = 0; i < n; i++)
+			classes.add(assignments[i]);
+
+		return Classification.combine(points, classes);
+	}
+
+	private static double[] flatten(List<Point> data)
+	{
+		int dim = data.get(0).dimensionality();
+		double[] flat = new double[data.size() * dim];
+		for(int i = 0; i < data.size(); i++)
+			System.arraycopy(data.get(i).getBackingData(), 0, flat, i * dim, dim);
+
+		return flat;
+	}
+}
@@ -0,0 +1,377 @@
+package org.lilian.data.real.clustering;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.lilian.Global;
+import org.lilian.data.real.classification.Classification;
+import org.lilian.data.real.classification.Classified;
+import org.lilian.util.Parallel;
+import org.lilian.util.distance.CachedDistanceTable;
+import org.lilian.util.distance.Distance;
+import org.lilian.util.distance.DistanceTable;
+import org.lilian.util.distance.PackedDistanceTable;
+
+/**
+ * K-medioids clustering by the FasterPAM algorithm (Schubert and Rousseeuw,
+ * 2021).
+ *
+ * Unlike {@link KMedioids}, this does not require a full distance matrix.
+ * Every point keeps the distance to its nearest and second nearest medioid,
+ * which allows the change in total deviation for swapping a medioid with a
+ * candidate point to be computed in a single pass over the data, for all
+ * medioids at once.
+ *
+ * Candidates are evaluated in fixed-size batches on multiple threads. The
+ * best improving swap in each batch is performed immediately, and the search
+ * continues after that candidate. The algorithm stops when no candidate
+ * improves the clustering. Since the batches do not depend on the number of
+ * threads, neither does the result.
+ *
+ * The distances are read from a {@link DistanceTable}. By default, they are
+ * precomputed in a packed float table if there are few enough points, and
+ * computed on demand through a bounded cache otherwise.
+ *
+ * @author Peter
+ */
+public class FasterPAM<P>
+{
+	/**
+	 * The largest number of distances that is precomputed by default.
+	 */
+	public static long PACKED_LIMIT = 50000000L;
+	/**
+	 * The size of the distance cache used by default if the distances are not
+	 * precomputed.
+	 */
+	public static int CACHE_SIZE = 10000000;
+
+	// * The number of candidates evaluated in parallel
+	private static final int BATCH = 64;
+
+	private List<P> data;
+	private DistanceTable distances;
+	private int n, k;
+
+	private int threads = Parallel.threads();
+
+	// * The indices of the medioids, and whether each point is a medioid
+	private int[] medioids;
+	private boolean[] isMedioid;
+
+	// * For each point, the nearest and second nearest medioid (as indices
+	//   into the medioids array) and the distances to them
+	private int[] nearest, second;
+	private double[] dNearest, dSecond;
+
+	// * The position of the next candidate, and the number of positions
+	//   scanned since the last swap
+	private int position = 0, sinceSwap = 0;
+	private int swaps = 0;
+
+	public FasterPAM(List<P> data, Distance<P> distance, int numClusters)
+	{
+		this(data, table(data, distance), numClusters, Global.random);
+	}
+
+	/**
+	 * @param data
+	 * @param distances The distances between the elements of the data.
+	 * @param numClusters
+	 * @param random Used to choose the initial medioids.
+	 */
+	public FasterPAM(List<P> data, DistanceTable distances, int numClusters, Random random)
+	{
+		this.data = data;
+		this.distances = distances;
+		this.n = data.size();
+		this.k = numClusters;
+
+		if(k > n)
+			throw new IllegalArgumentException("Number of clusters ("+k+") cannot be larger than the number of points ("+n+").");
+
+		medioids = new int[k];
+		isMedioid = new boolean[n];
+
+		// * random initial medioids
+		int[] order = new int[n];
+		for(int i = 0; i < n; i++)
+			order[i] = i;
+		for(int c = 0; c < k; c++)
+		{
+			int draw = c + random.nextInt(n - c);
+			int t = order[c];
+			order[c] = order[draw];
+			order[draw] = t;
+
+			medioids[c] = order[c];
+			isMedioid[order[c]] = true;
+		}
+
+		nearest = new int[n];
+		second = new int[n];
+		dNearest = new double[n];
+		dSecond = new double[n];
+
+		for(int i = 0; i < n; i++)
+			findNearest(i);
+	}
+
+	/**
+	 * The default distance table for the given data.
+	 */
+	public static <P> DistanceTable table(List<P> data, Distance<P> distance)
+	{
+		long n = data.size();
+		if(n * (n - 1) / 2 <= PACKED_LIMIT)
+			return new PackedDistanceTable<P>(data, distance);
+
+		return new CachedDistanceTable<P>(data, distance, CACHE_SIZE);
+	}
+
+	public void setThreads(int threads)
+	{
+		this.threads = threads;
+	}
+
+	/**
+	 * Runs the algorithm until no swap improves the clustering, or until the
+	 * given number of passes over the data has been made.
+	 *
+	 * @return Whether the algorithm has converged.
+	 */
+	public boolean iterate(int maxPasses)
+	{
+		if(k == n)
+			return true;
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			long evaluated = 0, max = (long) maxPasses * n;
+
+			while(sinceSwap < n && evaluated < max)
+			{
+				final double[] removal = removalLoss();
+
+				// * Collect a batch of candidates
+				List<Callable<Swap>> tasks = new ArrayList<Callable<Swap>>(BATCH);
+				int pos = position, scanned = 0;
+				while(tasks.size() < BATCH && sinceSwap + scanned < n)
+				{
+					if(! isMedioid[pos])
+					{
+						final int candidate = pos;
+						tasks.add(new Callable<Swap>()
+						{
+							@Override
+							public Swap call()
+							{
+								return evaluate(candidate, removal);
+							}
+						});
+					}
+
+					pos = (pos + 1) % n;
+					scanned++;
+				}
+
+				Swap best = null;
+				for(Swap swap : Parallel.run(tasks, executor))
+					if(best == null || swap.delta < best.delta)
+						best = swap;
+
+				evaluated += scanned;
+
+				if(best != null && best.delta < 0.0)
+				{
+					swap(best.medioid, best.candidate);
+					position = (best.candidate + 1) % n;
+					sinceSwap = 0;
+				} else
+				{
+					position = pos;
+					sinceSwap += scanned;
+				}
+			}
+		} finally
+		{
+			executor.shutdown();
+		}
+
+		return sinceSwap >= n;
+	}
+
+	/**
+	 * The increase in total deviation for removing each medioid (and moving
+	 * its points to their second nearest medioid).
+	 */
+	private double[] removalLoss()
+	{
+		double[] loss = new double[k];
+		if(k > 1)
+			for(int i = 0; i < n; i++)
+				loss[nearest[i]] += dSecond[i] - dNearest[i];
+
+		return loss;
+	}
+
+	/**
+	 * Computes the change in total deviation for replacing each medioid by the
+	 * given candidate, and returns the best.
+	 */
+	private Swap evaluate(int candidate, double[] removal)
+	{
+		double[] delta = Arrays.copyOf(removal, k);
+
+		double shared = 0.0;
+		for(int i = 0; i < n; i++)
+		{
+			double d = distances.distance(i, candidate);
+
+			if(k == 1)
+			{
+				// * every point moves to the candidate
+				shared += d - dNearest[i];
+			} else if(d < dNearest[i])
+			{
+				// * i moves to the candidate, whichever medioid is removed
+				shared += d - dNearest[i];
+				delta[nearest[i]] += dNearest[i] - dSecond[i];
+			} else if(d < dSecond[i])
+			{
+				// * if its nearest medioid is removed, i moves to the candidate
+				//   instead of to its second nearest
+				delta[nearest[i]] += d - dSecond[i];
+			}
+		}
+
+		int best = 0;
+		for(int m = 1; m < k; m++)
+			if(delta[m] < delta[best])
+				best = m;
+
+		return new Swap(candidate, best, delta[best] + shared);
+	}
+
+	private void swap(int m, int candidate)
+	{
+		isMedioid[medioids[m]] = false;
+		medioids[m] = candidate;
+		isMedioid[candidate] = true;
+		swaps++;
+
+		for(int i = 0; i < n; i++)
+		{
+			if(nearest[i] == m || second[i] == m)
+			{
+				findNearest(i);
+				continue;
+			}
+
+			double d = distances.distance(i, candidate);
+			if(d < dNearest[i])
+			{
+				second[i] = nearest[i];
+				dSecond[i] = dNearest[i];
+				nearest[i] = m;
+				dNearest[i] = d;
+			} else if(d < dSecond[i])
+			{
+				second[i] = m;
+				dSecond[i] = d;
+			}
+		}
+	}
+
+	private void findNearest(int i)
+	{
+		nearest[i] = -1;
+		second[i] = -1;
+		dNearest[i] = Double.POSITIVE_INFINITY;
+		dSecond[i] = Double.POSITIVE_INFINITY;
+
+		for(int m = 0; m < k; m++)
+		{
+			double d = distances.distance(i, medioids[m]);
+			if(d < dNearest[i])
+			{
+				second[i] = nearest[i];
+				dSecond[i] = dNearest[i];
+				nearest[i] = m;
+				dNearest[i] = d;
+			} else if(d < dSecond[i])
+			{
+				second[i] = m;
+				dSecond[i] = d;
+			}
+		}
+	}
+
+	private static class Swap
+	{
+		int candidate, medioid;
+		double delta;
+
+		public Swap(int candidate, int medioid, double delta)
+		{
+			this.candidate = candidate;
+			this.medioid = medioid;
+			this.delta = delta;
+		}
+	}
+
+	/**
+	 * The total deviation: the sum of the distances of all points to their
+	 * nearest medioid.
+	 */
+	public double cost()
+	{
+		double sum = 0.0;
+		for(int i = 0; i < n; i++)
+			sum += dNearest[i];
+
+		return sum;
+	}
+
+	/**
+	 * The number of swaps performed so far.
+	 */
+	public int swaps()
+	{
+		return swaps;
+	}
+
+	/**
+	 * The indices of the medioids.
+	 */
+	public List<Integer> medioids()
+	{
+		List<Integer> result = new ArrayList<Integer>(k);
+		for(int medioid : medioids)
+			result.add(medioid);
+
+		return result;
+	}
+
+	/**
+	 * The cluster of each point (the index of its medioid in medioids()).
+	 */
+	public int[] assignments()
+	{
+		return Arrays.copyOf(nearest, n);
+	}
+
+	public Classified<P> clustered()
+	{
+		List<Integer> classes = new ArrayList<Integer>(n);
+		for(int i = 0; i < n; i++)
+			classes.add(nearest[i]);
+
+		return Classification.combine(data, classes);
+	}
+}
@@ -74,8 +74,6 @@ public class KMeans
 			
 			data.setClass(i, bestCluster);
 		}		
-		
-		System.out.println(data.classes());
 	}
 	
 	public Classified<Point> clustered()
@@ -88,9 +86,6 @@ public class KMeans
 	 */
 	public void update()
 	{
-		System.out.println(means);
-
-		
 		List<RealVector> means = new ArrayList<RealVector>(numClusters);
 		BasicFrequencyModel<Integer> fm = new BasicFrequencyModel<Integer>();
 		
@@ -32,6 +32,7 @@ import org.lilian.data.real.Rotation;
 import org.lilian.data.real.Similitude;
 import org.lilian.util.Functions;
 import org.lilian.util.MatrixTools;
+import org.lilian.util.Parallel;
 import org.lilian.util.Series;
 
 import weka.core.SystemInfo;
@@ -39,7 +40,7 @@ import weka.core.SystemInfo;
 public class EM
 {
 	public static final double SPLIT_VAR = 0.01;
-	private static final double S_APPROX = 0.01;
+	static final double S_APPROX = 0.01;
 	
 	private List<Point> data, dataSub;
 	private int sub;
@@ -57,6 +58,9 @@ public class EM
 
 	private static MVN mvn = new MVN(2);
 	
+	// * The number of threads used in the expectation step
+	private int threads = Parallel.threads();
+	
 	public EM(List<Point> data, int sub, IFS<Similitude> initial, int maxDepth, boolean centerPost)
 	{
 		this.data = data;
@@ -135,9 +139,28 @@ public class EM
 			throw new IllegalStateException("All components null, even with approximate expectation.");
 	}
 
+	/**
+	 * Performs the expectation step with {@link EStep}, on the number of 
+	 * threads set by {@link #setThreads(int)}.
+	 */
 	public void expectation(boolean approx)
 	{
-		expectation(depths, model, post, dataSub, z, zk, p, pk, t, approx);
+		EStep eStep = new EStep(model, depths);
+		eStep.compute(post.inverse().map(dataSub), approx, threads);
+		
+		p = eStep.p();
+		pk = eStep.pk();
+		z = eStep.z(approx);
+		zk = eStep.zk(approx);
+		t = eStep.t();
+	}
+	
+	/**
+	 * Sets the number of threads used in the expectation step.
+	 */
+	public void setThreads(int threads)
+	{
+		this.threads = threads;
 	}
 
 	public boolean maximization(double depthIts, double modelIts, double postIts)
@@ -0,0 +1,380 @@
+package org.lilian.data.real.fractal;
+
+import static java.lang.Math.E;
+import static java.lang.Math.log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.math.linear.Array2DRowRealMatrix;
+import org.apache.commons.math.linear.ArrayRealVector;
+import org.apache.commons.math.linear.RealMatrix;
+import org.apache.commons.math.linear.RealVector;
+import org.lilian.data.real.Point;
+import org.lilian.data.real.Similitude;
+import org.lilian.util.Functions;
+import org.lilian.util.Parallel;
+
+/**
+ * The expectation step of {@link EM}, computed on flat arrays.
+ *
+ * The tree of codes up to the maximum depth is enumerated once, into arrays
+ * holding the scale, translation and log prior of the composed similitude for
+ * each code. Codes are indexed as in {@link EM#indexOf(List, int)}, so that
+ * the parent of code (c_0, c_1, ..., c_n) (the code (c_1, ..., c_n)) always
+ * has a lower index. The responsibilities are then computed for chunks of the
+ * data in parallel.
+ *
+ * The results are the same (up to floating point error) as those of
+ * {@link EM#expectation(List, IFS, Similitude, List, RealVector, List, RealMatrix, List, RealMatrix, boolean)}.
+ *
+ * @author Peter
+ */
+public class EStep
+{
+	private int k, maxDepth, dimension;
+	// * The number of codes up to maxDepth and up to maxDepth - 1
+	private int m, mk;
+
+	// * The properties of the similitude for each code
+	private double[] scales;
+	private double[] translations; // * code j at j * dimension
+	private double[] logPriors;
+	// * the first codon of each code and the index of the rest of the code
+	//   (-1 for the empty code)
+	private int[] firsts, parents;
+
+	// * results
+	private double[][] p;
+	private double[][][] pk;
+
+	/**
+	 * @param model
+	 * @param depths The log prior probabilities of the depths (base e).
+	 */
+	public EStep(IFS<Similitude> model, List<Double> depths)
+	{
+		this.k = model.size();
+		this.maxDepth = depths.size() - 1;
+		this.dimension = model.dimension();
+
+		this.m = numCodes(k, maxDepth);
+		this.mk = numCodes(k, maxDepth - 1);
+
+		scales = new double[m];
+		translations = new double[m * dimension];
+		logPriors = new double[m];
+		firsts = new int[m];
+		parents = new int[m];
+
+		// * The empty code
+		scales[0] = 1.0;
+		logPriors[0] = 0.0;
+		firsts[0] = -1;
+		parents[0] = -1;
+
+		double[] logProbs = new double[k];
+		double[][] rotations = new double[k][];
+		double[][] compTranslations = new double[k][];
+		for(int c = 0; c < k; c++)
+		{
+			Similitude comp = model.get(c);
+			logProbs[c] = log(model.probability(c));
+			rotations[c] = flat(comp.rotation());
+			compTranslations[c] = comp.getTranslation().getData();
+		}
+
+		int d = dimension;
+		for(int length = 1; length <= maxDepth; length++)
+		{
+			int base = numCodes(k, length - 1), parentBase = numCodes(k, length - 2);
+
+			for(int offset = 0; offset < ipow(k, length); offset++)
+			{
+				int j = base + offset,
+				    first = offset % k,
+				    parent = parentBase + offset / k;
+
+				firsts[j] = first;
+				parents[j] = parent;
+
+				double s = model.get(first).scalar();
+				scales[j] = scales[parent] * s;
+				logPriors[j] = logProbs[first] + logPriors[parent];
+
+				// * t_j = s R t_parent + t_first
+				double[] rot = rotations[first];
+				for(int row = 0; row < d; row++)
+				{
+					double sum = 0.0;
+					for(int col = 0; col < d; col++)
+						sum += rot[row * d + col] * translations[parent * d + col];
+					translations[j * d + row] = s * sum + compTranslations[first][row];
+				}
+			}
+		}
+
+		// * add the depth priors
+		for(int j = 0; j < m; j++)
+			logPriors[j] += depths.get(length(j));
+	}
+
+	/**
+	 * Computes the (normalized, log) responsibilities for the given data.
+	 *
+	 * @param data The data, already mapped by the inverse of the post
+	 * 	transformation.
+	 * @param threads The number of threads to use.
+	 */
+	public void compute(final List<Point> data, final boolean approx, int threads)
+	{
+		final int n = data.size();
+
+		p = new double[n][];
+		pk = new double[k][n][];
+
+		int chunks = Math.min(n, threads * 4);
+		final int[] bounds = Parallel.split(n, Math.max(1, chunks));
+
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(chunks);
+		for(int c = 0; c < bounds.length - 1; c++)
+		{
+			final int from = bounds[c], to = bounds[c + 1];
+			tasks.add(new Callable<Object>()
+			{
+				@Override
+				public Object call()
+				{
+					for(int i = from; i < to; i++)
+						computeRow(i, data.get(i).getBackingData(), approx);
+					return null;
+				}
+			});
+		}
+
+		Parallel.run(tasks, threads);
+	}
+
+	private void computeRow(int i, double[] x, boolean approx)
+	{
+		int d = dimension;
+		double[] row = new double[m];
+		double[][] rowsK = new double[k][];
+		for(int c = 0; c < k; c++)
+			rowsK[c] = new double[mk];
+
+		for(int j = 0; j < m; j++)
+		{
+			// * Note that we are omitting any factors independent of the
+			//   parameters, since they will fall out after normalization anyway
+			double s0 = approx ? EM.S_APPROX : scales[j];
+
+			double sqDist = 0.0;
+			for(int a = 0; a < d; a++)
+			{
+				double diff = x[a] - translations[j * d + a];
+				sqDist += diff * diff;
+			}
+
+			row[j] = logPriors[j] - d * log(s0) - sqDist / (2.0 * s0 * s0);
+		}
+
+		// * normalize
+		double sum = Functions.logSum(E, row);
+		for(int j = 0; j < m; j++)
+			row[j] -= sum;
+
+		for(int j = 1; j < m; j++)
+			rowsK[firsts[j]][parents[j]] = row[j];
+
+		p[i] = row;
+		for(int c = 0; c < k; c++)
+			pk[c][i] = rowsK[c];
+	}
+
+	/**
+	 * The responsibility matrix (log, normalized per row): one row per point,
+	 * one column per code.
+	 */
+	public RealMatrix p()
+	{
+		return new Array2DRowRealMatrix(p, false);
+	}
+
+	/**
+	 * For each component c, the responsibilities of the codes starting with c,
+	 * indexed by the remainder of the code.
+	 */
+	public List<RealMatrix> pk()
+	{
+		List<RealMatrix> result = new ArrayList<RealMatrix>(k);
+		for(int c = 0; c < k; c++)
+			result.add(new Array2DRowRealMatrix(pk[c], false));
+
+		return result;
+	}
+
+	public RealVector z(boolean approx)
+	{
+		return new ArrayRealVector(zValues(approx), false);
+	}
+	
+	double[] zValues(boolean approx)
+	{
+		double[] z = new double[m];
+		for(int j = 0; j < m; j++)
+			z[j] = - 2.0 * log(approx ? EM.S_APPROX : scales[j]);
+
+		return z;
+	}
+
+	public List<RealVector> zk(boolean approx)
+	{
+		List<double[]> zk = new ArrayList<double[]>(k);
+		for(int c = 0; c < k; c++)
+			zk.add(new double[mk]);
+
+		for(int j = 1; j < m; j++)
+			zk.get(firsts[j])[parents[j]] =
+				- 2.0 * log(approx ? EM.S_APPROX : scales[j]);
+
+		List<RealVector> result = new ArrayList<RealVector>(k);
+		for(double[] values : zk)
+			result.add(new ArrayRealVector(values, false));
+
+		return result;
+	}
+
+	/**
+	 * The log responsibilities as computed, one array per point. 
+	 */
+	double[][] rows()
+	{
+		return p;
+	}
+	
+	/**
+	 * The log responsibilities for the codes starting with the given 
+	 * component, one array per point.
+	 */
+	double[][] rows(int component)
+	{
+		return pk[component];
+	}
+	
+	/**
+	 * The translations of all codes, code j starting at j * dimension.
+	 */
+	double[] translations()
+	{
+		return translations;
+	}
+	
+	/**
+	 * The number of codes up to the maximum depth.
+	 */
+	int numCodes()
+	{
+		return m;
+	}
+	
+	/**
+	 * The number of codes up to the maximum depth minus one.
+	 */
+	int numCodesK()
+	{
+		return mk;
+	}
+	
+	int numComponents()
+	{
+		return k;
+	}
+	
+	int dimension()
+	{
+		return dimension;
+	}
+	
+	/**
+	 * The translations of all codes as the columns of a matrix.
+	 */
+	public RealMatrix t()
+	{
+		double[][] t = new double[dimension][m];
+		for(int j = 0; j < m; j++)
+			for(int a = 0; a < dimension; a++)
+				t[a][j] = translations[j * dimension + a];
+
+		return new Array2DRowRealMatrix(t, false);
+	}
+
+	/**
+	 * The first component of the code with the given index (-1 for the empty
+	 * code).
+	 */
+	int first(int index)
+	{
+		return firsts[index];
+	}
+
+	/**
+	 * The index of the remainder of the code with the given index, after its
+	 * first component is removed (-1 for the empty code).
+	 */
+	int parent(int index)
+	{
+		return parents[index];
+	}
+
+	/**
+	 * The length of the code with the given index.
+	 */
+	int length(int index)
+	{
+		int length = 0;
+		while(numCodes(k, length) <= index)
+			length++;
+
+		return length;
+	}
+
+	/**
+	 * The number of codes of length up to and including the given depth.
+	 */
+	private static int numCodes(int k, int depth)
+	{
+		if(depth < 0)
+			return 0;
+
+		int sum = 0, pow = 1;
+		for(int i = 0; i <= depth; i++)
+		{
+			sum += pow;
+			pow *= k;
+		}
+
+		return sum;
+	}
+
+	private static int ipow(int base, int exp)
+	{
+		int result = 1;
+		for(int i = 0; i < exp; i++)
+			result *= base;
+
+		return result;
+	}
+
+	private static double[] flat(RealMatrix matrix)
+	{
+		int rows = matrix.getRowDimension(), cols = matrix.getColumnDimension();
+		double[] flat = new double[rows * cols];
+		for(int row = 0; row < rows; row++)
+			for(int col = 0; col < cols; col++)
+				flat[row * cols + col] = matrix.getEntry(row, col);
+
+		return flat;
+	}
+}
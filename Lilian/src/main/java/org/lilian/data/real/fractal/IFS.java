@@ -7,8 +7,10 @@ import static org.lilian.util.Series.series;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import org.apache.commons.math.linear.ArrayRealVector;
 import org.apache.commons.math.linear.RealMatrix;
@@ -16,6 +18,7 @@ import org.apache.commons.math.linear.RealVector;
 import org.lilian.Global;
 import org.lilian.data.real.AbstractGenerator;
 import org.lilian.data.real.AffineMap;
+import org.lilian.data.real.BatchGenerator;
 import org.lilian.data.real.Generator;
 import org.lilian.data.real.MVN;
 import org.lilian.data.real.Map;
@@ -66,13 +69,28 @@ public class IFS<M extends Map & Parametrizable >
 	 * This generator does not provide an option for a basis distribution, as it 
 	 * generates to infinite depth, so all initial distributions will result in 
 	 * roughly the same behavior.
+	 * <p/>
+	 * Maps added to this IFS after the generator is created are taken into 
+	 * account in the next call to the generator.
 	 * 
 	 * @return
 	 */
-	public Generator<Point> generator()
+	public BatchGenerator generator()
 	{
 		return new IFSGenerator();
 	}
+	
+	/**
+	 * Returns a chaos game generator which uses the given random number 
+	 * generator to choose its maps (and its starting point), instead of 
+	 * Global.random.
+	 * 
+	 * @return
+	 */
+	public BatchGenerator generator(Random random)
+	{
+		return new IFSGenerator(random);
+	}
 
 	/**
 	 * Returns a generator which generates points to a fixed depth. It's a 
@@ -96,31 +114,178 @@ public class IFS<M extends Map & Parametrizable >
 		return new IFSMixedDepthGenerator(depths);
 	}
 	
-	private class IFSGenerator extends AbstractGenerator<Point>
+	/**
+	 * Generates n points with the chaos game into the given array (row-major, 
+	 * n times dimension()). See {@link BatchGenerator}. 
+	 */
+	public void generate(double[] out, int n)
+	{
+		generator().generate(out, n);
+	}
+	
+	private class IFSGenerator extends AbstractGenerator<Point> 
+		implements BatchGenerator
 	{
-		Generator<Point> basis;
+		Random random;
 		Point p;
+		
+		// * Flat representation of the component maps, for the batch mode. 
+		//   These are null if not all components are affine maps.
+		//   The transformation matrix of component k is stored row-major 
+		//   starting at index k * d * d, its translation at k * d.
+		double[] transformations = null;
+		double[] translations = null;
+		// * The cumulative probabilities of the components
+		double[] cumulative;
+		// * The number of components when the maps were last flattened
+		int flattened = -1;
 
 		public IFSGenerator()
 		{
-			this(new MVN(dimension));
+			this(new MVN(dimension), Global.random);
 		}
 		
-		public IFSGenerator(Generator<Point> basis)
+		public IFSGenerator(Random random)
 		{
-			this.basis = basis;
-			p = this.basis.generate();
+			this(null, random);
+		}
+		
+		public IFSGenerator(Generator<Point> basis, Random random)
+		{
+			this.random = random;
+			
+			flatten();
+			
+			if(basis != null)
+				p = basis.generate();
+			else
+			{
+				p = new Point(dimension);
+				for(int i = 0; i < dimension; i++)
+					p.set(i, random.nextGaussian());
+			}
 			
 			for(int i = 0; i < INITIAL_STEPS; i++)
-				p = random().map(p);
+				p = get(draw(random.nextDouble())).map(p);
+		}
+		
+		/**
+		 * Copies the maps and their probabilities to flat arrays. This is 
+		 * repeated if maps have been added to the IFS since the last call, so
+		 * that the generator always follows its IFS.
+		 */
+		private void flatten()
+		{
+			int k = size(), d = dimension;
+			if(k == flattened)
+				return;
+			flattened = k;
+			
+			transformations = null;
+			translations = null;
+			
+			cumulative = new double[k];
+			double total = 0.0;
+			for(int i = 0; i < k; i++)
+			{
+				total += probability(i);
+				cumulative[i] = total;
+			}
+			
+			for(M map : maps)
+				if(! (map instanceof AffineMap))
+					return;
+			
+			transformations = new double[k * d * d];
+			translations = new double[k * d];
+			
+			for(int i = 0; i < k; i++)
+			{
+				AffineMap map = (AffineMap) get(i);
+				RealMatrix transformation = map.getTransformation();
+				RealVector translation = map.getTranslation();
+				
+				for(int row = 0; row < d; row++)
+				{
+					translations[i * d + row] = translation.getEntry(row);
+					for(int col = 0; col < d; col++)
+						transformations[i * d * d + row * d + col] = 
+							transformation.getEntry(row, col);
+				}
+			}
+		}
+		
+		/**
+		 * Selects a component by its cumulative probability
+		 */
+		private int draw(double draw)
+		{
+			int last = cumulative.length - 1;
+			for(int i = 0; i < last; i++)
+				if(cumulative[i] > draw)
+					return i;
+			
+			// * account for floating point problems
+			return last;
 		}
 		
 		@Override
 		public Point generate()
 		{
-			p = random().map(p);
+			flatten();
+			p = get(draw(random.nextDouble())).map(p);
 			return p;
 		}
+
+		@Override
+		public int dimension()
+		{
+			return dimension;
+		}
+
+		@Override
+		public void generate(double[] out, int n)
+		{
+			int d = dimension;
+			
+			if(out.length < n * d)
+				throw new IllegalArgumentException("Output array (size "+out.length+") too small for "+n+" points of dimension "+d+".");
+			
+			flatten();
+			
+			if(transformations == null)
+			{
+				// * Not all maps are affine, fall back to the maps themselves.
+				for(int i = 0; i < n; i++)
+				{
+					double[] values = generate().getBackingData();
+					System.arraycopy(values, 0, out, i * d, d);
+				}
+				return;
+			}
+			
+			double[] current = Arrays.copyOf(p.getBackingData(), d);
+			
+			for(int i = 0; i < n; i++)
+			{
+				int k = draw(random.nextDouble());
+				int mOffset = k * d * d, tOffset = k * d, to = i * d;
+				
+				for(int row = 0; row < d; row++)
+				{
+					double sum = translations[tOffset + row];
+					for(int col = 0; col < d; col++)
+						sum += transformations[mOffset + row * d + col] * current[col];
+					out[to + row] = sum;
+				}
+				
+				// * the point just written becomes the current point
+				for(int j = 0; j < d; j++)
+					current[j] = out[to + j];
+			}
+			
+			p = Point.fromRaw(current);
+		}
 	}
 	
 	private class IFSFixedDepthGenerator extends AbstractGenerator<Point>
@@ -0,0 +1,535 @@
+package org.lilian.data.real.fractal;
+
+import static java.lang.Math.exp;
+import static java.lang.Math.log;
+import static org.lilian.util.Series.series;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.math.linear.Array2DRowRealMatrix;
+import org.apache.commons.math.linear.InvalidMatrixException;
+import org.apache.commons.math.linear.RealMatrix;
+import org.apache.commons.math.linear.RealVector;
+import org.apache.commons.math.linear.SingularValueDecomposition;
+import org.apache.commons.math.linear.SingularValueDecompositionImpl;
+import org.lilian.Global;
+import org.lilian.data.real.Point;
+import org.lilian.data.real.Rotation;
+import org.lilian.data.real.Similitude;
+import org.lilian.util.Functions;
+import org.lilian.util.MatrixTools;
+import org.lilian.util.Pair;
+import org.lilian.util.Parallel;
+
+/**
+ * A variant of {@link EM} which does not need the data in memory. The data is
+ * read from an Iterable (for instance {@link org.lilian.data.real.MappedPoints})
+ * in mini-batches. For each batch, the expectation step is performed and
+ * summarized into a fixed number of sufficient statistics (per code: the
+ * total responsibility, and the responsibility-weighted sums of the points
+ * and of their squared norms). The maximization step only needs these
+ * statistics, so memory use depends on the batch size and the number of codes,
+ * but not on the size of the dataset.
+ *
+ * The statistics are taken over the original data, so they do not depend on
+ * the model that was current when they were collected (other than through the
+ * responsibilities). The current post transformation and code translations
+ * are applied in the maximization step.
+ *
+ * There are two modes:
+ * <ul>
+ * <li>{@link #iterate()} makes a full pass over the data before maximizing.
+ * This is equivalent to a single call of {@link EM#expectation(boolean)}
+ * followed by {@link EM#maximization(double, double, double)} on the whole
+ * dataset.</li>
+ * <li>{@link #step()} processes a single mini-batch, mixes its statistics
+ * into a running average with a decreasing step size (stepwise EM) and
+ * maximizes. This converges with much less work per update.</li>
+ * </ul>
+ *
+ * @author Peter
+ */
+public class StreamingEM
+{
+	// * The step size after t steps is (t + 2)^-DECAY
+	public static final double DECAY = 0.6;
+
+	private Iterable<Point> source;
+	private Iterator<Point> stream = null;
+	private int batchSize;
+	private int dimension;
+
+	private IFS<Similitude> model;
+	private List<Double> depths;
+	private Similitude post;
+
+	private int threads = Parallel.threads();
+
+	// * Running statistics for the stepwise mode
+	private Statistics running = null;
+	private int steps = 0;
+
+	/**
+	 * @param source The data. Its iterator is called once for every pass over
+	 * 	the data.
+	 * @param batchSize The number of points to hold in memory at once.
+	 */
+	public StreamingEM(Iterable<Point> source, int batchSize,
+			IFS<Similitude> initial, int maxDepth, boolean centerPost)
+	{
+		this.source = source;
+		this.batchSize = batchSize;
+		this.model = initial;
+		this.dimension = initial.dimension();
+
+		depths = new ArrayList<Double>(maxDepth + 1);
+		for(int i : series(maxDepth + 1))
+			depths.add(- log(maxDepth + 1));
+
+		if(centerPost)
+		{
+			int numAngles = (dimension * dimension - dimension) / 2;
+			post = new Similitude(1.0, mean(source, dimension), new Point(numAngles));
+		} else
+			post = Similitude.identity(dimension);
+	}
+
+	/**
+	 * Sets the number of threads used in the expectation step.
+	 */
+	public void setThreads(int threads)
+	{
+		this.threads = threads;
+	}
+
+	/**
+	 * Performs a full pass over the data, and updates the model from the
+	 * statistics collected.
+	 */
+	public void iterate()
+	{
+		EStep eStep = new EStep(model, depths);
+		if(! maximization(pass(eStep, false), eStep, false, false))
+		{
+			Global.log().info("All components null, switching to approximate expectation.");
+			if(! maximization(pass(eStep, true), eStep, true, false))
+				throw new IllegalStateException("All components null, even with approximate expectation.");
+		}
+	}
+
+	/**
+	 * Reads a single mini-batch from the data (starting again from the
+	 * beginning when the data runs out), mixes its statistics into the running
+	 * statistics, and updates the model.
+	 */
+	public void step()
+	{
+		List<Point> batch = nextBatch();
+		EStep eStep = new EStep(model, depths);
+
+		Statistics stats = statistics(eStep, batch, false);
+		stats.scale(1.0 / batch.size());
+
+		if(running == null)
+			running = stats;
+		else
+			running.mix(stats, Math.pow(steps + 2, - DECAY));
+		steps++;
+
+		if(! maximization(running, eStep, false, true))
+		{
+			Global.log().info("All components null, switching to approximate expectation.");
+			running = statistics(eStep, batch, true);
+			running.scale(1.0 / batch.size());
+
+			if(! maximization(running, eStep, true, true))
+				throw new IllegalStateException("All components null, even with approximate expectation.");
+		}
+	}
+
+	private Statistics pass(EStep eStep, boolean approx)
+	{
+		Statistics total = new Statistics(eStep.numCodes(), dimension);
+
+		Iterator<Point> iterator = source.iterator();
+		List<Point> batch = new ArrayList<Point>(batchSize);
+		while(iterator.hasNext())
+		{
+			batch.add(iterator.next());
+			if(batch.size() == batchSize || ! iterator.hasNext())
+			{
+				total.add(statistics(eStep, batch, approx));
+				batch.clear();
+			}
+		}
+
+		return total;
+	}
+
+	private List<Point> nextBatch()
+	{
+		List<Point> batch = new ArrayList<Point>(batchSize);
+		while(batch.size() < batchSize)
+		{
+			if(stream == null || ! stream.hasNext())
+			{
+				stream = source.iterator();
+				if(! stream.hasNext())
+					throw new IllegalStateException("Data source is empty.");
+			}
+
+			batch.add(stream.next());
+		}
+
+		return batch;
+	}
+
+	/**
+	 * Performs the expectation step for a batch and collects the statistics
+	 * (in parallel chunks, merged in a fixed order).
+	 */
+	private Statistics statistics(
+			final EStep eStep, final List<Point> batch, boolean approx)
+	{
+		eStep.compute(post.inverse().map(batch), approx, threads);
+
+		final int m = eStep.numCodes();
+		int[] bounds = Parallel.split(batch.size(), Math.max(1, Math.min(batch.size(), threads)));
+		List<Callable<Statistics>> tasks = new ArrayList<Callable<Statistics>>();
+		for(int c = 0; c < bounds.length - 1; c++)
+		{
+			final int from = bounds[c], to = bounds[c + 1];
+			tasks.add(new Callable<Statistics>()
+			{
+				@Override
+				public Statistics call()
+				{
+					Statistics stats = new Statistics(m, dimension);
+					for(int i = from; i < to; i++)
+						stats.add(eStep.rows()[i], batch.get(i).getBackingData());
+					return stats;
+				}
+			});
+		}
+
+		Statistics stats = new Statistics(m, dimension);
+		for(Statistics part : Parallel.run(tasks, threads))
+			stats.add(part);
+
+		return stats;
+	}
+
+	/**
+	 * @param eStep Provides the codes of the current model
+	 * @param sequential If false, the post transformation is fitted to the
+	 * 	codes of the current model, as in {@link EM}. If true, it is fitted to
+	 * 	the codes of the new model. The post transformation and the model can
+	 * 	trade scale, and with running statistics fitting both to each other's
+	 * 	old values makes them overshoot in turn.
+	 */
+	private boolean maximization(Statistics stats, EStep eStep, boolean approx, boolean sequential)
+	{
+		int k = model.size();
+		int m = eStep.numCodes(), mk = eStep.numCodesK();
+		int maxDepth = depths.size() - 1;
+
+		double[] z = eStep.zValues(approx), t = eStep.translations();
+
+		// * depths
+		List<Double> newDepths = new ArrayList<Double>(maxDepth + 1);
+		for(int i : series(maxDepth + 1))
+			newDepths.add(0.0);
+		for(int j : series(m))
+		{
+			int length = eStep.length(j);
+			newDepths.set(length, newDepths.get(length) + stats.colSum[j]);
+		}
+		double depthSum = 0.0;
+		for(double d : newDepths)
+			depthSum += d;
+		for(int i : series(newDepths.size()))
+			newDepths.set(i, log(newDepths.get(i) / depthSum));
+
+		// * model: for each component, the codes starting with that component,
+		//   indexed by the remainder of the code
+		int[][] codes = new int[k][mk];
+		for(int j = 1; j < m; j++)
+			codes[eStep.first(j)][eStep.parent(j)] = j;
+
+		Similitude inverse = post.inverse();
+
+		List<Double> weights = new ArrayList<Double>(k);
+		List<Similitude> comps = new ArrayList<Similitude>(k);
+		double weightSum = 0.0;
+		for(int comp : series(k))
+		{
+			double weight = 0.0;
+			for(int j : codes[comp])
+				weight += stats.colSum[j];
+
+			weights.add(weight);
+			weightSum += weight;
+			comps.add(fit(stats, codes[comp], z, t, inverse, dimension));
+		}
+		for(int comp : series(k))
+			weights.set(comp, weights.get(comp) / weightSum);
+
+		IFS<Similitude> newModel = IFS.ifs(comps, weights, EM.SPLIT_VAR);
+
+		// * post
+		int[] all = new int[m];
+		for(int j = 0; j < m; j++)
+			all[j] = j;
+		if(sequential && newModel != null)
+		{
+			EStep next = new EStep(newModel, newDepths);
+			z = next.zValues(approx);
+			t = next.translations();
+		}
+		Similitude newPost = fit(stats, all, z, t, null, dimension);
+
+		if(newModel == null || newPost == null)
+			return false;
+
+		depths = newDepths;
+		model = newModel;
+		post = newPost;
+
+		return true;
+	}
+
+	/**
+	 * Finds the similitude that maximizes the likelihood of the data
+	 * summarized by the given statistics. This is the same computation as in
+	 * {@link EM#maximizeIFS(int, int, List, Similitude, List, RealMatrix, RealVector)},
+	 * expressed in terms of the sufficient statistics.
+	 *
+	 * @param codes For each code r in z and t, the code in the statistics
+	 * 	whose responsibilities to use.
+	 * @param map The map to apply to the data before fitting (null for none).
+	 * @return null if no similitude could be found.
+	 */
+	private static Similitude fit(Statistics stats, int[] codes,
+			double[] z, double[] t, Similitude map, int d)
+	{
+		RealMatrix transformation = map == null ? null : map.getTransformation();
+		double[] translation = map == null ? null : map.getTranslation().toArray();
+
+		// * With e_ir = exp(p_ir + z_r) the scale-weighted responsibility of
+		//   code r for point y_i, collect sum_i e_ir, sum_i e_ir y_i,
+		//   sum_i e_ir |y_i|^2 and sum_i y_i sum_r e_ir t_r^T
+		double total = 0.0, plainTotal = 0.0, yySum = 0.0;
+		double[] ySum = new double[d], tSum = new double[d], yu = new double[d * d];
+		double[] y = new double[d];
+		for(int r = 0; r < codes.length; r++)
+		{
+			int j = codes[r];
+			double w = stats.colSum[j], e = exp(z[r]);
+
+			// * the sums for this code, with the data mapped by the given map
+			double yy;
+			if(map == null)
+			{
+				for(int a = 0; a < d; a++)
+					y[a] = stats.xSum[j * d + a];
+				yy = stats.xxSum[j];
+			} else
+			{
+				// * map(x) = A x + b, with A^T A = s^2 I
+				double s = map.scalar();
+				yy = s * s * stats.xxSum[j];
+				for(int a = 0; a < d; a++)
+				{
+					double ax = 0.0;
+					for(int b = 0; b < d; b++)
+						ax += transformation.getEntry(a, b) * stats.xSum[j * d + b];
+
+					y[a] = ax + w * translation[a];
+					yy += 2.0 * translation[a] * ax + w * translation[a] * translation[a];
+				}
+			}
+
+			plainTotal += w;
+			total += w * e;
+			yySum += e * yy;
+			for(int a = 0; a < d; a++)
+			{
+				ySum[a] += e * y[a];
+				tSum[a] += w * e * t[r * d + a];
+				for(int b = 0; b < d; b++)
+					yu[a * d + b] += e * y[a] * t[r * d + b];
+			}
+		}
+
+		if(total <= 0.0 || Double.isNaN(total) || Double.isInfinite(total))
+			return null;
+
+		double[] yMean = new double[d], tMean = new double[d];
+		for(int a = 0; a < d; a++)
+		{
+			yMean[a] = ySum[a] / total;
+			tMean[a] = tSum[a] / total;
+		}
+
+		// * The weighted cross-covariance of the data and the translations
+		RealMatrix a = new Array2DRowRealMatrix(d, d);
+		for(int r = 0; r < d; r++)
+			for(int c = 0; c < d; c++)
+				a.setEntry(r, c, yu[r * d + c] / total - yMean[r] * tMean[c]);
+
+		// * Find the rotation
+		SingularValueDecomposition svd;
+		try {
+			svd = new SingularValueDecompositionImpl(a);
+		} catch(InvalidMatrixException e)
+		{
+			return null;
+		}
+
+		RealVector c = MatrixTools.ones(d);
+		double last = MatrixTools.getDeterminant(svd.getU().multiply(svd.getVT()));
+		c.setEntry(c.getDimension()-1, last);
+
+		RealMatrix rot = svd.getU().multiply(MatrixTools.diag(c)).multiply(svd.getVT());
+
+		if(EM.containsNaN(rot))
+			return null;
+
+		List<Double> angles = Rotation.findAngles(rot);
+
+		// * Find the scale
+		double sa = yySum, sb = 0.0, sc;
+		for(int r = 0; r < d; r++)
+			sa += - 2.0 * yMean[r] * ySum[r] + total * yMean[r] * yMean[r];
+
+		for(int r = 0; r < d; r++)
+			for(int col = 0; col < d; col++)
+				sb -= total * a.getEntry(r, col) * rot.getEntry(r, col);
+
+		sc = - plainTotal * d;
+
+		Pair<Double, Double> roots = Functions.quadratic(sa, sb, sc);
+		if(roots == null)
+			return null;
+
+		double s = Similitude.chooseS(roots);
+		if(Double.isNaN(s) || Double.isInfinite(s))
+			return null;
+
+		double[] rotated = rot.operate(tMean);
+		Point tr = new Point(d);
+		for(int r = 0; r < d; r++)
+			tr.set(r, yMean[r] - s * rotated[r]);
+
+		return new Similitude(s, tr, angles);
+	}
+
+	/**
+	 * The statistics required for the maximization step, collected from the
+	 * expectation step for a number of points. With p_ij the responsibility of
+	 * code j for (original) point x_i, these are, per code:
+	 * <ul>
+	 * <li> colSum_j: sum_i p_ij</li>
+	 * <li> xSum_j: sum_i p_ij x_i (code j at j * dimension)</li>
+	 * <li> xxSum_j: sum_i p_ij |x_i|^2</li>
+	 * </ul>
+	 */
+	private static class Statistics
+	{
+		double[] colSum, xSum, xxSum;
+
+		public Statistics(int codes, int d)
+		{
+			colSum = new double[codes];
+			xSum = new double[codes * d];
+			xxSum = new double[codes];
+		}
+
+		/**
+		 * @param row The log responsibilities for the point
+		 */
+		public void add(double[] row, double[] x)
+		{
+			int d = x.length;
+			double xx = 0.0;
+			for(int a = 0; a < d; a++)
+				xx += x[a] * x[a];
+
+			for(int j = 0; j < colSum.length; j++)
+			{
+				double e = exp(row[j]);
+				colSum[j] += e;
+				xxSum[j] += e * xx;
+				for(int a = 0; a < d; a++)
+					xSum[j * d + a] += e * x[a];
+			}
+		}
+
+		public void add(Statistics other)
+		{
+			for(int j = 0; j < colSum.length; j++)
+			{
+				colSum[j] += other.colSum[j];
+				xxSum[j] += other.xxSum[j];
+			}
+			for(int a = 0; a < xSum.length; a++)
+				xSum[a] += other.xSum[a];
+		}
+
+		public void scale(double factor)
+		{
+			for(int j = 0; j < colSum.length; j++)
+			{
+				colSum[j] *= factor;
+				xxSum[j] *= factor;
+			}
+			for(int a = 0; a < xSum.length; a++)
+				xSum[a] *= factor;
+		}
+
+		/**
+		 * Replaces these statistics by (1 - rate) * this + rate * other
+		 */
+		public void mix(Statistics other, double rate)
+		{
+			scale(1.0 - rate);
+			other.scale(rate);
+			add(other);
+		}
+	}
+
+	private static Point mean(Iterable<Point> data, int dimension)
+	{
+		double[] sum = new double[dimension];
+		long n = 0;
+		for(Point point : data)
+		{
+			for(int a = 0; a < dimension; a++)
+				sum[a] += point.get(a);
+			n++;
+		}
+
+		for(int a = 0; a < dimension; a++)
+			sum[a] /= n;
+
+		return new Point(sum);
+	}
+
+	public IFS<Similitude> model()
+	{
+		return model;
+	}
+
+	public List<Double> depths()
+	{
+		return EM.exp(depths);
+	}
+
+	public Similitude post()
+	{
+		return post;
+	}
+}
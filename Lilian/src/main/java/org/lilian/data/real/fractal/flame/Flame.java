@@ -9,6 +9,8 @@ import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
 
 import org.lilian.Global;
 import org.lilian.data.real.AffineMap;
@@ -17,6 +19,7 @@ import org.lilian.data.real.Point;
 import org.lilian.search.Builder;
 import org.lilian.search.Parametrizable;
 import org.lilian.util.Functions;
+import org.lilian.util.Parallel;
 
 public class Flame implements Parametrizable  
 {
@@ -78,77 +81,195 @@ public class Flame implements Parametrizable
 	 */
 	public BufferedImage draw(long steps, int xRes, int yRes, double[]xRange, double[] yRange, int osa, boolean wrap)
 	{
+		int width = xRes * osa, height = yRes * osa;
+		
 		//* Create the histogram
-		double[][][] histogram = new double[xRes * osa][][];
+		double[] histogram = new double[width * height * 4];
 		
 		// * the number of points outside the viewing area
 		long outside = 0;
 		
-		//* Fill the histogram
-		for(int i = 0; i < histogram.length; i++)
-		{
-			histogram[i] = new double[yRes * osa][];			
-			for(int j = 0; j < histogram[i].length; j++)
-			{
-				histogram[i][j] = new double[4];
-				for(int k = 0; k < 4; k++) 
-					histogram[i][j][k] = 0.0;
-			}
-		}
-		
 		for(int i = 0 ; i < INITIAL; i++)
 			step();
-		for(int i = 0; i < steps; i++)
+		for(long i = 0; i < steps; i++)
 		{
 			step();
 			
-			int x = Draw.toPixel(point.get(0), xRes * osa, xRange[0], xRange[1]), 
-				y = Draw.toPixel(point.get(1), yRes * osa, yRange[0], yRange[1]);
+			if(!add(histogram, point.get(0), point.get(1), 
+					color.get(0), color.get(1), color.get(2),
+					width, height, xRange, yRange, wrap))
+				outside++;
+		}
+		
+		return image(histogram, xRes, yRes, osa);
+	}
+	
+	/**
+	 * Draws the flame with a number of independent chaos-game walkers, each
+	 * running on its own thread with its own random number generator and its 
+	 * own histogram. The histograms are summed in a fixed order once all 
+	 * walkers are done, so the result depends only on the seed and the number 
+	 * of threads.
+	 * 
+	 * This method does not use or modify the state of this flame (the point 
+	 * and color used by step()), nor does it draw from Global.random. 
+	 * 
+	 * @param threads The number of walkers (and threads) to use.
+	 * @param seed The seed from which the random number generators of the 
+	 * 		walkers are derived.
+	 */
+	public BufferedImage draw(
+			long steps, int xRes, int yRes, double[]xRange, double[] yRange, 
+			int osa, boolean wrap, int threads, long seed)
+	{
+		int width = xRes * osa, height = yRes * osa;
+		
+		long[] seeds = Parallel.seeds(seed, threads);
+		List<Walker> walkers = new ArrayList<Walker>(threads);
+		for(int t = 0; t < threads; t++)
+		{
+			// * divide the steps as evenly as possible over the walkers
+			long walkerSteps = steps / threads + (t < steps % threads ? 1 : 0);
+			walkers.add(new Walker(
+					walkerSteps, new Random(seeds[t]), 
+					width, height, xRange, yRange, wrap));
+		}
+		
+		List<double[]> histograms = Parallel.run(walkers, threads);
+		
+		double[] histogram = histograms.get(0);
+		for(int t = 1; t < histograms.size(); t++)
+		{
+			double[] other = histograms.get(t);
+			for(int i = 0; i < histogram.length; i++)
+				histogram[i] += other[i];
+		}
+		
+		return image(histogram, xRes, yRes, osa);
+	}
+	
+	/**
+	 * Draws the flame in parallel, using one walker per available processor.
+	 */
+	public BufferedImage draw(
+			long steps, int xRes, int yRes, double[]xRange, double[] yRange, 
+			int osa, boolean wrap, long seed)
+	{
+		return draw(steps, xRes, yRes, xRange, yRange, osa, wrap, 
+				Parallel.threads(), seed);
+	}	
+	
+	/**
+	 * A single chaos game walker with its own state, random number generator
+	 * and histogram.
+	 */
+	private class Walker implements Callable<double[]>
+	{
+		private long steps;
+		private Random random;
+		private int width, height;
+		private double[] xRange, yRange;
+		private boolean wrap;
+		
+		public Walker(long steps, Random random, int width, int height,
+				double[] xRange, double[] yRange, boolean wrap)
+		{
+			this.steps = steps;
+			this.random = random;
+			this.width = width;
+			this.height = height;
+			this.xRange = xRange;
+			this.yRange = yRange;
+			this.wrap = wrap;
+		}
+
+		@Override
+		public double[] call()
+		{
+			double[] histogram = new double[width * height * 4];
+			
+			Point point = new Point(
+					random.nextDouble() * 2.0 - 1.0,
+					random.nextDouble() * 2.0 - 1.0);
+			double r = 0.0, g = 0.0, b = 0.0;
 			
-			if(wrap)
+			for(long i = - INITIAL; i < steps; i++)
 			{
-				if(x >= xRes * osa)	 	
-					x = x % (xRes * osa);
-				if(x < 0)
-					x = (xRes * osa - 1) + (x % (xRes * osa)); 
-				if(y >= yRes * osa)
-					y = y % (yRes * osa);
-				if(y < 0)
-					y = (yRes * osa - 1) + (y % (yRes * osa));
+				Function function = 
+						functions.get(Functions.draw(weights, weightSum, random));
 				
-				for(int c = 0; c < 3; c++)
-					histogram[x][y][c] += color.get(c);
-				histogram[x][y][3] ++;
+				point = function.map(point);
+				Point c = function.color();
 				
-			} else
-			{		
-				if(x >= 0 && x < xRes*osa && y >= 0 && y < yRes*osa)
-				{
-					for(int c = 0; c < 3; c++)
-						histogram[x][y][c] += color.get(c);
-					histogram[x][y][3] ++;
-				} else
-					outside++;
-			}			
+				r = (r + c.get(0)) / 2.0;
+				g = (g + c.get(1)) / 2.0;
+				b = (b + c.get(2)) / 2.0;
+				
+				if(i >= 0)
+					add(histogram, point.get(0), point.get(1), r, g, b, 
+							width, height, xRange, yRange, wrap);
+			}
+			
+			return histogram;
 		}
+	}
+	
+	/**
+	 * Adds a single point to a flat histogram. The histogram stores four 
+	 * values (red, green, blue, frequency) per pixel, with pixel (x, y) 
+	 * starting at index (x * height + y) * 4.
+	 * 
+	 * @return false if the point fell outside the histogram (and wasn't 
+	 * 	added), true otherwise.
+	 */
+	private static boolean add(double[] histogram, double px, double py,
+			double r, double g, double b, int width, int height,
+			double[] xRange, double[] yRange, boolean wrap)
+	{
+		int x = Draw.toPixel(px, width, xRange[0], xRange[1]), 
+			y = Draw.toPixel(py, height, yRange[0], yRange[1]);
 		
-		// * Histogram finished, produce the image
+		if(wrap)
+		{
+			if(x >= width)	 	
+				x = x % width;
+			if(x < 0)
+				x = (width - 1) + (x % width); 
+			if(y >= height)
+				y = y % height;
+			if(y < 0)
+				y = (height - 1) + (y % height);
+		} else if(x < 0 || x >= width || y < 0 || y >= height)
+			return false;
+		
+		int index = (x * height + y) * 4;
+		histogram[index    ] += r;
+		histogram[index + 1] += g;
+		histogram[index + 2] += b;
+		histogram[index + 3] ++;
 		
-		double[] avg;
+		return true;
+	}
+	
+	/**
+	 * Produces an image from a flat histogram.
+	 */
+	private BufferedImage image(double[] histogram, int xRes, int yRes, int osa)
+	{
+		int height = yRes * osa;
 		
 		BufferedImage image = 
 			new BufferedImage(xRes, yRes, BufferedImage.TYPE_INT_RGB);
 		
 		float[] color;
 		double max= 0.0;
-		for(int i = 0; i< xRes * osa; i++)
-			for(int j = 0; j < yRes * osa; j++)
-					max = Math.max(histogram[i][j][3] , max);
+		for(int i = 3; i < histogram.length; i += 4)
+			max = Math.max(histogram[i], max);
 
 		for(int i = 0; i < xRes; i++)
 			for(int j = 0; j < yRes; j++)
 			{
-				color = color(i, j, histogram, osa, max);
+				color = color(i, j, histogram, osa, height, max);
 				try{
 					Color colorObj  = new Color(color[0], color[1], color[2], color[3]);
 					image.setRGB(i, yRes - j - 1, colorObj.getRGB());					
@@ -163,9 +284,10 @@ public class Flame implements Parametrizable
 		return image;		
 	}
 	
-	private float[] color(int x, int y, double[][][] histogram, int osa, double max)
+	private float[] color(int x, int y, double[] histogram, int osa, int height, double max)
 	{
 		float[] sum = new float[]{0.0f, 0.0f, 0.0f, 0.0f};
+		int width = histogram.length / (4 * height);
 		
 		int n = 0;
 		for(int i = 0; i < osa; i++)
@@ -173,8 +295,8 @@ public class Flame implements Parametrizable
 			{
 				n++;
 				for(int k = 0; k < 4; k++)
-					if(x*osa+i < histogram.length && y*osa+j <  histogram[0].length)
-						sum[k] += colorSingle(x*osa+i, y*osa+j, k, histogram, max);
+					if(x*osa+i < width && y*osa+j < height)
+						sum[k] += colorSingle(((x*osa+i) * height + y*osa+j) * 4, k, histogram, max);
 			}
 
 		
@@ -184,17 +306,18 @@ public class Flame implements Parametrizable
 		return sum;
 	}	
 	
-	private double colorSingle(int i, int j, int k, double[][][] histogram,
+	private double colorSingle(int index, int k, double[] histogram,
 			double max)
 	{
-		if(histogram[i][j][3] == 0.0)
+		double frequency = histogram[index + 3];
+		if(frequency == 0.0)
 			return 0.0;
 		
-		double alpha = log(histogram[i][j][3])/log(max);
+		double alpha = log(frequency)/log(max);
 		
 		if(alpha < 0.0 || Double.isNaN(alpha) || Double.isInfinite(alpha))
 		{
-			System.out.println(histogram[i][j][3]);
+			System.out.println(frequency);
 			System.out.println(max);
 			System.out.println(alpha);
 			System.out.println();
@@ -202,10 +325,10 @@ public class Flame implements Parametrizable
 	
 		// System.out.println(alpha);
 		
-		// return (histogram[i][j][k] / histogram[i][j][3]) * Math.pow(alpha, 1.0/GAMMA);
-		return (histogram[i][j][k] / histogram[i][j][3]) * alpha;		
+		// return (histogram[index + k] / frequency) * Math.pow(alpha, 1.0/GAMMA);
+		return (histogram[index + k] / frequency) * alpha;		
 		// return alpha;
-		// return histogram[i][j][3]/max;
+		// return frequency/max;
 		// return 1.0;
 	}
 
@@ -50,6 +50,10 @@ public class CNFProbabilityGrammar<T> implements Grammar<T>
 
 	private Set<T> emptySet = Collections.emptySet();
 	
+	/* The compiled form of the grammar, used by the Viterbi parser. This is 
+	 * created when first needed, and discarded when a rule changes. */
+	private Compiled compiled = null;
+	
 	public CNFProbabilityGrammar()
 	{
 		/* Clear the current CNF version of the grammar */
@@ -252,6 +256,51 @@ public class CNFProbabilityGrammar<T> implements Grammar<T>
 		return new CNFParse(newSentence, true, beamWidth, rootSymbols);
 	}	
 
+	/**
+	 * Parses the sentence with the compiled Viterbi parser. Contrary to 
+	 * parse(), this parser does not store every derivation. It stores only the 
+	 * most probable derivation for each symbol in each cell of the chart, so 
+	 * it takes O(n^3 |G|) time and O(n^2 |S|) memory (with |G| the number of 
+	 * rules and |S| the number of symbols).
+	 * 
+	 * The returned parse only supports the best parse for each top symbol: 
+	 * allParses() returns one parse per symbol that can produce the 
+	 * sentence. 
+	 */
+	public Parse<T> parseViterbi(Collection<? extends T> sentence)
+	{
+		return new ViterbiParse(sentence, false);
+	}
+	
+	/**
+	 * Parses a sentence of POS symbols with the compiled Viterbi parser. See 
+	 * {@link #parseViterbi(Collection)}. 
+	 */
+	public Parse<T> parsePOSViterbi(Collection<? extends T> sentence)
+	{
+		return new ViterbiParse(sentence, true);
+	}
+	
+	/**
+	 * Discards the compiled form of this grammar, so that it is rebuilt on the 
+	 * next call to parseViterbi(). This happens automatically when rules are 
+	 * added or changed, but extending classes which override 
+	 * getProbability() should call it when the probabilities change for 
+	 * any other reason.
+	 */
+	public synchronized void invalidate()
+	{
+		compiled = null;
+	}
+	
+	protected synchronized Compiled compiled()
+	{
+		if(compiled == null)
+			compiled = new Compiled();
+		
+		return compiled;
+	}
+
 	public void write(File directory, String base) throws IOException
 	{
 		
@@ -271,6 +320,8 @@ public class CNFProbabilityGrammar<T> implements Grammar<T>
 	 */
 	protected void addCNFRule(CNFRule rule, double probability, boolean increment)
 	{
+		invalidate();
+		
 		if (probabilities.containsKey(rule))
 		{
 			double prob = probability;
@@ -1178,6 +1229,317 @@ public class CNFProbabilityGrammar<T> implements Grammar<T>
 	}
 
 
+	/**
+	 * A compact representation of the grammar, with the symbols interned as 
+	 * integers. 
+	 * 
+	 * The binary rules are sorted by left child and stored in parallel 
+	 * arrays, so that the rules with left child b are those from 
+	 * leftStart[b] (inclusive) to leftStart[b+1] (exclusive).
+	 */
+	protected class Compiled
+	{
+		List<T> symbols = new ArrayList<T>();
+		Map<T, Integer> indices = new HashMap<T, Integer>();
+		
+		int[] leftStart;
+		int[] ruleLeft, ruleRight, ruleFrom;
+		double[] ruleLogProb;
+		
+		/* The unary (terminal) rules, by the symbol on the right */
+		Map<T, int[]> unaryFrom = new HashMap<T, int[]>();
+		Map<T, double[]> unaryLogProb = new HashMap<T, double[]>();
+		
+		public Compiled()
+		{
+			List<CNFRule> binary = new ArrayList<CNFRule>();
+			
+			for(CNFRule rule : probabilities.keySet())
+			{
+				index(rule.getFrom());
+				if(rule.isUnary())
+					continue;
+				
+				index(rule.getTo1());
+				index(rule.getTo2());
+				binary.add(rule);
+			}
+			
+			int numSymbols = symbols.size();
+			
+			/* Count the rules per left child, and sort them into place */
+			leftStart = new int[numSymbols + 1];
+			for(CNFRule rule : binary)
+				leftStart[indices.get(rule.getTo1()) + 1]++;
+			for(int b = 0; b < numSymbols; b++)
+				leftStart[b + 1] += leftStart[b];
+			
+			int[] next = Arrays.copyOf(leftStart, numSymbols);
+			ruleLeft = new int[binary.size()];
+			ruleRight = new int[binary.size()];
+			ruleFrom = new int[binary.size()];
+			ruleLogProb = new double[binary.size()];
+			
+			for(CNFRule rule : binary)
+			{
+				int r = next[indices.get(rule.getTo1())]++;
+				ruleLeft[r] = indices.get(rule.getTo1());
+				ruleRight[r] = indices.get(rule.getTo2());
+				ruleFrom[r] = indices.get(rule.getFrom());
+				ruleLogProb[r] = Math.log(getProbability(rule));
+			}
+			
+			for(T word : oneSymbolMap.keySet())
+			{
+				Set<CNFRule> rules = oneSymbolMap.get(word);
+				int[] from = new int[rules.size()];
+				double[] logProbs = new double[rules.size()];
+				
+				int i = 0;
+				for(CNFRule rule : rules)
+				{
+					from[i] = indices.get(rule.getFrom());
+					logProbs[i] = Math.log(getProbability(rule));
+					i++;
+				}
+				
+				unaryFrom.put(word, from);
+				unaryLogProb.put(word, logProbs);
+			}
+		}
+		
+		private int index(T symbol)
+		{
+			Integer index = indices.get(symbol);
+			if(index == null)
+			{
+				index = symbols.size();
+				symbols.add(symbol);
+				indices.put(symbol, index);
+			}
+			
+			return index;
+		}
+		
+		public int size()
+		{
+			return symbols.size();
+		}
+	}
+	
+	/**
+	 * A Viterbi CYK parse over the compiled grammar. 
+	 * 
+	 * The chart holds, for each span length l, start s and symbol a, the log 
+	 * probability of the best derivation of the span from a at 
+	 * chart[l][s][a]. The backpointers store the rule used (as an index into
+	 * the compiled rules, or into the unary rules for the word at l = 1) and
+	 * the length of the left part of the span.
+	 */
+	private class ViterbiParse implements Parse<T>
+	{
+		private Compiled grammar;
+		private List<T> sentence;
+		private boolean posSentence;
+		private int n;
+		
+		private double[][][] chart;
+		private int[][][] backRule, backSplit;
+		
+		public ViterbiParse(Collection<? extends T> sentence, boolean posSentence)
+		{
+			this.grammar = compiled();
+			this.sentence = new ArrayList<T>(sentence);
+			this.posSentence = posSentence;
+			this.n = sentence.size();
+			
+			int numSymbols = grammar.size();
+			
+			chart = new double[n + 1][][];
+			backRule = new int[n + 1][][];
+			backSplit = new int[n + 1][][];
+			for(int l = 1; l <= n; l++)
+			{
+				chart[l] = new double[n - l + 1][numSymbols];
+				backRule[l] = new int[n - l + 1][numSymbols];
+				backSplit[l] = new int[n - l + 1][numSymbols];
+				
+				for(double[] cell : chart[l])
+					Arrays.fill(cell, Double.NEGATIVE_INFINITY);
+			}
+			
+			/* ** Phase one: the bottom row ** */
+			for(int s = 0; s < n; s++)
+			{
+				T word = this.sentence.get(s);
+				if(posSentence)
+				{
+					Integer a = grammar.indices.get(word);
+					if(a != null)
+						chart[1][s][a] = 0.0;
+				} else if(grammar.unaryFrom.containsKey(word))
+				{
+					int[] from = grammar.unaryFrom.get(word);
+					double[] logProbs = grammar.unaryLogProb.get(word);
+					
+					for(int i = 0; i < from.length; i++)
+						if(logProbs[i] > chart[1][s][from[i]])
+						{
+							chart[1][s][from[i]] = logProbs[i];
+							backRule[1][s][from[i]] = i;
+						}
+				}
+			}
+			
+			fillChart();
+		}
+		
+		private void fillChart()
+		{
+			int numSymbols = grammar.size();
+			
+			/* l -- length of the span */
+			for(int l = 2; l <= n; l++)
+				/* s -- start of span */
+				for(int s = 0; s <= n - l; s++)
+				{
+					double[] cell = chart[l][s];
+					int[] rules = backRule[l][s], splits = backSplit[l][s];
+					
+					/* p -- length of the left part of the span */
+					for(int p = 1; p < l; p++)
+					{
+						double[] left = chart[p][s], right = chart[l - p][s + p];
+						
+						for(int b = 0; b < numSymbols; b++)
+						{
+							if(left[b] == Double.NEGATIVE_INFINITY)
+								continue;
+							
+							for(int r = grammar.leftStart[b]; r < grammar.leftStart[b + 1]; r++)
+							{
+								double rightProb = right[grammar.ruleRight[r]];
+								if(rightProb == Double.NEGATIVE_INFINITY)
+									continue;
+								
+								double prob = grammar.ruleLogProb[r] + left[b] + rightProb;
+								int a = grammar.ruleFrom[r];
+								if(prob > cell[a])
+								{
+									cell[a] = prob;
+									rules[a] = r;
+									splits[a] = p;
+								}
+							}
+						}
+					}
+				}
+		}
+		
+		@Override
+		public boolean isMember()
+		{
+			if(n == 0)
+				return false;
+			
+			for(double prob : chart[n][0])
+				if(prob > Double.NEGATIVE_INFINITY)
+					return true;
+			
+			return false;
+		}
+
+		@Override
+		public Pair<Tree<T>, Double> bestParse()
+		{
+			if(n == 0)
+				return null;
+			
+			int best = -1;
+			for(int a = 0; a < grammar.size(); a++)
+				if(chart[n][0][a] > Double.NEGATIVE_INFINITY && 
+						(best < 0 || chart[n][0][a] > chart[n][0][best]))
+					best = a;
+			
+			if(best < 0)
+				return null;
+			
+			return new Pair<Tree<T>, Double>(tree(best), Math.exp(chart[n][0][best]));
+		}
+		
+		/**
+		 * Returns the best parse with the given symbol at the root, or null if 
+		 * the symbol cannot produce the sentence.
+		 */
+		public Tree<T> bestParse(T symbol)
+		{
+			Integer a = grammar.indices.get(symbol);
+			if(n == 0 || a == null || chart[n][0][a] == Double.NEGATIVE_INFINITY)
+				return null;
+			
+			return tree(a);
+		}
+
+		@Override
+		public Collection<Pair<Tree<T>, Double>> allParses()
+		{
+			List<Pair<Tree<T>, Double>> parses = new ArrayList<Pair<Tree<T>, Double>>();
+			if(n == 0)
+				return parses;
+			
+			for(int a = 0; a < grammar.size(); a++)
+				if(chart[n][0][a] > Double.NEGATIVE_INFINITY)
+					parses.add(new Pair<Tree<T>, Double>(tree(a), Math.exp(chart[n][0][a])));
+			
+			Collections.sort(parses, new Comparator<Pair<Tree<T>, Double>>() 
+			{
+				public int compare(Pair<Tree<T>, Double> p1, Pair<Tree<T>, Double> p2)
+				{
+					return - p1.second().compareTo(p2.second());
+				}
+			});
+			
+			return parses;
+		}
+		
+		private Tree<T> tree(int a)
+		{
+			Tree<T> tree = new Tree<T>(grammar.symbols.get(a));
+			makeTree(n, 0, a, tree.getRoot());
+			
+			return tree;
+		}
+		
+		private void makeTree(int l, int s, int a, Tree<T>.Node treeNode)
+		{
+			if(l == 1)
+			{
+				if(!posSentence)
+					treeNode.addChild(sentence.get(s));
+				return;
+			}
+			
+			int r = backRule[l][s][a], p = backSplit[l][s][a];
+			int b = grammar.ruleLeft[r], c = grammar.ruleRight[r];
+			
+			makeTree(p, s, b, treeNode.addChild(grammar.symbols.get(b)));
+			makeTree(l - p, s + p, c, treeNode.addChild(grammar.symbols.get(c)));
+		}
+		
+		@Override
+		public void write(File directory, String base) throws IOException
+		{
+			BufferedWriter out = new BufferedWriter(
+					new FileWriter(new File(directory, base + ".parses.csv")));
+
+			for(Pair<Tree<T>, Double> pair : allParses()) 
+				out.write(pair.first() + ",\t" + pair.second() + "\n");
+
+			out.flush();
+			out.close();
+		}
+	}
+
 	public static void main(String[] args)
 	{
 		CNFProbabilityGrammar<String> g = new CNFProbabilityGrammar<String>();
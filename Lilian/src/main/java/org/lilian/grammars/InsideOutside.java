@@ -0,0 +1,402 @@
+package org.lilian.grammars;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+import org.lilian.corpora.SequenceCorpus;
+import org.lilian.corpora.SequenceIterator;
+import org.lilian.util.Parallel;
+
+/**
+ * Trains the rule probabilities of a CNFProbabilityGrammar on raw sentences
+ * with the inside-outside algorithm.
+ *
+ * Each call to {@link #iterate(SequenceCorpus)} makes a single pass over the
+ * corpus. The sentences are read in batches, and the sentences in a batch are
+ * divided over a number of threads. Each thread computes inside and outside
+ * scores (in log space) over the compiled form of the grammar and collects the
+ * expected rule counts in its own arrays. After the pass, the counts are
+ * merged (in a fixed order), and the grammar's probabilities are replaced by
+ * the re-estimated ones through setRule().
+ *
+ * As with the Viterbi parser, only unary rules to terminals are supported.
+ *
+ * @param <T>
+ */
+public class InsideOutside<T>
+{
+	private CNFProbabilityGrammar<T> grammar;
+	private T topSymbol;
+	private int threads;
+	private int batchSize = 1000;
+
+	// * statistics of the last iteration
+	private double logLikelihood;
+	private int parsed, unparsed;
+
+	public InsideOutside(CNFProbabilityGrammar<T> grammar, T topSymbol)
+	{
+		this(grammar, topSymbol, Parallel.threads());
+	}
+
+	public InsideOutside(CNFProbabilityGrammar<T> grammar, T topSymbol, int threads)
+	{
+		this.grammar = grammar;
+		this.topSymbol = topSymbol;
+		this.threads = threads;
+	}
+
+	/**
+	 * The number of sentences held in memory at once.
+	 */
+	public void setBatchSize(int batchSize)
+	{
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Performs one iteration of the inside-outside algorithm over the corpus,
+	 * and updates the grammar.
+	 *
+	 * @return The log-likelihood (base e) of the corpus under the grammar as
+	 * 	it was before this iteration (ignoring sentences which could not be
+	 * 	parsed).
+	 */
+	public double iterate(SequenceCorpus<T> corpus)
+	{
+		CNFProbabilityGrammar<T>.Compiled compiled = grammar.compiled();
+		Counts total = new Counts(compiled);
+
+		List<List<T>> batch = new ArrayList<List<T>>(batchSize);
+		List<T> sentence = new ArrayList<T>();
+
+		SequenceIterator<T> it = corpus.iterator();
+		while(it.hasNext())
+		{
+			sentence.add(it.next());
+			if(it.atSequenceEnd() || ! it.hasNext())
+			{
+				batch.add(sentence);
+				sentence = new ArrayList<T>();
+			}
+
+			if(batch.size() == batchSize)
+			{
+				process(compiled, batch, total);
+				batch.clear();
+			}
+		}
+
+		if(! batch.isEmpty())
+			process(compiled, batch, total);
+
+		logLikelihood = total.logLikelihood;
+		parsed = total.parsed;
+		unparsed = total.unparsed;
+
+		update(compiled, total);
+
+		return logLikelihood;
+	}
+
+	private void process(final CNFProbabilityGrammar<T>.Compiled compiled,
+			final List<List<T>> batch, Counts total)
+	{
+		int[] bounds = Parallel.split(batch.size(), Math.min(threads, batch.size()));
+
+		List<Callable<Counts>> tasks = new ArrayList<Callable<Counts>>();
+		for(int c = 0; c < bounds.length - 1; c++)
+		{
+			final int from = bounds[c], to = bounds[c + 1];
+			tasks.add(new Callable<Counts>()
+			{
+				@Override
+				public Counts call()
+				{
+					Counts counts = new Counts(compiled);
+					for(int i = from; i < to; i++)
+						counts.add(batch.get(i));
+					return counts;
+				}
+			});
+		}
+
+		for(Counts counts : Parallel.run(tasks, threads))
+			total.add(counts);
+	}
+
+	/**
+	 * Normalizes the expected counts per 'from' symbol and writes them back to
+	 * the grammar. Rules without counts (including rules to words that did
+	 * not occur in the corpus) get probability zero, so that the rules of each
+	 * symbol sum to one. Rules whose 'from' symbol was never used keep their
+	 * probability.
+	 */
+	private void update(CNFProbabilityGrammar<T>.Compiled compiled, Counts counts)
+	{
+		double[] fromTotals = new double[compiled.size()];
+
+		for(int r = 0; r < counts.binary.length; r++)
+			fromTotals[compiled.ruleFrom[r]] += counts.binary[r];
+		for(T word : counts.unary.keySet())
+		{
+			int[] from = compiled.unaryFrom.get(word);
+			double[] wordCounts = counts.unary.get(word);
+			for(int i = 0; i < from.length; i++)
+				fromTotals[from[i]] += wordCounts[i];
+		}
+
+		for(int r = 0; r < counts.binary.length; r++)
+		{
+			int a = compiled.ruleFrom[r];
+			if(fromTotals[a] > 0.0)
+				grammar.setRule(
+						compiled.symbols.get(a),
+						compiled.symbols.get(compiled.ruleLeft[r]),
+						compiled.symbols.get(compiled.ruleRight[r]),
+						counts.binary[r] / fromTotals[a]);
+		}
+
+		for(T word : compiled.unaryFrom.keySet())
+		{
+			int[] from = compiled.unaryFrom.get(word);
+			double[] wordCounts = counts.unary.get(word);
+			for(int i = 0; i < from.length; i++)
+				if(fromTotals[from[i]] > 0.0)
+					grammar.setRule(
+							compiled.symbols.get(from[i]), word,
+							wordCounts == null ? 0.0 : wordCounts[i] / fromTotals[from[i]]);
+		}
+	}
+
+	/**
+	 * The log-likelihood of the corpus in the last iteration.
+	 */
+	public double logLikelihood()
+	{
+		return logLikelihood;
+	}
+
+	/**
+	 * The number of sentences that could be parsed in the last iteration.
+	 */
+	public int parsed()
+	{
+		return parsed;
+	}
+
+	/**
+	 * The number of sentences that could not be parsed from the top symbol in
+	 * the last iteration. These do not contribute to the counts.
+	 */
+	public int unparsed()
+	{
+		return unparsed;
+	}
+
+	/**
+	 * Expected rule counts, collected by a single thread.
+	 */
+	private class Counts
+	{
+		CNFProbabilityGrammar<T>.Compiled compiled;
+
+		// * expected counts for the binary rules (indexed as in the compiled
+		//   grammar) and for the unary rules (per word, aligned with
+		//   compiled.unaryFrom)
+		double[] binary;
+		Map<T, double[]> unary = new HashMap<T, double[]>();
+
+		double logLikelihood = 0.0;
+		int parsed = 0, unparsed = 0;
+
+		public Counts(CNFProbabilityGrammar<T>.Compiled compiled)
+		{
+			this.compiled = compiled;
+			binary = new double[compiled.ruleFrom.length];
+		}
+
+		public void add(Counts other)
+		{
+			for(int r = 0; r < binary.length; r++)
+				binary[r] += other.binary[r];
+
+			for(T word : other.unary.keySet())
+			{
+				double[] mine = unaryCounts(word), theirs = other.unary.get(word);
+				for(int i = 0; i < mine.length; i++)
+					mine[i] += theirs[i];
+			}
+
+			logLikelihood += other.logLikelihood;
+			parsed += other.parsed;
+			unparsed += other.unparsed;
+		}
+
+		private double[] unaryCounts(T word)
+		{
+			double[] counts = unary.get(word);
+			if(counts == null)
+			{
+				counts = new double[compiled.unaryFrom.get(word).length];
+				unary.put(word, counts);
+			}
+
+			return counts;
+		}
+
+		/**
+		 * Computes the inside and outside scores for a sentence and adds the
+		 * expected rule counts.
+		 */
+		public void add(List<T> sentence)
+		{
+			int n = sentence.size();
+			int numSymbols = compiled.size();
+			Integer top = compiled.indices.get(topSymbol);
+
+			if(n == 0 || top == null)
+			{
+				unparsed++;
+				return;
+			}
+
+			for(T word : sentence)
+				if(! compiled.unaryFrom.containsKey(word))
+				{
+					unparsed++;
+					return;
+				}
+
+			double[][][] inside = chart(n, numSymbols),
+			             outside = chart(n, numSymbols);
+
+			// * Inside scores
+			for(int s = 0; s < n; s++)
+			{
+				T word = sentence.get(s);
+				int[] from = compiled.unaryFrom.get(word);
+				double[] logProbs = compiled.unaryLogProb.get(word);
+
+				for(int i = 0; i < from.length; i++)
+					inside[1][s][from[i]] = logAdd(inside[1][s][from[i]], logProbs[i]);
+			}
+
+			for(int l = 2; l <= n; l++)
+				for(int s = 0; s <= n - l; s++)
+				{
+					double[] cell = inside[l][s];
+					for(int p = 1; p < l; p++)
+					{
+						double[] left = inside[p][s], right = inside[l - p][s + p];
+						for(int b = 0; b < numSymbols; b++)
+						{
+							if(left[b] == Double.NEGATIVE_INFINITY)
+								continue;
+
+							for(int r = compiled.leftStart[b]; r < compiled.leftStart[b + 1]; r++)
+							{
+								double rightScore = right[compiled.ruleRight[r]];
+								if(rightScore == Double.NEGATIVE_INFINITY)
+									continue;
+
+								int a = compiled.ruleFrom[r];
+								cell[a] = logAdd(cell[a],
+										compiled.ruleLogProb[r] + left[b] + rightScore);
+							}
+						}
+					}
+				}
+
+			double logZ = inside[n][0][top];
+			if(logZ == Double.NEGATIVE_INFINITY)
+			{
+				unparsed++;
+				return;
+			}
+
+			logLikelihood += logZ;
+			parsed++;
+
+			// * Outside scores and binary rule counts
+			outside[n][0][top] = 0.0;
+
+			for(int l = n; l >= 2; l--)
+				for(int s = 0; s <= n - l; s++)
+				{
+					double[] parentOutside = outside[l][s];
+					for(int p = 1; p < l; p++)
+					{
+						double[] left = inside[p][s], right = inside[l - p][s + p];
+						double[] leftOutside = outside[p][s],
+						         rightOutside = outside[l - p][s + p];
+
+						for(int b = 0; b < numSymbols; b++)
+						{
+							if(left[b] == Double.NEGATIVE_INFINITY)
+								continue;
+
+							for(int r = compiled.leftStart[b]; r < compiled.leftStart[b + 1]; r++)
+							{
+								int a = compiled.ruleFrom[r], c = compiled.ruleRight[r];
+								if(parentOutside[a] == Double.NEGATIVE_INFINITY ||
+										right[c] == Double.NEGATIVE_INFINITY)
+									continue;
+
+								double base = parentOutside[a] + compiled.ruleLogProb[r];
+
+								leftOutside[b] = logAdd(leftOutside[b], base + right[c]);
+								rightOutside[c] = logAdd(rightOutside[c], base + left[b]);
+
+								binary[r] += Math.exp(base + left[b] + right[c] - logZ);
+							}
+						}
+					}
+				}
+
+			// * Unary rule counts
+			for(int s = 0; s < n; s++)
+			{
+				T word = sentence.get(s);
+				int[] from = compiled.unaryFrom.get(word);
+				double[] logProbs = compiled.unaryLogProb.get(word);
+				double[] counts = unaryCounts(word);
+
+				for(int i = 0; i < from.length; i++)
+				{
+					double o = outside[1][s][from[i]];
+					if(o > Double.NEGATIVE_INFINITY)
+						counts[i] += Math.exp(o + logProbs[i] - logZ);
+				}
+			}
+		}
+	}
+
+	private static double[][][] chart(int n, int numSymbols)
+	{
+		double[][][] chart = new double[n + 1][][];
+		for(int l = 1; l <= n; l++)
+		{
+			chart[l] = new double[n - l + 1][numSymbols];
+			for(double[] cell : chart[l])
+				Arrays.fill(cell, Double.NEGATIVE_INFINITY);
+		}
+
+		return chart;
+	}
+
+	/**
+	 * Computes log(exp(a) + exp(b)).
+	 */
+	private static double logAdd(double a, double b)
+	{
+		if(a == Double.NEGATIVE_INFINITY)
+			return b;
+		if(b == Double.NEGATIVE_INFINITY)
+			return a;
+
+		if(a > b)
+			return a + Math.log1p(Math.exp(b - a));
+		return b + Math.log1p(Math.exp(a - b));
+	}
+}
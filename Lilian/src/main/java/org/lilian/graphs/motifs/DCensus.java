@@ -1,16 +1,23 @@
 package org.lilian.graphs.motifs;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashSet;
 import java.util.List;
 
 import org.lilian.models.BasicFrequencyModel;
+import org.lilian.util.Parallel;
 import org.nodes.DGraph;
 import org.nodes.DNode;
 import org.nodes.Subgraph;
-import org.nodes.algorithms.DVF2;
 
+/**
+ * Counts the weakly connected, induced subgraphs of size n of a directed
+ * graph by isomorphism class (ignoring labels).
+ *
+ * The subgraphs are enumerated by {@link ESU}, so that each is counted once,
+ * and sorted into classes by canonical code.
+ *
+ * @author Peter
+ */
 public class DCensus<L>
 {
 	private DGraph<L> graph;
@@ -20,68 +27,78 @@ public class DCensus<L>
 		counts = new BasicFrequencyModel<DGraph<L>>(); 
 		
 	public DCensus(DGraph<L> graph, int n)
+	{
+		this(graph, n, Parallel.threads());
+	}
+
+	public DCensus(DGraph<L> graph, int n, int threads)
+	{
+		this(graph, n, null, 0L, threads);
+	}
+
+	/**
+	 * A sampled census (RAND-ESU). The counts are unbiased estimates.
+	 *
+	 * @param probabilities For each depth of the enumeration tree, the
+	 * 	probability that a node at that depth is explored.
+	 */
+	public DCensus(DGraph<L> graph, int n, double[] probabilities, long seed, int threads)
 	{
 		this.graph = graph;
 		this.n = n;
 		
-		run(new ArrayList<DNode<L>>(n), n);
+		int size = graph.size();
+		int[][] neighbors = new int[size][], out = new int[size][];
+		for(int i = 0; i < size; i++)
+		{
+			DNode<L> node = graph.nodes().get(i);
+
+			int[] indices = new int[node.neighbors().size()];
+			int num = 0;
+			for(DNode<L> neighbor : node.neighbors())
+				if(neighbor.index() != i)
+					indices[num++] = neighbor.index();
+			neighbors[i] = UCensus.unique(indices, num);
+
+			indices = new int[node.out().size()];
+			num = 0;
+			for(DNode<L> to : node.out())
+				if(to.index() != i)
+					indices[num++] = to.index();
+			out[i] = UCensus.unique(indices, num);
+		}
+
+		ESU esu = new ESU(neighbors, out, n, probabilities, seed, threads);
+
+		for(ESU.Motif motif : esu.motifs())
+			counts.add(subgraph(motif.nodes()), motif.count());
 	}
 	
-	private void run(List<DNode<L>> nodes, int depth)
+	private DGraph<L> subgraph(int[] indices)
 	{
-		if(depth == 0)
-		{
-			counts.add(Subgraph.dSubgraph(graph, nodes));
-			return;
-		}
-		
-		Collection<DNode<L>> neighbors; 
-		if(nodes.isEmpty())
-		{
-			neighbors = (Collection<DNode<L>>) graph.nodes();
-		} else {
-			neighbors = new HashSet<DNode<L>>();
-			for(DNode<L> node : nodes)
-				neighbors.addAll(node.neighbors());
-			neighbors.removeAll(nodes);
-		}
+		List<DNode<L>> nodes = new ArrayList<DNode<L>>(indices.length);
+		for(int index : indices)
+			nodes.add(graph.nodes().get(index));
 		
-		for(DNode<L> node : neighbors)
-		{
-			nodes.add(node);
-			run(nodes, depth - 1);
-			nodes.remove(nodes.size() - 1);
-		}
+		return Subgraph.dSubgraph(graph, nodes);
 	}
 	
+	/**
+	 * One representative subgraph for each isomorphism class, with the
+	 * number of subgraphs in that class.
+	 */
 	public BasicFrequencyModel<DGraph<L>> model()
 	{
 		return counts;
 	}
 	
+	/**
+	 * Since the census already sorts subgraphs by isomorphism class, this
+	 * returns a copy of {@link #model()}.
+	 */
 	public BasicFrequencyModel<DGraph<L>> compact()
 	{
-		BasicFrequencyModel<DGraph<L>> compact = new BasicFrequencyModel<DGraph<L>>();
-		
-		for(DGraph<L> token : counts.tokens())
-		{
-			boolean added = false;
-			for(DGraph<L> existing : compact.tokens())
-			{
-				DVF2<L> vf2 = new DVF2<L>(token, existing, false);
-				if(vf2.matches())
-				{
-					compact.add(existing, counts.frequency(token));
-					added = true;
-					break;
-				}
-			}
-			
-			if(! added)
-				compact.add(token, counts.frequency(token));
-		}
-		
-		return compact;
+		return new BasicFrequencyModel<DGraph<L>>(counts);
 	}
 	
 	
@@ -0,0 +1,436 @@
+package org.lilian.graphs.motifs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.lilian.util.Parallel;
+
+/**
+ * A census of the connected, induced subgraphs of a given size, using the
+ * ESU algorithm (Wernicke, 2006), which enumerates every such subgraph
+ * exactly once.
+ *
+ * Each subgraph is sorted into its isomorphism class by a canonical code: the
+ * smallest adjacency bitstring over all orderings of its nodes that sort them
+ * by degree. Since there are few distinct subgraphs of a small size, canonical
+ * codes are cached by the code of the subgraph in the order in which it was
+ * found, so that looking up the class of a subgraph takes a hash lookup.
+ *
+ * Codes are stored in a long, which limits k to 11 for undirected graphs and
+ * 8 for directed graphs. A cache miss searches up to k! orderings (for
+ * regular subgraphs), so large k is slow. For large k the number of found-order
+ * codes grows quickly, so the cache stops taking new entries after CACHE
+ * entries (about 100 bytes each). Codes beyond that are recomputed.
+ *
+ * If sampling probabilities are given, RAND-ESU is used: the subtree below
+ * each node at depth d of the enumeration tree is explored with probability
+ * p_d, and the counts are divided by the product of the p_d to give unbiased
+ * estimates.
+ *
+ * Root nodes are processed in fixed blocks on multiple threads, and the
+ * results are merged in the order of the blocks. Each block is given its own
+ * Random, so the result depends only on the seed.
+ *
+ * The graph is given as arrays of node indices. Labels are ignored.
+ *
+ * @author Peter
+ */
+public class ESU
+{
+	public static final int BLOCK = 64;
+
+	// * The largest number of canonical codes remembered
+	public static int CACHE = 1000000;
+
+	private int[][] neighbors;
+	private int[][] out;
+	private int k;
+	private double[] probabilities;
+	private double weight = 1.0;
+
+	private Map<Long, Long> canonical = new ConcurrentHashMap<Long, Long>();
+	private Map<Long, Motif> motifs = new LinkedHashMap<Long, Motif>();
+
+	/**
+	 * An exact census.
+	 *
+	 * @param neighbors For each node, the indices of its neighbours, ignoring
+	 * 	direction.
+	 * @param out For each node, the indices of the nodes it links to, or null
+	 * 	for an undirected graph.
+	 * @param k The size of the subgraphs.
+	 */
+	public ESU(int[][] neighbors, int[][] out, int k, int threads)
+	{
+		this(neighbors, out, k, null, 0L, threads);
+	}
+
+	/**
+	 * @param neighbors For each node, the indices of its neighbours, ignoring
+	 * 	direction.
+	 * @param out For each node, the indices of the nodes it links to, or null
+	 * 	for an undirected graph.
+	 * @param k The size of the subgraphs.
+	 * @param probabilities The k probabilities of exploring a node at each
+	 * 	depth of the enumeration tree, or null for an exact census.
+	 * @param seed
+	 * @param threads
+	 */
+	public ESU(int[][] neighbors, int[][] out, int k, double[] probabilities, long seed, int threads)
+	{
+		int maxSize = out == null ? 11 : 8;
+		if(k < 1 || k > maxSize)
+			throw new IllegalArgumentException("Subgraph size ("+k+") should be between 1 and "+maxSize+".");
+		if(probabilities != null && probabilities.length != k)
+			throw new IllegalArgumentException("There should be one probability for each depth ("+k+"), got "+probabilities.length+".");
+
+		this.neighbors = sorted(neighbors);
+		this.out = out == null ? null : sorted(out);
+		this.k = k;
+		this.probabilities = probabilities;
+
+		if(probabilities != null)
+			for(double p : probabilities)
+				weight /= p;
+
+		final int n = neighbors.length;
+		final ThreadLocal<Worker> workers = new ThreadLocal<Worker>()
+		{
+			@Override
+			protected Worker initialValue()
+			{
+				return new Worker(n);
+			}
+		};
+
+		int numBlocks = (n + BLOCK - 1) / BLOCK;
+		final long[] seeds = Parallel.seeds(seed, numBlocks);
+
+		List<Callable<Map<Long, Motif>>> tasks = new ArrayList<Callable<Map<Long, Motif>>>(numBlocks);
+		for(int b = 0; b < numBlocks; b++)
+		{
+			final int block = b;
+			tasks.add(new Callable<Map<Long, Motif>>()
+			{
+				@Override
+				public Map<Long, Motif> call()
+				{
+					Worker worker = workers.get();
+					worker.motifs = new LinkedHashMap<Long, Motif>();
+					worker.random = ESU.this.probabilities == null ? null : new Random(seeds[block]);
+
+					for(int root = block * BLOCK; root < Math.min(n, (block + 1) * BLOCK); root++)
+						worker.root(root);
+
+					return worker.motifs;
+				}
+			});
+		}
+
+		for(Map<Long, Motif> result : Parallel.run(tasks, threads))
+			for(Motif motif : result.values())
+				if(motifs.containsKey(motif.code))
+					motifs.get(motif.code).count += motif.count;
+				else
+					motifs.put(motif.code, motif);
+	}
+
+	private static int[][] sorted(int[][] lists)
+	{
+		int[][] sorted = new int[lists.length][];
+		for(int i = 0; i < lists.length; i++)
+		{
+			sorted[i] = lists[i].clone();
+			Arrays.sort(sorted[i]);
+		}
+		return sorted;
+	}
+
+	/**
+	 * The isomorphism classes found, in order of discovery.
+	 */
+	public List<Motif> motifs()
+	{
+		return Collections.unmodifiableList(new ArrayList<Motif>(motifs.values()));
+	}
+
+	/**
+	 * The (estimated) total number of connected subgraphs.
+	 */
+	public double total()
+	{
+		double total = 0.0;
+		for(Motif motif : motifs.values())
+			total += motif.count;
+		return total;
+	}
+
+	/**
+	 * An isomorphism class of subgraphs.
+	 */
+	public static class Motif
+	{
+		private long code;
+		private double count;
+		private int[] nodes;
+
+		private Motif(long code, int[] nodes)
+		{
+			this.code = code;
+			this.nodes = nodes;
+		}
+
+		/**
+		 * The canonical code of the class.
+		 */
+		public long code()
+		{
+			return code;
+		}
+
+		/**
+		 * The number of subgraphs in this class, or its estimate if the census
+		 * was sampled.
+		 */
+		public double count()
+		{
+			return count;
+		}
+
+		/**
+		 * The node indices of the first subgraph found in this class.
+		 */
+		public int[] nodes()
+		{
+			return nodes.clone();
+		}
+	}
+
+	/**
+	 * The state of the enumeration for a single thread.
+	 */
+	private class Worker
+	{
+		// * For each node, the number of nodes in the subgraph that it is equal
+		//   or adjacent to
+		int[] marks;
+		int[] subgraph = new int[k];
+		int[][] extensions = new int[k][];
+
+		Random random;
+		Map<Long, Motif> motifs;
+
+		public Worker(int n)
+		{
+			marks = new int[n];
+			for(int d = 0; d < k; d++)
+				extensions[d] = new int[16];
+		}
+
+		private boolean explore(int depth)
+		{
+			return random == null || random.nextDouble() < probabilities[depth];
+		}
+
+		private void mark(int node, int delta)
+		{
+			marks[node] += delta;
+			for(int neighbor : neighbors[node])
+				marks[neighbor] += delta;
+		}
+
+		public void root(int root)
+		{
+			if(! explore(0))
+				return;
+
+			subgraph[0] = root;
+			mark(root, 1);
+
+			int size = 0;
+			for(int neighbor : neighbors[root])
+				if(neighbor > root)
+					size = add(0, size, neighbor);
+
+			extend(1, extensions[0], size, root);
+
+			mark(root, -1);
+		}
+
+		private int add(int depth, int size, int node)
+		{
+			if(size == extensions[depth].length)
+				extensions[depth] = Arrays.copyOf(extensions[depth], size * 2);
+			extensions[depth][size] = node;
+			return size + 1;
+		}
+
+		/**
+		 * Extends the subgraph of the given size by each node of the
+		 * extension in turn.
+		 */
+		private void extend(int depth, int[] extension, int extensionSize, int root)
+		{
+			if(depth == k)
+			{
+				observe();
+				return;
+			}
+
+			for(int i = 0; i < extensionSize; i++)
+			{
+				int node = extension[i];
+				if(! explore(depth))
+					continue;
+
+				// * The new extension: the remaining nodes, and the neighbours of
+				//   node that are not in or next to the current subgraph.
+				int size = 0;
+				for(int j = i + 1; j < extensionSize; j++)
+					size = add(depth, size, extension[j]);
+				for(int neighbor : neighbors[node])
+					if(neighbor > root && marks[neighbor] == 0)
+						size = add(depth, size, neighbor);
+
+				subgraph[depth] = node;
+				mark(node, 1);
+
+				extend(depth + 1, extensions[depth], size, root);
+
+				mark(node, -1);
+			}
+		}
+
+		private void observe()
+		{
+			long code = canonical(code(subgraph));
+
+			Motif motif = motifs.get(code);
+			if(motif == null)
+			{
+				motif = new Motif(code, subgraph.clone());
+				motifs.put(code, motif);
+			}
+
+			motif.count += weight;
+		}
+	}
+
+	/**
+	 * The adjacency code of the subgraph induced by the given nodes, in the
+	 * given order.
+	 */
+	private long code(int[] nodes)
+	{
+		long code = 0L;
+		int bit = 0;
+		for(int i = 0; i < k; i++)
+			for(int j = out == null ? i + 1 : 0; j < k; j++)
+				if(i != j)
+				{
+					int[] adjacent = out == null ? neighbors[nodes[i]] : out[nodes[i]];
+					if(Arrays.binarySearch(adjacent, nodes[j]) >= 0)
+						code |= 1L << bit;
+					bit++;
+				}
+
+		return code;
+	}
+
+	private long canonical(long code)
+	{
+		Long result = canonical.get(code);
+		if(result == null)
+		{
+			result = canonical(code, k, out != null);
+			if(canonical.size() < CACHE)
+				canonical.put(code, result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Computes the canonical form of an adjacency code: the smallest code
+	 * over all orderings of the nodes that sort them by degree (in-degree and
+	 * out-degree for directed graphs).
+	 *
+	 * Two codes have the same canonical form if and only if they describe
+	 * isomorphic graphs.
+	 */
+	public static long canonical(long code, int k, boolean directed)
+	{
+		boolean[][] adjacent = new boolean[k][k];
+		int bit = 0;
+		for(int i = 0; i < k; i++)
+			for(int j = directed ? 0 : i + 1; j < k; j++)
+				if(i != j)
+				{
+					if((code & (1L << bit)) != 0L)
+					{
+						adjacent[i][j] = true;
+						if(! directed)
+							adjacent[j][i] = true;
+					}
+					bit++;
+				}
+
+		// * Invariant keys, sorted
+		int[] keys = new int[k];
+		for(int i = 0; i < k; i++)
+			for(int j = 0; j < k; j++)
+			{
+				if(adjacent[i][j])
+					keys[i] += k + 1;
+				if(adjacent[j][i])
+					keys[i] += 1;
+			}
+
+		int[] sortedKeys = keys.clone();
+		Arrays.sort(sortedKeys);
+
+		long[] best = new long[]{Long.MAX_VALUE};
+		search(adjacent, keys, sortedKeys, new int[k], new boolean[k], 0, directed, best);
+
+		return best[0];
+	}
+
+	private static void search(
+			boolean[][] adjacent, int[] keys, int[] sortedKeys, int[] order,
+			boolean[] used, int position, boolean directed, long[] best)
+	{
+		int k = keys.length;
+		if(position == k)
+		{
+			long code = 0L;
+			int bit = 0;
+			for(int i = 0; i < k; i++)
+				for(int j = directed ? 0 : i + 1; j < k; j++)
+					if(i != j)
+					{
+						if(adjacent[order[i]][order[j]])
+							code |= 1L << bit;
+						bit++;
+					}
+
+			best[0] = Math.min(best[0], code);
+			return;
+		}
+
+		for(int node = 0; node < k; node++)
+			if(! used[node] && keys[node] == sortedKeys[position])
+			{
+				used[node] = true;
+				order[position] = node;
+				search(adjacent, keys, sortedKeys, order, used, position + 1, directed, best);
+				used[node] = false;
+			}
+	}
+}
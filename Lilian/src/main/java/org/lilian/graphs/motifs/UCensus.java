@@ -1,21 +1,24 @@
 package org.lilian.graphs.motifs;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 import org.lilian.models.BasicFrequencyModel;
-import org.lilian.util.Series;
+import org.lilian.util.Parallel;
 import org.nodes.Subgraph;
 import org.nodes.UGraph;
 import org.nodes.UNode;
-import org.nodes.algorithms.UVF2;
 
+/**
+ * Counts the connected, induced subgraphs of size n of an undirected graph
+ * by isomorphism class (ignoring labels).
+ *
+ * The subgraphs are enumerated by {@link ESU}, so that each is counted once,
+ * and sorted into classes by canonical code.
+ *
+ * @author Peter
+ */
 public class UCensus<L>
 {
 	private UGraph<L> graph;
@@ -25,68 +28,94 @@ public class UCensus<L>
 		counts = new BasicFrequencyModel<UGraph<L>>(); 
 		
 	public UCensus(UGraph<L> graph, int n)
+	{
+		this(graph, n, Parallel.threads());
+	}
+
+	public UCensus(UGraph<L> graph, int n, int threads)
+	{
+		this(graph, n, null, 0L, threads);
+	}
+
+	/**
+	 * A sampled census (RAND-ESU). The counts are unbiased estimates.
+	 *
+	 * @param probabilities For each depth of the enumeration tree, the
+	 * 	probability that a node at that depth is explored.
+	 */
+	public UCensus(UGraph<L> graph, int n, double[] probabilities, long seed, int threads)
 	{
 		this.graph = graph;
 		this.n = n;
 		
-		run(new ArrayList<UNode<L>>(n), n);
+		ESU esu = new ESU(neighbors(graph), null, n, probabilities, seed, threads);
+
+		for(ESU.Motif motif : esu.motifs())
+			counts.add(subgraph(motif.nodes()), motif.count());
 	}
 	
-	private void run(List<UNode<L>> nodes, int depth)
+	private UGraph<L> subgraph(int[] indices)
 	{
-		if(depth == 0)
-		{
-			counts.add(Subgraph.uSubgraph(graph, nodes));
-			return;
-		}
-		
-		Collection<UNode<L>> neighbors; 
-		if(nodes.isEmpty())
+		List<UNode<L>> nodes = new ArrayList<UNode<L>>(indices.length);
+		for(int index : indices)
+			nodes.add(graph.nodes().get(index));
+
+		return Subgraph.uSubgraph(graph, nodes);
+	}
+
+	/**
+	 * The neighbours of each node as node indices, without self-loops.
+	 */
+	static <L> int[][] neighbors(UGraph<L> graph)
+	{
+		int[][] neighbors = new int[graph.size()][];
+		for(int i = 0; i < graph.size(); i++)
 		{
-			neighbors = (Collection<UNode<L>>) graph.nodes();
-		} else {
-			neighbors = new HashSet<UNode<L>>();
-			for(UNode<L> node : nodes)
-				neighbors.addAll(node.neighbors());
-			neighbors.removeAll(nodes);
+			UNode<L> node = graph.nodes().get(i);
+
+			int[] indices = new int[node.neighbors().size()];
+			int size = 0;
+			for(UNode<L> neighbor : node.neighbors())
+				if(neighbor.index() != i)
+					indices[size++] = neighbor.index();
+
+			neighbors[i] = unique(indices, size);
 		}
 		
-		for(UNode<L> node : neighbors)
-		{
-			nodes.add(node);
-			run(nodes, depth - 1);
-			nodes.remove(nodes.size() - 1);
-		}
+		return neighbors;
 	}
 	
+	/**
+	 * The distinct values among the first size elements, sorted.
+	 */
+	static int[] unique(int[] values, int size)
+	{
+		Arrays.sort(values, 0, size);
+
+		int distinct = 0;
+		for(int i = 0; i < size; i++)
+			if(distinct == 0 || values[i] != values[distinct - 1])
+				values[distinct++] = values[i];
+
+		return Arrays.copyOf(values, distinct);
+	}
+
+	/**
+	 * One representative subgraph for each isomorphism class, with the
+	 * number of subgraphs in that class.
+	 */
 	public BasicFrequencyModel<UGraph<L>> model()
 	{
 		return counts;
 	}
 	
+	/**
+	 * Since the census already sorts subgraphs by isomorphism class, this
+	 * returns a copy of {@link #model()}.
+	 */
 	public BasicFrequencyModel<UGraph<L>> compact()
 	{
-		BasicFrequencyModel<UGraph<L>> compact = new BasicFrequencyModel<UGraph<L>>();
-		
-		for(UGraph<L> token : counts.tokens())
-		{
-			boolean added = false;
-			for(UGraph<L> existing : compact.tokens())
-			{
-				UVF2<L> vf2 = new UVF2<L>(token, existing, false);
-				if(vf2.matches())
-				{
-					compact.add(existing, counts.frequency(token));
-					added = true;
-					break;
-				}
-			}
-			
-			if(! added)
-				compact.add(token, counts.frequency(token));
-		}
-		
-		return compact;
+		return new BasicFrequencyModel<UGraph<L>>(counts);
 	}
 	
 	
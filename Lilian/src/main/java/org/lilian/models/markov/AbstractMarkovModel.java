@@ -96,6 +96,27 @@ public abstract class AbstractMarkovModel<T> implements MarkovModel<T> {
 	 */
 	protected abstract void add(List<T> token);
 	
+	/**
+	 * Adds an n-gram with a given frequency, as if it had been encountered 
+	 * that many times. This is used to merge counts collected elsewhere (see
+	 * {@link MarkovModels#add(AbstractMarkovModel, SequenceCorpus, int)}).
+	 * 
+	 * The default implementation passes the n-gram to add(List<T>) 
+	 * repeatedly. Implementing classes should override it if they can do 
+	 * better.
+	 * 
+	 * @param nGram
+	 * @param frequency A whole number.
+	 */
+	public void add(List<T> nGram, double frequency)
+	{
+		checkOrder(nGram.size());
+		mod();
+		
+		for(long i = 0; i < (long) frequency; i++)
+			add(new ArrayList<T>(nGram));
+	}
+	
 	@Override
 	public abstract double frequency(List<T> nGram);
 
@@ -28,6 +28,15 @@ public class BasicMarkovModel<T> extends AbstractMarkovModel<T>
 		models.get(n - 1).add(token);
 	}
 
+	@Override
+	public void add(List<T> nGram, double frequency)
+	{
+		checkOrder(nGram.size());
+		mod();
+		
+		models.get(nGram.size() - 1).add(new ArrayList<T>(nGram), frequency);
+	}
+
 	@Override
 	public double frequency(List<T> nGram) 
 	{
@@ -0,0 +1,537 @@
+package org.lilian.models.markov;
+
+import java.util.*;
+
+/**
+ * A markov model which stores its n-grams in a compact trie made of primitive
+ * arrays.
+ *
+ * Tokens are interned to integers. Level l of the trie (the n-grams of length
+ * l) is stored as a sorted int array of the last token of each n-gram with a
+ * parallel long array of counts. The children of node i at level l are the
+ * contiguous range starts[l][i] (inclusive) to starts[l][i+1] (exclusive) of
+ * level l+1, sorted by token, so that lookups are binary searches over small,
+ * contiguous stretches of memory. Since all ranges are laid out in the order
+ * of their parents, each level is in lexicographic order.
+ *
+ * Sorted arrays cannot be extended cheaply, so new n-grams are collected in a
+ * buffer of raw token ids, which is sorted and merged into the trie whenever
+ * it is full, or when the model is queried.
+ *
+ * @author Peter
+ *
+ * @param <T>
+ */
+public class CompactMarkovModel<T> extends AbstractMarkovModel<T>
+{
+	public static final int DEFAULT_BUFFER_SIZE = 1000000;
+
+	private Map<T, Integer> ids = new HashMap<T, Integer>();
+	private List<T> symbols = new ArrayList<T>();
+
+	// * The trie. Indexed by level, level 0 being the root.
+	private int[][] tokens;
+	private long[][] counts;
+	private int[][] starts;
+
+	private long[] totals;
+	private long[] distinct;
+
+	// * The buffered n-grams, one flat array per length, with their counts
+	private int[][] buffer;
+	private long[][] bufferCounts;
+	private int[] buffered;
+	private int bufferedTotal = 0, bufferSize;
+
+	public CompactMarkovModel(int order)
+	{
+		this(order, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param bufferSize The number of n-grams that are collected before they
+	 * 	are merged into the trie.
+	 */
+	public CompactMarkovModel(int order, int bufferSize)
+	{
+		super(order);
+		this.bufferSize = bufferSize;
+
+		tokens = new int[order + 1][];
+		counts = new long[order + 1][];
+		starts = new int[order + 1][];
+
+		tokens[0] = new int[1];
+		counts[0] = new long[1];
+		for(int l = 1; l <= order; l++)
+		{
+			tokens[l] = new int[0];
+			counts[l] = new long[0];
+		}
+
+		for(int l = 0; l <= order; l++)
+			starts[l] = new int[size(l) + 1];
+
+		totals = new long[order + 1];
+		distinct = new long[order + 1];
+
+		buffer = new int[order + 1][];
+		bufferCounts = new long[order + 1][];
+		buffered = new int[order + 1];
+		for(int l = 1; l <= order; l++)
+		{
+			buffer[l] = new int[16 * l];
+			bufferCounts[l] = new long[16];
+		}
+	}
+
+	@Override
+	protected void add(List<T> token)
+	{
+		buffer(token, 1L);
+	}
+
+	@Override
+	public void add(List<T> nGram, double frequency)
+	{
+		checkOrder(nGram.size());
+		mod();
+
+		buffer(nGram, (long) frequency);
+	}
+
+	private void buffer(List<T> nGram, long frequency)
+	{
+		int n = nGram.size();
+
+		if(bufferCounts[n].length < buffered[n] + 1)
+		{
+			buffer[n] = Arrays.copyOf(buffer[n], buffer[n].length * 2);
+			bufferCounts[n] = Arrays.copyOf(bufferCounts[n], bufferCounts[n].length * 2);
+		}
+
+		int offset = buffered[n] * n;
+		for(int i = 0; i < n; i++)
+			buffer[n][offset + i] = intern(nGram.get(i));
+		bufferCounts[n][buffered[n]] = frequency;
+
+		buffered[n]++;
+		bufferedTotal++;
+		totals[n] += frequency;
+
+		if(bufferedTotal >= bufferSize)
+			compact();
+	}
+
+	@Override
+	public double frequency(List<T> nGram)
+	{
+		checkOrder(nGram.size());
+		compact();
+
+		int node = find(nGram);
+		return node < 0 ? 0.0 : counts[nGram.size()][node];
+	}
+
+	@Override
+	public double total(int order)
+	{
+		checkOrder(order);
+
+		return totals[order];
+	}
+
+	@Override
+	public double distinct(int order)
+	{
+		checkOrder(order);
+		compact();
+
+		return distinct[order];
+	}
+
+	@Override
+	public Collection<List<T>> tokens(int order)
+	{
+		List<List<T>> list = new ArrayList<List<T>>((int)distinct(order));
+		Iterator<List<T>> it = iterator(order);
+		while(it.hasNext())
+			list.add(it.next());
+
+		return list;
+	}
+
+	/**
+	 * Returns an iterator over all encountered n-grams of the given length, in
+	 * the order of the trie.
+	 */
+	public Iterator<List<T>> iterator(int n)
+	{
+		checkOrder(n);
+		compact();
+
+		return new CompactIterator(n);
+	}
+
+	/**
+	 * The number of distinct tokens seen.
+	 */
+	public int vocabularySize()
+	{
+		return symbols.size();
+	}
+
+	/**
+	 * Merges all buffered n-grams into the trie.
+	 */
+	public void compact()
+	{
+		if(bufferedTotal == 0)
+			return;
+
+		int[][] keys = new int[order() + 1][];
+		long[][] keyCounts = new long[order() + 1][];
+		for(int l = 1; l <= order(); l++)
+		{
+			keys[l] = Arrays.copyOf(buffer[l], buffered[l] * l);
+			keyCounts[l] = Arrays.copyOf(bufferCounts[l], buffered[l]);
+		}
+
+		for(int l = 1; l <= order(); l++)
+		{
+			buffered[l] = 0;
+			buffer[l] = new int[16 * l];
+			bufferCounts[l] = new long[16];
+		}
+		bufferedTotal = 0;
+
+		merge(keys, keyCounts);
+	}
+
+	private int intern(T token)
+	{
+		Integer id = ids.get(token);
+		if(id == null)
+		{
+			id = symbols.size();
+			ids.put(token, id);
+			symbols.add(token);
+		}
+
+		return id;
+	}
+
+	/**
+	 * The number of nodes at the given level.
+	 */
+	private int size(int level)
+	{
+		return tokens[level].length;
+	}
+
+	/**
+	 * Returns the index at level nGram.size() of the node representing the
+	 * given n-gram, or -1 if it does not exist.
+	 */
+	private int find(List<T> nGram)
+	{
+		int node = 0;
+		for(int l = 1; l <= nGram.size(); l++)
+		{
+			Integer id = ids.get(nGram.get(l - 1));
+			if(id == null)
+				return -1;
+
+			node = Arrays.binarySearch(tokens[l], starts[l-1][node], starts[l-1][node+1], id);
+			if(node < 0)
+				return -1;
+		}
+
+		return node;
+	}
+
+	/**
+	 * Merges the given n-grams into the trie.
+	 *
+	 * @param keys For each length l, a flat array of n-grams of that length
+	 * 	(unsorted, and possibly with duplicates).
+	 * @param keyCounts The count for each n-gram.
+	 */
+	private void merge(int[][] keys, long[][] keyCounts)
+	{
+		int order = keys.length - 1;
+
+		// * Sort and deduplicate the new n-grams from the top level down,
+		//   adding the prefixes of each level to the level below with count 0,
+		//   so that each new n-gram has its parent among the new n-grams.
+		int[][] newKeys = new int[order + 1][];
+		long[][] newCounts = new long[order + 1][];
+
+		int[] prefixes = new int[0];
+		for(int l = order; l >= 1; l--)
+		{
+			int raw = keys[l].length / l, numPrefixes = prefixes.length / l;
+			int[] all = Arrays.copyOf(keys[l], keys[l].length + prefixes.length);
+			System.arraycopy(prefixes, 0, all, keys[l].length, prefixes.length);
+			long[] allCounts = Arrays.copyOf(keyCounts[l], raw + numPrefixes);
+
+			int[] sorted = sort(all, l, raw + numPrefixes);
+
+			// * deduplicate
+			int m = 0;
+			int[] distinctKeys = new int[all.length];
+			long[] distinctCounts = new long[raw + numPrefixes];
+			for(int i = 0; i < sorted.length; i++)
+			{
+				int index = sorted[i];
+				if(m > 0 && compare(all, index * l, distinctKeys, (m - 1) * l, l) == 0)
+				{
+					distinctCounts[m - 1] += allCounts[index];
+				} else
+				{
+					System.arraycopy(all, index * l, distinctKeys, m * l, l);
+					distinctCounts[m] = allCounts[index];
+					m++;
+				}
+			}
+
+			newKeys[l] = Arrays.copyOf(distinctKeys, m * l);
+			newCounts[l] = Arrays.copyOf(distinctCounts, m);
+
+			prefixes = new int[m * (l - 1)];
+			for(int i = 0; i < m; i++)
+				System.arraycopy(newKeys[l], i * l, prefixes, i * (l - 1), l - 1);
+		}
+
+		// * Merge level by level, from the root up. Nodes are identified by
+		//   (parent index in the merged level above, token).
+		int[] oldMap = new int[]{0}, newMap = new int[]{0};
+		int[] newKeysAbove = new int[0];
+
+		for(int l = 1; l <= order; l++)
+		{
+			int oldSize = size(l), newSize = newCounts[l].length;
+
+			int[] oldParents = parents(starts[l - 1], oldSize);
+			int[] newParents = new int[newSize];
+
+			// * find the parents of the new n-grams among the new n-grams of
+			//   the level above (both are sorted)
+			int q = 0;
+			for(int j = 0; j < newSize; j++)
+			{
+				if(l > 1)
+					while(compare(newKeysAbove, q * (l - 1), newKeys[l], j * l, l - 1) < 0)
+						q++;
+				newParents[j] = l > 1 ? newMap[q] : 0;
+			}
+
+			int[] mergedTokens = new int[oldSize + newSize];
+			long[] mergedCounts = new long[oldSize + newSize];
+			int[] mergedParents = new int[oldSize + newSize];
+			int[] nextOldMap = new int[oldSize], nextNewMap = new int[newSize];
+
+			int i = 0, j = 0, m = 0;
+			while(i < oldSize || j < newSize)
+			{
+				int c;
+				if(i >= oldSize)
+					c = 1;
+				else if(j >= newSize)
+					c = -1;
+				else
+				{
+					int pOld = oldMap[oldParents[i]], pNew = newParents[j];
+					c = pOld != pNew ?
+							(pOld < pNew ? -1 : 1) :
+							compare(tokens[l][i], newKeys[l][j * l + l - 1]);
+				}
+
+				if(c <= 0)
+				{
+					mergedTokens[m] = tokens[l][i];
+					mergedCounts[m] = counts[l][i];
+					mergedParents[m] = oldMap[oldParents[i]];
+					nextOldMap[i++] = m;
+				}
+				if(c >= 0)
+				{
+					mergedTokens[m] = newKeys[l][j * l + l - 1];
+					mergedCounts[m] += newCounts[l][j];
+					mergedParents[m] = newParents[j];
+					nextNewMap[j++] = m;
+				}
+				m++;
+			}
+
+			tokens[l] = Arrays.copyOf(mergedTokens, m);
+			counts[l] = Arrays.copyOf(mergedCounts, m);
+			starts[l - 1] = starts(mergedParents, m, size(l - 1));
+
+			distinct[l] = 0;
+			for(long count : counts[l])
+				if(count > 0)
+					distinct[l]++;
+
+			oldMap = nextOldMap;
+			newMap = nextNewMap;
+			newKeysAbove = newKeys[l];
+		}
+
+		starts[order] = new int[size(order) + 1];
+	}
+
+	/**
+	 * Expands the child ranges of one level into the parent index of each node
+	 * of the level below.
+	 */
+	private static int[] parents(int[] starts, int size)
+	{
+		int[] parents = new int[size];
+		for(int p = 0; p < starts.length - 1; p++)
+			for(int i = starts[p]; i < starts[p + 1]; i++)
+				parents[i] = p;
+
+		return parents;
+	}
+
+	/**
+	 * Computes the child ranges from the (nondecreasing) parent indices of the
+	 * level below.
+	 */
+	private static int[] starts(int[] parents, int size, int numParents)
+	{
+		int[] starts = new int[numParents + 1];
+		for(int i = 0; i < size; i++)
+			starts[parents[i] + 1]++;
+		for(int p = 0; p < numParents; p++)
+			starts[p + 1] += starts[p];
+
+		return starts;
+	}
+
+	private static int compare(int a, int b)
+	{
+		return a < b ? -1 : (a == b ? 0 : 1);
+	}
+
+	/**
+	 * Lexicographically compares two keys of the given width in flat arrays.
+	 */
+	private static int compare(int[] a, int aOffset, int[] b, int bOffset, int width)
+	{
+		for(int i = 0; i < width; i++)
+		{
+			int c = compare(a[aOffset + i], b[bOffset + i]);
+			if(c != 0)
+				return c;
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Returns the indices of the n keys of the given width in the flat array,
+	 * sorted lexicographically by key (a merge sort on primitive arrays).
+	 */
+	private static int[] sort(int[] keys, int width, int n)
+	{
+		int[] indices = new int[n], temp = new int[n];
+		for(int i = 0; i < n; i++)
+			indices[i] = i;
+
+		for(int run = 1; run < n; run *= 2)
+		{
+			for(int from = 0; from < n; from += 2 * run)
+			{
+				int mid = Math.min(from + run, n), to = Math.min(from + 2 * run, n);
+				int i = from, j = mid, k = from;
+				while(i < mid && j < to)
+					if(compare(keys, indices[j] * width, keys, indices[i] * width, width) < 0)
+						temp[k++] = indices[j++];
+					else
+						temp[k++] = indices[i++];
+
+				while(i < mid) temp[k++] = indices[i++];
+				while(j < to) temp[k++] = indices[j++];
+			}
+
+			int[] swap = indices;
+			indices = temp;
+			temp = swap;
+		}
+
+		return indices;
+	}
+
+	/**
+	 * Walks through one level of the trie, keeping track of the path of nodes
+	 * from the root.
+	 */
+	private class CompactIterator implements Iterator<List<T>>
+	{
+		private int n;
+		private int[] path;
+		private long baseModifications = state();
+
+		public CompactIterator(int n)
+		{
+			this.n = n;
+			path = new int[n + 1];
+			path[n] = -1;
+
+			advance();
+		}
+
+		/**
+		 * Moves to the next node at level n with a nonzero count, and updates
+		 * the nodes on the path above it.
+		 */
+		private void advance()
+		{
+			do {
+				path[n]++;
+			} while(path[n] < size(n) && counts[n][path[n]] == 0);
+
+			if(path[n] >= size(n))
+				return;
+
+			for(int l = n - 1; l >= 1; l--)
+				while(path[l + 1] >= starts[l][path[l] + 1])
+					path[l]++;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			checkMod();
+			return path[n] < size(n);
+		}
+
+		@Override
+		public List<T> next()
+		{
+			if(! hasNext())
+				throw new NoSuchElementException();
+
+			List<T> nGram = new ArrayList<T>(n);
+			for(int l = 1; l <= n; l++)
+				nGram.add(symbols.get(tokens[l][path[l]]));
+
+			advance();
+			return nGram;
+		}
+
+		@Override
+		public void remove()
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		private void checkMod()
+		{
+			if(baseModifications != state())
+				throw new ConcurrentModificationException();
+		}
+	}
+}
@@ -0,0 +1,249 @@
+package org.lilian.models.markov;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.lilian.corpora.Corpora;
+import org.lilian.corpora.PartitionableCorpus;
+import org.lilian.corpora.SequenceCorpus;
+import org.lilian.corpora.SequenceIterator;
+import org.lilian.util.Parallel;
+
+/**
+ * Static helpers for markov models.
+ *
+ * @author Peter
+ */
+public class MarkovModels
+{
+	/**
+	 * The (approximate) number of tokens in a single shard.
+	 */
+	public static int SHARD_SIZE = 100000;
+
+	/**
+	 * Adds a corpus to a markov model, counting the n-grams on multiple
+	 * threads.
+	 *
+	 * The corpus is read in shards of about SHARD_SIZE tokens. Each shard is
+	 * counted on its own thread into a local table, and the tables are merged
+	 * into the model (in the order of the corpus) with
+	 * {@link AbstractMarkovModel#add(List, double)}. A shard boundary that
+	 * falls inside a sequence is bridged by giving the next shard the last
+	 * (order - 1) tokens of the previous one as context, so the result is the
+	 * same as that of model.add(corpus).
+	 *
+	 * If the corpus is a {@link PartitionableCorpus}, its parts are read and
+	 * counted on separate threads instead. 
+	 *
+	 * The model is cut before and after the corpus is added.
+	 */
+	public static <T> void add(AbstractMarkovModel<T> model, SequenceCorpus<T> corpus, int threads)
+	{
+		int order = model.order();
+		model.cut();
+		
+		List<SequenceCorpus<T>> partitions = Corpora.partitions(corpus, threads);
+		if(partitions.size() > 1)
+		{
+			addPartitions(model, partitions, threads);
+			model.cut();
+			return;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			// * The counts of the shards that are in progress, in order
+			LinkedList<Future<Map<List<T>, long[]>>> pending =
+					new LinkedList<Future<Map<List<T>, long[]>>>();
+
+			SequenceIterator<T> it = corpus.iterator();
+			Shard<T> shard = new Shard<T>(order, Collections.<T>emptyList());
+			while(it.hasNext())
+			{
+				shard.add(it.next(), it.atSequenceEnd());
+
+				if(shard.size() >= SHARD_SIZE)
+				{
+					pending.add(executor.submit(shard));
+					shard = shard.next();
+				}
+
+				// * Keep the number of shards in memory bounded
+				while(pending.size() > 2 * threads)
+					merge(model, pending.removeFirst());
+			}
+
+			if(shard.size() > shard.context)
+				pending.add(executor.submit(shard));
+
+			while(! pending.isEmpty())
+				merge(model, pending.removeFirst());
+
+		} finally
+		{
+			executor.shutdown();
+		}
+
+		model.cut();
+	}
+
+	private static <T> void addPartitions(AbstractMarkovModel<T> model, List<SequenceCorpus<T>> partitions, int threads)
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Map<List<T>, long[]>>> futures = 
+					new ArrayList<Future<Map<List<T>, long[]>>>(partitions.size());
+			for(SequenceCorpus<T> partition : partitions)
+				futures.add(executor.submit(new Partition<T>(model.order(), partition)));
+			
+			for(Future<Map<List<T>, long[]>> future : futures)
+				merge(model, future);
+		} finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	public static <T> void add(AbstractMarkovModel<T> model, SequenceCorpus<T> corpus)
+	{
+		add(model, corpus, Parallel.threads());
+	}
+
+	private static <T> void merge(AbstractMarkovModel<T> model, Future<Map<List<T>, long[]>> future)
+	{
+		Map<List<T>, long[]> counts;
+		try {
+			counts = future.get();
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e)
+		{
+			if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+
+		for(Map.Entry<List<T>, long[]> entry : counts.entrySet())
+			model.add(entry.getKey(), entry.getValue()[0]);
+	}
+
+	/**
+	 * Reads a sentence-aligned part of a corpus, and counts its n-grams.
+	 */
+	private static class Partition<T> implements Callable<Map<List<T>, long[]>>
+	{
+		private int order;
+		private SequenceCorpus<T> corpus;
+
+		public Partition(int order, SequenceCorpus<T> corpus)
+		{
+			this.order = order;
+			this.corpus = corpus;
+		}
+
+		@Override
+		public Map<List<T>, long[]> call()
+		{
+			Map<List<T>, long[]> counts = new HashMap<List<T>, long[]>();
+			
+			// * The last (at most) order tokens of the current sequence
+			List<T> window = new ArrayList<T>(order + 1);
+
+			SequenceIterator<T> it = corpus.iterator();
+			while(it.hasNext())
+			{
+				window.add(it.next());
+				if(window.size() > order)
+					window.remove(0);
+
+				for(int n = 1; n <= window.size(); n++)
+				{
+					List<T> nGram = window.subList(window.size() - n, window.size());
+					long[] count = counts.get(nGram);
+
+					if(count == null)
+						counts.put(new ArrayList<T>(nGram), new long[]{1L});
+					else
+						count[0]++;
+				}
+
+				if(it.atSequenceEnd())
+					window.clear();
+			}
+
+			return counts;
+		}
+	}
+
+	/**
+	 * A stretch of the corpus, which counts its own n-grams.
+	 */
+	private static class Shard<T> implements Callable<Map<List<T>, long[]>>
+	{
+		private int order;
+		private List<T> tokens = new ArrayList<T>();
+		private BitSet ends = new BitSet();
+
+		// * The number of tokens at the start that belong to the previous shard
+		private int context;
+
+		public Shard(int order, List<T> context)
+		{
+			this.order = order;
+			this.context = context.size();
+			tokens.addAll(context);
+		}
+
+		public void add(T token, boolean sequenceEnd)
+		{
+			if(sequenceEnd)
+				ends.set(tokens.size());
+			tokens.add(token);
+		}
+
+		public int size()
+		{
+			return tokens.size();
+		}
+
+		/**
+		 * Creates the next shard, with the end of the current sequence (if
+		 * any) as its context.
+		 */
+		public Shard<T> next()
+		{
+			int from = Math.max(ends.length(), tokens.size() - (order - 1));
+			return new Shard<T>(order, new ArrayList<T>(tokens.subList(from, tokens.size())));
+		}
+
+		@Override
+		public Map<List<T>, long[]> call()
+		{
+			Map<List<T>, long[]> counts = new HashMap<List<T>, long[]>();
+
+			int start = 0;
+			for(int i = 0; i < tokens.size(); i++)
+			{
+				if(i >= context)
+					for(int n = 1; n <= order && i - n + 1 >= start; n++)
+					{
+						List<T> nGram = tokens.subList(i - n + 1, i + 1);
+						long[] count = counts.get(nGram);
+
+						if(count == null)
+							counts.put(new ArrayList<T>(nGram), new long[]{1L});
+						else
+							count[0]++;
+					}
+
+				if(ends.get(i))
+					start = i + 1;
+			}
+
+			return counts;
+		}
+	}
+}
@@ -16,23 +16,32 @@ public class TrieMarkovModel<T> extends AbstractMarkovModel<T>
 	private Node root = new Node(null, null);
 	
 	// Totals for the number of ngrams encountered
-	private List<Integer> totals = new ArrayList<Integer>();
+	private double[] totals;
 	
 	public TrieMarkovModel(int order)
 	{
 		super(order);
 		
-		while(totals.size() < order + 2)
-			totals.add(0);
+		totals = new double[order + 2];
 	}
 	
 	@Override
 	protected void add(List<T> token) 
 	{
-		totals.set(token.size()-1, 
-				totals.get(token.size()-1) + 1);
+		totals[token.size()-1] ++;
 		
-		root.add(token.iterator());
+		root.add(token.iterator(), 1.0);
+	}
+	
+	@Override
+	public void add(List<T> nGram, double frequency)
+	{
+		checkOrder(nGram.size());
+		mod();
+		
+		totals[nGram.size()-1] += frequency;
+		
+		root.add(nGram.iterator(), frequency);
 	}
 
 	@Override
@@ -58,7 +67,7 @@ public class TrieMarkovModel<T> extends AbstractMarkovModel<T>
 	{
 		checkOrder(order);
 		
-		return totals.get(order - 1);
+		return totals[order - 1];
 	}
 	
 //	public double entropy()
@@ -165,13 +174,14 @@ public class TrieMarkovModel<T> extends AbstractMarkovModel<T>
 		 * 
 		 * If tokens contains [a, b, c], a is added as a child of this 
 		 * node (if it does not already exist) and b to a child 
-		 * of that node and so on. 
+		 * of that node and so on. The last node's count is incremented by the 
+		 * given amount.
 		 */
-		public void add(Iterator<T> iterator)
+		public void add(Iterator<T> iterator, double amount)
 		{
 			if(!iterator.hasNext())
 			{
-				count ++;
+				count += amount;
 				return;
 			}
 				
@@ -186,7 +196,7 @@ public class TrieMarkovModel<T> extends AbstractMarkovModel<T>
 				children.put(nextToken, child);
 			}
 
-			child.add(iterator);
+			child.add(iterator, amount);
 		}
 		
 		/**
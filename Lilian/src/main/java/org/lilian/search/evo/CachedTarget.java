@@ -0,0 +1,123 @@
+package org.lilian.search.evo;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.lilian.search.Parametrizable;
+
+/**
+ * A target which remembers the scores of the most recently scored objects, so
+ * that expensive scores are not recomputed when the same object is compared
+ * several times (as in sorting with {@link Targets#comparator(Target)}), or
+ * when it survives into the next generation.
+ *
+ * Objects which are {@link Parametrizable} are identified by their parameters,
+ * so that two instances built from the same parameters share a score. Other
+ * objects are identified by their own equals() and hashCode().
+ *
+ * When the cache is full, the least recently used score is removed. The
+ * wrapped target should be deterministic for the cache to make sense. This
+ * class is safe to use from multiple threads if the wrapped target is.
+ *
+ * @author Peter
+ *
+ * @param <P>
+ */
+public class CachedTarget<P> implements Target<P>
+{
+	private static final long serialVersionUID = -6041779235262102245L;
+
+	private Target<? super P> target;
+	private Map<Object, Double> cache;
+
+	private long hits = 0, misses = 0;
+
+	/**
+	 * @param target The target to wrap.
+	 * @param capacity The maximum number of scores to remember.
+	 */
+	public CachedTarget(Target<? super P> target, final int capacity)
+	{
+		this.target = target;
+
+		cache = new LinkedHashMap<Object, Double>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 2584935101307766394L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Object, Double> eldest)
+			{
+				return size() > capacity;
+			}
+		};
+	}
+
+	@Override
+	public double score(P object)
+	{
+		Object key = key(object);
+
+		synchronized(this)
+		{
+			Double score = cache.get(key);
+			if(score != null)
+			{
+				hits++;
+				return score;
+			}
+
+			misses++;
+		}
+
+		// * The score is computed outside the lock, so that different objects
+		//   can be scored at the same time
+		double score = target.score(object);
+
+		synchronized(this)
+		{
+			cache.put(key, score);
+		}
+
+		return score;
+	}
+
+	private static Object key(Object object)
+	{
+		if(object instanceof Parametrizable)
+			return new ArrayList<Double>(((Parametrizable) object).parameters());
+
+		return object;
+	}
+
+	/**
+	 * The number of calls to score() that were answered from the cache.
+	 */
+	public synchronized long hits()
+	{
+		return hits;
+	}
+
+	/**
+	 * The number of calls to score() that required the wrapped target.
+	 */
+	public synchronized long misses()
+	{
+		return misses;
+	}
+
+	public synchronized int size()
+	{
+		return cache.size();
+	}
+
+	/**
+	 * Removes all scores from the cache and resets the counters.
+	 */
+	public synchronized void clear()
+	{
+		cache.clear();
+		hits = 0;
+		misses = 0;
+	}
+}
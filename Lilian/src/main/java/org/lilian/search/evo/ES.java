@@ -1,6 +1,8 @@
 package org.lilian.search.evo;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.io.*;
 
 import org.apache.commons.math.linear.ArrayRealVector;
@@ -13,6 +15,7 @@ import org.lilian.data.real.fractal.old.IFS;
 import org.lilian.search.Builder;
 import org.lilian.search.Parametrizable;
 import org.lilian.util.MatrixTools;
+import org.lilian.util.Parallel;
 import org.lilian.util.Series;
 
 /**
@@ -26,6 +29,14 @@ import org.lilian.util.Series;
  * </p><p>
  * In this sense. Agents are able to influence their own 
  * evolution and adapt to the structure of the fitness landscape.
+ * </p><p>
+ * The offspring of each generation are created and scored in parallel (by 
+ * default on a single thread, see {@link #setThreads(int)} and 
+ * {@link #setExecutor(ExecutorService)}). The target and the builder must be 
+ * safe to call from multiple threads if more than one is used. Each child 
+ * draws its mutations from its own random stream, seeded in sequence from 
+ * the ES's own random generator, so that a run with a given seed has the 
+ * same result for any number of threads. 
  * </p>
  * @author peter
  *
@@ -71,6 +82,12 @@ public class ES<P extends Parametrizable> implements Serializable
 	
 	private boolean useMutationAngles;
 	
+	// * The source of the seeds for the children's random streams
+	private Random random;
+	
+	private int threads = 1;
+	private transient ExecutorService executor = null;
+	
 	public ES(Builder<P> builder, Target<? super P> target, Collection<List<Double>> initialPop)
 	{
 		this(builder, target, initialPop, NUM_PARENTS, initialPop.size() * OFFSPRING, MAX_LIFESPAN, MODE, true);
@@ -111,6 +128,8 @@ public class ES<P extends Parametrizable> implements Serializable
 	{
 		this.target = target;
 		this.builder = builder;
+		
+		random = new Random(Global.random.nextLong());
 				
 		n = initialPop.size();
 		dimension = initialPop.iterator().next().size();
@@ -133,12 +152,40 @@ public class ES<P extends Parametrizable> implements Serializable
 		this.useMutationAngles = mutationAngles;
 	}
 	
+	/**
+	 * Sets the number of threads used to create and score the offspring. This
+	 * is ignored if an executor has been set. 
+	 */
+	public void setThreads(int threads)
+	{
+		this.threads = threads;
+	}
+	
+	/**
+	 * Sets the executor used to create and score the offspring. The executor 
+	 * is not shut down by this object. Set it to null to go back to using 
+	 * a number of threads.
+	 */
+	public void setExecutor(ExecutorService executor)
+	{
+		this.executor = executor;
+	}
+	
+	/**
+	 * Reseeds the random generator which drives the breeding. 
+	 */
+	public void setSeed(long seed)
+	{
+		random = new Random(seed);
+	}
+	
 	/**
 	 * Create the next generation of agents
 	 */
 	public void breed()
 	{
 		List<Agent> nextPopulation = new ArrayList<Agent>(offspringSize);
+		List<Callable<Agent>> tasks = new ArrayList<Callable<Agent>>(offspringSize);
 
 		// * Add all the agents that haven't exceeded the max lifespan
 		//   to the new population
@@ -147,26 +194,34 @@ public class ES<P extends Parametrizable> implements Serializable
 			if(agent.age() <= maxAge || maxAge == 0)
 			{
 				agent.incrementAge();
-				nextPopulation.add(agent);
+				tasks.add(new Evaluation(agent));
 			}
 		}
 		
 		// * Add children to the new population by breeding within the old 
-		//   population at random
-		while(nextPopulation.size() < offspringSize)
+		//   population at random. The parents and the seeds are chosen here, 
+		//   in sequence, the children are created in the tasks. 
+		while(tasks.size() < offspringSize)
 		{
 			// sample the parents (with replacement)
 			List<Agent> parents = new ArrayList<Agent>(numParents);
 			for(int j = 0; j < numParents; j++)
-				parents.add(population.get(Global.random.nextInt(population.size()))); 
+				parents.add(population.get(random.nextInt(population.size()))); 
 			
-			nextPopulation.add( parents.get(0).procreate(parents));						
+			tasks.add(new Procreation(parents, random.nextLong()));						
 		}
 		
+		// * Create the children and compute the fitness of each agent for this
+		//   generation
+		if(executor != null)
+			nextPopulation.addAll(Parallel.run(tasks, executor));
+		else
+			nextPopulation.addAll(Parallel.run(tasks, threads));
+		
 		// * We're done with the old population now
 		population = nextPopulation;
 		
-		// * Sort the population by fitness		
+		// * Sort the population by fitness (which is cached in each agent)		
 		Collections.sort(population);
 
 		// * Reduce the size of the population back to the original, throwing 
@@ -185,6 +240,50 @@ public class ES<P extends Parametrizable> implements Serializable
 		return Collections.unmodifiableList(population);
 	}
 	
+	/**
+	 * Computes the fitness of an existing agent.
+	 */
+	private class Evaluation implements Callable<Agent>
+	{
+		private Agent agent;
+		
+		public Evaluation(Agent agent)
+		{
+			this.agent = agent;
+		}
+
+		@Override
+		public Agent call()
+		{
+			agent.fitness();
+			return agent;
+		}
+	}
+	
+	/**
+	 * Creates a child from a list of parents with its own random stream, and 
+	 * computes its fitness.
+	 */
+	private class Procreation implements Callable<Agent>
+	{
+		private List<Agent> parents;
+		private long seed;
+		
+		public Procreation(List<Agent> parents, long seed)
+		{
+			this.parents = parents;
+			this.seed = seed;
+		}
+
+		@Override
+		public Agent call()
+		{
+			Agent child = parents.get(0).procreate(parents, new Random(seed));
+			child.fitness();
+			return child;
+		}
+	}
+	
 	public void print(PrintStream out)
 	{
 		out.println("population");
@@ -225,7 +324,7 @@ public class ES<P extends Parametrizable> implements Serializable
 			
 			strategyScales = new ArrayList<Double>(numScales);
 			for(int i = 0; i < numScales; i++)
-				strategyScales.add(Global.random.nextGaussian() * si);
+				strategyScales.add(random.nextGaussian() * si);
 
 			int numAngles = 
 					useMutationAngles ? 
@@ -235,7 +334,7 @@ public class ES<P extends Parametrizable> implements Serializable
 			
 			strategyAngles = new ArrayList<Double>(numAngles);
 			for(int i = 0; i < numAngles; i++)
-				strategyAngles.add(Global.random.nextGaussian() * ai);			
+				strategyAngles.add(random.nextGaussian() * ai);			
 		}
 		
 		public Agent(List<Double> params, List<Double> scales,
@@ -285,6 +384,14 @@ public class ES<P extends Parametrizable> implements Serializable
 		}
 		
 		public Agent procreate(List<Agent> parents)
+		{
+			return procreate(parents, random);
+		}
+		
+		/**
+		 * Creates a child, taking all random draws from the given generator.
+		 */
+		public Agent procreate(List<Agent> parents, Random random)
 		{
 			// * Recombine
 			List<List<Double>> parentParams = new ArrayList<List<Double>>();
@@ -299,31 +406,31 @@ public class ES<P extends Parametrizable> implements Serializable
 			}
 			
 			// * Generate new, unmutated parameters
-			List<Double> childParams = newParams(parentParams, objectMode);
-			List<Double> childScales = newParams(parentScales, scalesMode);
-			List<Double> childAngles = newParams(parentAngles, anglesMode);
+			List<Double> childParams = newParams(parentParams, objectMode, random);
+			List<Double> childScales = newParams(parentScales, scalesMode, random);
+			List<Double> childAngles = newParams(parentAngles, anglesMode, random);
 
 			// * Mutate 
 			// the angles, ...
-			if(Global.random.nextDouble() < mutationProbabilityAngles)
+			if(random.nextDouble() < mutationProbabilityAngles)
 				for(int i = 0; i < childAngles.size(); i ++)
 					childAngles.set(i, 
 							childAngles.get(i) + 
-							Global.random.nextGaussian() * angleMutationVar);
+							random.nextGaussian() * angleMutationVar);
 			
 			// ... the scales, ...
-			if(Global.random.nextDouble() < mutationProbabilityScales)
+			if(random.nextDouble() < mutationProbabilityScales)
 				for(int i = 0; i < childScales.size(); i ++)
-					childScales.set(i, childScales.get(i) + Global.random.nextGaussian() * convergenceSpeed);
+					childScales.set(i, childScales.get(i) + random.nextGaussian() * convergenceSpeed);
 		
 			// ... and the object parameters.
-			if(Global.random.nextDouble() < mutationProbabilityObject)
+			if(random.nextDouble() < mutationProbabilityObject)
 			{
 				
 				// - draw a standard normal 
 				RealVector draw = new ArrayRealVector(childScales.size());
 				for(int i = 0; i < childScales.size(); i ++)
-					draw.setEntry(i, Global.random.nextGaussian());
+					draw.setEntry(i, random.nextGaussian());
 				
 				// - scale it
 				for(int i = 0; i < childScales.size(); i++)
@@ -353,7 +460,7 @@ public class ES<P extends Parametrizable> implements Serializable
 			return child;
 		}
 		
-		private List<Double> newParams(List<List<Double>> parents, CrossoverMode mode)
+		private List<Double> newParams(List<List<Double>> parents, CrossoverMode mode, Random random)
 		{
 			int n = parents.get(0).size();
 			List<Double> childParams = new ArrayList<Double>(n);		
@@ -373,8 +480,8 @@ public class ES<P extends Parametrizable> implements Serializable
 				case LOCAL:
 			
 					List<Double> mother, father;
-					mother = parents.get(Global.random.nextInt(parents.size()));
-					father = parents.get(Global.random.nextInt(parents.size()));				
+					mother = parents.get(random.nextInt(parents.size()));
+					father = parents.get(random.nextInt(parents.size()));				
 					
 					childParams.add(0.5 * (mother.get(i) + father.get(i)));
 					
@@ -382,7 +489,7 @@ public class ES<P extends Parametrizable> implements Serializable
 				case UNIFORM:
 		
 					List<Double> parent = parents.get(
-							Global.random.nextInt(parents.size()));			
+							random.nextInt(parents.size()));			
 					
 					childParams.add(parent.get(i)); 
 					
@@ -14,6 +14,19 @@ public class Targets
 		return new TargetComparator<P>(target);
 	}
 	
+	/**
+	 * Wraps a target so that the scores of the given number of most recently
+	 * scored objects are remembered.
+	 * 
+	 * @param target
+	 * @param capacity
+	 * @return
+	 */
+	public static<P> CachedTarget<P> cached(Target<? super P> target, int capacity)
+	{
+		return new CachedTarget<P>(target, capacity);
+	}
+	
 	private static class TargetComparator<P> implements Comparator<P>
 	{
 		private Target<P> target;
@@ -190,16 +190,25 @@ public class Functions
 	
 	
 	public static String matrixToString(int[][] n)
+	{
+		if(n == null) return "null";
+		return matrixToString(n, n.length);
+	}
+	
+	/**
+	 * Prints only the first size rows and columns of the matrix.
+	 */
+	public static String matrixToString(int[][] n, int size)
 	{
 		
 		if(n == null) return "null";
 		StringBuilder sb = new StringBuilder();
 		
-		for(int i = 0; i < n.length; i++)
+		for(int i = 0; i < size; i++)
 		{
 			if(i > 0)
 				sb.append("\n");
-			for(int j = 0; j < n[i].length;j++)
+			for(int j = 0; j < Math.min(size, n[i].length);j++)
 			{
 				sb.append(n[i][j]).append("\t");
 			}			
@@ -209,17 +218,26 @@ public class Functions
 	}
 	
 	public static String matrixToString(double[][] n)
+	{
+		if(n == null) return "null";
+		return matrixToString(n, n.length);
+	}
+	
+	/**
+	 * Prints only the first size rows and columns of the matrix.
+	 */
+	public static String matrixToString(double[][] n, int size)
 	{
 		nf.setMinimumFractionDigits(2);
 		
 		if(n == null) return "null";
 		StringBuilder sb = new StringBuilder();
 		
-		for(int i = 0; i < n.length; i++)
+		for(int i = 0; i < size; i++)
 		{
 			if(i > 0)
 				sb.append("\n");
-			for(int j = 0; j < n[i].length;j++)
+			for(int j = 0; j < Math.min(size, n[i].length);j++)
 			{
 				sb.append(nf.format(n[i][j])).append("\t");
 			}			
@@ -450,9 +468,97 @@ public class Functions
 			return binomialCoefficientLog((int)total, (int)sub);
 		
 		double n = total, k = sub;
-		return logFactorial(n) - logFactorial(k) - logFactorial(n - k); 
+		return logFactorial(n) - logFactorial(k) - logFactorial(n - k);
 	}
-	 
+
+	/**
+	 * The cumulative binomial probability P(X <= x) for n trials with success
+	 * probability p. This is computed from the regularized incomplete beta
+	 * function, so it takes (roughly) constant time for any n.
+	 */
+	public static double binomialCDF(int x, int n, double p)
+	{
+		if(x < 0)
+			return 0.0;
+		if(x >= n)
+			return 1.0;
+		if(p <= 0.0)
+			return 1.0;
+		if(p >= 1.0)
+			return 0.0;
+
+		return regularizedBeta(1.0 - p, n - x, x + 1.0);
+	}
+
+	/**
+	 * The regularized incomplete beta function I_x(a, b), evaluated by its
+	 * continued fraction (see "Numerical recipes in c").
+	 */
+	public static double regularizedBeta(double x, double a, double b)
+	{
+		if(x < 0.0 || x > 1.0)
+			throw new IllegalArgumentException("x ("+x+") must be in [0, 1].");
+		if(x == 0.0 || x == 1.0)
+			return x;
+
+		double logFront =
+			logGamma(a + b) - logGamma(a) - logGamma(b)
+			+ a * Math.log(x) + b * Math.log(1.0 - x);
+
+		// * The continued fraction converges quickly for x < (a+1)/(a+b+2),
+		//   otherwise we use the symmetry I_x(a, b) = 1 - I_1-x(b, a)
+		if(x < (a + 1.0)/(a + b + 2.0))
+			return Math.exp(logFront) * betaFraction(x, a, b) / a;
+
+		return 1.0 - Math.exp(logFront) * betaFraction(1.0 - x, b, a) / b;
+	}
+
+	/**
+	 * The continued fraction for the incomplete beta function, by the modified
+	 * Lentz method.
+	 */
+	private static double betaFraction(double x, double a, double b)
+	{
+		final int maxIterations = 10000;
+		final double eps = 1.0E-15, tiny = 1.0E-300;
+
+		double qab = a + b, qap = a + 1.0, qam = a - 1.0;
+		double c = 1.0, d = 1.0 - qab * x / qap;
+		if(Math.abs(d) < tiny)
+			d = tiny;
+		d = 1.0/d;
+		double h = d;
+
+		for(int m = 1; m <= maxIterations; m++)
+		{
+			int m2 = 2 * m;
+
+			// * even step
+			double aa = m * (b - m) * x / ((qam + m2) * (a + m2));
+			d = 1.0 + aa * d;
+			if(Math.abs(d) < tiny) d = tiny;
+			c = 1.0 + aa/c;
+			if(Math.abs(c) < tiny) c = tiny;
+			d = 1.0/d;
+			h *= d * c;
+
+			// * odd step
+			aa = -(a + m) * (qab + m) * x / ((a + m2) * (qap + m2));
+			d = 1.0 + aa * d;
+			if(Math.abs(d) < tiny) d = tiny;
+			c = 1.0 + aa/c;
+			if(Math.abs(c) < tiny) c = tiny;
+			d = 1.0/d;
+			double delta = d * c;
+			h *= delta;
+
+			if(Math.abs(delta - 1.0) < eps)
+				return h;
+		}
+
+		return h;
+	}
+
 	/**
 	 * Equals method for objects that takes into account null values
 	 * @param a
@@ -0,0 +1,115 @@
+package org.lilian.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Static helpers for running independent pieces of work on multiple threads.
+ *
+ * All methods return results in the order of the tasks, so that any merging
+ * done by the caller is deterministic, regardless of the number of threads
+ * used.
+ *
+ * @author Peter
+ */
+public class Parallel
+{
+	/**
+	 * The number of threads to use if the caller does not specify one.
+	 */
+	public static int threads()
+	{
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Runs the given tasks on a fixed pool of the given number of threads,
+	 * and returns their results in the order of the tasks. The pool is shut
+	 * down afterwards.
+	 *
+	 * @param tasks
+	 * @param threads
+	 * @return
+	 */
+	public static <T> List<T> run(List<? extends Callable<T>> tasks, int threads)
+	{
+		ExecutorService executor =
+				Executors.newFixedThreadPool(Math.max(1, Math.min(threads, tasks.size())));
+		try {
+			return run(tasks, executor);
+		} finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Runs the given tasks on the given executor and returns their results in
+	 * the order of the tasks. The executor is not shut down.
+	 */
+	public static <T> List<T> run(List<? extends Callable<T>> tasks, ExecutorService executor)
+	{
+		List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+		for(Callable<T> task : tasks)
+			futures.add(executor.submit(task));
+
+		List<T> results = new ArrayList<T>(tasks.size());
+		try {
+			for(Future<T> future : futures)
+				results.add(future.get());
+		} catch (InterruptedException e)
+		{
+			for(Future<T> future : futures)
+				future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e)
+		{
+			for(Future<T> future : futures)
+				future.cancel(true);
+
+			if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+
+		return results;
+	}
+
+	/**
+	 * Derives a number of seeds from a single seed. Each worker should create
+	 * its own Random from one of these, so that the output of a parallel
+	 * computation depends only on the seed and the number of workers.
+	 */
+	public static long[] seeds(long seed, int n)
+	{
+		Random master = new Random(seed);
+		long[] seeds = new long[n];
+		for(int i = 0; i < n; i++)
+			seeds[i] = master.nextLong();
+
+		return seeds;
+	}
+
+	/**
+	 * Splits the range [0, n) into the given number of contiguous chunks of
+	 * (nearly) equal size.
+	 *
+	 * @return An array of parts + 1 boundaries. Chunk i runs from
+	 * 	bounds[i] (inclusive) to bounds[i+1] (exclusive).
+	 */
+	public static int[] split(int n, int parts)
+	{
+		int[] bounds = new int[parts + 1];
+		for(int i = 0; i <= parts; i++)
+			bounds[i] = (int)((long) n * i / parts);
+
+		return bounds;
+	}
+}
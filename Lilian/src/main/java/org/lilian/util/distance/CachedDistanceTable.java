@@ -0,0 +1,113 @@
+package org.lilian.util.distance;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Computes the pairwise distances of a list on demand, and remembers a
+ * bounded number of them.
+ *
+ * The cache is divided into a number of segments, each with its own lock and
+ * its own least-recently-used eviction, so that it can be used from multiple
+ * threads at once. Distances are computed outside the locks.
+ *
+ * The distance is assumed to be symmetric, with d(x, x) = 0.
+ *
+ * @author Peter
+ */
+public class CachedDistanceTable<T> implements DistanceTable
+{
+	private static final int SEGMENTS = 64;
+
+	private List<T> data;
+	private Distance<T> distance;
+
+	private Map<Long, Double>[] segments;
+
+	private AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+
+	/**
+	 * @param capacity The maximum number of distances to remember.
+	 */
+	@SuppressWarnings("unchecked")
+	public CachedDistanceTable(List<T> data, Distance<T> distance, int capacity)
+	{
+		this.data = data;
+		this.distance = distance;
+
+		final int segmentCapacity = Math.max(1, capacity / SEGMENTS);
+
+		segments = new Map[SEGMENTS];
+		for(int s = 0; s < SEGMENTS; s++)
+			segments[s] = new LinkedHashMap<Long, Double>(16, 0.75f, true)
+			{
+				private static final long serialVersionUID = -2848245722937592286L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Long, Double> eldest)
+				{
+					return size() > segmentCapacity;
+				}
+			};
+	}
+
+	@Override
+	public double distance(int i, int j)
+	{
+		if(i == j)
+			return 0.0;
+
+		long key = i < j ? ((long) i << 32) | j : ((long) j << 32) | i;
+		Map<Long, Double> segment = segments[segment(key)];
+
+		synchronized(segment)
+		{
+			Double value = segment.get(key);
+			if(value != null)
+			{
+				hits.incrementAndGet();
+				return value;
+			}
+		}
+
+		double value = distance.distance(data.get(i), data.get(j));
+		misses.incrementAndGet();
+
+		synchronized(segment)
+		{
+			segment.put(key, value);
+		}
+
+		return value;
+	}
+
+	private static int segment(long key)
+	{
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h >>> 58) & (SEGMENTS - 1);
+	}
+
+	@Override
+	public int size()
+	{
+		return data.size();
+	}
+
+	/**
+	 * The number of lookups that were answered from the cache.
+	 */
+	public long hits()
+	{
+		return hits.get();
+	}
+
+	/**
+	 * The number of distances that were computed.
+	 */
+	public long misses()
+	{
+		return misses.get();
+	}
+}
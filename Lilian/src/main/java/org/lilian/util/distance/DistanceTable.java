@@ -0,0 +1,21 @@
+package org.lilian.util.distance;
+
+/**
+ * The pairwise distances between the elements of a fixed list, by index.
+ *
+ * Implementations should be safe to use from multiple threads.
+ *
+ * @author Peter
+ */
+public interface DistanceTable
+{
+	/**
+	 * The distance between the i-th and the j-th element.
+	 */
+	public double distance(int i, int j);
+
+	/**
+	 * The number of elements.
+	 */
+	public int size();
+}
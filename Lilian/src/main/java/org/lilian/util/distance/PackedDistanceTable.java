@@ -0,0 +1,89 @@
+package org.lilian.util.distance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.lilian.util.Parallel;
+
+/**
+ * Precomputes all pairwise distances of a list, and stores them as floats in
+ * a packed lower triangular array, without the diagonal. This takes
+ * 2n(n-1) bytes, so it is only suitable for moderate n.
+ *
+ * The distance is assumed to be symmetric, with d(x, x) = 0.
+ *
+ * @author Peter
+ */
+public class PackedDistanceTable<T> implements DistanceTable
+{
+	private int n;
+	private float[] distances;
+
+	public PackedDistanceTable(List<T> data, Distance<T> distance)
+	{
+		this(data, distance, Parallel.threads());
+	}
+
+	/**
+	 * @param threads The number of threads to use to compute the distances.
+	 */
+	public PackedDistanceTable(final List<T> data, final Distance<T> distance, int threads)
+	{
+		n = data.size();
+
+		long size = (long) n * (n - 1) / 2;
+		if(size > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many elements ("+n+") for a packed distance table.");
+
+		distances = new float[(int) size];
+
+		// * One task per block of rows. Since row i has i entries, the rows are
+		//   interleaved over the tasks to balance the work.
+		int numTasks = threads * 4;
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(numTasks);
+		for(int t = 0; t < numTasks; t++)
+		{
+			final int first = t, step = numTasks;
+			tasks.add(new Callable<Object>()
+			{
+				@Override
+				public Object call()
+				{
+					for(int i = first; i < n; i += step)
+					{
+						T a = data.get(i);
+						int offset = offset(i);
+						for(int j = 0; j < i; j++)
+							distances[offset + j] = (float) distance.distance(a, data.get(j));
+					}
+
+					return null;
+				}
+			});
+		}
+
+		Parallel.run(tasks, threads);
+	}
+
+	private static int offset(int i)
+	{
+		return (int)((long) i * (i - 1) / 2);
+	}
+
+	@Override
+	public double distance(int i, int j)
+	{
+		if(i == j)
+			return 0.0;
+		if(i < j)
+			return distances[offset(j) + i];
+		return distances[offset(i) + j];
+	}
+
+	@Override
+	public int size()
+	{
+		return n;
+	}
+}
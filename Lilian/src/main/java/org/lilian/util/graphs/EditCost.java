@@ -0,0 +1,36 @@
+package org.lilian.util.graphs;
+
+/**
+ * The costs of the edit operations between two labeled graphs, as used by
+ * {@link GraphEditSearch#search(java.util.List, java.util.List, GraphEditSearch.Nodes, EditCost, double, int)}.
+ *
+ * @author Peter
+ */
+public interface EditCost<L>
+{
+	/**
+	 * Cost of relabeling a node
+	 * @return
+	 */
+	public double relabel(L in, L out);
+
+	/**
+	 * Cost of removing a node
+	 *
+	 * @param label
+	 * @return
+	 */
+	public double removeNode(L label);
+
+	/**
+	 * Cost of adding a node
+	 *
+	 * @param label
+	 * @return
+	 */
+	public double addNode(L label);
+
+	public double removeLink();
+
+	public double addLink();
+}
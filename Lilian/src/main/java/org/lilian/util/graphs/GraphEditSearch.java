@@ -0,0 +1,691 @@
+package org.lilian.util.graphs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An A* search for the cheapest edit path between two labeled graphs, given
+ * as label indices and adjacency matrices.
+ *
+ * The nodes of the first graph are processed in a fixed order (highest
+ * degree first). Each is either mapped to an unused node of the second graph
+ * or deleted. Once all are processed, the remaining nodes of the second graph
+ * are inserted. Every edit path thus corresponds to exactly one leaf of the
+ * search tree.
+ *
+ * The estimated cost of a state is its exact cost so far plus a lower bound
+ * on the cost of completing it. The bound has two parts:
+ * <ul>
+ * <li>a node bound from the multisets of remaining labels on either side: at
+ * most as many remaining pairs can be matched for free as there are common
+ * labels, and all other remaining nodes must be relabeled, deleted or
+ * inserted.</li>
+ * <li>a degree bound: the edges that touch a remaining node on either side
+ * can only be matched to each other, so the difference in their numbers must
+ * be paid for with link edits.</li>
+ * </ul>
+ * Since the bound never overestimates, the first complete state taken from the
+ * queue is an optimal edit path.
+ *
+ * States are stored in flat arrays as a node index, a target and a pointer to
+ * the parent state, so each state takes a few dozen bytes. States whose
+ * estimate exceeds the threshold are never stored. If a capacity is given, the
+ * worst half of the queue is dropped whenever it grows beyond it; the result
+ * is then no longer guaranteed to be optimal (see {@link #exact()}).
+ *
+ * Each state counts the references to it: one from the queue while it is
+ * queued or being expanded, and one from each of its live children. A state
+ * without references is released, together with any ancestors that are left
+ * without references, and its slot is reused. Only the queued states and their
+ * ancestors are kept, so with a capacity c, at most (c + 1)(n1 + 2) states
+ * are stored at any time, where n1 is the size of the first graph.
+ *
+ * The search is done in the constructor and uses no shared state, so any
+ * number of searches can run concurrently.
+ *
+ * @author Peter
+ */
+public class GraphEditSearch
+{
+	private int n1, n2, numLabels;
+	private int[] labels1, labels2;
+	private boolean[][] adjacency1, adjacency2;
+
+	private double[][] relabel;
+	private double[] remove, add;
+	private double removeLink, addLink;
+
+	private double threshold;
+	private int capacity;
+
+	// * The order in which the nodes of graph 1 are processed
+	private int[] order;
+	// * Links among the first d nodes of graph 1 (in order)
+	private int[] inner;
+	// * Label counts of the nodes of graph 1 from position d onwards
+	private int[][] suffix;
+	private int[] totals2;
+	private int links1, links2;
+
+	// * The cheapest cost of deleting, inserting and relabeling a node
+	private double minRemove, minAdd, minRelabel;
+
+	// * The states, stored in parallel arrays. A state at depth n1 + 1 is
+	//   complete.
+	private int numStates = 0;
+	private int[] parents = new int[1024], targets = new int[1024], depths = new int[1024];
+	private int[] usedLinks = new int[1024], references = new int[1024];
+	private double[] costs = new double[1024], estimates = new double[1024];
+
+	private int[] heap = new int[1024];
+	private int heapSize = 0;
+
+	// * The first released slot. The parents array links the others.
+	private int free = -1;
+
+	private int best = -1;
+	private boolean exact = true;
+	private int expanded = 0;
+
+	/**
+	 * Performs the search.
+	 *
+	 * @param labels1 The label index of each node of the first graph.
+	 * @param adjacency1 The adjacency matrix of the first graph.
+	 * @param labels2 The label index of each node of the second graph.
+	 * @param adjacency2 The adjacency matrix of the second graph.
+	 * @param relabel The cost of relabeling a node from one label index to
+	 * 	another. Nodes with equal label indices match for free.
+	 * @param remove The cost of deleting a node of the first graph, by label
+	 * 	index.
+	 * @param add The cost of inserting a node of the second graph, by label
+	 * 	index.
+	 * @param removeLink The cost of a link of the second graph that has no
+	 * 	counterpart in the first.
+	 * @param addLink The cost of a link of the first graph that has no
+	 * 	counterpart in the second.
+	 * @param threshold States costing more than this are discarded. If no
+	 * 	edit path costs this much or less, none is found.
+	 * @param capacity The maximum number of states in the queue, or a
+	 * 	non-positive value for no maximum.
+	 */
+	public GraphEditSearch(
+			int[] labels1, boolean[][] adjacency1,
+			int[] labels2, boolean[][] adjacency2,
+			double[][] relabel, double[] remove, double[] add,
+			double removeLink, double addLink,
+			double threshold, int capacity)
+	{
+		this.labels1 = labels1;
+		this.labels2 = labels2;
+		this.adjacency1 = adjacency1;
+		this.adjacency2 = adjacency2;
+		this.relabel = relabel;
+		this.remove = remove;
+		this.add = add;
+		this.removeLink = removeLink;
+		this.addLink = addLink;
+		this.threshold = threshold;
+		this.capacity = capacity <= 0 ? Integer.MAX_VALUE : Math.max(2, capacity);
+
+		n1 = labels1.length;
+		n2 = labels2.length;
+		numLabels = remove.length;
+
+		prepare();
+		search();
+	}
+
+	private void prepare()
+	{
+		// * Order the nodes of graph 1 by decreasing degree
+		Integer[] sorted = new Integer[n1];
+		final int[] degrees = new int[n1];
+		for(int i = 0; i < n1; i++)
+		{
+			sorted[i] = i;
+			for(int j = 0; j < n1; j++)
+				if(i != j && adjacency1[i][j])
+					degrees[i]++;
+		}
+
+		Arrays.sort(sorted, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				return degrees[b] - degrees[a];
+			}
+		});
+
+		order = new int[n1];
+		for(int i = 0; i < n1; i++)
+			order[i] = sorted[i];
+
+		inner = new int[n1 + 1];
+		for(int d = 1; d <= n1; d++)
+		{
+			inner[d] = inner[d - 1];
+			for(int p = 0; p < d - 1; p++)
+				if(adjacency1[order[d - 1]][order[p]])
+					inner[d]++;
+		}
+		links1 = inner[n1];
+
+		suffix = new int[n1 + 1][numLabels];
+		for(int d = n1 - 1; d >= 0; d--)
+		{
+			System.arraycopy(suffix[d + 1], 0, suffix[d], 0, numLabels);
+			suffix[d][labels1[order[d]]]++;
+		}
+
+		totals2 = new int[numLabels];
+		for(int j = 0; j < n2; j++)
+		{
+			totals2[labels2[j]]++;
+			for(int k = j + 1; k < n2; k++)
+				if(adjacency2[j][k])
+					links2++;
+		}
+
+		minRemove = Double.POSITIVE_INFINITY;
+		minAdd = Double.POSITIVE_INFINITY;
+		minRelabel = Double.POSITIVE_INFINITY;
+		for(int l = 0; l < numLabels; l++)
+		{
+			if(suffix[0][l] > 0)
+				minRemove = Math.min(minRemove, remove[l]);
+			if(totals2[l] > 0)
+				minAdd = Math.min(minAdd, add[l]);
+			for(int m = 0; m < numLabels; m++)
+				if(l != m && suffix[0][l] > 0 && totals2[m] > 0)
+					minRelabel = Math.min(minRelabel, relabel[l][m]);
+		}
+	}
+
+	private void search()
+	{
+		int root = state(-1, -1, 0, 0, 0.0);
+		estimates[root] = bound(0, n1, n2, common(0, totals2), 0);
+		if(estimates[root] <= threshold)
+			push(root);
+
+		int[] mapping = new int[n1];
+		boolean[] used = new boolean[n2];
+		int[] remaining = new int[numLabels];
+
+		while(heapSize > 0)
+		{
+			int state = pop();
+
+			if(depths[state] == n1 + 1)
+			{
+				best = state;
+				return;
+			}
+
+			expanded++;
+			int depth = depths[state];
+
+			// * Reconstruct the mapping by following the parents
+			Arrays.fill(used, false);
+			System.arraycopy(totals2, 0, remaining, 0, numLabels);
+			int unmatched = n2;
+			for(int s = state; depths[s] > 0; s = parents[s])
+			{
+				mapping[depths[s] - 1] = targets[s];
+				if(targets[s] >= 0)
+				{
+					used[targets[s]] = true;
+					remaining[labels2[targets[s]]]--;
+					unmatched--;
+				}
+			}
+
+			if(depth == n1)
+			{
+				complete(state, used);
+				release(state);
+				continue;
+			}
+
+			int node = order[depth];
+			int label = labels1[node];
+			int common = common(depth + 1, remaining);
+
+			// * Deletion
+			double cost = costs[state] + remove[label];
+			for(int p = 0; p < depth; p++)
+				if(adjacency1[node][order[p]])
+					cost += addLink;
+			child(state, -1, depth, usedLinks[state], cost, unmatched, common);
+
+			// * Mappings to each unmatched node of graph 2
+			for(int target = 0; target < n2; target++)
+				if(! used[target])
+				{
+					int targetLabel = labels2[target];
+					cost = costs[state] + (label == targetLabel ? 0.0 : relabel[label][targetLabel]);
+
+					int links = usedLinks[state];
+					for(int p = 0; p < depth; p++)
+					{
+						boolean edge1 = adjacency1[node][order[p]];
+						boolean edge2 = mapping[p] >= 0 && adjacency2[target][mapping[p]];
+
+						if(edge2)
+							links++;
+						if(edge1 && ! edge2)
+							cost += addLink;
+						if(! edge1 && edge2)
+							cost += removeLink;
+					}
+
+					// * One fewer free match if this takes a node with a label
+					//   that was in short supply
+					int childCommon = remaining[targetLabel] <= suffix[depth + 1][targetLabel] ? common - 1 : common;
+					child(state, target, depth, links, cost, unmatched - 1, childCommon);
+				}
+
+			// * The expanded state is only kept as the parent of its children
+			release(state);
+		}
+	}
+
+	private void child(int parent, int target, int depth, int links, double cost, int unmatched, int common)
+	{
+		double estimate = cost + bound(depth + 1, n1 - depth - 1, unmatched, common, links);
+		if(estimate > threshold)
+			return;
+
+		int state = state(parent, target, depth + 1, links, cost);
+		estimates[state] = estimate;
+		push(state);
+	}
+
+	/**
+	 * Adds the final state for the given state, in which all remaining nodes
+	 * of graph 2 are inserted.
+	 */
+	private void complete(int state, boolean[] used)
+	{
+		double cost = costs[state];
+		for(int j = 0; j < n2; j++)
+			if(! used[j])
+				cost += add[labels2[j]];
+		cost += (links2 - usedLinks[state]) * removeLink;
+
+		if(cost > threshold)
+			return;
+
+		int complete = state(state, -1, n1 + 1, links2, cost);
+		estimates[complete] = cost;
+		push(complete);
+	}
+
+	/**
+	 * The number of labels that the nodes of graph 1 from the given depth
+	 * onwards have in common with the given label counts.
+	 */
+	private int common(int depth, int[] counts)
+	{
+		int common = 0;
+		for(int l = 0; l < numLabels; l++)
+			common += Math.min(suffix[depth][l], counts[l]);
+		return common;
+	}
+
+	/**
+	 * A lower bound to the cost of completing a state.
+	 *
+	 * @param depth The number of processed nodes of graph 1.
+	 * @param a The number of remaining nodes in graph 1.
+	 * @param b The number of unmatched nodes in graph 2.
+	 * @param common The number of labels the two have in common.
+	 * @param links The number of links among the used nodes of graph 2.
+	 */
+	private double bound(int depth, int a, int b, int common, int links)
+	{
+		// * m remaining pairs are matched, of which at most common are free
+		double nodes = Double.POSITIVE_INFINITY;
+		for(int m : new int[]{0, Math.min(common, Math.min(a, b)), Math.min(a, b)})
+		{
+			double cost = 0.0;
+			if(a > m)
+				cost += (a - m) * minRemove;
+			if(b > m)
+				cost += (b - m) * minAdd;
+			if(m > common)
+				cost += (m - common) * minRelabel;
+
+			nodes = Math.min(nodes, cost);
+		}
+
+		int remaining1 = links1 - inner[depth], remaining2 = links2 - links;
+		double edges = remaining1 > remaining2 ?
+				(remaining1 - remaining2) * addLink : (remaining2 - remaining1) * removeLink;
+
+		return nodes + edges;
+	}
+
+	/**
+	 * Stores a new state, which is referenced by the queue.
+	 */
+	private int state(int parent, int target, int depth, int links, double cost)
+	{
+		int state;
+		if(free >= 0)
+		{
+			state = free;
+			free = parents[state];
+		} else
+		{
+			if(numStates == parents.length)
+			{
+				int size = parents.length * 2;
+				parents = Arrays.copyOf(parents, size);
+				targets = Arrays.copyOf(targets, size);
+				depths = Arrays.copyOf(depths, size);
+				usedLinks = Arrays.copyOf(usedLinks, size);
+				references = Arrays.copyOf(references, size);
+				costs = Arrays.copyOf(costs, size);
+				estimates = Arrays.copyOf(estimates, size);
+			}
+
+			state = numStates++;
+		}
+
+		parents[state] = parent;
+		targets[state] = target;
+		depths[state] = depth;
+		usedLinks[state] = links;
+		costs[state] = cost;
+
+		references[state] = 1;
+		if(parent >= 0)
+			references[parent]++;
+
+		return state;
+	}
+
+	/**
+	 * Removes a reference to the given state. If none remain, the state is
+	 * released, which removes its reference to its parent.
+	 */
+	private void release(int state)
+	{
+		while(state >= 0 && --references[state] == 0)
+		{
+			int parent = parents[state];
+
+			parents[state] = free;
+			free = state;
+
+			state = parent;
+		}
+	}
+
+	/**
+	 * Whether state a should be taken from the queue before state b: lower
+	 * estimates first, and deeper states first among equal estimates.
+	 */
+	private boolean before(int a, int b)
+	{
+		if(estimates[a] != estimates[b])
+			return estimates[a] < estimates[b];
+		if(depths[a] != depths[b])
+			return depths[a] > depths[b];
+		return a < b;
+	}
+
+	private void push(int state)
+	{
+		if(heapSize == capacity)
+			shrink();
+
+		if(heapSize == heap.length)
+			heap = Arrays.copyOf(heap, heap.length * 2);
+
+		int i = heapSize++;
+		heap[i] = state;
+		while(i > 0 && before(heap[i], heap[(i - 1) / 2]))
+		{
+			swap(i, (i - 1) / 2);
+			i = (i - 1) / 2;
+		}
+	}
+
+	private int pop()
+	{
+		int top = heap[0];
+		heap[0] = heap[--heapSize];
+		down(0);
+
+		return top;
+	}
+
+	private void down(int i)
+	{
+		while(true)
+		{
+			int left = 2 * i + 1, right = left + 1, smallest = i;
+			if(left < heapSize && before(heap[left], heap[smallest]))
+				smallest = left;
+			if(right < heapSize && before(heap[right], heap[smallest]))
+				smallest = right;
+			if(smallest == i)
+				return;
+
+			swap(i, smallest);
+			i = smallest;
+		}
+	}
+
+	private void swap(int i, int j)
+	{
+		int tmp = heap[i];
+		heap[i] = heap[j];
+		heap[j] = tmp;
+	}
+
+	/**
+	 * Drops the worst half of the queue.
+	 */
+	private void shrink()
+	{
+		Integer[] sorted = new Integer[heapSize];
+		for(int i = 0; i < heapSize; i++)
+			sorted[i] = heap[i];
+
+		Arrays.sort(sorted, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				return before(a, b) ? -1 : (before(b, a) ? 1 : 0);
+			}
+		});
+
+		// * A sorted array is a valid heap
+		heapSize = heapSize / 2;
+		for(int i = 0; i < heapSize; i++)
+			heap[i] = sorted[i];
+
+		for(int i = heapSize; i < sorted.length; i++)
+			release(sorted[i]);
+
+		exact = false;
+	}
+
+	/**
+	 * Whether an edit path was found with a cost at or below the threshold.
+	 */
+	public boolean found()
+	{
+		return best >= 0;
+	}
+
+	/**
+	 * The cost of the edit path found, or positive infinity if none was found.
+	 */
+	public double cost()
+	{
+		return best >= 0 ? costs[best] : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Whether the result is guaranteed to be optimal. This is false if the
+	 * queue ever exceeded its capacity.
+	 */
+	public boolean exact()
+	{
+		return exact;
+	}
+
+	/**
+	 * The number of states that were expanded.
+	 */
+	public int expanded()
+	{
+		return expanded;
+	}
+
+	/**
+	 * The largest number of states stored at any one time.
+	 */
+	int stored()
+	{
+		return numStates;
+	}
+
+	/**
+	 * The pairs of the edit path found, as two arrays of equal length. The
+	 * first holds nodes of graph 1, the second the nodes of graph 2 they are
+	 * mapped to. A value of -1 stands for a deleted or inserted node.
+	 *
+	 * @return The pairs, or null if no edit path was found.
+	 */
+	public int[][] pairs()
+	{
+		if(best < 0)
+			return null;
+
+		int[] mapping = new int[n1];
+		boolean[] used = new boolean[n2];
+		for(int s = parents[best]; depths[s] > 0; s = parents[s])
+		{
+			mapping[depths[s] - 1] = targets[s];
+			if(targets[s] >= 0)
+				used[targets[s]] = true;
+		}
+
+		int inserted = 0;
+		for(int j = 0; j < n2; j++)
+			if(! used[j])
+				inserted++;
+
+		int[][] pairs = new int[2][n1 + inserted];
+		for(int p = 0; p < n1; p++)
+		{
+			pairs[0][p] = order[p];
+			pairs[1][p] = mapping[p];
+		}
+
+		int i = n1;
+		for(int j = 0; j < n2; j++)
+			if(! used[j])
+			{
+				pairs[0][i] = -1;
+				pairs[1][i] = j;
+				i++;
+			}
+
+		return pairs;
+	}
+
+	/**
+	 * Reads the label and the neighbours of a node, so that
+	 * {@link GraphEditSearch#search(List, List, Nodes, EditCost, double, int)}
+	 * can be used with any graph implementation.
+	 */
+	public static interface Nodes<L, N>
+	{
+		public L label(N node);
+
+		public Collection<? extends N> neighbors(N node);
+	}
+
+	/**
+	 * Searches for the cheapest edit path between two lists of nodes, ignoring
+	 * the direction of links. The indices in {@link #pairs()} refer to
+	 * positions in these lists.
+	 */
+	public static <L, N> GraphEditSearch search(
+			List<N> nodes1, List<N> nodes2, Nodes<L, N> access,
+			EditCost<L> cost, double threshold, int capacity)
+	{
+		Map<L, Integer> labels = new LinkedHashMap<L, Integer>();
+		int[] labels1 = labels(nodes1, access, labels),
+		      labels2 = labels(nodes2, access, labels);
+
+		List<L> labelList = new ArrayList<L>(labels.keySet());
+		int numLabels = labelList.size();
+
+		double[][] relabel = new double[numLabels][numLabels];
+		double[] remove = new double[numLabels], add = new double[numLabels];
+		for(int i = 0; i < numLabels; i++)
+		{
+			remove[i] = cost.removeNode(labelList.get(i));
+			add[i] = cost.addNode(labelList.get(i));
+			for(int j = 0; j < numLabels; j++)
+				if(i != j)
+					relabel[i][j] = cost.relabel(labelList.get(i), labelList.get(j));
+		}
+
+		return new GraphEditSearch(
+				labels1, adjacency(nodes1, access), labels2, adjacency(nodes2, access),
+				relabel, remove, add, cost.removeLink(), cost.addLink(),
+				threshold, capacity);
+	}
+
+	private static <L, N> int[] labels(List<N> nodes, Nodes<L, N> access, Map<L, Integer> labels)
+	{
+		int[] indices = new int[nodes.size()];
+		for(int i = 0; i < nodes.size(); i++)
+		{
+			L label = access.label(nodes.get(i));
+			if(! labels.containsKey(label))
+				labels.put(label, labels.size());
+			indices[i] = labels.get(label);
+		}
+
+		return indices;
+	}
+
+	private static <L, N> boolean[][] adjacency(List<N> nodes, Nodes<L, N> access)
+	{
+		Map<N, Integer> indices = new HashMap<N, Integer>();
+		for(int i = 0; i < nodes.size(); i++)
+			indices.put(nodes.get(i), i);
+
+		boolean[][] adjacency = new boolean[nodes.size()][nodes.size()];
+		for(int i = 0; i < nodes.size(); i++)
+			for(N neighbor : access.neighbors(nodes.get(i)))
+			{
+				int j = indices.get(neighbor);
+				if(i != j)
+				{
+					adjacency[i][j] = true;
+					adjacency[j][i] = true;
+				}
+			}
+
+		return adjacency;
+	}
+}
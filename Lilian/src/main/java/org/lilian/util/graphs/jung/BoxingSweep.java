@@ -0,0 +1,258 @@
+package org.lilian.util.graphs.jung;
+
+import static java.lang.Math.log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import org.lilian.Global;
+import org.lilian.util.Parallel;
+
+import edu.uci.ics.jung.graph.Graph;
+
+/**
+ * The number of boxes needed to cover a graph for a range of box sizes, from
+ * which the box-counting dimension follows as the slope of log N_B(l) against
+ * log l.
+ *
+ * All box sizes and all trials are run concurrently. A randomized algorithm
+ * is given an independent Random for each trial, derived from a single seed,
+ * so that the results depend only on the seed. A deterministic algorithm is
+ * run once per box size.
+ *
+ * For each box size, the sweep records the box counts of all trials, their
+ * mean, variance and minimum, and the time taken per trial.
+ *
+ * @author Peter
+ */
+public class BoxingSweep
+{
+	private List<Integer> sizes;
+	private List<int[]> counts = new ArrayList<int[]>();
+	private List<long[]> nanos = new ArrayList<long[]>();
+	private long totalNanos;
+
+	private BoxingSweep(List<Integer> sizes)
+	{
+		this.sizes = new ArrayList<Integer>(sizes);
+	}
+
+	/**
+	 * Covers the graph with CBB for box sizes 1 to maxSize. A single set of
+	 * neighbourhoods of radius maxSize - 1 is computed and shared by all runs.
+	 */
+	public static <V, E> BoxingSweep sweep(
+			Graph<V, E> graph, int maxSize, int trials, long seed, int threads)
+	{
+		Neighbourhoods<V> neighbourhoods = new Neighbourhoods<V>(graph, maxSize - 1, threads);
+
+		List<Integer> sizes = new ArrayList<Integer>(maxSize);
+		for(int l = 1; l <= maxSize; l++)
+			sizes.add(l);
+
+		return sweep(new CBBBoxer<V, E>(graph, neighbourhoods), sizes, trials, seed, threads);
+	}
+
+	/**
+	 * Runs the given algorithm for all given box sizes.
+	 *
+	 * @param algorithm The algorithm. Its box method should be safe to call
+	 * 	from multiple threads at once.
+	 * @param sizes The box sizes.
+	 * @param trials The number of runs per box size, if the algorithm is a
+	 * 	{@link RandomBoxingAlgorithm}. Otherwise every size is run once.
+	 * @param seed
+	 * @param threads
+	 */
+	public static <V, E> BoxingSweep sweep(
+			final BoxingAlgorithm<V, E> algorithm, List<Integer> sizes,
+			int trials, long seed, int threads)
+	{
+		final boolean randomized = algorithm instanceof RandomBoxingAlgorithm<?, ?>;
+		if(! randomized)
+			trials = 1;
+
+		BoxingSweep sweep = new BoxingSweep(sizes);
+		long[] seeds = Parallel.seeds(seed, sizes.size() * trials);
+
+		List<Callable<long[]>> tasks = new ArrayList<Callable<long[]>>(seeds.length);
+		for(int i = 0; i < sizes.size(); i++)
+			for(int t = 0; t < trials; t++)
+			{
+				final int l = sizes.get(i);
+				final long trialSeed = seeds[i * trials + t];
+				tasks.add(new Callable<long[]>()
+				{
+					@Override
+					public long[] call()
+					{
+						long start = System.nanoTime();
+
+						Boxing<V, E> boxing = randomized ?
+								((RandomBoxingAlgorithm<V, E>) algorithm).box(l, new Random(trialSeed)) :
+								algorithm.box(l);
+
+						return new long[]{boxing.size(), System.nanoTime() - start};
+					}
+				});
+			}
+
+		long start = System.nanoTime();
+		List<long[]> results = Parallel.run(tasks, threads);
+		sweep.totalNanos = System.nanoTime() - start;
+
+		for(int i = 0; i < sizes.size(); i++)
+		{
+			int[] sizeCounts = new int[trials];
+			long[] sizeNanos = new long[trials];
+			for(int t = 0; t < trials; t++)
+			{
+				long[] result = results.get(i * trials + t);
+				sizeCounts[t] = (int) result[0];
+				sizeNanos[t] = result[1];
+			}
+
+			sweep.counts.add(sizeCounts);
+			sweep.nanos.add(sizeNanos);
+
+			Global.log().info("l=" + sizes.get(i) + ", boxes=" + sweep.min(i) + " (mean " + sweep.mean(i) + "), " + sweep.millis(i) + "ms per trial");
+		}
+
+		return sweep;
+	}
+
+	public List<Integer> sizes()
+	{
+		return Collections.unmodifiableList(sizes);
+	}
+
+	/**
+	 * The box counts of all trials for the i-th box size.
+	 */
+	public int[] counts(int i)
+	{
+		return counts.get(i).clone();
+	}
+
+	/**
+	 * The smallest box count over all trials for the i-th box size. This is
+	 * the best available estimate of N_B(l).
+	 */
+	public int min(int i)
+	{
+		int min = Integer.MAX_VALUE;
+		for(int count : counts.get(i))
+			min = Math.min(min, count);
+		return min;
+	}
+
+	public double mean(int i)
+	{
+		double sum = 0.0;
+		for(int count : counts.get(i))
+			sum += count;
+		return sum / counts.get(i).length;
+	}
+
+	/**
+	 * The sample variance of the box counts for the i-th box size, or 0.0 if
+	 * there is only one trial.
+	 */
+	public double variance(int i)
+	{
+		int[] sizeCounts = counts.get(i);
+		if(sizeCounts.length < 2)
+			return 0.0;
+
+		double mean = mean(i), sum = 0.0;
+		for(int count : sizeCounts)
+			sum += (count - mean) * (count - mean);
+		return sum / (sizeCounts.length - 1);
+	}
+
+	/**
+	 * The mean time per trial for the i-th box size, in milliseconds.
+	 */
+	public double millis(int i)
+	{
+		double sum = 0.0;
+		for(long n : nanos.get(i))
+			sum += n;
+		return sum / nanos.get(i).length / 1000000.0;
+	}
+
+	/**
+	 * The wall-clock time of the whole sweep, in milliseconds.
+	 */
+	public double totalMillis()
+	{
+		return totalNanos / 1000000.0;
+	}
+
+	/**
+	 * The natural log of each box size.
+	 */
+	public List<Double> logSizes()
+	{
+		List<Double> logs = new ArrayList<Double>(sizes.size());
+		for(int l : sizes)
+			logs.add(log(l));
+		return logs;
+	}
+
+	/**
+	 * The natural log of the smallest box count for each box size.
+	 */
+	public List<Double> logCounts()
+	{
+		List<Double> logs = new ArrayList<Double>(sizes.size());
+		for(int i = 0; i < sizes.size(); i++)
+			logs.add(log(min(i)));
+		return logs;
+	}
+
+	/**
+	 * The box-counting dimension: minus the least squares slope of
+	 * log N_B(l) against log l.
+	 */
+	public double dimension()
+	{
+		List<Double> xs = logSizes(), ys = logCounts();
+		int n = xs.size();
+
+		double xMean = 0.0, yMean = 0.0;
+		for(int i = 0; i < n; i++)
+		{
+			xMean += xs.get(i) / n;
+			yMean += ys.get(i) / n;
+		}
+
+		double covariance = 0.0, variance = 0.0;
+		for(int i = 0; i < n; i++)
+		{
+			covariance += (xs.get(i) - xMean) * (ys.get(i) - yMean);
+			variance += (xs.get(i) - xMean) * (xs.get(i) - xMean);
+		}
+
+		return - covariance / variance;
+	}
+
+	/**
+	 * A table with one line per box size: l, log l, the minimum, mean and
+	 * variance of the box count, log N_B(l) and the time per trial.
+	 */
+	@Override
+	public String toString()
+	{
+		StringBuilder builder = new StringBuilder();
+		builder.append("l\tlog l\tmin\tmean\tvariance\tlog N_B\tms\n");
+
+		for(int i = 0; i < sizes.size(); i++)
+			builder.append(sizes.get(i) + "\t" + log(sizes.get(i)) + "\t" + min(i) + "\t" + mean(i) + "\t" + variance(i) + "\t" + log(min(i)) + "\t" + millis(i) + "\n");
+
+		return builder.toString();
+	}
+}
@@ -9,6 +9,7 @@ import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import org.lilian.Global;
@@ -19,11 +20,13 @@ import edu.uci.ics.jung.algorithms.shortestpath.Distance;
 import edu.uci.ics.jung.algorithms.shortestpath.UnweightedShortestPath;
 import edu.uci.ics.jung.graph.Graph;
 
-public class CBBBoxer<V, E> implements BoxingAlgorithm<V, E>
+public class CBBBoxer<V, E> implements RandomBoxingAlgorithm<V, E>
 {
 	private Graph<V, E> graph;
 	
 	private Distance<V> usp;
+	private HopDistances<V> distances = null;
+	private Neighbourhoods<V> neighbourhoods = null;
 	
 	public CBBBoxer(Graph<V, E> graph)
 	{
@@ -31,10 +34,39 @@ public class CBBBoxer<V, E> implements BoxingAlgorithm<V, E>
 		
 		usp = new DijkstraDistance<V, E>(graph);
 	}
+	
+	/**
+	 * Uses precomputed distances, which may be shared with other algorithms,
+	 * to select the candidates for each box.
+	 */
+	public CBBBoxer(Graph<V, E> graph, HopDistances<V> distances)
+	{
+		this.graph = graph;
+		this.distances = distances;
+	}
+	
+	/**
+	 * Uses the given neighbourhoods, which should have a radius of at least 
+	 * l - 1 for the box sizes used, to select the candidates for each box.
+	 */
+	public CBBBoxer(Graph<V, E> graph, Neighbourhoods<V> neighbourhoods)
+	{
+		this.graph = graph;
+		this.neighbourhoods = neighbourhoods;
+	}
 
 	@Override
 	public Boxing<V, E> box(int l)
 	{
+		return box(l, Global.random);
+	}
+	
+	@Override
+	public Boxing<V, E> box(int l, Random random)
+	{
+		if(neighbourhoods != null)
+			return boxBounded(l, random);
+		
 		List<Set<V>> result = new ArrayList<Set<V>>();
 				
 		Set<V> uncovered = new LinkedHashSet<V>();
@@ -47,15 +79,24 @@ public class CBBBoxer<V, E> implements BoxingAlgorithm<V, E>
 			Set<V> box = new HashSet<V>();
 			while(! candidates.isEmpty())
 			{
-				int draw = Global.random.nextInt(candidates.size());
+				int draw = random.nextInt(candidates.size());
 				V center = candidates.remove(draw);
 				
 				box.add(center);
 				uncovered.remove(center);
 				
 				// Remove the candidates that are too far away
-				Set<V> neighbourhood = neighbourhood(center, l);
-				candidates.retainAll(neighbourhood);
+				if(distances != null)
+				{
+					Iterator<V> it = candidates.iterator();
+					while(it.hasNext())
+						if(distances.distance(center, it.next()) >= l)
+							it.remove();
+				} else
+				{
+					Set<V> neighbourhood = neighbourhood(center, l);
+					candidates.retainAll(neighbourhood);
+				}
 				
 //				Iterator<V> it = candidates.iterator();
 //				while(it.hasNext())
@@ -72,6 +113,55 @@ public class CBBBoxer<V, E> implements BoxingAlgorithm<V, E>
 		return new Boxing<V, E>(result, graph);
 	}
 	
+	/**
+	 * The same procedure as box(), on vertex indices, with the neighbourhoods
+	 * used to remove the candidates that are too far away. The candidates are
+	 * kept in order of index, so that for the same random draws this returns 
+	 * the same boxes as box().
+	 */
+	private Boxing<V, E> boxBounded(int l, Random random)
+	{
+		int n = neighbourhoods.size();
+		List<Set<V>> result = new ArrayList<Set<V>>();
+		
+		boolean[] covered = new boolean[n];
+		int numCovered = 0;
+		
+		int[] candidates = new int[n];
+		
+		while(numCovered < n)
+		{
+			int size = 0;
+			for(int i : series(n))
+				if(! covered[i])
+					candidates[size++] = i;
+			
+			Set<V> box = new HashSet<V>();
+			while(size > 0)
+			{
+				int draw = random.nextInt(size);
+				int center = candidates[draw];
+				System.arraycopy(candidates, draw + 1, candidates, draw, size - draw - 1);
+				size--;
+				
+				box.add(neighbourhoods.vertex(center));
+				covered[center] = true;
+				numCovered++;
+				
+				// Remove the candidates that are too far away
+				int kept = 0;
+				for(int k : series(size))
+					if(neighbourhoods.within(center, candidates[k], l - 1))
+						candidates[kept++] = candidates[k];
+				size = kept;
+			}
+			
+			result.add(box);
+		}
+		
+		return new Boxing<V, E>(result, graph);
+	}
+	
 	/**
 	 * Return all nodes with distance less than d to center.
 	 * @param center
@@ -80,24 +170,29 @@ public class CBBBoxer<V, E> implements BoxingAlgorithm<V, E>
 	 */
 	public Set<V> neighbourhood(V center, int d)
 	{
+		if(neighbourhoods != null && d - 1 <= neighbourhoods.radius())
+		{
+			Set<V> neighbourhood = new LinkedHashSet<V>();
+			for(int i : neighbourhoods.ball(neighbourhoods.index(center), d - 1))
+				neighbourhood.add(neighbourhoods.vertex(i));
+			return neighbourhood;
+		}
+		
+		// * A BFS over a single queue. Each vertex is expanded once.
 		Set<V> neighbourhood = new LinkedHashSet<V>();
-		Set<V> shell0 = new LinkedHashSet<V>(),
-		       shell1 = new LinkedHashSet<V>();
+		List<V> queue = new ArrayList<V>();
 				
 		neighbourhood.add(center);
-		shell0.add(center);
+		queue.add(center);
 		
-		int c = 1;
-		while(c < d)
+		int head = 0;
+		for(int c = 1; c < d; c++)
 		{
-			for(V vertex : shell0)
-				shell1.addAll(graph.getNeighbors(vertex));
-			 
-			neighbourhood.addAll(shell1);
-			
-			shell0 = shell1;
-			shell1 = new LinkedHashSet<V>();
-			c++;
+			int shellEnd = queue.size();
+			for(; head < shellEnd; head++)
+				for(V neighbor : graph.getNeighbors(queue.get(head)))
+					if(neighbourhood.add(neighbor))
+						queue.add(neighbor);
 		}
 		
 		return neighbourhood;
@@ -105,6 +200,8 @@ public class CBBBoxer<V, E> implements BoxingAlgorithm<V, E>
 
 	private int distance(V first, V second)
 	{
+		if(distances != null)
+			return distances.distance(first, second);
 				
 		Number dNum = usp.getDistance(first, second);
 		int distance = (dNum != null) ? (int)dNum.doubleValue() : Integer.MAX_VALUE;
@@ -0,0 +1,117 @@
+package org.lilian.util.graphs.jung;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.uci.ics.jung.graph.Graph;
+
+/**
+ * An immutable, compressed sparse row copy of the adjacency structure of a
+ * JUNG graph. Vertices are numbered 0 to n-1 in the iteration order of the
+ * graph, and the neighbours of vertex i are stored in
+ * targets[offsets[i]] to targets[offsets[i+1] - 1].
+ *
+ * Edge directions are ignored: two vertices are neighbours if
+ * graph.getNeighbors() says so.
+ *
+ * Since the copy is never modified, it can be read by multiple threads at
+ * once.
+ *
+ * @author Peter
+ *
+ * @param <V>
+ */
+public class CSRGraph<V>
+{
+	private List<V> vertices;
+	private Map<V, Integer> indices;
+
+	private int[] offsets;
+	private int[] targets;
+
+	public CSRGraph(Graph<V, ?> graph)
+	{
+		int n = graph.getVertexCount();
+
+		vertices = new ArrayList<V>(n);
+		indices = new HashMap<V, Integer>();
+		for(V vertex : graph.getVertices())
+		{
+			indices.put(vertex, vertices.size());
+			vertices.add(vertex);
+		}
+
+		offsets = new int[n + 1];
+		for(int i = 0; i < n; i++)
+			offsets[i + 1] = offsets[i] + graph.getNeighbors(vertices.get(i)).size();
+
+		targets = new int[offsets[n]];
+		for(int i = 0; i < n; i++)
+		{
+			int k = offsets[i];
+			for(V neighbor : graph.getNeighbors(vertices.get(i)))
+				targets[k++] = indices.get(neighbor);
+		}
+	}
+
+	public int size()
+	{
+		return vertices.size();
+	}
+
+	/**
+	 * The index of the given vertex, or -1 if it is not in the graph.
+	 */
+	public int index(V vertex)
+	{
+		Integer index = indices.get(vertex);
+		return index == null ? -1 : index;
+	}
+
+	public V vertex(int index)
+	{
+		return vertices.get(index);
+	}
+
+	/**
+	 * The vertices in the order of their indices.
+	 */
+	public List<V> vertices()
+	{
+		return Collections.unmodifiableList(vertices);
+	}
+
+	public int degree(int index)
+	{
+		return offsets[index + 1] - offsets[index];
+	}
+
+	/**
+	 * The index of the k-th neighbour of the given vertex.
+	 */
+	public int neighbor(int index, int k)
+	{
+		return targets[offsets[index] + k];
+	}
+
+	/**
+	 * The position in targets() where the neighbours of the given vertex start.
+	 * The neighbours end at offset(index + 1).
+	 */
+	public int offset(int index)
+	{
+		return offsets[index];
+	}
+
+	/**
+	 * The backing array of neighbour indices. This is not a copy, and should
+	 * not be modified.
+	 */
+	public int[] targets()
+	{
+		return targets;
+	}
+}
@@ -1,67 +1,46 @@
 package org.lilian.util.graphs.jung;
 
-import static org.lilian.util.Series.series;
-
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
-import org.lilian.Global;
-import org.lilian.util.Series;
-
 import edu.uci.ics.jung.graph.Graph;
 
-
+/**
+ * All-pairs shortest path lengths for an unweighted graph.
+ *
+ * Despite the name, this no longer runs the cubic Floyd-Warshall algorithm,
+ * but delegates to {@link HopDistances}, which runs a parallel BFS from every
+ * vertex.
+ *
+ * @author Peter
+ */
 public class FloydWarshall<V, E>
 {
-	private short[][] distances;
-	private Graph<V, E> graph;
-	
-	private Map<V, Integer> indices;
-	private List<V> vertices;
+	private HopDistances<V> distances;
 
 	public FloydWarshall(Graph<V, E> graph)
 	{
-		this.graph = graph;
-		int n = graph.getVertexCount();
-		
-		indices = new HashMap<V, Integer>();
-		int c = 0;
-		for(V vertex : graph.getVertices())
-			indices.put(vertex, c++);
-		
-		vertices = new ArrayList<V>();
-		for(V vertex : graph.getVertices())
-			vertices.add(vertex);
-		
-		distances = new short[n][];
-		for(int i : series(n))
-			distances[i] = new short[n];
-		
-		Global.log().info("FW Starting");
-		
-		// * Init the matrix
-		for(int i: series(n))
-			for(int j : series(n))
-				if(i == j)
-					distances[i][j] = 0;
-				else
-					distances[i][j] = graph.isNeighbor(vertices.get(i), vertices.get(j)) ? 1 : Short.MAX_VALUE;
-			
-		for(int k : series(n))
-			for(int i: series(n))
-				for(int j : series(n))
-					distances[i][j] = (short)Math.min(distances[i][j], distances[i][k]+distances[k][j]);
-		
-		Global.log().info("FW finished");
+		this(new HopDistances<V>(graph));
 	}
-	
+
+	/**
+	 * Uses distances that have already been computed, so that they can be
+	 * shared with other algorithms.
+	 */
+	public FloydWarshall(HopDistances<V> distances)
+	{
+		this.distances = distances;
+	}
+
+	/**
+	 * @return The distance between the two vertices, or Short.MAX_VALUE if
+	 * 	they are not connected.
+	 */
 	public int distance(V vi, V vj)
 	{
-		int i = indices.get(vi);
-		int j = indices.get(vj);
-		
-		return distances[i][j];
+		int distance = distances.distance(vi, vj);
+		return distance == Integer.MAX_VALUE ? Short.MAX_VALUE : distance;
+	}
+
+	public HopDistances<V> distances()
+	{
+		return distances;
 	}
 }
@@ -3,6 +3,7 @@ package org.lilian.util.graphs.jung;
 import static org.lilian.util.Series.series;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -15,8 +16,6 @@ import org.lilian.Global;
 import org.lilian.util.Pair;
 import org.lilian.util.Series;
 
-import cern.colt.Arrays;
-
 import edu.uci.ics.jung.algorithms.shortestpath.DijkstraDistance;
 import edu.uci.ics.jung.algorithms.shortestpath.Distance;
 import edu.uci.ics.jung.algorithms.shortestpath.UnweightedShortestPath;
@@ -27,64 +26,73 @@ public class GreedyBoxer<V, E> implements BoxingAlgorithm<V, E>
 {
 	private int[][] colors;
 	private int lMax; // The maximal (horizontal) index to the colors array
-	private short[][] distanceCache = null;
+	private HopDistances<V> distances = null;
+	private Neighbourhoods<V> neighbourhoods = null;
 	
 	private Graph<V, E> graph;
 	private List<V> vertices;
 	private Distance<V> dist;
 	
+	/**
+	 * @param graph
+	 * @param lm The largest box size to prepare the coloring for.
+	 * @param distanceCache Whether to compute all distances beforehand (with 
+	 * 	a parallel BFS) rather than ask JUNG's Dijkstra for each pair.
+	 */
 	public GreedyBoxer(Graph<V, E> graph, int lm, boolean distanceCache)
+	{
+		this(graph, lm, distanceCache ? new HopDistances<V>(graph) : null);
+	}
+	
+	/**
+	 * Uses distances that have already been computed, so that they can be
+	 * shared with other algorithms. If distances is null, JUNG's Dijkstra is
+	 * used instead.
+	 */
+	public GreedyBoxer(Graph<V, E> graph, int lm, HopDistances<V> distances)
 	{
 		super();
 		this.graph = graph;
-		dist = new DijkstraDistance<V, E>(graph);
-		vertices = new ArrayList<V>(graph.getVertices());
-
-		if(distanceCache)
-			makeCache();
+		this.distances = distances;
+		
+		if(distances != null)
+			vertices = distances.vertices();
+		else
+		{
+			dist = new DijkstraDistance<V, E>(graph);
+			vertices = new ArrayList<V>(graph.getVertices());
+		}
 		
 		setMatrix(lm-1);
 	}	
-
-	private void makeCache()
+	
+	/**
+	 * Colors the graph using only the neighbourhoods of each vertex, which
+	 * should have a radius of at least lm - 1. This takes memory proportional
+	 * to the sizes of the neighbourhoods rather than to n^2.
+	 */
+	public GreedyBoxer(Graph<V, E> graph, int lm, Neighbourhoods<V> neighbourhoods)
 	{
-		Global.log().info("Starting cache");
+		super();
+		this.graph = graph;
+		this.neighbourhoods = neighbourhoods;
 		
-		int n = vertices.size();
-		distanceCache = new short[n][];
-		for(int i = 0; i < n; i++)
-		{
-			System.out.print('.');
-			if(i%200==0) System.out.println();
-			
-			distanceCache[i] = new short[i];
-			for(int j = 0; j < i; j++)
-			{
-				V first = vertices.get(i), second = vertices.get(j);
-				Number dNum = dist.getDistance(first, second);
-				int distance = (dNum != null) ? (int)dNum.doubleValue() : Integer.MAX_VALUE;
-			
-				short v = (distance < Short.MAX_VALUE) ? (short)distance : Short.MAX_VALUE;
-				distanceCache[i][j] = v;
-			}
-		}	
+		vertices = neighbourhoods.vertices();
 		
-		dist = null;
-		Global.log().info("Finished cache");
+		setMatrix(lm-1);
 	}
 
 	@Override
 	public Boxing<V, E> box(int l)
 	{
 		int lIndex = l-1;
-		if(lIndex > lMax)
-			setMatrix(lIndex);
+		int[][] matrix = matrix(lIndex);
 		
 		Map<Integer, Set<V>> boxes = new HashMap<Integer, Set<V>>();
 		for(int i : series(graph.getVertexCount()))
 		{
 			V vertex = vertices.get(i);
-			int color = colors[i][lIndex];
+			int color = matrix[i][lIndex];
 			
 			if(! boxes.containsKey(color))
 				boxes.put(color, new HashSet<V>());
@@ -96,16 +104,26 @@ public class GreedyBoxer<V, E> implements BoxingAlgorithm<V, E>
 		
 	}
 	
+	/**
+	 * Returns the color matrix, extending it first if it does not cover the
+	 * given index. This is synchronized so that box() can be called by 
+	 * multiple threads at once.
+	 */
+	private synchronized int[][] matrix(int lIndex)
+	{
+		if(lIndex > lMax)
+			setMatrix(lIndex);
+		
+		return colors;
+	}
+	
 	private int distance(int i, int j)
 	{
 		if(i == j) 
 			return 0;		
 		
-		if(distanceCache != null)
-		{
-			int max = Math.max(i,  j), min = Math.max(i,  j);
-			return distanceCache[max][min];
-		}
+		if(distances != null)
+			return distances.distance(i, j);
 		
 		V first = vertices.get(i), second = vertices.get(j);
 		Number dNum = dist.getDistance(first, second);
@@ -116,6 +134,12 @@ public class GreedyBoxer<V, E> implements BoxingAlgorithm<V, E>
 
 	private void setMatrix(int lMax)
 	{
+		if(neighbourhoods != null)
+		{
+			setBoundedMatrix(lMax);
+			return;
+		}
+		
 		// * NB the l index represent the distance - 1. So the colors at 
 		//   colors[.][0] are those for box size 1
 		
@@ -161,6 +185,77 @@ public class GreedyBoxer<V, E> implements BoxingAlgorithm<V, E>
 
 	}
 	
+	/**
+	 * Computes the same coloring as setMatrix from the neighbourhoods. A color
+	 * is allowed for node i at index l if all earlier nodes with that color 
+	 * lie within distance l of i. We count the earlier nodes of each color in total
+	 * and within the ball around i, so that each node takes time proportional
+	 * to the size of its ball rather than to n.
+	 */
+	private void setBoundedMatrix(int lMax)
+	{
+		if(lMax > neighbourhoods.radius())
+			throw new IllegalArgumentException("Box size "+(lMax+1)+" requires neighbourhoods of radius "+lMax+" (radius is "+neighbourhoods.radius()+").");
+		
+		this.lMax = lMax;
+		int n = neighbourhoods.size();
+		
+		colors = new int[n][];
+		
+		// * totals[l][c]: the number of nodes so far with color c at index l
+		int[][] totals = new int[lMax+1][];
+		int[] numColors = new int[lMax+1];
+		for(int l : series(lMax+1))
+			totals[l] = new int[16];
+		
+		int[] inBall = new int[16];
+		
+		for(int i : series(n))
+		{
+			if(i%1000 == 0)
+				Global.log().info("At node "+i);
+			colors[i] = new int[lMax+1];
+			
+			int[] ball = neighbourhoods.ball(i, lMax);
+			
+			for(int l : series(lMax+1))
+			{
+				// * the first entry of the ball is i itself
+				int size = neighbourhoods.size(i, l);
+				
+				if(inBall.length <= numColors[l])
+					inBall = Arrays.copyOf(inBall, 2 * numColors[l] + 1);
+				
+				for(int k = 1; k < size; k++)
+					if(ball[k] < i)
+						inBall[colors[ball[k]][l]]++;
+				
+				int color = numColors[l];
+				for(int k = 1; k < size; k++)
+					if(ball[k] < i)
+					{
+						int c = colors[ball[k]][l];
+						if(c < color && inBall[c] == totals[l][c])
+							color = c;
+					}
+				
+				for(int k = 1; k < size; k++)
+					if(ball[k] < i)
+						inBall[colors[ball[k]][l]] = 0;
+				
+				colors[i][l] = color;
+				
+				if(color == numColors[l])
+				{
+					numColors[l]++;
+					if(totals[l].length < numColors[l])
+						totals[l] = Arrays.copyOf(totals[l], 2 * numColors[l]);
+				}
+				totals[l][color]++;
+			}
+		}
+	}
+	
 	/**
 	 * Returns the smallest positive integer not contained in a given list of
 	 * illegal integers.
@@ -0,0 +1,380 @@
+package org.lilian.util.graphs.jung;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.lilian.Global;
+import org.lilian.util.Parallel;
+
+import edu.uci.ics.jung.graph.Graph;
+
+/**
+ * All-pairs hop distances for an unweighted graph.
+ *
+ * The graph is copied once to a {@link CSRGraph}, after which one breadth
+ * first search is run from every vertex, spread over a number of threads. The
+ * results are stored in a packed lower triangle of bytes, or of (unsigned)
+ * shorts if the graph's diameter may exceed 255. This takes n(n-1)/2 bytes,
+ * a quarter of a full short[n][n] matrix.
+ *
+ * In bit-parallel mode, the searches are run 64 sources at a time, with one
+ * bit per source in a long per vertex, so that each edge is inspected once per
+ * level for 64 sources together. This is usually much faster on small-world
+ * graphs.
+ *
+ * Edge directions are ignored. Once constructed, the object can be queried by
+ * multiple threads at once.
+ *
+ * @author Peter
+ *
+ * @param <V>
+ */
+public class HopDistances<V>
+{
+	/**
+	 * The number of sources per task. This is also the number of sources
+	 * handled together by the bit-parallel search.
+	 */
+	public static final int BLOCK = 64;
+
+	private static final int CHUNK_SHIFT = 26;
+	private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+	private CSRGraph<V> graph;
+	private int n;
+
+	// * Only one of these is used. A stored 0 means unreachable.
+	private byte[][] bytes = null;
+	private char[][] chars = null;
+
+	public HopDistances(Graph<V, ?> graph)
+	{
+		this(graph, Parallel.threads());
+	}
+
+	public HopDistances(Graph<V, ?> graph, int threads)
+	{
+		this(graph, threads, true);
+	}
+
+	public HopDistances(Graph<V, ?> graph, int threads, boolean bitParallel)
+	{
+		this(new CSRGraph<V>(graph), threads, bitParallel);
+	}
+
+	/**
+	 * @param graph
+	 * @param threads The number of threads to use.
+	 * @param bitParallel Whether to run the 64-source bit-parallel search
+	 * 	rather than one search per source.
+	 */
+	public HopDistances(CSRGraph<V> graph, int threads, final boolean bitParallel)
+	{
+		this.graph = graph;
+		n = graph.size();
+
+		int bound = diameterBound();
+		if(bound > Character.MAX_VALUE)
+			throw new IllegalArgumentException("Graph diameter may be as large as "+bound+", which is too large to store.");
+
+		long entries = (long) n * (n - 1) / 2;
+		int numChunks = (int) ((entries + CHUNK_MASK) >>> CHUNK_SHIFT);
+		if(bound <= 255)
+			bytes = new byte[numChunks][];
+		else
+			chars = new char[numChunks][];
+
+		for(int c = 0; c < numChunks; c++)
+		{
+			int size = (int) Math.min(CHUNK_MASK + 1, entries - ((long) c << CHUNK_SHIFT));
+			if(bytes != null)
+				bytes[c] = new byte[size];
+			else
+				chars[c] = new char[size];
+		}
+
+		Global.log().info("Starting all-pairs BFS on " + n + " vertices (" + (bytes != null ? "byte" : "short") + " storage).");
+
+		final ThreadLocal<Buffers> buffers = new ThreadLocal<Buffers>()
+		{
+			@Override
+			protected Buffers initialValue()
+			{
+				return new Buffers(n, bitParallel);
+			}
+		};
+
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(n / BLOCK + 1);
+		for(int from = 0; from < n; from += BLOCK)
+		{
+			final int start = from, end = Math.min(n, from + BLOCK);
+			tasks.add(new Callable<Void>()
+			{
+				@Override
+				public Void call()
+				{
+					if(bitParallel)
+						multiSearch(start, end, buffers.get());
+					else
+						for(int source = start; source < end; source++)
+							search(source, buffers.get());
+					return null;
+				}
+			});
+		}
+
+		Parallel.run(tasks, threads);
+
+		Global.log().info("Finished all-pairs BFS.");
+	}
+
+	/**
+	 * An upper bound to the largest finite distance in the graph: for each
+	 * component, twice the eccentricity of some vertex, or the size of the
+	 * component minus one, whichever is smaller.
+	 */
+	private int diameterBound()
+	{
+		int[] depth = new int[n];
+		Arrays.fill(depth, -1);
+		int[] queue = new int[n];
+
+		int bound = 0;
+		for(int root = 0; root < n; root++)
+		{
+			if(depth[root] >= 0)
+				continue;
+
+			depth[root] = 0;
+			queue[0] = root;
+			int head = 0, tail = 1, eccentricity = 0;
+			while(head < tail)
+			{
+				int vertex = queue[head++];
+				eccentricity = depth[vertex];
+
+				for(int k = graph.offset(vertex); k < graph.offset(vertex + 1); k++)
+				{
+					int neighbor = graph.targets()[k];
+					if(depth[neighbor] < 0)
+					{
+						depth[neighbor] = depth[vertex] + 1;
+						queue[tail++] = neighbor;
+					}
+				}
+			}
+
+			bound = Math.max(bound, Math.min(2 * eccentricity, tail - 1));
+		}
+
+		return bound;
+	}
+
+	/**
+	 * A single BFS, filling row source of the triangle.
+	 */
+	private void search(int source, Buffers buffers)
+	{
+		int[] depth = buffers.depth, queue = buffers.queue;
+		int[] targets = graph.targets();
+
+		depth[source] = 0;
+		queue[0] = source;
+		int head = 0, tail = 1;
+		int found = 0; // * vertices below source found so far
+
+		while(head < tail && found < source)
+		{
+			int vertex = queue[head++];
+			int next = depth[vertex] + 1;
+
+			for(int k = graph.offset(vertex); k < graph.offset(vertex + 1); k++)
+			{
+				int neighbor = targets[k];
+				if(depth[neighbor] < 0)
+				{
+					depth[neighbor] = next;
+					queue[tail++] = neighbor;
+
+					if(neighbor < source)
+					{
+						set(source, neighbor, next);
+						found++;
+					}
+				}
+			}
+		}
+
+		// * reset only what we touched
+		for(int i = 0; i < tail; i++)
+			depth[queue[i]] = -1;
+	}
+
+	/**
+	 * A bit-parallel BFS from the sources start to end - 1 (at most 64). Bit k
+	 * of seen[v] is set once vertex v has been reached from source start + k.
+	 */
+	private void multiSearch(int start, int end, Buffers buffers)
+	{
+		long[] seen = buffers.seen, frontier = buffers.frontier, next = buffers.next;
+		int[] targets = graph.targets();
+
+		Arrays.fill(seen, 0L);
+		Arrays.fill(frontier, 0L);
+		for(int source = start; source < end; source++)
+		{
+			seen[source] = 1L << (source - start);
+			frontier[source] = seen[source];
+		}
+
+		int depth = 0;
+		boolean active = true;
+		while(active)
+		{
+			depth++;
+			active = false;
+
+			for(int vertex = 0; vertex < n; vertex++)
+			{
+				long mask = 0L;
+				for(int k = graph.offset(vertex); k < graph.offset(vertex + 1); k++)
+					mask |= frontier[targets[k]];
+
+				mask &= ~seen[vertex];
+				next[vertex] = mask;
+
+				if(mask != 0L)
+				{
+					active = true;
+
+					// * Only sources above this vertex store a distance to it
+					long bits;
+					if(vertex < start)
+						bits = mask;
+					else if(vertex - start >= BLOCK - 1)
+						bits = 0L;
+					else
+						bits = mask & (-1L << (vertex - start + 1));
+
+					while(bits != 0L)
+					{
+						int source = start + Long.numberOfTrailingZeros(bits);
+						bits &= bits - 1;
+						set(source, vertex, depth);
+					}
+				}
+			}
+
+			for(int vertex = 0; vertex < n; vertex++)
+				seen[vertex] |= next[vertex];
+
+			long[] swap = frontier;
+			frontier = next;
+			next = swap;
+		}
+	}
+
+	/**
+	 * Per-thread work arrays, reused between tasks.
+	 */
+	private static class Buffers
+	{
+		int[] depth, queue;
+		long[] seen, frontier, next;
+
+		public Buffers(int n, boolean bitParallel)
+		{
+			if(bitParallel)
+			{
+				seen = new long[n];
+				frontier = new long[n];
+				next = new long[n];
+			} else
+			{
+				depth = new int[n];
+				Arrays.fill(depth, -1);
+				queue = new int[n];
+			}
+		}
+	}
+
+	private static long position(int i, int j)
+	{
+		return (long) i * (i - 1) / 2 + j;
+	}
+
+	/**
+	 * Requires j < i
+	 */
+	private void set(int i, int j, int distance)
+	{
+		long position = position(i, j);
+		int chunk = (int) (position >>> CHUNK_SHIFT), offset = (int) (position & CHUNK_MASK);
+
+		if(bytes != null)
+			bytes[chunk][offset] = (byte) distance;
+		else
+			chars[chunk][offset] = (char) distance;
+	}
+
+	public int size()
+	{
+		return n;
+	}
+
+	/**
+	 * The vertices in the order of their indices.
+	 */
+	public List<V> vertices()
+	{
+		return graph.vertices();
+	}
+
+	public V vertex(int index)
+	{
+		return graph.vertex(index);
+	}
+
+	/**
+	 * The index of the given vertex, or -1 if it is not in the graph.
+	 */
+	public int index(V vertex)
+	{
+		return graph.index(vertex);
+	}
+
+	/**
+	 * The adjacency structure the distances were computed from.
+	 */
+	public CSRGraph<V> graph()
+	{
+		return graph;
+	}
+
+	/**
+	 * The number of hops between the vertices with the given indices, or
+	 * Integer.MAX_VALUE if there is no path between them.
+	 */
+	public int distance(int i, int j)
+	{
+		if(i == j)
+			return 0;
+
+		long position = i > j ? position(i, j) : position(j, i);
+		int chunk = (int) (position >>> CHUNK_SHIFT), offset = (int) (position & CHUNK_MASK);
+
+		int distance = bytes != null ? bytes[chunk][offset] & 0xff : chars[chunk][offset];
+		return distance == 0 ? Integer.MAX_VALUE : distance;
+	}
+
+	/**
+	 * The number of hops between the given vertices, or Integer.MAX_VALUE if
+	 * there is no path between them.
+	 */
+	public int distance(V first, V second)
+	{
+		return distance(graph.index(first), graph.index(second));
+	}
+}
@@ -0,0 +1,446 @@
+package org.lilian.util.graphs.jung;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.lilian.Global;
+import org.lilian.util.Parallel;
+
+import edu.uci.ics.jung.graph.Graph;
+
+/**
+ * For every vertex, the vertices within a fixed radius, found by a truncated
+ * BFS.
+ *
+ * Box-covering algorithms only need to know which vertices lie within
+ * distance l of each other for small l, so this takes memory proportional to
+ * the sizes of the balls, rather than the n^2 of a full distance matrix.
+ *
+ * The ball of each vertex is stored as a single int record: radius + 1 shell
+ * ends, followed by the vertices at distance 0, 1, ..., radius, each shell
+ * sorted by index. The vertices within distance r of a vertex thus form a
+ * prefix of its record.
+ *
+ * When the total size of the records exceeds a given number of ints, the
+ * remaining records (and those already computed) are written to a temporary
+ * file, which is memory mapped.
+ *
+ * Edge directions are ignored. Once constructed, the object can be queried by
+ * multiple threads at once.
+ *
+ * @author Peter
+ *
+ * @param <V>
+ */
+public class Neighbourhoods<V>
+{
+	/**
+	 * The default number of ints to keep in memory (1 GiB).
+	 */
+	public static final long DEFAULT_MEMORY = 1L << 28;
+
+	private static final int BLOCK = 256;
+	private static final int BATCH = 16;
+
+	// * The spill file is mapped in chunks of 1 GiB. No record crosses a
+	//   chunk boundary.
+	private static final int SHIFT = 28;
+
+	private CSRGraph<V> graph;
+	private int radius;
+
+	private long entries = 0;
+
+	// * Either records is used, or positions and buffers
+	private int[][] records;
+
+	private File file = null;
+	private long[] positions = null;
+	private IntBuffer[] buffers = null;
+	private long written = 0;
+
+	public Neighbourhoods(Graph<V, ?> graph, int radius)
+	{
+		this(new CSRGraph<V>(graph), radius, Parallel.threads(), DEFAULT_MEMORY);
+	}
+
+	public Neighbourhoods(Graph<V, ?> graph, int radius, int threads)
+	{
+		this(new CSRGraph<V>(graph), radius, threads, DEFAULT_MEMORY);
+	}
+
+	/**
+	 * @param graph
+	 * @param radius The largest distance for which the neighbourhoods are
+	 * 	stored.
+	 * @param threads The number of threads to use.
+	 * @param maxMemory The number of ints to keep in memory before spilling
+	 * 	the records to disk.
+	 */
+	public Neighbourhoods(CSRGraph<V> graph, final int radius, int threads, long maxMemory)
+	{
+		if(radius < 0)
+			throw new IllegalArgumentException("Radius ("+radius+") cannot be negative.");
+
+		this.graph = graph;
+		this.radius = radius;
+
+		final int n = graph.size();
+		records = new int[n][];
+
+		Global.log().info("Starting neighbourhoods of radius " + radius + " for " + n + " vertices.");
+
+		final ThreadLocal<int[][]> scratch = new ThreadLocal<int[][]>()
+		{
+			@Override
+			protected int[][] initialValue()
+			{
+				int[] depth = new int[n];
+				Arrays.fill(depth, -1);
+				return new int[][]{depth, new int[n]};
+			}
+		};
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		DataOutputStream out = null;
+		try {
+			int done = 0;
+			while(done < n)
+			{
+				int first = done;
+				List<Callable<int[][]>> tasks = new ArrayList<Callable<int[][]>>(BATCH);
+				for(int b = 0; b < BATCH && done < n; b++)
+				{
+					final int start = done, end = Math.min(n, done + BLOCK);
+					tasks.add(new Callable<int[][]>()
+					{
+						@Override
+						public int[][] call()
+						{
+							int[][] block = new int[end - start][];
+							int[][] buffers = scratch.get();
+							for(int v = start; v < end; v++)
+								block[v - start] = ball(v, buffers[0], buffers[1]);
+							return block;
+						}
+					});
+					done = end;
+				}
+
+				int v = first;
+				for(int[][] block : Parallel.run(tasks, executor))
+					for(int[] record : block)
+					{
+						entries += record.length;
+						if(out == null && entries > maxMemory)
+							out = spill(v);
+
+						if(out != null)
+							write(out, v, record);
+						else
+							records[v] = record;
+						v++;
+					}
+			}
+
+			if(out != null)
+			{
+				out.close();
+				out = null;
+				map();
+			}
+		} catch(IOException e)
+		{
+			throw new RuntimeException("Could not spill neighbourhoods to disk.", e);
+		} finally
+		{
+			executor.shutdown();
+			if(out != null)
+				try {
+					out.close();
+				} catch(IOException e)
+				{
+					Global.log().warning("Could not close spill file: " + e);
+				}
+		}
+
+		Global.log().info("Finished neighbourhoods (" + entries + " ints, " + (file == null ? "in memory" : "on disk") + ").");
+	}
+
+	/**
+	 * A BFS from the given vertex that stops at depth radius.
+	 */
+	private int[] ball(int source, int[] depth, int[] queue)
+	{
+		int[] targets = graph.targets();
+		int[] ends = new int[radius + 1];
+
+		depth[source] = 0;
+		queue[0] = source;
+		int head = 0, tail = 1;
+
+		for(int d = 0; d < radius; d++)
+		{
+			ends[d] = tail;
+			int shellEnd = tail;
+			while(head < shellEnd)
+			{
+				int vertex = queue[head++];
+				for(int k = graph.offset(vertex); k < graph.offset(vertex + 1); k++)
+				{
+					int neighbor = targets[k];
+					if(depth[neighbor] < 0)
+					{
+						depth[neighbor] = d + 1;
+						queue[tail++] = neighbor;
+					}
+				}
+			}
+		}
+		ends[radius] = tail;
+
+		int[] record = new int[radius + 1 + tail];
+		System.arraycopy(ends, 0, record, 0, radius + 1);
+		System.arraycopy(queue, 0, record, radius + 1, tail);
+
+		for(int d = 1; d <= radius; d++)
+			Arrays.sort(record, radius + 1 + ends[d - 1], radius + 1 + ends[d]);
+
+		for(int i = 0; i < tail; i++)
+			depth[queue[i]] = -1;
+
+		return record;
+	}
+
+	/**
+	 * Opens the spill file and moves the first n records into it.
+	 */
+	private DataOutputStream spill(int n)
+		throws IOException
+	{
+		file = File.createTempFile("neighbourhoods", ".bin");
+		file.deleteOnExit();
+
+		positions = new long[graph.size()];
+
+		DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		for(int v = 0; v < n; v++)
+		{
+			write(out, v, records[v]);
+			records[v] = null;
+		}
+
+		records = null;
+		return out;
+	}
+
+	private void write(DataOutputStream out, int vertex, int[] record)
+		throws IOException
+	{
+		long chunkSize = 1L << SHIFT;
+		if(record.length > chunkSize)
+			throw new IllegalStateException("Neighbourhood of vertex "+vertex+" is too large ("+record.length+" ints).");
+
+		// * pad to the next chunk if the record does not fit
+		if((written & (chunkSize - 1)) + record.length > chunkSize)
+			while((written & (chunkSize - 1)) != 0)
+			{
+				out.writeInt(0);
+				written++;
+			}
+
+		positions[vertex] = written;
+		for(int i : record)
+			out.writeInt(i);
+		written += record.length;
+	}
+
+	private void map()
+		throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			buffers = new IntBuffer[(int)((written + (1L << SHIFT) - 1) >>> SHIFT)];
+			for(int c = 0; c < buffers.length; c++)
+			{
+				long size = Math.min(1L << SHIFT, written - ((long) c << SHIFT));
+				buffers[c] = channel.map(FileChannel.MapMode.READ_ONLY, (long) c << (SHIFT + 2), size * 4).asIntBuffer();
+			}
+		} finally
+		{
+			// * The mapped buffers remain valid after the file is closed
+			raf.close();
+		}
+	}
+
+	/**
+	 * The i-th int of the record of the given vertex.
+	 */
+	private int at(int vertex, int i)
+	{
+		if(records != null)
+			return records[vertex][i];
+
+		long position = positions[vertex] + i;
+		return buffers[(int)(position >>> SHIFT)].get((int)(position & ((1L << SHIFT) - 1)));
+	}
+
+	public int radius()
+	{
+		return radius;
+	}
+
+	public int size()
+	{
+		return graph.size();
+	}
+
+	/**
+	 * The vertices in the order of their indices.
+	 */
+	public List<V> vertices()
+	{
+		return graph.vertices();
+	}
+
+	public V vertex(int index)
+	{
+		return graph.vertex(index);
+	}
+
+	/**
+	 * The index of the given vertex, or -1 if it is not in the graph.
+	 */
+	public int index(V vertex)
+	{
+		return graph.index(vertex);
+	}
+
+	/**
+	 * Whether the records have been written to disk.
+	 */
+	public boolean spilled()
+	{
+		return file != null;
+	}
+
+	/**
+	 * The total number of ints stored.
+	 */
+	public long entries()
+	{
+		return entries;
+	}
+
+	private void check(int r)
+	{
+		if(r < 0 || r > radius)
+			throw new IllegalArgumentException("Distance ("+r+") must be between 0 and the radius ("+radius+").");
+	}
+
+	/**
+	 * The number of vertices within distance r of the given vertex (including
+	 * the vertex itself).
+	 */
+	public int size(int vertex, int r)
+	{
+		check(r);
+		return at(vertex, r);
+	}
+
+	/**
+	 * The k-th vertex in the ball around the given vertex. These are ordered
+	 * by distance, and by index within each distance, so that the first
+	 * size(vertex, r) vertices are those within distance r.
+	 */
+	public int get(int vertex, int k)
+	{
+		return at(vertex, radius + 1 + k);
+	}
+
+	/**
+	 * The indices of the vertices within distance r of the given vertex, in
+	 * the order of {@link #get(int, int)}.
+	 */
+	public int[] ball(int vertex, int r)
+	{
+		int size = size(vertex, r);
+		int[] ball = new int[size];
+
+		if(records != null)
+			System.arraycopy(records[vertex], radius + 1, ball, 0, size);
+		else
+			for(int k = 0; k < size; k++)
+				ball[k] = get(vertex, k);
+
+		return ball;
+	}
+
+	/**
+	 * The distance between two vertices if it is at most the radius, and
+	 * Integer.MAX_VALUE otherwise.
+	 */
+	public int distance(int from, int to)
+	{
+		for(int d = 0; d <= radius; d++)
+		{
+			int start = d == 0 ? 0 : at(from, d - 1), end = at(from, d);
+			if(search(from, start, end, to))
+				return d;
+		}
+
+		return Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Whether the distance between the two vertices is at most r.
+	 */
+	public boolean within(int from, int to, int r)
+	{
+		check(r);
+		for(int d = 0; d <= r; d++)
+		{
+			int start = d == 0 ? 0 : at(from, d - 1), end = at(from, d);
+			if(search(from, start, end, to))
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Binary search in positions start to end (exclusive) of the ball of
+	 * the given vertex.
+	 */
+	private boolean search(int vertex, int start, int end, int target)
+	{
+		int lo = start, hi = end - 1;
+		while(lo <= hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			int value = get(vertex, mid);
+			if(value < target)
+				lo = mid + 1;
+			else if(value > target)
+				hi = mid - 1;
+			else
+				return true;
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,25 @@
+package org.lilian.util.graphs.jung;
+
+import java.util.Random;
+
+/**
+ * A boxing algorithm whose result depends on random draws. Passing each call
+ * its own Random, rather than having it draw from Global.random, allows
+ * boxings to be generated concurrently and reproducibly.
+ * 
+ * Implementations should allow box(int, Random) to be called by multiple 
+ * threads at once.
+ * 
+ * @author Peter
+ *
+ * @param <V>
+ * @param <E>
+ */
+public interface RandomBoxingAlgorithm<V, E> extends BoxingAlgorithm<V, E>
+{
+	/**
+	 * Generates a boxing of the graph, using only the given Random as a 
+	 * source of randomness.
+	 */
+	public Boxing<V, E> box(int l, Random random);
+}
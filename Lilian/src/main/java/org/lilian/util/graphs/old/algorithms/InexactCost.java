@@ -1,5 +1,7 @@
 package org.lilian.util.graphs.old.algorithms;
 
+import org.lilian.util.graphs.EditCost;
+
 /**
  * Specification of the cost function for inexact match 
  * 
@@ -9,34 +11,11 @@ package org.lilian.util.graphs.old.algorithms;
  * All functions should return values greater than one, so that 1 can be used as
  * a lower bound by the search algorithm.
  * 
+ * The cost functions are those of {@link EditCost}.
+ * 
  * @author Peter
  *
  */
-public interface InexactCost<L>
+public interface InexactCost<L> extends EditCost<L>
 {
-	/**
-	 * Cost of relabeling a node
-	 * @return
-	 */
-	public double relabel(L in, L out);
-
-
-	/**
-	 * Cost of removing a node
-	 * 
-	 * @param label
-	 * @return
-	 */
-	public double removeNode(L label);
-	
-	/**
-	 * 
-	 * @param label
-	 * @return
-	 */
-	public double addNode(L label);
-	
-	public double removeLink();
-	
-	public double addLink();
 }
@@ -0,0 +1,196 @@
+package org.lilian.adios;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.lilian.corpora.Corpora;
+import org.lilian.corpora.SequenceCorpus;
+
+public class AdiosTest
+{
+	private static final double DROP = 0.65, SIGNIFICANCE = 0.05, OVERLAP = 0.65;
+
+	@Test
+	public void testParallelPatternDistillation()
+		throws IOException
+	{
+		int batch = Adios.DISTILLATION_BATCH;
+		// * Small batches, so that motifs from earlier batches are in the graph
+		Adios.DISTILLATION_BATCH = 8;
+		try {
+			Checked single = new Checked(corpus()), multi = new Checked(corpus());
+
+			for(int i = 0; i < 3; i++)
+				assertEquals(
+						single.parallelPatternDistillation(DROP, SIGNIFICANCE, false, 1),
+						multi.parallelPatternDistillation(DROP, SIGNIFICANCE, false, 4));
+
+			assertTrue(single.committed > 0);
+			assertEquals(single.committed, multi.committed);
+
+			assertEquals(single.paths.size(), multi.paths.size());
+			for(int i = 0; i < single.paths.size(); i++)
+				assertEquals(single.paths.get(i).toString(), multi.paths.get(i).toString());
+		} finally
+		{
+			Adios.DISTILLATION_BATCH = batch;
+		}
+	}
+
+	@Test
+	public void testSerial()
+		throws IOException
+	{
+		int batch = Adios.DISTILLATION_BATCH;
+		// * With batches of one path, every search sees the current graph
+		Adios.DISTILLATION_BATCH = 1;
+		try {
+			Adios<String> serial = new Adios<String>(corpus()),
+			              parallel = new Adios<String>(corpus());
+
+			for(int i = 0; i < 2; i++)
+			{
+				assertEquals(
+						serial.patternDistillation(DROP, SIGNIFICANCE, false),
+						parallel.parallelPatternDistillation(DROP, SIGNIFICANCE, false, 2));
+				assertPaths(serial, parallel);
+			}
+		} finally
+		{
+			Adios.DISTILLATION_BATCH = batch;
+		}
+	}
+
+	@Test
+	public void testCheckpoint()
+		throws IOException
+	{
+		Adios<String> adios = new Adios<String>(corpus());
+		assertTrue(adios.patternDistillation(DROP, SIGNIFICANCE, false));
+
+		File file = File.createTempFile("adios", ".paths");
+		file.deleteOnExit();
+
+		adios.checkpoint(file);
+		Adios<String> resumed = Adios.resume(file);
+
+		assertPaths(adios, resumed);
+
+		// * Both should continue the search in the same way
+		assertEquals(
+				adios.patternDistillation(DROP, SIGNIFICANCE, false),
+				resumed.patternDistillation(DROP, SIGNIFICANCE, false));
+		assertPaths(adios, resumed);
+	}
+
+	@Test
+	public void testCheckpointParallel()
+		throws IOException
+	{
+		Adios<String> adios = new Adios<String>(corpus());
+		adios.patternDistillation(DROP, SIGNIFICANCE, false);
+		// * Context-sensitive generalization adds parallel tokens
+		adios.generalizationBootstrap(DROP, SIGNIFICANCE, OVERLAP, true, 4);
+		assertFalse(adios.ptokens.isEmpty());
+
+		File file = File.createTempFile("adios", ".paths");
+		file.deleteOnExit();
+
+		adios.checkpoint(file);
+		Adios<String> resumed = Adios.resume(file);
+
+		// * The members of the parallel tokens should keep their order
+		assertEquals(adios.ptokens.size(), resumed.ptokens.size());
+		for(int i = 0; i < adios.ptokens.size(); i++)
+			assertEquals(adios.ptokens.get(i).toString(), resumed.ptokens.get(i).toString());
+		assertPaths(adios, resumed);
+
+		assertEquals(
+				adios.generalizationBootstrap(DROP, SIGNIFICANCE, OVERLAP, true, 4),
+				resumed.generalizationBootstrap(DROP, SIGNIFICANCE, OVERLAP, true, 4));
+		assertPaths(adios, resumed);
+	}
+
+	private static void assertPaths(MexGraph<String> expected, MexGraph<String> actual)
+	{
+		assertEquals(expected.paths.size(), actual.paths.size());
+		for(int i = 0; i < expected.paths.size(); i++)
+			assertEquals(expected.paths.get(i).toString(), actual.paths.get(i).toString());
+	}
+
+	/**
+	 * Checks that every motif added to the graph is the leading motif of one
+	 * of its paths, as found by pathRunDistillation() against the graph at
+	 * that point.
+	 */
+	private static class Checked extends Adios<String>
+	{
+		int committed = 0;
+
+		public Checked(SequenceCorpus<String> corpus)
+			throws IOException
+		{
+			super(corpus);
+		}
+
+		@Override
+		protected void addSerialToken(Motif motif, boolean contextSensitive,
+				double dropThreshold, double significanceThreshold)
+		{
+			boolean found = false;
+			for(Path path : paths)
+			{
+				Motif fresh = pathRunDistillation(
+						path, DROP, SIGNIFICANCE, contextSensitive);
+				if(fresh != null && tokens(fresh).equals(tokens(motif)))
+					found = true;
+			}
+			assertTrue(found);
+
+			committed++;
+			super.addSerialToken(
+					motif, contextSensitive, dropThreshold, significanceThreshold);
+		}
+
+		private List<Token> tokens(Motif motif)
+		{
+			List<Token> tokens = new ArrayList<Token>();
+			for(Position position : motif.getSequence())
+				tokens.add(position.getToken());
+			return tokens;
+		}
+	}
+
+	/**
+	 * Sentences made up of a few fixed phrases and random words
+	 */
+	private static SequenceCorpus<String> corpus()
+	{
+		String[] phrases = {"the cat sat", "on the mat", "a dog ran", "to the park"};
+		String[] words = {"today", "quickly", "again", "here", "there"};
+
+		Random random = new Random(11);
+		StringBuilder text = new StringBuilder();
+		for(int s = 0; s < 60; s++)
+		{
+			int length = 1 + random.nextInt(3);
+			for(int i = 0; i < length; i++)
+			{
+				if(random.nextBoolean())
+					text.append(phrases[random.nextInt(phrases.length)]);
+				else
+					text.append(words[random.nextInt(words.length)]);
+				text.append(' ');
+			}
+			text.append(". ");
+		}
+
+		return Corpora.quickCorpus(text.toString());
+	}
+}
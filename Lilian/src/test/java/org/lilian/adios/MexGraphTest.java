@@ -2,6 +2,12 @@ package org.lilian.adios;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
 import org.junit.Test;
 import org.lilian.corpora.Corpora;
 import org.lilian.corpora.Corpus;
@@ -19,4 +25,147 @@ public class MexGraphTest {
 		System.out.println(graph);
 	}
 
+	@Test
+	public void testFillN()
+	{
+		MexGraph<String> graph = new MexGraph<String>(randomCorpus(new Random(3), 40));
+
+		for(MexGraph<String>.Path path : graph.paths)
+			assertN(graph, path);
+	}
+
+	@Test
+	public void testReplaceRange()
+	{
+		Random random = new Random(5);
+		MexGraph<String> graph = new MexGraph<String>(randomCorpus(random, 40));
+
+		Set<MexGraph<String>.Token> tokens = new LinkedHashSet<MexGraph<String>.Token>();
+		for(MexGraph<String>.Path path : graph.paths)
+			tokens.addAll(path);
+
+		assertSuccessors(graph, tokens);
+
+		// * Replace 'a b' wherever it occurs, and a few random ranges
+		List<MexGraph<String>.Token> pattern = new ArrayList<MexGraph<String>.Token>();
+		pattern.add(graph.tokens.get("a"));
+		pattern.add(graph.tokens.get("b"));
+		MexGraph<String>.SerialToken ab = graph.new SerialToken(pattern);
+		tokens.add(ab);
+
+		for(MexGraph<String>.Path path : graph.paths)
+			for(int i = 0; i < path.size() - 1; i++)
+				if(path.get(i).equals(pattern.get(0)) && path.get(i + 1).equals(pattern.get(1)))
+					path.replaceRange(path.getNode(i), path.getNode(i + 1), 2, ab);
+
+		assertSuccessors(graph, tokens);
+
+		for(int r = 0; r < 10; r++)
+		{
+			MexGraph<String>.Path path = graph.paths.get(random.nextInt(graph.paths.size()));
+			int length = 2 + random.nextInt(2);
+			if(path.size() < length)
+				continue;
+
+			int first = random.nextInt(path.size() - length + 1);
+			MexGraph<String>.SerialToken token =
+				graph.new SerialToken(new ArrayList<MexGraph<String>.Token>(path.subList(first, first + length)));
+			tokens.add(token);
+
+			path.replaceRange(path.getNode(first), path.getNode(first + length - 1), length, token);
+
+			assertSuccessors(graph, tokens);
+		}
+
+		// * The n matrix should follow the rewired graph
+		for(MexGraph<String>.Path path : graph.paths)
+			assertN(graph, path);
+	}
+
+	@Test
+	public void testPathStore()
+	{
+		MexGraph<String> graph = new MexGraph<String>(randomCorpus(new Random(7), 40));
+
+		List<MexGraph<String>.Token> pattern = new ArrayList<MexGraph<String>.Token>();
+		pattern.add(graph.tokens.get("a"));
+		pattern.add(graph.tokens.get("b"));
+		MexGraph<String>.SerialToken ab = graph.new SerialToken(pattern);
+
+		for(MexGraph<String>.Path path : graph.paths)
+			for(int i = 0; i < path.size() - 1; i++)
+				if(path.get(i).equals(pattern.get(0)) && path.get(i + 1).equals(pattern.get(1)))
+					path.replaceRange(path.getNode(i), path.getNode(i + 1), 2, ab);
+
+		PathStore<String> store = graph.toPathStore();
+		assertEquals(graph.paths.size(), store.numberOfPaths());
+
+		MexGraph<String> restored = new MexGraph<String>(store);
+		assertEquals(graph.paths.size(), restored.paths.size());
+		for(int i = 0; i < graph.paths.size(); i++)
+		{
+			assertEquals(graph.paths.get(i).toString(), restored.paths.get(i).toString());
+			assertN(restored, restored.paths.get(i));
+		}
+	}
+
+	/**
+	 * Checks the n matrix for the given path against an explicit count of the
+	 * occurrences of each subsequence.
+	 */
+	private static void assertN(MexGraph<String> graph, MexGraph<String>.Path path)
+	{
+		MexGraph<String>.MarkovMatrix matrix = graph.new MarkovMatrix();
+		matrix.fillN(graph.new PositionList(path));
+
+		for(int a = 0; a < path.size(); a++)
+			for(int b = a; b < path.size(); b++)
+			{
+				int count = count(graph.paths, path.subList(a, b + 1));
+				assertEquals(count, matrix.n[b][a]);
+				assertEquals(count, matrix.n[a][b]);
+			}
+	}
+
+	/**
+	 * Checks the successor counts of the given tokens against the paths.
+	 */
+	private static void assertSuccessors(
+			MexGraph<String> graph, Set<MexGraph<String>.Token> tokens)
+	{
+		for(MexGraph<String>.Token token : tokens)
+			for(MexGraph<String>.Token next : tokens)
+			{
+				List<MexGraph<String>.Token> pair = new ArrayList<MexGraph<String>.Token>();
+				pair.add(token);
+				pair.add(next);
+
+				assertEquals(count(graph.paths, pair), token.successors(next));
+			}
+	}
+
+	private static int count(List<? extends List<?>> paths, List<?> sequence)
+	{
+		int count = 0;
+		for(List<?> path : paths)
+			for(int i = 0; i + sequence.size() <= path.size(); i++)
+				if(path.subList(i, i + sequence.size()).equals(sequence))
+					count++;
+
+		return count;
+	}
+
+	private static SequenceCorpus<String> randomCorpus(Random random, int sentences)
+	{
+		StringBuilder text = new StringBuilder();
+		for(int s = 0; s < sentences; s++)
+		{
+			int length = 1 + random.nextInt(6);
+			for(int i = 0; i < length; i++)
+				text.append(i == 0 ? "" : " ").append((char)('a' + random.nextInt(3)));
+			text.append(". ");
+		}
+
+		return Corpora.quickCorpus(text.toString());
+	}
 }
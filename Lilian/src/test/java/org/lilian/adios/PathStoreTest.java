@@ -0,0 +1,141 @@
+package org.lilian.adios;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.lilian.corpora.Corpora;
+
+public class PathStoreTest
+{
+	@Test
+	public void testPaths()
+	{
+		PathStore<String> store = new PathStore<String>(
+				Corpora.quickCorpus("a b c d. a b a b. c a b."));
+
+		assertEquals(3, store.numberOfPaths());
+		assertEquals(17, store.totalNodes());
+
+		int a = store.id("a"), b = store.id("b");
+		assertEquals(-1, store.id("e"));
+		assertEquals(4, store.frequency(a));
+
+		assertArrayEquals(
+				new int[]{PathStore.START, a, b, a, b, PathStore.END},
+				store.path(1));
+
+		int[][] n = store.counts(new int[]{PathStore.START, a, b, PathStore.END});
+		// * "START a" occurs twice, "START a b" twice, "a b" four times
+		assertEquals(2, n[1][0]);
+		assertEquals(2, n[2][0]);
+		assertEquals(4, n[2][1]);
+		assertEquals(n[2][1], n[1][2]);
+		assertEquals(2, n[3][2]);
+		assertEquals(4, n[1][1]);
+
+		check(store);
+	}
+
+	@Test
+	public void testRewire()
+	{
+		PathStore<String> store = new PathStore<String>(
+				Corpora.quickCorpus("a b c d. a b a b. c a b. a a a."));
+
+		int a = store.id("a"), b = store.id("b"), c = store.id("c");
+
+		int ab = store.addSerialToken(a, b);
+		assertEquals(0, store.frequency(b));
+		assertEquals(4, store.frequency(ab));
+		assertArrayEquals(
+				new int[]{PathStore.START, ab, ab, PathStore.END},
+				store.path(1));
+		check(store);
+
+		// * overlapping occurrences: the leftmost is replaced
+		int aa = store.addSerialToken(a, a);
+		assertArrayEquals(
+				new int[]{PathStore.START, aa, a, PathStore.END},
+				store.path(3));
+		check(store);
+
+		// * a parallel token matches any of its members
+		int p = store.addParallelToken(ab, c);
+		int s = store.addSerialToken(PathStore.START, p);
+		assertArrayEquals(new int[]{s, ab, PathStore.END}, store.path(1));
+		assertArrayEquals(new int[]{s, c, store.id("d"), PathStore.END}, store.path(0));
+		assertArrayEquals(new int[]{s, ab, PathStore.END}, store.path(2));
+		// * the members keep the order in which they were given
+		assertEquals("s" + s + "[START, p" + p + "{s" + ab + "[a, b], c}]", store.toString(s));
+		check(store);
+
+		assertEquals(14, store.totalNodes());
+	}
+
+	@Test
+	public void testSnapshot()
+		throws IOException
+	{
+		PathStore<String> store = new PathStore<String>(
+				Corpora.quickCorpus("a b c d. a b a b. c a b. a a a."));
+		store.addSerialToken(store.id("a"), store.id("b"));
+		store.addParallelToken(store.id("c"), store.id("d"));
+
+		File file = File.createTempFile("path-store", ".bin");
+		file.deleteOnExit();
+
+		store.write(file);
+		PathStore<String> copy = PathStore.read(file);
+
+		assertEquals(store.numberOfTokens(), copy.numberOfTokens());
+		assertEquals(store.numberOfPaths(), copy.numberOfPaths());
+		assertEquals(store.totalNodes(), copy.totalNodes());
+
+		for(int token = 0; token < store.numberOfTokens(); token++)
+		{
+			assertEquals(store.kind(token), copy.kind(token));
+			assertEquals(store.value(token), copy.value(token));
+			assertArrayEquals(store.children(token), copy.children(token));
+			assertEquals(store.frequency(token), copy.frequency(token));
+		}
+
+		for(int path = 0; path < store.numberOfPaths(); path++)
+			assertArrayEquals(store.path(path), copy.path(path));
+
+		assertEquals(store.id("d"), copy.id("d"));
+		check(copy);
+	}
+
+	/**
+	 * Checks that the index agrees with the paths
+	 */
+	private static void check(PathStore<?> store)
+	{
+		int[] counts = new int[store.numberOfTokens()];
+		for(int path = 0; path < store.numberOfPaths(); path++)
+			for(int token : store.path(path))
+				counts[token]++;
+
+		for(int token = 0; token < store.numberOfTokens(); token++)
+		{
+			assertEquals(counts[token], store.frequency(token));
+
+			long[] postings = new long[store.frequency(token)];
+			for(int i = 0; i < postings.length; i++)
+			{
+				postings[i] = store.posting(token, i);
+				assertEquals(token, store.token(
+						PathStore.pathOf(postings[i]), PathStore.indexOf(postings[i])));
+			}
+
+			// * no duplicates
+			Arrays.sort(postings);
+			for(int i = 1; i < postings.length; i++)
+				assertTrue(postings[i - 1] < postings[i]);
+		}
+	}
+}
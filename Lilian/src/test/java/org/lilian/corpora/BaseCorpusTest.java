@@ -0,0 +1,112 @@
+package org.lilian.corpora;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+public class BaseCorpusTest
+{
+	@Test
+	public void testPartitions() throws IOException
+	{
+		File file = File.createTempFile("corpus", ".txt");
+		file.deleteOnExit();
+		
+		FileWriter writer = new FileWriter(file);
+		for(int i = 0; i < 100; i++)
+			writer.write("a b c" + i + "\n");
+		writer.close();
+		
+		BaseCorpus corpus = new BaseCorpus(file);
+		List<String> expected = new ArrayList<String>(corpus);
+		
+		for(int max : new int[]{1, 2, 3, 7, 16})
+		{
+			List<SequenceCorpus<String>> partitions = corpus.partitions(max);
+			assertTrue(partitions.size() <= max);
+			
+			List<String> tokens = new ArrayList<String>();
+			for(SequenceCorpus<String> partition : partitions)
+			{
+				SequenceIterator<String> it = partition.iterator();
+				while(it.hasNext())
+				{
+					tokens.add(it.next());
+					
+					// * Sequences are not split between partitions
+					if(! it.hasNext())
+						assertTrue(it.atSequenceEnd());
+				}
+			}
+			
+			assertEquals(expected, tokens);
+		}
+	}
+	
+	@Test
+	public void testPartitionsFiles() throws IOException
+	{
+		// * Files of uneven sizes, including an empty one
+		int[] lines = {1, 50, 3, 0, 20, 8, 100};
+		File[] files = new File[lines.length];
+		
+		List<List<String>> expected = new ArrayList<List<String>>();
+		for(int f = 0; f < lines.length; f++)
+		{
+			files[f] = File.createTempFile("corpus", ".txt");
+			files[f].deleteOnExit();
+			
+			FileWriter writer = new FileWriter(files[f]);
+			for(int i = 0; i < lines[f]; i++)
+			{
+				writer.write("s" + f + "." + i + " a b\n");
+				expected.add(Arrays.asList("s" + f + "." + i, "a", "b"));
+			}
+			writer.close();
+		}
+		
+		BaseCorpus corpus = new BaseCorpus(files);
+		
+		// * Fewer parts than files groups the files, more parts splits them
+		for(int max : new int[]{1, 2, 3, 5, 7, 12})
+		{
+			List<SequenceCorpus<String>> partitions = corpus.partitions(max);
+			if(max <= files.length)
+				assertEquals(max, partitions.size());
+			else
+				assertTrue(partitions.size() <= max);
+			
+			List<List<String>> sentences = new ArrayList<List<String>>();
+			for(SequenceCorpus<String> partition : partitions)
+			{
+				SequenceIterator<String> it = partition.iterator();
+				List<String> sentence = new ArrayList<String>();
+				while(it.hasNext())
+				{
+					sentence.add(it.next());
+					if(it.atSequenceEnd())
+					{
+						sentences.add(sentence);
+						sentence = new ArrayList<String>();
+					}
+				}
+				
+				assertTrue(sentence.isEmpty());
+			}
+			
+			// * Every sentence occurs exactly once
+			assertEquals(expected.size(), sentences.size());
+			assertEquals(
+					new HashSet<List<String>>(expected), 
+					new HashSet<List<String>>(sentences));
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package org.lilian.corpora;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class BinaryCorpusTest
+{
+	@Test
+	public void testWrite() throws IOException
+	{
+		SequenceCorpus<String> corpus = 
+				Corpora.quickCorpus("a b c a b c. b c b c b c. a b c a b c. d");
+		
+		File file = File.createTempFile("corpus", ".bin");
+		file.deleteOnExit();
+		
+		BinaryCorpus binary = BinaryCorpus.write(corpus, file);
+		
+		assertEquals(corpus.size(), binary.size());
+		assertEquals(4, binary.sentences());
+		assertEquals(4, binary.vocabulary().size());
+		
+		assertEquals(Arrays.asList("b", "c", "b", "c", "b", "c"), binary.sentence(1));
+		assertEquals(Arrays.asList("d"), binary.sentence(3));
+		
+		// * The tokens and sentence ends match those of the original
+		SequenceIterator<String> expected = corpus.iterator(), actual = binary.iterator();
+		while(expected.hasNext())
+		{
+			assertTrue(actual.hasNext());
+			assertEquals(expected.next(), actual.next());
+			assertEquals(expected.atSequenceEnd(), actual.atSequenceEnd());
+		}
+		assertFalse(actual.hasNext());
+		
+		// * Reading the file again gives the same corpus
+		List<String> tokens = new ArrayList<String>();
+		for(String token : new BinaryCorpus(file))
+			tokens.add(token);
+		
+		assertEquals(new ArrayList<String>(corpus), tokens);
+	}
+	
+	@Test
+	public void testRange() throws IOException
+	{
+		SequenceCorpus<String> corpus = 
+				Corpora.quickCorpus("a b. c. d e f. g");
+		
+		File file = File.createTempFile("corpus", ".bin");
+		file.deleteOnExit();
+		
+		BinaryCorpus binary = BinaryCorpus.write(corpus, file);
+		
+		List<String> tokens = new ArrayList<String>();
+		SequenceIterator<String> it = binary.iterator(1, 3);
+		while(it.hasNext())
+			tokens.add(it.next());
+		
+		assertEquals(Arrays.asList("c", "d", "e", "f"), tokens);
+	}
+}
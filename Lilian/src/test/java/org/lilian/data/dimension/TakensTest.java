@@ -1,8 +1,15 @@
 package org.lilian.data.dimension;
 
 import static org.junit.Assert.*;
+import static org.lilian.util.Series.series;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
+import org.lilian.Global;
 import org.lilian.data.real.Point;
 import org.lilian.util.distance.EuclideanDistance;
 
@@ -27,4 +34,79 @@ public class TakensTest
 		assertEquals(takens.cdf(threshold), prop / (double) total, 0.05);
 	}
 
+	@Test
+	public void testBigFit()
+	{
+		List<Point> points = new ArrayList<Point>();
+		for(int i : series(500))
+			points.add(new Point(Global.random.nextDouble(), Global.random.nextDouble()));
+		
+		Takens.BigFit<Point> fit = Takens.bigFit(points, new EuclideanDistance());
+		
+		Takens takens = fit.fit(1000, 1000);
+		assertEquals(2.0, takens.dimension(), 0.3);
+		
+		// * The histogram is reused 
+		assertEquals(takens.maxDistance(), fit.fit(1000, 1000).maxDistance(), 0.0);
+	}
+
+	@Test
+	public void testSignificance()
+	{
+		Takens takens = new Takens(2.0, 1.0);
+		List<Double> distances = takens.generate(300);
+		
+		Takens fitted = Takens.fit(distances, false).fit();
+		
+		double p = fitted.significance(distances, 20, -1, -1, -1.0, 42L);
+		
+		assertTrue(p >= 0.0 && p <= 1.0);
+		assertEquals(p, fitted.significance(distances, 20, -1, -1, -1.0, 42L), 0.0);
+		
+		// * The result should not depend on the number of threads
+		Bootstrap.Replicate replicate = fitted.replicate(distances, -1, -1);
+		assertEquals(
+				Bootstrap.significance(replicate, distances.size(), 100, -1.0, 42L, 1),
+				Bootstrap.significance(replicate, distances.size(), 100, -1.0, 42L, 4), 0.0);
+	}
+	
+	@Test
+	public void testEarlyStopping()
+	{
+		final AtomicInteger calls = new AtomicInteger();
+		
+		// * A p-value of about 0.01 should be distinguished from 0.5 after 
+		//   the first batch
+		Bootstrap.Replicate replicate = new Bootstrap.Replicate()
+		{
+			@Override
+			public boolean above(Random random, double[] buffer)
+			{
+				calls.incrementAndGet();
+				return random.nextDouble() < 0.01;
+			}
+		};
+		
+		double p = Bootstrap.significance(replicate, 1, 10000, 0.5, 42L, 4);
+		
+		assertTrue(calls.get() < 10000);
+		assertTrue(p < 0.1);
+		
+		// * Without a threshold, all replicates are run
+		calls.set(0);
+		Bootstrap.significance(replicate, 1, 1000, -1.0, 42L, 4);
+		assertEquals(1000, calls.get());
+		
+		// * Zero replicates can't estimate a p-value
+		boolean caught = false;
+		try
+		{
+			Bootstrap.significance(replicate, 1, 0, -1.0, 42L, 4);
+		} catch(IllegalArgumentException e)
+		{
+			caught = true;
+		}
+		assertTrue(caught);
+	}
+
 }
@@ -0,0 +1,77 @@
+package org.lilian.data.real;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.lilian.data.real.fractal.IFS;
+import org.lilian.data.real.fractal.IFSs;
+
+public class BatchGeneratorTest
+{
+
+	@Test
+	public void testIFS()
+	{
+		IFS<AffineMap> ifs = IFSs.sierpinski();
+
+		int n = 1000;
+		double[] out = new double[n * 2];
+		ifs.generator(new Random(42)).generate(out, n);
+
+		// * Each point should be the image of the previous under one of the
+		//   component maps
+		for(int i = 1; i < n; i++)
+			assertEquals(0.0, error(ifs, out, i), 1E-10);
+	}
+
+	@Test
+	public void testAddMap()
+	{
+		IFS<AffineMap> sierpinski = IFSs.sierpinski();
+		IFS<AffineMap> ifs = new IFS<AffineMap>(sierpinski.get(0), 1.0);
+
+		BatchGenerator generator = ifs.generator(new Random(42));
+
+		ifs.addMap(sierpinski.get(1), 1.0);
+		ifs.addMap(sierpinski.get(2), 1.0);
+
+		int n = 1000;
+		double[] out = new double[n * 2];
+		generator.generate(out, n);
+
+		// * The generator should use the maps added after it was created
+		int first = 0;
+		for(int i = 1; i < n; i++)
+		{
+			assertEquals(0.0, error(ifs, out, i), 1E-10);
+			if(distance(ifs.get(0), out, i) < 1E-10)
+				first++;
+		}
+
+		assertTrue(first < n / 2);
+	}
+
+	/**
+	 * The distance of point i to the nearest image of point i-1 under the
+	 * maps of the IFS.
+	 */
+	private static double error(IFS<AffineMap> ifs, double[] out, int i)
+	{
+		double min = Double.POSITIVE_INFINITY;
+		for(int k = 0; k < ifs.size(); k++)
+			min = Math.min(min, distance(ifs.get(k), out, i));
+
+		return min;
+	}
+
+	private static double distance(Map map, double[] out, int i)
+	{
+		Point previous = new Point(out[(i-1)*2], out[(i-1)*2 + 1]),
+		      current = new Point(out[i*2], out[i*2 + 1]);
+
+		return map.map(previous).distance(current);
+	}
+
+}
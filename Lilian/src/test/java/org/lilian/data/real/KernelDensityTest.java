@@ -0,0 +1,54 @@
+package org.lilian.data.real;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class KernelDensityTest
+{
+	@Test
+	public void testExact()
+	{
+		List<Point> data = new MVN(2).generate(500);
+		KernelDensity kde = new KernelDensity(data, 0.3);
+
+		for(Point query : new MVN(2, 2.0).generate(20))
+			assertEquals(naive(data, 0.3, query), kde.density(query), 1E-12);
+	}
+
+	@Test
+	public void testTolerance()
+	{
+		double var = 0.1, tolerance = 0.001;
+		List<Point> data = new MVN(2).generate(2000);
+		KernelDensity kde = new KernelDensity(data, var, tolerance);
+
+		double peak = 1.0 / (2.0 * Math.PI * var * var);
+
+		List<Point> queries = new MVN(2, 2.0).generate(50);
+		double[] densities = kde.density(queries, 3);
+
+		for(int i = 0; i < queries.size(); i++)
+		{
+			double expected = naive(data, var, queries.get(i));
+			assertEquals(expected, densities[i], tolerance * peak);
+			assertEquals(kde.density(queries.get(i)), densities[i], 0.0);
+		}
+	}
+
+	private static double naive(List<Point> data, double var, Point query)
+	{
+		List<MVN> mvns = new ArrayList<MVN>();
+		for(Point point : data)
+			mvns.add(new MVN(point, var));
+
+		double density = 0.0;
+		for(MVN mvn : mvns)
+			density += mvn.density(query);
+
+		return density / mvns.size();
+	}
+}
@@ -0,0 +1,63 @@
+package org.lilian.data.real;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MappedPointsTest
+{
+
+	@Test
+	public void testRoundTrip()
+		throws IOException
+	{
+		Random random = new Random(3);
+		List<Point> points = new ArrayList<Point>();
+		for(int i = 0; i < 1000; i++)
+			points.add(new Point(random.nextGaussian(), random.nextGaussian(), random.nextGaussian()));
+
+		File file = File.createTempFile("mapped-points", ".bin");
+		file.deleteOnExit();
+		MappedPoints.write(points, file);
+
+		MappedPoints mapped = new MappedPoints(file, 3);
+		assertEquals(1000, mapped.size());
+		assertEquals(3, mapped.dimension());
+
+		// * Iterate twice, to check that each iterator starts at the beginning
+		for(int pass = 0; pass < 2; pass++)
+		{
+			Iterator<Point> iterator = mapped.iterator();
+			for(Point point : points)
+			{
+				assertTrue(iterator.hasNext());
+				assertEquals(point, iterator.next());
+			}
+			assertFalse(iterator.hasNext());
+		}
+
+		file.delete();
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testWrongDimension()
+		throws IOException
+	{
+		List<Point> points = new ArrayList<Point>();
+		points.add(new Point(1.0, 2.0));
+		points.add(new Point(3.0, 4.0));
+
+		File file = File.createTempFile("mapped-points", ".bin");
+		file.deleteOnExit();
+		MappedPoints.write(points, file);
+
+		new MappedPoints(file, 3);
+	}
+}
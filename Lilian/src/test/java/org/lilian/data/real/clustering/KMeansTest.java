@@ -5,6 +5,7 @@ import static org.junit.Assert.*;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Test;
@@ -38,5 +39,50 @@ public class KMeansTest
 		
 		System.out.println(km.clustered().classes());
 	}
+	
+	@Test
+	public void testFast()
+	{
+		List<Point> data = new ArrayList<Point>(300);
+		
+		data.addAll(new MVN(new Point(10, 10)).generate(100));
+		data.addAll(new MVN(new Point(-10, 10)).generate(100));
+		data.addAll(new MVN(new Point(-10, -10)).generate(100));
+		
+		FastKMeans km = new FastKMeans(data, 3, 2);
+		km.iterate(100);
+		
+		assertTrue(km.converged());
+		
+		// * Each point should be in the same cluster as the other points 
+		//   drawn from its distribution
+		List<Integer> classes = km.clustered().classes();
+		for(int i : Series.series(300))
+			assertEquals(classes.get((i / 100) * 100), classes.get(i));
+
+		Set<Integer> distinct = new HashSet<Integer>(classes);
+		assertEquals(3, distinct.size());
+	}
+	
+	@Test
+	public void testFastThreads()
+	{
+		double[] data = new double[20000 * 2];
+		Random random = new Random(5);
+		for(int i = 0; i < data.length; i++)
+			data[i] = random.nextGaussian();
+		
+		FastKMeans single = new FastKMeans(data, 2, 50, new Random(7), 1);
+		FastKMeans multi = new FastKMeans(data, 2, 50, new Random(7), 4);
+		
+		// * The seeding should not depend on the number of threads
+		assertArrayEquals(single.centers(), multi.centers(), 0.0);
+		
+		single.iterate(20);
+		multi.iterate(20);
+		
+		assertArrayEquals(single.assignments(), multi.assignments());
+		assertArrayEquals(single.centers(), multi.centers(), 0.0);
+	}
 
 }
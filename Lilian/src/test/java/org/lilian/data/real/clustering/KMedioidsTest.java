@@ -54,4 +54,52 @@ public class KMedioidsTest
 		System.out.println(km.clustered().classes());
 	}
 
+	@Test
+	public void testFasterPAM()
+	{
+		List<Point> data = threeClusters();
+		
+		FasterPAM<Point> pam = new FasterPAM<Point>(data, new EuclideanDistance(), 3);
+		assertTrue(pam.iterate(20));
+		
+		checkBlocks(pam.assignments());
+	}
+	
+	@Test
+	public void testClara()
+	{
+		List<Point> data = threeClusters();
+		
+		Clara<Point> clara = new Clara<Point>(data, new EuclideanDistance(), 3);
+		clara.run(5, 20, 20);
+		
+		assertEquals(3, clara.medioids().size());
+		checkBlocks(clara.assignments());
+	}
+	
+	private static List<Point> threeClusters()
+	{
+		List<Point> data = new ArrayList<Point>(30);
+		
+		data.addAll(new MVN(new Point(10, 10)).generate(10));
+		data.addAll(new MVN(new Point(-10, 10)).generate(10));
+		data.addAll(new MVN(new Point(-10, -10)).generate(10));
+		
+		return data;
+	}
+	
+	private static void checkBlocks(int[] assignments)
+	{
+		Set<Integer> clusters = new HashSet<Integer>();
+		for(int block = 0; block < 3; block++)
+		{
+			int cluster = assignments[block * 10];
+			for(int i = block * 10; i < (block + 1) * 10; i++)
+				assertEquals(cluster, assignments[i]);
+			clusters.add(cluster);
+		}
+		
+		assertEquals(3, clusters.size());
+	}
+
 }
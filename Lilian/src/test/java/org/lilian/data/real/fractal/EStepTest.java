@@ -0,0 +1,50 @@
+package org.lilian.data.real.fractal;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.math.linear.RealMatrix;
+import org.apache.commons.math.linear.RealVector;
+import org.junit.Test;
+import org.lilian.data.real.Point;
+import org.lilian.data.real.Similitude;
+
+public class EStepTest
+{
+
+	@Test
+	public void testMatchesExpectation()
+	{
+		int maxDepth = 3, n = 50;
+		IFS<Similitude> model = IFSs.sierpinskiSim();
+		int k = model.size();
+		List<Point> data = model.generator().generate(n);
+		Similitude post = Similitude.identity(2);
+		
+		List<Double> depths = new ArrayList<Double>();
+		for(int i = 0; i <= maxDepth; i++)
+			depths.add(Math.log(1.0 / (maxDepth + 1)));
+		
+		RealMatrix p = EM.p(n, k, maxDepth), t = EM.t(2, k, maxDepth);
+		RealVector z = EM.z(n, k, maxDepth);
+		List<RealMatrix> pk = EM.pk(n, k, maxDepth);
+		List<RealVector> zk = EM.zk(n, k, maxDepth);
+		
+		EM.expectation(depths, model, post, data, z, zk, p, pk, t, false);
+		
+		EStep eStep = new EStep(model, depths);
+		eStep.compute(data, false, 3);
+		
+		assertEquals(0.0, p.subtract(eStep.p()).getNorm(), 1E-8);
+		assertEquals(0.0, t.subtract(eStep.t()).getNorm(), 1E-8);
+		assertEquals(0.0, z.subtract(eStep.z(false)).getNorm(), 1E-8);
+		for(int c = 0; c < k; c++)
+		{
+			assertEquals(0.0, pk.get(c).subtract(eStep.pk().get(c)).getNorm(), 1E-8);
+			assertEquals(0.0, zk.get(c).subtract(eStep.zk(false).get(c)).getNorm(), 1E-8);
+		}
+	}
+
+}
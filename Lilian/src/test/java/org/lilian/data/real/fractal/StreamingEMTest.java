@@ -0,0 +1,120 @@
+package org.lilian.data.real.fractal;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.lilian.data.real.MappedPoints;
+import org.lilian.data.real.Point;
+import org.lilian.data.real.Similitude;
+
+public class StreamingEMTest
+{
+
+	@Test
+	public void testMatchesEM()
+		throws IOException
+	{
+		int maxDepth = 3;
+		List<Point> data = IFSs.sierpinskiSim().generator(new Random(5)).generate(300);
+		IFS<Similitude> initial = IFSs.sierpinskiOffSim(0.3, 0.3, 0.4);
+
+		File file = File.createTempFile("streaming-em", ".bin");
+		file.deleteOnExit();
+		MappedPoints.write(data, file);
+
+		EM em = new EM(data, -1, initial, maxDepth, true);
+		em.setThreads(1);
+
+		// * The batch size does not divide the data, so the last batch is
+		//   smaller than the others
+		StreamingEM streaming = new StreamingEM(
+				new MappedPoints(file, 2), 70, initial, maxDepth, true);
+		streaming.setThreads(3);
+
+		assertSame(em.post(), streaming.post(), 1E-10);
+
+		for(int i = 0; i < 3; i++)
+		{
+			// * EM.iterate() may maximize more than once per expectation, so
+			//   we call the steps directly
+			em.expectation(false);
+			em.maximization(1.0, 1.0, 1.0);
+			streaming.iterate();
+
+			IFS<Similitude> a = em.model(), b = streaming.model();
+			assertEquals(a.size(), b.size());
+			for(int c = 0; c < a.size(); c++)
+			{
+				assertSame(a.get(c), b.get(c), 1E-7);
+				assertEquals(a.probability(c), b.probability(c), 1E-7);
+			}
+
+			for(int d = 0; d <= maxDepth; d++)
+				assertEquals(em.depths().get(d), streaming.depths().get(d), 1E-7);
+
+			assertSame(em.post(), streaming.post(), 1E-7);
+		}
+
+		file.delete();
+	}
+
+	@Test
+	public void testStep()
+		throws IOException
+	{
+		List<Point> data = IFSs.sierpinskiSim().generator(new Random(7)).generate(500);
+
+		File file = File.createTempFile("streaming-em", ".bin");
+		file.deleteOnExit();
+		MappedPoints.write(data, file);
+
+		StreamingEM streaming = new StreamingEM(
+				new MappedPoints(file, 2), 50, IFSs.sierpinskiOffSim(0.3, 0.3, 0.4), 3, false);
+
+		// * More steps than batches, so the data is read more than once
+		for(int i = 0; i < 25; i++)
+			streaming.step();
+
+		double sum = 0.0;
+		for(int c = 0; c < streaming.model().size(); c++)
+			sum += streaming.model().probability(c);
+		assertEquals(1.0, sum, 1E-10);
+
+		for(double depth : streaming.depths())
+			assertFalse(Double.isNaN(depth));
+
+		// * The components should approach the maps of the Sierpinski
+		//   triangle, rather than collapse onto each other
+		for(int c = 0; c < 3; c++)
+			assertEquals(0.5, streaming.model().get(c).scalar(), 0.1);
+		for(int c = 0; c < 3; c++)
+			for(int e = c + 1; e < 3; e++)
+				assertTrue(distance(streaming.model().get(c), streaming.model().get(e)) > 0.5);
+
+		file.delete();
+	}
+
+	private static double distance(Similitude a, Similitude b)
+	{
+		double sum = 0.0;
+		for(int i = 0; i < a.dimension(); i++)
+		{
+			double diff = a.translation().get(i) - b.translation().get(i);
+			sum += diff * diff;
+		}
+		return Math.sqrt(sum);
+	}
+
+	private static void assertSame(Similitude a, Similitude b, double tolerance)
+	{
+		List<Double> pa = a.parameters(), pb = b.parameters();
+		assertEquals(pa.size(), pb.size());
+		for(int i = 0; i < pa.size(); i++)
+			assertEquals(pa.get(i), pb.get(i), tolerance);
+	}
+}
@@ -0,0 +1,35 @@
+package org.lilian.data.real.fractal.flame;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.lilian.Global;
+import org.lilian.search.Builder;
+
+public class FlameTest
+{
+
+	@Test
+	public void testParallelDeterministic()
+	{
+		Builder<Flame> builder = Flame.builder(3);
+		List<Double> parameters = new ArrayList<Double>(builder.numParameters());
+		for(int i = 0; i < builder.numParameters(); i++)
+			parameters.add(Global.random.nextGaussian());
+		
+		Flame flame = builder.build(parameters);
+		double[] range = new double[]{-1.0, 1.0};
+		
+		BufferedImage a = flame.draw(100000, 50, 50, range, range, 1, true, 4, 42L);
+		BufferedImage b = flame.draw(100000, 50, 50, range, range, 1, true, 4, 42L);
+		
+		for(int x = 0; x < 50; x++)
+			for(int y = 0; y < 50; y++)
+				assertEquals(a.getRGB(x, y), b.getRGB(x, y));
+	}
+
+}
@@ -0,0 +1,45 @@
+package org.lilian.grammars;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.lilian.util.Functions;
+import org.lilian.util.Pair;
+import org.lilian.util.trees.Tree;
+
+public class CNFProbabilityGrammarTest
+{
+
+	@Test
+	public void testViterbi()
+	{
+		CNFProbabilityGrammar<String> g = new CNFProbabilityGrammar<String>();
+		
+		g.addRule("S", "NP", "V", 0.9);
+		g.addRule("NP", "D", "N", 0.9);
+		g.addRule("V", "walks", 1.0);
+		g.addRule("D", "the", 1.0);
+		g.addRule("N", "man", 0.9);
+		
+		g.addRule("S", "D", "NP", 0.1);
+		g.addRule("NP", "ADJ", "N", 0.1);
+		g.addRule("ADJ", "man", 0.1);
+		g.addRule("N", "walks", 0.1);
+		
+		Pair<Tree<String>, Double> full = 
+				g.parse(Functions.sentence("the man walks")).bestParse();
+		Pair<Tree<String>, Double> viterbi = 
+				g.parseViterbi(Functions.sentence("the man walks")).bestParse();
+		
+		assertEquals(full.first().toString(), viterbi.first().toString());
+		assertEquals(full.second(), viterbi.second(), 1E-10);
+		
+		assertFalse(g.parseViterbi(Functions.sentence("walks the")).isMember());
+		
+		// * The compiled grammar should be rebuilt when rules change
+		g.setRule("S", "NP", "V", 0.01);
+		viterbi = g.parseViterbi(Functions.sentence("the man walks")).bestParse();
+		assertEquals(0.01 * 0.9 * 0.9, viterbi.second(), 1E-10);
+	}
+
+}
@@ -0,0 +1,59 @@
+package org.lilian.grammars;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.lilian.corpora.Corpora;
+import org.lilian.corpora.SequenceCorpus;
+
+public class InsideOutsideTest
+{
+
+	@Test
+	public void testNormalized()
+	{
+		CNFProbabilityGrammar<String> g = new CNFProbabilityGrammar<String>();
+
+		g.addRule("S", "NP", "V", 0.9);
+		g.addRule("S", "D", "NP", 0.1);
+		g.addRule("NP", "D", "N", 0.6);
+		g.addRule("NP", "ADJ", "N", 0.4);
+		g.addRule("V", "walks", 0.7);
+		g.addRule("V", "runs", 0.3);
+		g.addRule("D", "the", 1.0);
+		g.addRule("N", "man", 0.5);
+		g.addRule("N", "dog", 0.5);
+		g.addRule("ADJ", "man", 0.5);
+		g.addRule("ADJ", "old", 0.5);
+
+		// * 'runs', 'dog' and 'old' do not occur in the corpus
+		SequenceCorpus<String> corpus = Corpora.quickCorpus(
+				"the man walks. the man walks. the man man.");
+
+		InsideOutside<String> io = new InsideOutside<String>(g, "S", 2);
+		io.iterate(corpus);
+
+		assertEquals(3, io.parsed());
+
+		assertEquals(1.0,
+				g.getProbability("S", "NP", "V") +
+				g.getProbability("S", "D", "NP"), 1E-10);
+		assertEquals(1.0,
+				g.getProbability("NP", "D", "N") +
+				g.getProbability("NP", "ADJ", "N"), 1E-10);
+		assertEquals(1.0,
+				g.getProbability("V", "walks", null) +
+				g.getProbability("V", "runs", null), 1E-10);
+		assertEquals(1.0, g.getProbability("D", "the", null), 1E-10);
+		assertEquals(1.0,
+				g.getProbability("N", "man", null) +
+				g.getProbability("N", "dog", null), 1E-10);
+		assertEquals(1.0,
+				g.getProbability("ADJ", "man", null) +
+				g.getProbability("ADJ", "old", null), 1E-10);
+
+		assertEquals(0.0, g.getProbability("V", "runs", null), 0.0);
+		assertEquals(0.0, g.getProbability("ADJ", "old", null), 0.0);
+	}
+
+}
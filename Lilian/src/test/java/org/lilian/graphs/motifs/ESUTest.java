@@ -0,0 +1,221 @@
+package org.lilian.graphs.motifs;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ESUTest
+{
+	@Test
+	public void testCanonical()
+	{
+		// * Paths 0-1-2 and 1-0-2 are isomorphic, the triangle is not
+		long path = ESU.canonical(bits(0, 2), 3, false);
+		assertEquals(path, ESU.canonical(bits(0, 1), 3, false));
+		assertEquals(path, ESU.canonical(bits(1, 2), 3, false));
+		assertTrue(path != ESU.canonical(bits(0, 1, 2), 3, false));
+		
+		// * Directed: 0->1->2 and 2->1->0 are isomorphic, 0->1<-2 is not
+		// 	 the bits are 0->1, 0->2, 1->0, 1->2, 2->0, 2->1
+		long chain = ESU.canonical(bits(0, 3), 3, true);
+		assertEquals(chain, ESU.canonical(bits(5, 2), 3, true));
+		assertTrue(chain != ESU.canonical(bits(0, 5), 3, true));
+	}
+
+	@Test
+	public void testComplete()
+	{
+		int n = 7;
+		int[][] neighbors = new int[n][n - 1];
+		for(int i = 0; i < n; i++)
+			for(int j = 0, c = 0; j < n; j++)
+				if(i != j)
+					neighbors[i][c++] = j;
+		
+		ESU esu = new ESU(neighbors, null, 4, 2);
+		
+		assertEquals(1, esu.motifs().size());
+		assertEquals(35.0, esu.total(), 0.0);
+	}
+	
+	@Test
+	public void testUndirected()
+	{
+		Random random = new Random(1);
+		int[][] out = random(25, 0.15, false, random);
+		
+		for(int k = 1; k <= 4; k++)
+			compare(out, k, false);
+	}
+	
+	@Test
+	public void testDirected()
+	{
+		Random random = new Random(2);
+		int[][] out = random(18, 0.12, true, random);
+		
+		for(int k = 2; k <= 4; k++)
+			compare(out, k, true);
+	}
+	
+	@Test
+	public void testSampling()
+	{
+		Random random = new Random(3);
+		int[][] neighbors = random(60, 0.1, false, random);
+		
+		ESU exact = new ESU(neighbors, null, 3, 1);
+		
+		// * With all probabilities 1, sampling is exact
+		ESU full = new ESU(neighbors, null, 3, new double[]{1.0, 1.0, 1.0}, 5L, 2);
+		assertEquals(exact.total(), full.total(), 0.0);
+		
+		double sum = 0.0;
+		int runs = 20;
+		for(int i = 0; i < runs; i++)
+			sum += new ESU(neighbors, null, 3, new double[]{1.0, 0.7, 0.7}, i, 2).total();
+		
+		assertEquals(1.0, (sum / runs) / exact.total(), 0.1);
+		
+		// * The result depends only on the seed
+		double[] p = new double[]{0.9, 0.8, 0.5};
+		assertEquals(
+				new ESU(neighbors, null, 3, p, 7L, 1).total(), 
+				new ESU(neighbors, null, 3, p, 7L, 3).total(), 0.0);
+	}
+	
+	/**
+	 * Checks the census against a brute force count over all subsets of size k.
+	 */
+	private static void compare(int[][] out, int k, boolean directed)
+	{
+		int n = out.length;
+		boolean[][] adjacent = new boolean[n][n];
+		for(int i = 0; i < n; i++)
+			for(int j : out[i])
+				adjacent[i][j] = true;
+		
+		int[][] neighbors = new int[n][];
+		for(int i = 0; i < n; i++)
+		{
+			List<Integer> list = new ArrayList<Integer>();
+			for(int j = 0; j < n; j++)
+				if(adjacent[i][j] || adjacent[j][i])
+					list.add(j);
+			neighbors[i] = new int[list.size()];
+			for(int c = 0; c < list.size(); c++)
+				neighbors[i][c] = list.get(c);
+		}
+		
+		Map<Long, Integer> expected = new HashMap<Long, Integer>();
+		int[] subset = new int[k];
+		subsets(0, 0, subset, n, neighbors, adjacent, directed, expected);
+		
+		ESU esu = new ESU(neighbors, directed ? out : null, k, 3);
+		
+		Map<Long, Integer> actual = new HashMap<Long, Integer>();
+		for(ESU.Motif motif : esu.motifs())
+		{
+			actual.put(motif.code(), (int) motif.count());
+			assertEquals(motif.code(), 
+					ESU.canonical(code(motif.nodes(), adjacent, directed), k, directed));
+		}
+		
+		assertEquals(expected, actual);
+	}
+	
+	private static void subsets(
+			int from, int size, int[] subset, int n, int[][] neighbors, 
+			boolean[][] adjacent, boolean directed, Map<Long, Integer> counts)
+	{
+		if(size == subset.length)
+		{
+			if(! connected(subset, neighbors))
+				return;
+			
+			long code = ESU.canonical(code(subset, adjacent, directed), subset.length, directed);
+			counts.put(code, counts.containsKey(code) ? counts.get(code) + 1 : 1);
+			return;
+		}
+		
+		for(int i = from; i < n; i++)
+		{
+			subset[size] = i;
+			subsets(i + 1, size + 1, subset, n, neighbors, adjacent, directed, counts);
+		}
+	}
+	
+	private static boolean connected(int[] subset, int[][] neighbors)
+	{
+		List<Integer> members = new ArrayList<Integer>();
+		for(int i : subset)
+			members.add(i);
+		
+		List<Integer> reached = new ArrayList<Integer>();
+		reached.add(subset[0]);
+		for(int i = 0; i < reached.size(); i++)
+			for(int j : neighbors[reached.get(i)])
+				if(members.contains(j) && ! reached.contains(j))
+					reached.add(j);
+		
+		return reached.size() == subset.length;
+	}
+	
+	private static long code(int[] nodes, boolean[][] adjacent, boolean directed)
+	{
+		long code = 0L;
+		int bit = 0;
+		for(int i = 0; i < nodes.length; i++)
+			for(int j = directed ? 0 : i + 1; j < nodes.length; j++)
+				if(i != j)
+				{
+					if(adjacent[nodes[i]][nodes[j]])
+						code |= 1L << bit;
+					bit++;
+				}
+		return code;
+	}
+	
+	private static long bits(int... bits)
+	{
+		long code = 0L;
+		for(int bit : bits)
+			code |= 1L << bit;
+		return code;
+	}
+	
+	/**
+	 * Out-links of a random graph. For an undirected graph, every link is
+	 * added in both directions.
+	 */
+	private static int[][] random(int n, double p, boolean directed, Random random)
+	{
+		List<List<Integer>> lists = new ArrayList<List<Integer>>();
+		for(int i = 0; i < n; i++)
+			lists.add(new ArrayList<Integer>());
+		
+		for(int i = 0; i < n; i++)
+			for(int j = directed ? 0 : i + 1; j < n; j++)
+				if(i != j && random.nextDouble() < p)
+				{
+					lists.get(i).add(j);
+					if(! directed)
+						lists.get(j).add(i);
+				}
+		
+		int[][] out = new int[n][];
+		for(int i = 0; i < n; i++)
+		{
+			out[i] = new int[lists.get(i).size()];
+			for(int c = 0; c < out[i].length; c++)
+				out[i][c] = lists.get(i).get(c);
+		}
+		return out;
+	}
+}
@@ -0,0 +1,75 @@
+package org.lilian.search.evo;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.lilian.data.real.AffineMap;
+import org.lilian.search.Builder;
+
+public class CachedTargetTest
+{
+	private static class CountingTarget implements Target<AffineMap>
+	{
+		private static final long serialVersionUID = 1L;
+		public int calls = 0;
+
+		@Override
+		public double score(AffineMap map)
+		{
+			calls++;
+			return - map.parameters().get(0);
+		}
+	}
+
+	@Test
+	public void testCache()
+	{
+		Builder<AffineMap> builder = AffineMap.affineMapBuilder(1);
+		CountingTarget counting = new CountingTarget();
+		CachedTarget<AffineMap> target = Targets.cached(counting, 2);
+
+		AffineMap a = builder.build(Arrays.asList(1.0, 0.0)),
+		          b = builder.build(Arrays.asList(2.0, 0.0)),
+		          c = builder.build(Arrays.asList(3.0, 0.0));
+
+		// * A different instance with the same parameters
+		AffineMap a2 = builder.build(Arrays.asList(1.0, 0.0));
+
+		assertEquals(-1.0, target.score(a), 0.0);
+		assertEquals(-1.0, target.score(a2), 0.0);
+		assertEquals(1, counting.calls);
+
+		target.score(b);
+		target.score(a);
+		// * evicts b, the least recently used
+		target.score(c);
+		target.score(b);
+
+		assertEquals(4, counting.calls);
+		assertEquals(2, target.hits());
+		assertEquals(4, target.misses());
+		assertEquals(2, target.size());
+	}
+
+	@Test
+	public void testSort()
+	{
+		Builder<AffineMap> builder = AffineMap.affineMapBuilder(1);
+		CountingTarget counting = new CountingTarget();
+		CachedTarget<AffineMap> target = Targets.cached(counting, 100);
+
+		List<AffineMap> maps = new ArrayList<AffineMap>();
+		for(int i = 0; i < 50; i++)
+			maps.add(builder.build(Arrays.asList((double)((i * 17) % 50), 0.0)));
+
+		Collections.sort(maps, Targets.comparator(target));
+
+		assertEquals(50, counting.calls);
+		assertEquals(0.0, maps.get(0).parameters().get(0), 0.0);
+	}
+}
@@ -103,6 +103,42 @@ public class ESTest
 		}
 	}
 	
+	@Test
+	public void testThreads()
+	{
+		Builder<AffineMap> builder = AffineMap.affineMapBuilder(2);
+		Target<AffineMap> target = new Target<AffineMap>()
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public double score(AffineMap map)
+			{
+				double sum = 0.0;
+				for(double param : map.parameters())
+					sum += (param - 0.5) * (param - 0.5);
+				return - sum;
+			}
+		};
+		
+		List<List<Double>> results = new java.util.ArrayList<List<Double>>();
+		for(int threads : new int[]{1, 3})
+		{
+			Global.random = new Random(42);
+			List<List<Double>> initial = ES.initial(20, builder.numParameters(), VAR);
+
+			ES<AffineMap> es = new ES<AffineMap>(builder, target, initial);
+			es.setThreads(threads);
+			
+			for(int i : Series.series(20))
+				es.breed();
+			
+			results.add(es.best().parameters());
+		}
+		
+		assertEquals(results.get(0), results.get(1));
+	}
+	
 	private static <M extends Map & Parametrizable> void write(IFS<M> ifs, File dir, String name)
 	{
 		double[] xrange = new double[]{-2.1333, 2.1333};
@@ -98,6 +98,30 @@ public class FunctionsTest
 
 	}
 
+	@Test
+	public void testBinomialCDF()
+	{
+		BinomialCoefficient bc = new BinomialCoefficient();
+
+		for(int n : Arrays.asList(1, 5, 20, 100, 500))
+			for(double p : Arrays.asList(0.01, 0.3, 0.5, 0.9))
+				for(int x = 0; x <= n; x++)
+				{
+					double sum = 0.0;
+					for(int i = 0; i <= x; i++)
+						sum += bc.get(n, i) * Math.pow(p, i) * Math.pow(1.0 - p, n - i);
+
+					assertEquals(sum, Functions.binomialCDF(x, n, p), 1.0E-8);
+				}
+
+		assertEquals(1.0, Functions.binomialCDF(10, 10, 0.5), 0.0);
+		assertEquals(0.0, Functions.binomialCDF(-1, 10, 0.5), 0.0);
+
+		// * Large n, where the binomial coefficients overflow
+		double cdf = Functions.binomialCDF(5000, 10000, 0.5);
+		assertTrue(cdf > 0.5 && cdf < 0.51);
+	}
+
 	private <T> List<T> l(List<T> list)
 	{
 		return new ArrayList<T>(list);
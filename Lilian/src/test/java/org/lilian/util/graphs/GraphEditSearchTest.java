@@ -0,0 +1,280 @@
+package org.lilian.util.graphs;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.lilian.util.graphs.old.BaseGraph;
+import org.lilian.util.graphs.old.algorithms.CostFunctions;
+import org.lilian.util.graphs.old.algorithms.InexactMatch;
+
+public class GraphEditSearchTest
+{
+	private static final int LABELS = 3;
+
+	@Test
+	public void testBruteForce()
+	{
+		Random random = new Random(7);
+		double[][] relabel = relabel(random);
+		double[] remove = costs(random), add = costs(random);
+
+		for(int trial = 0; trial < 200; trial++)
+		{
+			int n1 = random.nextInt(5), n2 = random.nextInt(5);
+			int[] labels1 = labels(n1, random), labels2 = labels(n2, random);
+			boolean[][] adjacency1 = adjacency(n1, random), adjacency2 = adjacency(n2, random);
+
+			GraphEditSearch search = new GraphEditSearch(
+					labels1, adjacency1, labels2, adjacency2,
+					relabel, remove, add, 1.5, 1.25,
+					Double.POSITIVE_INFINITY, -1);
+
+			double expected = bruteForce(
+					labels1, adjacency1, labels2, adjacency2,
+					relabel, remove, add, 1.5, 1.25,
+					new int[n1], new boolean[n2], 0);
+
+			assertTrue(search.found());
+			assertTrue(search.exact());
+			assertEquals(expected, search.cost(), 1E-9);
+
+			// * The returned pairs should cost what the search says
+			assertEquals(search.cost(), cost(
+					labels1, adjacency1, labels2, adjacency2,
+					relabel, remove, add, 1.5, 1.25, mapping(search.pairs(), n1)), 1E-9);
+		}
+	}
+
+	@Test
+	public void testThreshold()
+	{
+		Random random = new Random(11);
+		double[][] relabel = relabel(random);
+		double[] remove = costs(random), add = costs(random);
+
+		for(int trial = 0; trial < 50; trial++)
+		{
+			int n1 = 1 + random.nextInt(4), n2 = 1 + random.nextInt(4);
+			int[] labels1 = labels(n1, random), labels2 = labels(n2, random);
+			boolean[][] adjacency1 = adjacency(n1, random), adjacency2 = adjacency(n2, random);
+
+			double distance = new GraphEditSearch(
+					labels1, adjacency1, labels2, adjacency2,
+					relabel, remove, add, 1.0, 1.0,
+					Double.POSITIVE_INFINITY, -1).cost();
+
+			// * Partial costs are summed in a different order than the total,
+			//   so allow for rounding
+			GraphEditSearch at = new GraphEditSearch(
+					labels1, adjacency1, labels2, adjacency2,
+					relabel, remove, add, 1.0, 1.0, distance + 1E-9, -1);
+			assertTrue(at.found());
+			assertEquals(distance, at.cost(), 1E-9);
+
+			GraphEditSearch below = new GraphEditSearch(
+					labels1, adjacency1, labels2, adjacency2,
+					relabel, remove, add, 1.0, 1.0, distance - 0.01, -1);
+			assertFalse(below.found());
+			assertNull(below.pairs());
+			assertEquals(Double.POSITIVE_INFINITY, below.cost(), 0.0);
+		}
+	}
+
+	@Test
+	public void testCapacity()
+	{
+		Random random = new Random(3);
+		int n = 7;
+		int[] labels1 = labels(n, random), labels2 = labels(n, random);
+		boolean[][] adjacency1 = adjacency(n, random), adjacency2 = adjacency(n, random);
+
+		double[][] relabel = relabel(random);
+		double[] remove = costs(random), add = costs(random);
+
+		GraphEditSearch full = new GraphEditSearch(
+				labels1, adjacency1, labels2, adjacency2,
+				relabel, remove, add, 1.0, 1.0, Double.POSITIVE_INFINITY, -1);
+		GraphEditSearch bounded = new GraphEditSearch(
+				labels1, adjacency1, labels2, adjacency2,
+				relabel, remove, add, 1.0, 1.0, Double.POSITIVE_INFINITY, 16);
+
+		assertTrue(full.exact());
+		assertFalse(bounded.exact());
+		assertTrue(bounded.found());
+		assertTrue(bounded.cost() >= full.cost() - 1E-9);
+
+		// * Dropped states are released, and the parents of the result kept
+		assertTrue(bounded.stored() <= (16 + 1) * (n + 2));
+		assertEquals(bounded.cost(), cost(
+				labels1, adjacency1, labels2, adjacency2,
+				relabel, remove, add, 1.0, 1.0, mapping(bounded.pairs(), n)), 1E-9);
+	}
+
+	@Test
+	public void testInexactMatch()
+	{
+		BaseGraph<String> a = new BaseGraph<String>();
+		BaseGraph<String>.Node a0 = a.addNode("x");
+		BaseGraph<String>.Node a1 = a.addNode("y");
+		BaseGraph<String>.Node a2 = a.addNode("z");
+		a0.connect(a1);
+		a1.connect(a2);
+
+		BaseGraph<String> b = new BaseGraph<String>();
+		BaseGraph<String>.Node b0 = b.addNode("x");
+		BaseGraph<String>.Node b1 = b.addNode("y");
+		BaseGraph<String>.Node b2 = b.addNode("z");
+		b0.connect(b1);
+		b1.connect(b2);
+		b2.connect(b0);
+
+		InexactMatch<String, BaseGraph<String>.Node> match =
+				new InexactMatch<String, BaseGraph<String>.Node>(
+						a, b, CostFunctions.<String>uniform(), 1.0);
+
+		assertTrue(match.matches());
+		assertTrue(match.exact());
+		assertEquals(1.0, match.distance(), 0.0);
+
+		List<BaseGraph<String>.Node> first = match.bestMatch().first();
+		List<BaseGraph<String>.Node> second = match.bestMatch().second();
+		assertEquals(3, first.size());
+		for(int i = 0; i < first.size(); i++)
+			assertEquals(first.get(i).label(), second.get(i).label());
+
+		match = new InexactMatch<String, BaseGraph<String>.Node>(
+				a, b, CostFunctions.<String>uniform(), 0.5);
+		assertFalse(match.matches());
+		assertNull(match.bestMatch());
+
+		List<Double> distances = InexactMatch.distances(
+				a, Arrays.asList(a, b), CostFunctions.<String>uniform(), 10.0, 2);
+		assertEquals(0.0, distances.get(0), 0.0);
+		assertEquals(1.0, distances.get(1), 0.0);
+	}
+
+	private static double bruteForce(
+			int[] labels1, boolean[][] adjacency1, int[] labels2, boolean[][] adjacency2,
+			double[][] relabel, double[] remove, double[] add, double removeLink, double addLink,
+			int[] mapping, boolean[] used, int i)
+	{
+		if(i == mapping.length)
+			return cost(labels1, adjacency1, labels2, adjacency2,
+					relabel, remove, add, removeLink, addLink, mapping);
+
+		double best = Double.POSITIVE_INFINITY;
+		for(int target = -1; target < used.length; target++)
+		{
+			if(target >= 0 && used[target])
+				continue;
+
+			mapping[i] = target;
+			if(target >= 0)
+				used[target] = true;
+
+			best = Math.min(best, bruteForce(labels1, adjacency1, labels2, adjacency2,
+					relabel, remove, add, removeLink, addLink, mapping, used, i + 1));
+
+			if(target >= 0)
+				used[target] = false;
+		}
+
+		return best;
+	}
+
+	private static int[] mapping(int[][] pairs, int n1)
+	{
+		int[] mapping = new int[n1];
+		for(int i = 0; i < pairs[0].length; i++)
+			if(pairs[0][i] >= 0)
+				mapping[pairs[0][i]] = pairs[1][i];
+		return mapping;
+	}
+
+	private static double cost(
+			int[] labels1, boolean[][] adjacency1, int[] labels2, boolean[][] adjacency2,
+			double[][] relabel, double[] remove, double[] add, double removeLink, double addLink,
+			int[] mapping)
+	{
+		double cost = 0.0;
+		boolean[] used = new boolean[labels2.length];
+		for(int i = 0; i < mapping.length; i++)
+			if(mapping[i] < 0)
+				cost += remove[labels1[i]];
+			else
+			{
+				used[mapping[i]] = true;
+				if(labels1[i] != labels2[mapping[i]])
+					cost += relabel[labels1[i]][labels2[mapping[i]]];
+			}
+
+		for(int j = 0; j < labels2.length; j++)
+			if(! used[j])
+				cost += add[labels2[j]];
+
+		// * Links of graph 1 without a counterpart
+		int matched = 0;
+		for(int i = 0; i < mapping.length; i++)
+			for(int j = i + 1; j < mapping.length; j++)
+				if(adjacency1[i][j])
+				{
+					if(mapping[i] >= 0 && mapping[j] >= 0 && adjacency2[mapping[i]][mapping[j]])
+						matched++;
+					else
+						cost += addLink;
+				}
+
+		// * Links of graph 2 without a counterpart
+		int links2 = 0;
+		for(int i = 0; i < labels2.length; i++)
+			for(int j = i + 1; j < labels2.length; j++)
+				if(adjacency2[i][j])
+					links2++;
+		cost += (links2 - matched) * removeLink;
+
+		return cost;
+	}
+
+	private static int[] labels(int n, Random random)
+	{
+		int[] labels = new int[n];
+		for(int i = 0; i < n; i++)
+			labels[i] = random.nextInt(LABELS);
+		return labels;
+	}
+
+	private static boolean[][] adjacency(int n, Random random)
+	{
+		boolean[][] adjacency = new boolean[n][n];
+		for(int i = 0; i < n; i++)
+			for(int j = i + 1; j < n; j++)
+				if(random.nextDouble() < 0.5)
+				{
+					adjacency[i][j] = true;
+					adjacency[j][i] = true;
+				}
+		return adjacency;
+	}
+
+	private static double[][] relabel(Random random)
+	{
+		double[][] relabel = new double[LABELS][LABELS];
+		for(int i = 0; i < LABELS; i++)
+			for(int j = 0; j < LABELS; j++)
+				if(i != j)
+					relabel[i][j] = 1.0 + random.nextDouble();
+		return relabel;
+	}
+
+	private static double[] costs(Random random)
+	{
+		double[] costs = new double[LABELS];
+		for(int i = 0; i < LABELS; i++)
+			costs[i] = 1.0 + random.nextDouble();
+		return costs;
+	}
+}
@@ -0,0 +1,143 @@
+package org.lilian.util.graphs.jung;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.lilian.util.Parallel;
+
+import edu.uci.ics.jung.graph.Graph;
+
+public class BoxingSweepTest
+{
+
+	@Test
+	public void testSweep()
+	{
+		Graph<Integer, Integer> graph = Graphs.abRandom(500, 5, 2);
+		
+		BoxingSweep sweep = BoxingSweep.sweep(graph, 4, 5, 42L, 3);
+		
+		assertEquals(Arrays.asList(1, 2, 3, 4), sweep.sizes());
+		assertEquals(5, sweep.counts(0).length);
+		
+		// * boxes of size 1 contain a single vertex
+		assertEquals(500, sweep.min(0));
+		assertEquals(500.0, sweep.mean(0), 0.0);
+		assertEquals(0.0, sweep.variance(0), 0.0);
+		
+		double[] xs = new double[4], ys = new double[4];
+		for(int i = 0; i < 4; i++)
+		{
+			int[] counts = sweep.counts(i);
+			int min = Integer.MAX_VALUE;
+			double sum = 0.0;
+			for(int count : counts)
+			{
+				min = Math.min(min, count);
+				sum += count;
+			}
+			
+			assertEquals(min, sweep.min(i));
+			assertEquals(sum / counts.length, sweep.mean(i), 1E-10);
+			assertTrue(sweep.mean(i) >= sweep.min(i));
+			
+			if(i > 0)
+				assertTrue(sweep.min(i) <= sweep.min(i - 1));
+			
+			xs[i] = Math.log(i + 1);
+			ys[i] = Math.log(min);
+		}
+		
+		// * The dimension is minus the slope of the least squares fit
+		double slope = slope(xs, ys);
+		assertEquals(- slope, sweep.dimension(), 1E-10);
+		assertTrue(sweep.dimension() > 0.0);
+		
+		// * The result depends only on the seed
+		BoxingSweep other = BoxingSweep.sweep(graph, 4, 5, 42L, 1);
+		for(int i = 0; i < 4; i++)
+			assertArrayEquals(sweep.counts(i), other.counts(i));
+	}
+	
+	@Test
+	public void testComplete()
+	{
+		// * In a complete graph, any box larger than one vertex covers it all 
+		Graph<Integer, Integer> graph = Graphs.random(20, 1.0);
+		BoxingSweep sweep = BoxingSweep.sweep(graph, 3, 4, 1L, 2);
+		
+		assertEquals(20, sweep.min(0));
+		assertEquals(20.0, sweep.mean(0), 0.0);
+		for(int i = 1; i < 3; i++)
+		{
+			assertEquals(1, sweep.min(i));
+			assertEquals(1.0, sweep.mean(i), 0.0);
+		}
+		
+		double[] xs = {0.0, Math.log(2), Math.log(3)}, 
+		         ys = {Math.log(20), 0.0, 0.0};
+		assertEquals(- slope(xs, ys), sweep.dimension(), 1E-10);
+	}
+	
+	@Test
+	public void testTrials()
+	{
+		Graph<Integer, Integer> graph = Graphs.abRandom(300, 5, 2);
+		CBBBoxer<Integer, Integer> boxer = 
+				new CBBBoxer<Integer, Integer>(graph, new Neighbourhoods<Integer>(graph, 2));
+		
+		List<Integer> sizes = Arrays.asList(2, 3);
+		BoxingSweep sweep = BoxingSweep.sweep(boxer, sizes, 4, 7L, 2);
+		
+		// * Each trial matches a serial run with the same seed
+		long[] seeds = Parallel.seeds(7L, 8);
+		for(int i = 0; i < 2; i++)
+			for(int t = 0; t < 4; t++)
+				assertEquals(
+						boxer.box(sizes.get(i), new Random(seeds[i * 4 + t])).size(),
+						sweep.counts(i)[t]);
+	}
+	
+	@Test
+	public void testDeterministic()
+	{
+		Graph<Integer, Integer> graph = Graphs.abRandom(300, 5, 2);
+		GreedyBoxer<Integer, Integer> boxer = 
+				new GreedyBoxer<Integer, Integer>(graph, 2, new Neighbourhoods<Integer>(graph, 3));
+		
+		// * The matrix is extended to l=4 by whichever thread gets there first
+		BoxingSweep sweep = BoxingSweep.sweep(boxer, Arrays.asList(1, 2, 3, 4), 10, 0L, 3);
+		
+		for(int i = 0; i < 4; i++)
+		{
+			assertEquals(1, sweep.counts(i).length);
+			assertEquals(boxer.box(i + 1).size(), sweep.min(i));
+		}
+	}
+	
+	private static double slope(double[] xs, double[] ys)
+	{
+		double xMean = mean(xs), yMean = mean(ys);
+		
+		double covariance = 0.0, variance = 0.0;
+		for(int i = 0; i < xs.length; i++)
+		{
+			covariance += (xs[i] - xMean) * (ys[i] - yMean);
+			variance += (xs[i] - xMean) * (xs[i] - xMean);
+		}
+		
+		return covariance / variance;
+	}
+	
+	private static double mean(double[] values)
+	{
+		double sum = 0.0;
+		for(double value : values)
+			sum += value;
+		return sum / values.length;
+	}
+}
@@ -86,6 +86,35 @@ public class CBBBoxerTest
 		assertEquals(10, boxer.neighbourhood("a", 6).size());
 		assertEquals(11, boxer.neighbourhood("a", 7).size());
 		
+		boxer = new CBBBoxer<String, String>(graph, new Neighbourhoods<String>(graph, 3));
+		
+		assertEquals(1, boxer.neighbourhood("a", 1).size());
+		assertEquals(4, boxer.neighbourhood("a", 2).size());
+		assertEquals(7, boxer.neighbourhood("a", 3).size());
+		assertEquals(8, boxer.neighbourhood("a", 4).size());
+		// * beyond the radius, the neighbourhood is found by BFS
+		assertEquals(11, boxer.neighbourhood("a", 7).size());
+	}
+	
+	@Test
+	public void testBoxBounded()
+	{
+		Graph<Integer, Integer> graph = Graphs.abRandom(500, 5, 2);
+		Neighbourhoods<Integer> neighbourhoods = new Neighbourhoods<Integer>(graph, 3);
+		
+		for(int l : new int[]{1, 2, 3, 4})
+		{
+			// * with the same random draws, both methods give the same boxes
+			Global.random = new Random(l);
+			Boxing<Integer, Integer> expected = new CBBBoxer<Integer, Integer>(graph).box(l);
+			
+			Global.random = new Random(l);
+			Boxing<Integer, Integer> boxing = new CBBBoxer<Integer, Integer>(graph, neighbourhoods).box(l);
+			
+			assertEquals(expected, boxing);
+			assertEquals(0, boxing.uncovered().size());
+			assertEquals(0, boxing.overCovered().size());
+		}
 	}
 
 }
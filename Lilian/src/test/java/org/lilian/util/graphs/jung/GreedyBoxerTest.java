@@ -3,7 +3,9 @@ package org.lilian.util.graphs.jung;
 import static org.junit.Assert.*;
 
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Random;
+import java.util.Set;
 
 import org.junit.Test;
 import org.lilian.Global;
@@ -67,5 +69,42 @@ public class GreedyBoxerTest
 
 	}
 	
+	@Test
+	public void testBoxCached()
+	{
+		Global.random = new Random();
+		
+		Graph<Integer, Integer> graph = Graphs.abRandom(700, 5, 3);
+		HopDistances<Integer> distances = new HopDistances<Integer>(graph);
+		
+		for(int lb : new int[]{2, 3, 4})
+		{
+			GreedyBoxer<Integer, Integer> boxer = new GreedyBoxer<Integer, Integer>(graph, lb, distances);
+			Boxing<Integer, Integer> boxing = boxer.box(lb);
+			
+			assertEquals(0, boxing.uncovered().size());
+			assertEquals(0, boxing.overCovered().size());
+			
+			for(Set<Integer> box : boxing)
+				for(int a : box)
+					for(int b : box)
+						assertTrue(distances.distance(distances.index(a), distances.index(b)) < lb);
+		}
+	}
 	
+	@Test
+	public void testBoxBounded()
+	{
+		Graph<Integer, Integer> graph = Graphs.abRandom(700, 5, 3);
+		
+		GreedyBoxer<Integer, Integer> exact = 
+				new GreedyBoxer<Integer, Integer>(graph, 4, new HopDistances<Integer>(graph));
+		GreedyBoxer<Integer, Integer> bounded = 
+				new GreedyBoxer<Integer, Integer>(graph, 4, new Neighbourhoods<Integer>(graph, 3));
+		
+		for(int lb : new int[]{1, 2, 3, 4})
+			assertEquals(
+					new HashSet<Set<Integer>>(exact.box(lb)), 
+					new HashSet<Set<Integer>>(bounded.box(lb)));
+	}
 }
@@ -0,0 +1,70 @@
+package org.lilian.util.graphs.jung;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import edu.uci.ics.jung.algorithms.shortestpath.DijkstraDistance;
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.graph.UndirectedSparseGraph;
+
+public class HopDistancesTest
+{
+
+	@Test
+	public void testRandom()
+	{
+		Graph<Integer, Integer> graph = Graphs.random(150, 0.03);
+		
+		for(boolean bitParallel : new boolean[]{true, false})
+			for(int threads : new int[]{1, 3})
+				compare(graph, new HopDistances<Integer>(graph, threads, bitParallel));
+	}
+	
+	@Test
+	public void testScaleFree()
+	{
+		Graph<Integer, Integer> graph = Graphs.abRandom(300, 5, 2);
+		
+		compare(graph, new HopDistances<Integer>(graph, 2, true));
+		compare(graph, new HopDistances<Integer>(graph, 2, false));
+	}
+	
+	@Test
+	public void testLongPath()
+	{
+		// * A path longer than 255 hops, plus an isolated vertex
+		Graph<Integer, Integer> graph = new UndirectedSparseGraph<Integer, Integer>();
+		for(int i = 0; i < 300; i++)
+			graph.addEdge(i, i, i + 1);
+		graph.addVertex(-1);
+		
+		HopDistances<Integer> distances = new HopDistances<Integer>(graph, 2, true);
+		
+		// * NB: distance(int, int) takes indices, so we look those up first
+		int first = distances.index(0), last = distances.index(300), 
+		    isolated = distances.index(-1);
+		
+		assertEquals(300, distances.distance(first, last));
+		assertEquals(299, distances.distance(last, distances.index(1)));
+		assertEquals(0, distances.distance(last, last));
+		assertEquals(Integer.MAX_VALUE, distances.distance(isolated, first));
+		
+		compare(graph, distances);
+	}
+	
+	private static void compare(Graph<Integer, Integer> graph, HopDistances<Integer> distances)
+	{
+		DijkstraDistance<Integer, Integer> dijkstra = new DijkstraDistance<Integer, Integer>(graph);
+		
+		for(int i : graph.getVertices())
+			for(int j : graph.getVertices())
+			{
+				Number expected = dijkstra.getDistance(i, j);
+				
+				assertEquals(
+						expected == null ? Integer.MAX_VALUE : expected.intValue(), 
+						distances.distance(distances.index(i), distances.index(j)));
+			}
+	}
+}
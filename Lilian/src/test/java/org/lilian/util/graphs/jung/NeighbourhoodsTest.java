@@ -0,0 +1,72 @@
+package org.lilian.util.graphs.jung;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import edu.uci.ics.jung.graph.Graph;
+
+public class NeighbourhoodsTest
+{
+
+	@Test
+	public void testBalls()
+	{
+		Graph<Integer, Integer> graph = Graphs.abRandom(400, 5, 2);
+		
+		compare(new Neighbourhoods<Integer>(graph, 3, 2), graph);
+	}
+	
+	@Test
+	public void testSpill()
+	{
+		Graph<Integer, Integer> graph = Graphs.abRandom(400, 5, 2);
+		
+		// * A tiny memory budget forces the records onto disk
+		Neighbourhoods<Integer> spilled = new Neighbourhoods<Integer>(
+				new CSRGraph<Integer>(graph), 3, 2, 1000);
+		assertTrue(spilled.spilled());
+		
+		Neighbourhoods<Integer> inMemory = new Neighbourhoods<Integer>(graph, 3, 2);
+		assertFalse(inMemory.spilled());
+		assertEquals(inMemory.entries(), spilled.entries());
+		
+		for(int i = 0; i < inMemory.size(); i++)
+			assertArrayEquals(inMemory.ball(i, 3), spilled.ball(i, 3));
+		
+		compare(spilled, graph);
+	}
+	
+	private static void compare(Neighbourhoods<Integer> neighbourhoods, Graph<Integer, Integer> graph)
+	{
+		HopDistances<Integer> distances = new HopDistances<Integer>(graph, 2);
+		int n = neighbourhoods.size(), radius = neighbourhoods.radius();
+		
+		for(int i = 0; i < n; i++)
+		{
+			int[] sizes = new int[radius + 1];
+			
+			for(int j = 0; j < n; j++)
+			{
+				int distance = distances.distance(
+						distances.index(neighbourhoods.vertex(i)), 
+						distances.index(neighbourhoods.vertex(j)));
+				
+				for(int r = 0; r <= radius; r++)
+				{
+					assertEquals(distance <= r, neighbourhoods.within(i, j, r));
+					if(distance <= r)
+						sizes[r]++;
+				}
+				
+				assertEquals(distance <= radius ? distance : Integer.MAX_VALUE, 
+						neighbourhoods.distance(i, j));
+			}
+			
+			for(int r = 0; r <= radius; r++)
+				assertEquals(sizes[r], neighbourhoods.size(i, r));
+			
+			assertEquals(i, neighbourhoods.get(i, 0));
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package org.lilian.util.models.markov;
+
+import org.junit.Test;
+
+import org.lilian.corpora.Corpora;
+import org.lilian.models.markov.*;
+import org.lilian.util.Series;
+
+import static org.junit.Assert.*;
+import static org.lilian.util.Functions.*;
+
+import java.util.*;
+
+public class CompactMarkovModelTest {
+
+	@Test
+	public void testBasics()
+	{
+		// * A small buffer, to force several merges
+		MarkovModel<String> mm = new CompactMarkovModel<String>(3, 4);
+
+		for(String token : sentence("a b a a b c"))
+			mm.add(token);
+		mm.cut();
+
+		for(String token : sentence("b a c b b"))
+			mm.add(token);
+		mm.cut();
+
+		for(String token : sentence("c b c a d c"))
+			mm.add(token);
+		mm.cut();
+
+		assertEquals(4, (int)mm.distinct(1));
+		assertEquals(10, (int)mm.distinct(2));
+		assertEquals(11, (int)mm.distinct(3));
+
+		assertEquals(17, (int)mm.total(1));
+		assertEquals(14, (int)mm.total(2));
+		assertEquals(11, (int)mm.total(3));
+
+		assertEquals(2.0, mm.frequency(sentence("a b")), 0.0);
+		assertEquals(0.0, mm.frequency(sentence("d d")), 0.0);
+		assertEquals(0.0, mm.frequency(sentence("x")), 0.0);
+	}
+
+	@Test
+	public void testAgainstBasic()
+	{
+		Random random = new Random(42);
+
+		MarkovModel<String> basic = new BasicMarkovModel<String>(4);
+		MarkovModel<String> compact = new CompactMarkovModel<String>(4, 50);
+
+		for(int i = 0; i < 2000; i++)
+		{
+			String token = "" + (char)('a' + random.nextInt(6));
+			basic.add(token);
+			compact.add(token);
+
+			if(random.nextInt(20) == 0)
+			{
+				basic.cut();
+				compact.cut();
+			}
+		}
+
+		for(int n : Series.series(1, 5))
+		{
+			assertEquals(basic.total(n), compact.total(n), 0.0);
+			assertEquals(basic.distinct(n), compact.distinct(n), 0.0);
+
+			Collection<List<String>> tokens = compact.tokens(n);
+			assertEquals(new HashSet<List<String>>(basic.tokens(n)),
+					new HashSet<List<String>>(tokens));
+
+			for(List<String> nGram : tokens)
+				assertEquals(basic.frequency(nGram), compact.frequency(nGram), 0.0);
+		}
+	}
+
+	@Test
+	public void testTokens()
+	{
+		CompactMarkovModel<String> mm = new CompactMarkovModel<String>(3);
+
+		mm.add(Corpora.quickCorpus("a b b b a c d ; d e f g h"));
+
+		Iterator<List<String>> it = mm.iterator(2);
+		List<String> previous = it.next();
+		while(it.hasNext())
+		{
+			List<String> next = it.next();
+			assertFalse(previous.equals(next));
+			previous = next;
+		}
+	}
+}
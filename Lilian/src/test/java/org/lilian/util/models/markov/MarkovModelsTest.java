@@ -0,0 +1,45 @@
+package org.lilian.util.models.markov;
+
+import org.junit.Test;
+
+import org.lilian.corpora.Corpora;
+import org.lilian.corpora.SequenceCorpus;
+import org.lilian.models.markov.*;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+public class MarkovModelsTest {
+
+	@Test
+	public void testAdd()
+	{
+		SequenceCorpus<String> corpus = Corpora.quickCorpus(
+				"a b b b a c d . d e f g h . a b a a b c . b a c b b . c b c a d c");
+
+		int shardSize = MarkovModels.SHARD_SIZE;
+		// * Small shards, so that the boundaries fall inside sentences
+		MarkovModels.SHARD_SIZE = 4;
+
+		try {
+			MarkovModel<String> sequential = new TrieMarkovModel<String>(3);
+			sequential.add(corpus);
+
+			TrieMarkovModel<String> parallel = new TrieMarkovModel<String>(3);
+			MarkovModels.add(parallel, corpus, 3);
+
+			for(int n = 1; n <= 3; n++)
+			{
+				assertEquals(sequential.total(n), parallel.total(n), 0.0);
+				assertEquals(sequential.distinct(n), parallel.distinct(n), 0.0);
+
+				for(List<String> nGram : sequential.tokens(n))
+					assertEquals(sequential.frequency(nGram), parallel.frequency(nGram), 0.0);
+			}
+		} finally
+		{
+			MarkovModels.SHARD_SIZE = shardSize;
+		}
+	}
+}